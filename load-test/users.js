@@ -0,0 +1,105 @@
+// Load test for the /users API, used to compare the platform-thread, virtual-thread and reactive modes.
+//
+// Run against a server started with each mode, labelling the results with MODE:
+//   USERS_VIRTUAL_THREADS_ENABLED=false docker-compose up --build -d
+//   k6 run -e MODE=platform load-test/users.js
+//   USERS_VIRTUAL_THREADS_ENABLED=true docker-compose up --build -d
+//   k6 run -e MODE=virtual load-test/users.js
+//   SPRING_PROFILES_ACTIVE=reactive docker-compose up --build -d
+//   k6 run -e MODE=reactive load-test/users.js
+//
+// Each run writes load-test/results-<MODE>.json with the throughput and latency percentiles.
+// Options: BASE_URL (default http://localhost:5000), RATE requests/s (default 2000), DURATION (default 2m), USERS seeded (default 5000).
+
+import http from 'k6/http';
+import { check } from 'k6';
+
+const BASE_URL = __ENV.BASE_URL || 'http://localhost:5000';
+const MODE = __ENV.MODE || 'unknown';
+const RATE = parseInt(__ENV.RATE || '2000');
+const USERS = parseInt(__ENV.USERS || '5000');
+const BATCH_SIZE = 1000;
+
+export const options = {
+	scenarios: {
+		mixed: {
+			executor: 'constant-arrival-rate',
+			rate: RATE,
+			timeUnit: '1s',
+			duration: __ENV.DURATION || '2m',
+			preAllocatedVUs: 500,
+			maxVUs: 5000,
+		},
+	},
+	summaryTrendStats: ['avg', 'med', 'p(90)', 'p(95)', 'p(99)', 'p(99.9)', 'max'],
+	thresholds: {
+		http_req_failed: ['rate<0.01'],
+	},
+};
+
+// Seed the users read by the test, returning their ids
+export function setup() {
+	const run = Date.now();
+	const ids = [];
+	for (let offset = 0; offset < USERS; offset += BATCH_SIZE) {
+		const batch = [];
+		for (let i = offset; i < Math.min(offset + BATCH_SIZE, USERS); i++) {
+			batch.push({ firstName: 'Load', lastName: 'Test', email: `load-${run}-${i}@mail.com` });
+		}
+		const response = http.post(`${BASE_URL}/users/batch`, JSON.stringify(batch), { headers: { 'Content-Type': 'application/json' } });
+		if (response.status === 207) {
+			for (const result of response.json()) {
+				if (result.user) {
+					ids.push(result.user.id);
+				}
+			}
+			continue;
+		}
+		// The reactive profile has no batch endpoint, so create the users one at a time
+		const responses = http.batch(batch.map((user) => ['POST', `${BASE_URL}/users`, JSON.stringify(user), { headers: { 'Content-Type': 'application/json' } }]));
+		for (const created of responses) {
+			if (created.status === 201) {
+				ids.push(created.json().id);
+			}
+		}
+	}
+	return { ids: ids };
+}
+
+// 80% single reads, 10% page reads and 10% partial updates
+export default function (data) {
+	const id = data.ids[Math.floor(Math.random() * data.ids.length)];
+	const roll = Math.random();
+	if (roll < 0.8) {
+		check(http.get(`${BASE_URL}/users/${id}`, { tags: { name: 'GET /users/{id}' } }), { 'status is 200': (r) => r.status === 200 });
+	}
+	else if (roll < 0.9) {
+		check(http.get(`${BASE_URL}/users?after=${id}&limit=50`, { tags: { name: 'GET /users' } }), { 'status is 200': (r) => r.status === 200 });
+	}
+	else {
+		const body = JSON.stringify({ lastName: `Test${Math.floor(Math.random() * 1000)}` });
+		check(http.patch(`${BASE_URL}/users/${id}`, body, { headers: { 'Content-Type': 'application/merge-patch+json' }, tags: { name: 'PATCH /users/{id}' } }), { 'status is 204': (r) => r.status === 204 });
+	}
+}
+
+export function handleSummary(data) {
+	const duration = data.metrics.http_req_duration.values;
+	const result = {
+		mode: MODE,
+		rate: RATE,
+		throughput: data.metrics.http_reqs.values.rate,
+		failed: data.metrics.http_req_failed.values.rate,
+		droppedIterations: data.metrics.dropped_iterations ? data.metrics.dropped_iterations.values.count : 0,
+		latencyMs: {
+			median: duration.med,
+			p95: duration['p(95)'],
+			p99: duration['p(99)'],
+			p999: duration['p(99.9)'],
+			max: duration.max,
+		},
+	};
+	return {
+		stdout: JSON.stringify(result, null, 2) + '\n',
+		[`load-test/results-${MODE}.json`]: JSON.stringify(result, null, 2),
+	};
+}
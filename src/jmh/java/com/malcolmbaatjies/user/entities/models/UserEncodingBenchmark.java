@@ -0,0 +1,171 @@
+package com.malcolmbaatjies.user.entities.models;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.protobuf.ProtobufFactory;
+import com.fasterxml.jackson.dataformat.protobuf.schema.ProtobufSchema;
+import com.fasterxml.jackson.dataformat.protobuf.schema.ProtobufSchemaLoader;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UserEncodingBenchmark
+ * <br><br>
+ * This class is used to compare the encodings a page of users can be exchanged in, see {@code ContentNegotiationConfiguration}: the throughput of encoding and decoding the page, and the size of the encoded page, which is printed when each trial is set up.
+ * <br><br>
+ * Each {@link com.fasterxml.jackson.databind.ObjectMapper} is built the same way as the application builds the one of its encoding. Protobuf pages are {@code UserList} messages of {@code proto/users.proto}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserEncodingBenchmark
+{
+	/**
+	 * The encoding.
+	 */
+	@Param({"json", "cbor", "smile", "protobuf"})
+	private String format;
+
+	/**
+	 * The number of users in a page, matching the default and the maximum page size of GET /users.
+	 */
+	@Param({"50", "500"})
+	private int pageSize;
+
+	/**
+	 * The writer for a page of users.
+	 */
+	private ObjectWriter writer;
+
+	/**
+	 * The reader for a page of users.
+	 */
+	private ObjectReader reader;
+
+	/**
+	 * The page to encode, a list of users or, for Protobuf, a {@link UserList}.
+	 */
+	private Object page;
+
+	/**
+	 * The encoded page.
+	 */
+	private byte[] encoded;
+
+	/**
+	 * Setup the object mapper, the page and its encoded form, and print the size of the encoded page.
+	 */
+	@Setup
+	public void setup() throws IOException
+	{
+		List<User> users = new ArrayList<>(pageSize);
+		for (long id = 1; id <= pageSize; id++)
+		{
+			users.add(User.builder()
+				.id(id)
+				.firstName("John")
+				.lastName("Doe")
+				.email("johndoe" + id + "@mail.com")
+				.version(0L)
+				.build());
+		}
+
+		ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().factory(factory()).build();
+		if (format.equals("protobuf"))
+		{
+			ProtobufSchema schema;
+			try (InputStream in = new ClassPathResource("proto/users.proto").getInputStream())
+			{
+				schema = ProtobufSchemaLoader.std.loadNative(in, false).forType("UserList");
+			}
+			writer = objectMapper.writer(schema);
+			reader = objectMapper.readerFor(UserList.class).with(schema);
+			page = new UserList(users);
+		}
+		else
+		{
+			writer = objectMapper.writerFor(objectMapper.getTypeFactory().constructCollectionType(List.class, User.class));
+			reader = objectMapper.readerFor(objectMapper.getTypeFactory().constructCollectionType(List.class, User.class));
+			page = users;
+		}
+		encoded = writer.writeValueAsBytes(page);
+
+		System.out.printf("%n%s page of %d users: %d bytes%n", format, pageSize, encoded.length);
+	}
+
+	@Benchmark
+	public byte[] writeUsers() throws IOException
+	{
+		return writer.writeValueAsBytes(page);
+	}
+
+	@Benchmark
+	public Object readUsers() throws IOException
+	{
+		return reader.readValue(encoded);
+	}
+
+	/**
+	 * Create the Jackson factory of the encoding.
+	 *
+	 * @return The factory.
+	 */
+	private JsonFactory factory()
+	{
+		switch (format)
+		{
+			case "cbor":
+				return new CBORFactory();
+			case "smile":
+				return new SmileFactory();
+			case "protobuf":
+				return new ProtobufFactory();
+			default:
+				return new JsonFactory();
+		}
+	}
+
+	/**
+	 * UserList
+	 * <br><br>
+	 * The {@code UserList} message a page of users is sent as in Protobuf.
+	 */
+	public static class UserList
+	{
+		/**
+		 * The users.
+		 */
+		public List<User> users;
+
+		/**
+		 * Constructor, used by Jackson.
+		 */
+		public UserList()
+		{
+		}
+
+		/**
+		 * Constructor
+		 *
+		 * @param users The users.
+		 */
+		public UserList(List<User> users)
+		{
+			this.users = users;
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package com.malcolmbaatjies.user.entities.models;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UserSerializationBenchmark
+ * <br><br>
+ * This class is used to benchmark the Jackson serialization and deserialization of a {@link com.malcolmbaatjies.user.entities.models.User} and of a page of users.
+ * <br><br>
+ * The {@link com.fasterxml.jackson.databind.ObjectMapper} is built the same way Spring MVC builds the one used by the application.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserSerializationBenchmark
+{
+	/**
+	 * The number of users in a page, matching the default page size of GET /users.
+	 */
+	@Param({"50", "500"})
+	private int pageSize;
+
+	/**
+	 * The writer for a single user.
+	 */
+	private ObjectWriter userWriter;
+
+	/**
+	 * The reader for a single user.
+	 */
+	private ObjectReader userReader;
+
+	/**
+	 * The writer for a list of users.
+	 */
+	private ObjectWriter usersWriter;
+
+	/**
+	 * The reader for a list of users.
+	 */
+	private ObjectReader usersReader;
+
+	/**
+	 * The user to serialize.
+	 */
+	private User user;
+
+	/**
+	 * The serialized user.
+	 */
+	private String userJson;
+
+	/**
+	 * The users to serialize.
+	 */
+	private List<User> users;
+
+	/**
+	 * The serialized users.
+	 */
+	private String usersJson;
+
+	/**
+	 * Setup the object mapper, users and their serialized forms.
+	 */
+	@Setup
+	public void setup() throws JsonProcessingException
+	{
+		ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+		userWriter = objectMapper.writerFor(User.class);
+		userReader = objectMapper.readerFor(User.class);
+		usersWriter = objectMapper.writerFor(objectMapper.getTypeFactory().constructCollectionType(List.class, User.class));
+		usersReader = objectMapper.readerFor(objectMapper.getTypeFactory().constructCollectionType(List.class, User.class));
+
+		users = new ArrayList<>(pageSize);
+		for (long id = 1; id <= pageSize; id++)
+		{
+			users.add(User.builder()
+				.id(id)
+				.firstName("John")
+				.lastName("Doe")
+				.email("johndoe" + id + "@mail.com")
+				.version(0L)
+				.build());
+		}
+		user = users.get(0);
+		userJson = userWriter.writeValueAsString(user);
+		usersJson = usersWriter.writeValueAsString(users);
+	}
+
+	@Benchmark
+	public byte[] writeUser() throws JsonProcessingException
+	{
+		return userWriter.writeValueAsBytes(user);
+	}
+
+	@Benchmark
+	public User readUser() throws JsonProcessingException
+	{
+		return userReader.readValue(userJson);
+	}
+
+	@Benchmark
+	public byte[] writeUsers() throws JsonProcessingException
+	{
+		return usersWriter.writeValueAsBytes(users);
+	}
+
+	@Benchmark
+	public List<User> readUsers() throws JsonProcessingException
+	{
+		return usersReader.readValue(usersJson);
+	}
+}
@@ -0,0 +1,98 @@
+package com.malcolmbaatjies.user.entities.requests;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RequestValidationBenchmark
+ * <br><br>
+ * This class is used to benchmark the Bean Validation of the {@link com.malcolmbaatjies.user.entities.requests.NewUserRequest} and {@link com.malcolmbaatjies.user.entities.requests.UpdateUserRequest} classes, for both valid and invalid requests.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestValidationBenchmark
+{
+	/**
+	 * The validator.
+	 */
+	private Validator validator;
+
+	/**
+	 * A new user request that passes validation.
+	 */
+	private NewUserRequest validNewUserRequest;
+
+	/**
+	 * A new user request that fails every constraint.
+	 */
+	private NewUserRequest invalidNewUserRequest;
+
+	/**
+	 * An update user request that passes validation.
+	 */
+	private UpdateUserRequest validUpdateUserRequest;
+
+	/**
+	 * An update user request with an invalid email.
+	 */
+	private UpdateUserRequest invalidUpdateUserRequest;
+
+	/**
+	 * Setup the validator and requests.
+	 */
+	@Setup
+	public void setup()
+	{
+		validator = Validation.buildDefaultValidatorFactory().getValidator();
+
+		validNewUserRequest = NewUserRequest.builder()
+			.firstName("John")
+			.lastName("Doe")
+			.email("johndoe@mail.com")
+			.build();
+		invalidNewUserRequest = NewUserRequest.builder()
+			.firstName(" ")
+			.email("johndoe")
+			.build();
+		validUpdateUserRequest = UpdateUserRequest.builder()
+			.lastName("Doe")
+			.email("johndoe@mail.com")
+			.build();
+		invalidUpdateUserRequest = UpdateUserRequest.builder()
+			.email("johndoe@mail")
+			.build();
+	}
+
+	@Benchmark
+	public Set<ConstraintViolation<NewUserRequest>> validNewUserRequest()
+	{
+		return validator.validate(validNewUserRequest);
+	}
+
+	@Benchmark
+	public Set<ConstraintViolation<NewUserRequest>> invalidNewUserRequest()
+	{
+		return validator.validate(invalidNewUserRequest);
+	}
+
+	@Benchmark
+	public Set<ConstraintViolation<UpdateUserRequest>> validUpdateUserRequest()
+	{
+		return validator.validate(validUpdateUserRequest);
+	}
+
+	@Benchmark
+	public Set<ConstraintViolation<UpdateUserRequest>> invalidUpdateUserRequest()
+	{
+		return validator.validate(invalidUpdateUserRequest);
+	}
+}
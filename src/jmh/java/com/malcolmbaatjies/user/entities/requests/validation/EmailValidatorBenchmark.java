@@ -0,0 +1,43 @@
+package com.malcolmbaatjies.user.entities.requests.validation;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * EmailValidatorBenchmark
+ * <br><br>
+ * This class is used to benchmark the {@link com.malcolmbaatjies.user.entities.requests.validation.EmailValidator} against the email pattern it replaces. Run with {@code -prof gc} to compare allocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmailValidatorBenchmark
+{
+	/**
+	 * The email pattern previously used to validate requests.
+	 */
+	private static final Pattern EMAIL_PATTERN = Pattern.compile("^[a-zA-Z0-9._%+-]+@[a-zA-Z0-9.-]+\\.[a-zA-Z]{2,}$");
+
+	/**
+	 * The email to validate.
+	 */
+	@Param({"johndoe@mail.com", "john.doe+signup@sub.mail.co.za", "johndoe@mail"})
+	private String email;
+
+	@Benchmark
+	public boolean pattern()
+	{
+		return EMAIL_PATTERN.matcher(email).matches();
+	}
+
+	@Benchmark
+	public boolean emailValidator()
+	{
+		return EmailValidator.isValid(email);
+	}
+}
@@ -0,0 +1,68 @@
+package com.malcolmbaatjies.user.handlers;
+
+import com.malcolmbaatjies.user.entities.requests.NewUserRequest;
+import com.malcolmbaatjies.user.entities.responses.validation.ValidationErrorCodes;
+import com.malcolmbaatjies.user.entities.responses.validation.ValidationErrorResponse;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.BindException;
+import org.springframework.validation.FieldError;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GlobalExceptionHandlerBenchmark
+ * <br><br>
+ * This class is used to benchmark the error mapping of the {@link com.malcolmbaatjies.user.handlers.GlobalExceptionHandler} class and the {@link com.malcolmbaatjies.user.entities.responses.validation.ValidationErrorCodes} lookups it relies on.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GlobalExceptionHandlerBenchmark
+{
+	/**
+	 * The {@link com.malcolmbaatjies.user.handlers.GlobalExceptionHandler}.
+	 */
+	private final GlobalExceptionHandler globalExceptionHandler = new GlobalExceptionHandler(Duration.ZERO);
+
+	/**
+	 * A bind exception with a field error for every constraint of a new user request, in reverse code order so that the response has to be sorted.
+	 */
+	private BindException bindException;
+
+	/**
+	 * Setup the bind exception.
+	 */
+	@Setup
+	public void setup()
+	{
+		BeanPropertyBindingResult bindingResult = new BeanPropertyBindingResult(NewUserRequest.builder().build(), "newUserRequest");
+		bindingResult.addError(new FieldError("newUserRequest", "email", "4004"));
+		bindingResult.addError(new FieldError("newUserRequest", "email", "4003"));
+		bindingResult.addError(new FieldError("newUserRequest", "lastName", "4002"));
+		bindingResult.addError(new FieldError("newUserRequest", "firstName", "4001"));
+		bindException = new BindException(bindingResult);
+	}
+
+	@Benchmark
+	public ValidationErrorResponse onBindException()
+	{
+		return globalExceptionHandler.onBindException(bindException);
+	}
+
+	@Benchmark
+	public ValidationErrorCodes fromCodeFirst()
+	{
+		return ValidationErrorCodes.fromCode("4001");
+	}
+
+	@Benchmark
+	public ValidationErrorCodes fromCodeUnknown()
+	{
+		return ValidationErrorCodes.fromCode("9999");
+	}
+}
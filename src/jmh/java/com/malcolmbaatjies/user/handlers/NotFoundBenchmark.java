@@ -0,0 +1,87 @@
+package com.malcolmbaatjies.user.handlers;
+
+import com.malcolmbaatjies.user.controllers.UserController;
+import com.malcolmbaatjies.user.entities.exceptions.UserNotFoundException;
+import com.malcolmbaatjies.user.entities.responses.ApiErrorResponse;
+import com.malcolmbaatjies.user.repositories.UserRepository;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * NotFoundBenchmark
+ * <br><br>
+ * This class is used to benchmark a not-found heavy workload: a {@code GET /users/{id}} for a missing user, mapped to its response by the {@link com.malcolmbaatjies.user.handlers.GlobalExceptionHandler}.
+ * <br><br>
+ * The lookup is made below a configurable number of stack frames, since the cost of filling in a stack trace grows with the depth it is thrown from. A request served by Spring MVC is well over 100 frames deep. Run with {@code -prof gc} to compare allocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NotFoundBenchmark
+{
+	/**
+	 * The number of stack frames below which the user is looked up.
+	 */
+	@Param({"10", "150"})
+	private int stackDepth;
+
+	/**
+	 * The {@link com.malcolmbaatjies.user.handlers.GlobalExceptionHandler}.
+	 */
+	private final GlobalExceptionHandler globalExceptionHandler = new GlobalExceptionHandler(Duration.ZERO);
+
+	/**
+	 * The {@link com.malcolmbaatjies.user.controllers.UserController}, backed by a repository that finds no users. A plain proxy is used rather than a Mockito mock, since Mockito captures a stack trace of its own on every call.
+	 */
+	private UserController userController;
+
+	/**
+	 * Setup the controller.
+	 */
+	@Setup
+	public void setup()
+	{
+		UserRepository userRepository = (UserRepository) Proxy.newProxyInstance(
+			UserRepository.class.getClassLoader(),
+			new Class<?>[] {UserRepository.class},
+			(proxy, method, args) -> Optional.empty()
+		);
+		userController = new UserController(userRepository, null, null, null, null, null, null);
+	}
+
+	@Benchmark
+	public ApiErrorResponse getUserNotFound()
+	{
+		try
+		{
+			getUserAtDepth(stackDepth);
+			throw new IllegalStateException("User found");
+		}
+		catch (UserNotFoundException e)
+		{
+			return globalExceptionHandler.onUserNotFoundException(e);
+		}
+	}
+
+	/**
+	 * Get the missing user below the given number of stack frames.
+	 *
+	 * @param depth The number of stack frames.
+	 */
+	private void getUserAtDepth(int depth)
+	{
+		if (depth > 0)
+		{
+			getUserAtDepth(depth - 1);
+			return;
+		}
+		userController.getUser("3", null, null);
+	}
+}
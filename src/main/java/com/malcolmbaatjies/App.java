@@ -2,6 +2,8 @@ package com.malcolmbaatjies;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * App
@@ -9,8 +11,14 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
  * This class is used to start the Spring Boot application.
  * <br><br>
  * This class is annotated with Spring's {@link org.springframework.boot.autoconfigure.SpringBootApplication} to indicate that it is the main class of the Spring Boot application.
+ * <br><br>
+ * This class is annotated with Spring's {@link org.springframework.cache.annotation.EnableCaching} to enable the caching annotations used on the repositories.
+ * <br><br>
+ * This class is annotated with Spring's {@link org.springframework.scheduling.annotation.EnableScheduling} to enable the scheduled rebuilds of the in-memory indexes.
  */
 @SpringBootApplication
+@EnableCaching
+@EnableScheduling
 public class App
 {
 	public static void main(String[] args) {
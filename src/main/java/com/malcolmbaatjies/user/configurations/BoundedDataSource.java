@@ -0,0 +1,190 @@
+package com.malcolmbaatjies.user.configurations;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * BoundedDataSource
+ * <br><br>
+ * This class is used to cap the number of connections that can be checked out of a {@link javax.sql.DataSource} at once with a fair {@link java.util.concurrent.Semaphore}.
+ * <br><br>
+ * A permit is taken before each connection is requested and given back when the connection is closed. Callers beyond the cap queue on the semaphore in arrival order and give up with a {@link java.sql.SQLTimeoutException} after the timeout, instead of all contending inside the connection pool. With virtual threads there is no thread pool left to limit how many requests reach the database, so this is what keeps the database concurrency at the size of the connection pool.
+ * <br><br>
+ * The available permits and waiting callers are published as the {@code users.db.permits.available} and {@code users.db.permits.waiting} gauges.
+ * <br><br>
+ * The capped data source can still be reached with {@link #unwrap}, for example to monitor the connection pool behind it.
+ */
+public class BoundedDataSource extends DelegatingDataSource
+{
+	/**
+	 * The connection permits.
+	 */
+	private final Semaphore permits;
+
+	/**
+	 * How long to wait for a permit.
+	 */
+	private final Duration timeout;
+
+	/**
+	 * Constructor
+	 *
+	 * @param dataSource The data source to cap.
+	 * @param maxConnections The maximum number of connections checked out at once.
+	 * @param timeout How long to wait for a permit.
+	 */
+	public BoundedDataSource(DataSource dataSource, int maxConnections, Duration timeout)
+	{
+		super(dataSource);
+		this.permits = new Semaphore(maxConnections, true);
+		this.timeout = timeout;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException
+	{
+		acquire();
+		try
+		{
+			return releasingOnClose(super.getConnection());
+		}
+		catch (SQLException | RuntimeException e)
+		{
+			permits.release();
+			throw e;
+		}
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException
+	{
+		acquire();
+		try
+		{
+			return releasingOnClose(super.getConnection(username, password));
+		}
+		catch (SQLException | RuntimeException e)
+		{
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Unwrap the capped data source, or what it wraps, when this is not an instance of the interface.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T unwrap(Class<T> iface) throws SQLException
+	{
+		if (iface.isInstance(this))
+		{
+			return (T) this;
+		}
+		return getTargetDataSource().unwrap(iface);
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException
+	{
+		return iface.isInstance(this) || getTargetDataSource().isWrapperFor(iface);
+	}
+
+	/**
+	 * Publish the available permits and waiting callers.
+	 *
+	 * @param registry The meter registry.
+	 */
+	public void bindTo(MeterRegistry registry)
+	{
+		Gauge.builder("users.db.permits.available", permits, Semaphore::availablePermits)
+			.description("The connections that can still be checked out before callers have to wait")
+			.register(registry);
+		Gauge.builder("users.db.permits.waiting", permits, Semaphore::getQueueLength)
+			.description("The callers waiting for a connection")
+			.register(registry);
+	}
+
+	/**
+	 * Get the number of connections that can still be checked out.
+	 *
+	 * @return The available permits.
+	 */
+	public int getAvailablePermits()
+	{
+		return permits.availablePermits();
+	}
+
+	/**
+	 * Take a permit, waiting up to the timeout.
+	 *
+	 * @throws SQLException Thrown when no permit became available in time, or the thread was interrupted.
+	 */
+	private void acquire() throws SQLException
+	{
+		try
+		{
+			if (!permits.tryAcquire(timeout.toNanos(), TimeUnit.NANOSECONDS))
+			{
+				throw new SQLTimeoutException("No connection permit available after " + timeout.toMillis() + "ms");
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a connection permit", e);
+		}
+	}
+
+	/**
+	 * Wrap a connection so that closing it gives its permit back, once.
+	 *
+	 * @param connection The connection.
+	 * @return The wrapped connection.
+	 */
+	private Connection releasingOnClose(Connection connection)
+	{
+		AtomicBoolean released = new AtomicBoolean();
+		return (Connection) Proxy.newProxyInstance(
+			Connection.class.getClassLoader(),
+			new Class<?>[] {Connection.class},
+			(proxy, method, args) -> {
+				if ("close".equals(method.getName()) && method.getParameterCount() == 0)
+				{
+					try
+					{
+						connection.close();
+					}
+					finally
+					{
+						if (released.compareAndSet(false, true))
+						{
+							permits.release();
+						}
+					}
+					return null;
+				}
+				try
+				{
+					return method.invoke(connection, args);
+				}
+				catch (InvocationTargetException e)
+				{
+					throw e.getTargetException();
+				}
+			}
+		);
+	}
+}
@@ -0,0 +1,77 @@
+package com.malcolmbaatjies.user.configurations;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.protobuf.ProtobufFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.List;
+
+/**
+ * ContentNegotiationConfiguration
+ * <br><br>
+ * This class is used to let clients exchange users in compact binary encodings instead of JSON, chosen by the {@code Accept} and {@code Content-Type} headers:
+ * <ul>
+ *     <li>CBOR, as {@code application/cbor}.</li>
+ *     <li>Smile, as {@code application/x-jackson-smile}.</li>
+ *     <li>Protobuf, as {@value com.malcolmbaatjies.user.configurations.ProtobufJacksonHttpMessageConverter#MEDIA_TYPE}, see {@link com.malcolmbaatjies.user.configurations.ProtobufJacksonHttpMessageConverter ProtobufJacksonHttpMessageConverter}.</li>
+ * </ul>
+ * Their converters come after the JSON converter, so JSON stays the default when a request does not ask for another encoding. Each is built from Spring Boot's object mapper builder so that it applies the same {@code spring.jackson} settings as JSON. The responses under {@code /users} carry {@code Vary: Accept} so that shared caches keep the encodings apart.
+ * <br><br>
+ * This class is annotated with Spring's {@link org.springframework.context.annotation.Configuration} to indicate that it configures Spring MVC, and with {@link org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication} as the reactive profile does not run on Spring MVC.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class ContentNegotiationConfiguration implements WebMvcConfigurer
+{
+	/**
+	 * Spring Boot's object mapper builder, a new one per lookup.
+	 */
+	private final ObjectProvider<Jackson2ObjectMapperBuilder> objectMapperBuilder;
+
+	/**
+	 * Constructor
+	 *
+	 * @param objectMapperBuilder Spring Boot's object mapper builder.
+	 */
+	public ContentNegotiationConfiguration(ObjectProvider<Jackson2ObjectMapperBuilder> objectMapperBuilder)
+	{
+		this.objectMapperBuilder = objectMapperBuilder;
+	}
+
+	@Override
+	public void extendMessageConverters(List<HttpMessageConverter<?>> converters)
+	{
+		// Spring MVC adds its own CBOR and Smile converters when they are on the classpath, but without the spring.jackson settings
+		converters.removeIf(converter -> converter instanceof MappingJackson2CborHttpMessageConverter || converter instanceof MappingJackson2SmileHttpMessageConverter);
+		converters.add(new MappingJackson2CborHttpMessageConverter(objectMapperBuilder.getObject().factory(new CBORFactory()).build()));
+		converters.add(new MappingJackson2SmileHttpMessageConverter(objectMapperBuilder.getObject().factory(new SmileFactory()).build()));
+		converters.add(new ProtobufJacksonHttpMessageConverter(objectMapperBuilder.getObject().factory(new ProtobufFactory()).build()));
+	}
+
+	@Override
+	public void addInterceptors(InterceptorRegistry registry)
+	{
+		registry.addInterceptor(new HandlerInterceptor()
+		{
+			@Override
+			public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+			{
+				response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+				return true;
+			}
+		}).addPathPatterns("/users", "/users/**");
+	}
+}
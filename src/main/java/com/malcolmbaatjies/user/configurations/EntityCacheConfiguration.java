@@ -0,0 +1,119 @@
+package com.malcolmbaatjies.user.configurations;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import com.malcolmbaatjies.user.entities.models.User;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.util.StringUtils;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.configuration.CompleteConfiguration;
+import javax.cache.configuration.FactoryBuilder;
+import javax.cache.configuration.MutableConfiguration;
+import javax.cache.expiry.ModifiedExpiryPolicy;
+import javax.cache.spi.CachingProvider;
+import javax.persistence.SharedCacheMode;
+import java.net.URI;
+import java.time.Duration;
+import java.util.OptionalLong;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EntityCacheConfiguration
+ * <br><br>
+ * This class is used to keep {@link com.malcolmbaatjies.user.entities.models.User User} entities in Hibernate's second-level cache, so that loading a user by id does not reach the database while it is cached. This covers the loads the users cache does not see, such as the select Hibernate runs to merge the user saved by {@code updateUser}.
+ * <br><br>
+ * The cache is a JCache region, {@value com.malcolmbaatjies.user.entities.models.User#CACHE_REGION}, of a cache manager created here and handed to Hibernate. The provider is Caffeine's unless {@code users.entity-cache.provider} names another, configured by the file at {@code users.entity-cache.uri}. When the region is not defined by that file it is created here, holding at most {@code users.entity-cache.maximum-size} users with Caffeine, each for {@code users.entity-cache.ttl} after it was last written.
+ * <br><br>
+ * Hibernate's statistics are collected, so the region's hits, misses and puts are published as the {@code hibernate.second.level.cache.*} metrics.
+ * <br><br>
+ * The cache is on unless {@code users.entity-cache.enabled=false}.
+ * <br><br>
+ * This class is annotated with Spring's {@link org.springframework.context.annotation.Configuration} and {@link org.springframework.boot.autoconfigure.condition.ConditionalOnProperty} to only define its beans when the cache is enabled.
+ * <br><br>
+ * This class is annotated with Spring's {@link org.springframework.context.annotation.Profile} as the reactive profile does not use JPA.
+ */
+@Configuration
+@ConditionalOnProperty(name = "users.entity-cache.enabled", havingValue = "true", matchIfMissing = true)
+@Profile("!reactive")
+public class EntityCacheConfiguration
+{
+	/**
+	 * The cache manager of the second-level cache, with the user region created.
+	 * <br><br>
+	 * Hibernate closes the manager with the entity manager factory, so the manager is not shared with anything else. Managers are identified by their URI, so application contexts in the same JVM, as in tests, need a different {@code users.entity-cache.uri} each.
+	 *
+	 * @param provider    The class name of the JCache provider.
+	 * @param uri         The URI of the provider's configuration, or empty for the provider's default.
+	 * @param maximumSize The maximum number of users in the region, when it is created here with Caffeine.
+	 * @param ttl         How long a user stays in the region after it was last written, when it is created here.
+	 * @return The cache manager.
+	 */
+	@Bean
+	public CacheManager entityCacheManager(@Value("${users.entity-cache.provider:com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider}") String provider,
+		@Value("${users.entity-cache.uri:}") String uri,
+		@Value("${users.entity-cache.maximum-size:10000}") long maximumSize,
+		@Value("${users.entity-cache.ttl:PT10M}") Duration ttl)
+	{
+		CachingProvider cachingProvider = Caching.getCachingProvider(provider);
+		CacheManager cacheManager = cachingProvider.getCacheManager(StringUtils.hasText(uri) ? URI.create(uri) : cachingProvider.getDefaultURI(), getClass().getClassLoader());
+		if (cacheManager.getCache(User.CACHE_REGION) == null)
+		{
+			cacheManager.createCache(User.CACHE_REGION, regionConfiguration(cachingProvider, maximumSize, ttl));
+		}
+		return cacheManager;
+	}
+
+	/**
+	 * Enable the second-level cache on the {@link #entityCacheManager entity cache manager}, for the entities annotated with JPA's {@link javax.persistence.Cacheable}, and Hibernate's statistics.
+	 *
+	 * @param entityCacheManager The cache manager of the second-level cache.
+	 * @return The customizer.
+	 */
+	@Bean
+	public HibernatePropertiesCustomizer entityCacheHibernatePropertiesCustomizer(CacheManager entityCacheManager)
+	{
+		return properties ->
+		{
+			properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, true);
+			properties.put(AvailableSettings.CACHE_REGION_FACTORY, ConfigSettings.SIMPLE_FACTORY_NAME);
+			properties.put(ConfigSettings.CACHE_MANAGER, entityCacheManager);
+			properties.put(AvailableSettings.JPA_SHARED_CACHE_MODE, SharedCacheMode.ENABLE_SELECTIVE);
+			properties.put(AvailableSettings.GENERATE_STATISTICS, true);
+		};
+	}
+
+	/**
+	 * Create the configuration of the user region.
+	 * <br><br>
+	 * Entries are kept by reference rather than copied, as Hibernate only caches the disassembled, immutable state of its entities. JCache has no size bound, so the region is only bounded when the provider is Caffeine; other providers should define the region in their configuration file.
+	 *
+	 * @param cachingProvider The JCache provider.
+	 * @param maximumSize     The maximum number of users in the region.
+	 * @param ttl             How long a user stays in the region after it was last written.
+	 * @return The region's configuration.
+	 */
+	private static CompleteConfiguration<Object, Object> regionConfiguration(CachingProvider cachingProvider, long maximumSize, Duration ttl)
+	{
+		if (cachingProvider instanceof CaffeineCachingProvider)
+		{
+			CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+			configuration.setStoreByValue(false);
+			configuration.setMaximumSize(OptionalLong.of(maximumSize));
+			configuration.setExpireAfterWrite(OptionalLong.of(ttl.toNanos()));
+			return configuration;
+		}
+
+		return new MutableConfiguration<>()
+			.setStoreByValue(false)
+			.setExpiryPolicyFactory(FactoryBuilder.factoryOf(new ModifiedExpiryPolicy(new javax.cache.expiry.Duration(TimeUnit.MILLISECONDS, ttl.toMillis()))));
+	}
+}
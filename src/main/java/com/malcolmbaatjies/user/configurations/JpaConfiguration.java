@@ -0,0 +1,27 @@
+package com.malcolmbaatjies.user.configurations;
+
+import com.malcolmbaatjies.user.repositories.UserRepository;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+
+/**
+ * JpaConfiguration
+ * <br><br>
+ * This class is used to enable the JPA repositories used by the servlet stack. The reactive repositories are excluded explicitly: the {@link com.malcolmbaatjies.user.entities.models.User User} they manage is a JPA entity, so JPA would otherwise claim them and fail, as JPA has no reactive repositories.
+ * <br><br>
+ * This class is annotated with Spring's {@link org.springframework.context.annotation.Configuration} to indicate that it defines beans.
+ * <br><br>
+ * This class is annotated with Spring Data JPA's {@link org.springframework.data.jpa.repository.config.EnableJpaRepositories} to scan the repositories package for JPA repositories.
+ * <br><br>
+ * This class is annotated with Spring's {@link org.springframework.context.annotation.Profile} to stand down when the reactive profile is active, where JPA is not configured.
+ */
+@Configuration
+@EnableJpaRepositories(basePackageClasses = UserRepository.class, excludeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE, classes = ReactiveCrudRepository.class))
+@Profile("!reactive")
+public class JpaConfiguration
+{
+}
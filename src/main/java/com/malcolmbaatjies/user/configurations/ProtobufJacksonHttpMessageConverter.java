@@ -0,0 +1,179 @@
+package com.malcolmbaatjies.user.configurations;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.protobuf.ProtobufFactory;
+import com.fasterxml.jackson.dataformat.protobuf.schema.NativeProtobufSchema;
+import com.fasterxml.jackson.dataformat.protobuf.schema.ProtobufSchema;
+import com.fasterxml.jackson.dataformat.protobuf.schema.ProtobufSchemaLoader;
+import com.malcolmbaatjies.user.entities.models.User;
+import com.malcolmbaatjies.user.entities.requests.NewUserRequest;
+import com.malcolmbaatjies.user.entities.requests.UpdateUserRequest;
+import com.malcolmbaatjies.user.entities.responses.ApiErrorResponse;
+import com.malcolmbaatjies.user.entities.responses.validation.ValidationErrorResponse;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ProtobufJacksonHttpMessageConverter
+ * <br><br>
+ * This class is used to read and write the user API's bodies as Protobuf messages, as {@value #MEDIA_TYPE}, with the schema in {@value #SCHEMA}. The messages are read and written by Jackson from the same classes as JSON, so no classes are generated from the schema.
+ * <br><br>
+ * Only the types with a message in the schema are supported: a {@link com.malcolmbaatjies.user.entities.models.User User}, a list of users, which is written as a {@code UserList} message, the user requests and the error responses. Other bodies are left to the other converters.
+ */
+public class ProtobufJacksonHttpMessageConverter extends AbstractGenericHttpMessageConverter<Object>
+{
+	/**
+	 * The media type of Protobuf messages.
+	 */
+	public static final String MEDIA_TYPE = "application/x-protobuf";
+
+	/**
+	 * The schema on the classpath.
+	 */
+	static final String SCHEMA = "proto/users.proto";
+
+	/**
+	 * The classes with a message of the same name in the schema.
+	 */
+	private static final List<Class<?>> MESSAGES = List.of(User.class, NewUserRequest.class, UpdateUserRequest.class, ApiErrorResponse.class, ValidationErrorResponse.class);
+
+	/**
+	 * The object mapper, on a {@link com.fasterxml.jackson.dataformat.protobuf.ProtobufFactory ProtobufFactory}.
+	 */
+	private final ObjectMapper objectMapper;
+
+	/**
+	 * The message of each class.
+	 */
+	private final Map<Class<?>, ProtobufSchema> schemas = new HashMap<>();
+
+	/**
+	 * The message lists of users are written as.
+	 */
+	private final ProtobufSchema userListSchema;
+
+	/**
+	 * Constructor
+	 *
+	 * @param objectMapper The object mapper, on a {@link com.fasterxml.jackson.dataformat.protobuf.ProtobufFactory ProtobufFactory}.
+	 */
+	public ProtobufJacksonHttpMessageConverter(ObjectMapper objectMapper)
+	{
+		super(MediaType.parseMediaType(MEDIA_TYPE));
+		Assert.isInstanceOf(ProtobufFactory.class, objectMapper.getFactory(), "The object mapper must be built on a ProtobufFactory");
+		this.objectMapper = objectMapper;
+		// Fields added to the classes but not yet to the schema are left out rather than failing the response
+		this.objectMapper.getFactory().enable(JsonGenerator.Feature.IGNORE_UNKNOWN);
+
+		NativeProtobufSchema schema;
+		try (InputStream in = new ClassPathResource(SCHEMA).getInputStream())
+		{
+			schema = ProtobufSchemaLoader.std.loadNative(in, false);
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException("Cannot load the Protobuf schema " + SCHEMA, e);
+		}
+		for (Class<?> type : MESSAGES)
+		{
+			schemas.put(type, schema.forType(type.getSimpleName()));
+		}
+		this.userListSchema = schema.forType("UserList");
+	}
+
+	@Override
+	protected boolean supports(Class<?> clazz)
+	{
+		return schemas.containsKey(clazz);
+	}
+
+	@Override
+	public List<MediaType> getSupportedMediaTypes(Class<?> clazz)
+	{
+		// Spring MVC asks with the class of a returned list, whose users are checked by canWrite(Type, Class, MediaType)
+		return supports(clazz) || List.class.isAssignableFrom(clazz) ? getSupportedMediaTypes() : Collections.emptyList();
+	}
+
+	@Override
+	public boolean canRead(Type type, @Nullable Class<?> contextClass, @Nullable MediaType mediaType)
+	{
+		return supports(ResolvableType.forType(type).toClass()) && canRead(mediaType);
+	}
+
+	@Override
+	public boolean canWrite(@Nullable Type type, Class<?> clazz, @Nullable MediaType mediaType)
+	{
+		ResolvableType resolvableType = type != null ? ResolvableType.forType(type) : ResolvableType.forClass(clazz);
+		return (supports(resolvableType.toClass()) || isUserList(resolvableType)) && canWrite(mediaType);
+	}
+
+	@Override
+	public Object read(Type type, @Nullable Class<?> contextClass, HttpInputMessage inputMessage) throws IOException
+	{
+		return readInternal(ResolvableType.forType(type).toClass(), inputMessage);
+	}
+
+	@Override
+	protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException
+	{
+		try
+		{
+			return objectMapper.readerFor(clazz).with(schemas.get(clazz)).readValue(inputMessage.getBody());
+		}
+		catch (JsonProcessingException e)
+		{
+			throw new HttpMessageNotReadableException("Invalid Protobuf message: " + e.getOriginalMessage(), e, inputMessage);
+		}
+	}
+
+	@Override
+	protected void writeInternal(Object object, @Nullable Type type, HttpOutputMessage outputMessage) throws IOException
+	{
+		try
+		{
+			if (object instanceof List)
+			{
+				objectMapper.writer(userListSchema).writeValue(StreamUtils.nonClosing(outputMessage.getBody()), Map.of("users", object));
+			}
+			else
+			{
+				objectMapper.writer(schemas.get(object.getClass())).writeValue(StreamUtils.nonClosing(outputMessage.getBody()), object);
+			}
+		}
+		catch (JsonProcessingException e)
+		{
+			throw new HttpMessageNotWritableException("Could not write Protobuf message: " + e.getOriginalMessage(), e);
+		}
+	}
+
+	/**
+	 * Check whether a type is a list of users.
+	 *
+	 * @param type The type.
+	 * @return Whether it is a list of users.
+	 */
+	private static boolean isUserList(ResolvableType type)
+	{
+		return List.class.isAssignableFrom(type.toClass()) && type.as(List.class).getGeneric(0).toClass() == User.class;
+	}
+}
@@ -0,0 +1,24 @@
+package com.malcolmbaatjies.user.configurations;
+
+import com.malcolmbaatjies.user.repositories.reactive.ReactiveUserRepository;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.r2dbc.repository.config.EnableR2dbcRepositories;
+
+/**
+ * ReactiveConfiguration
+ * <br><br>
+ * This class is used to enable the R2DBC repositories used by the reactive stack. The reactive profile switches the application to WebFlux and R2DBC and turns off the JDBC data source and JPA, see {@code application-reactive.properties}.
+ * <br><br>
+ * This class is annotated with Spring's {@link org.springframework.context.annotation.Configuration} to indicate that it defines beans.
+ * <br><br>
+ * This class is annotated with Spring Data R2DBC's {@link org.springframework.data.r2dbc.repository.config.EnableR2dbcRepositories} to scan the reactive repositories package for R2DBC repositories.
+ * <br><br>
+ * This class is annotated with Spring's {@link org.springframework.context.annotation.Profile} to only apply when the reactive profile is active.
+ */
+@Configuration
+@EnableR2dbcRepositories(basePackageClasses = ReactiveUserRepository.class)
+@Profile("reactive")
+public class ReactiveConfiguration
+{
+}
@@ -0,0 +1,76 @@
+package com.malcolmbaatjies.user.configurations;
+
+import com.malcolmbaatjies.user.repositories.CoalescingRepositoryInterceptor;
+import com.malcolmbaatjies.user.repositories.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+
+import java.time.Duration;
+
+/**
+ * ReadCoalescingConfiguration
+ * <br><br>
+ * This class is used to add a {@link com.malcolmbaatjies.user.repositories.CoalescingRepositoryInterceptor CoalescingRepositoryInterceptor} to the {@link com.malcolmbaatjies.user.repositories.UserRepository UserRepository} proxy, so that concurrent lookups of the same user and concurrent checks of the same email share one query.
+ * <br><br>
+ * The interceptor sits behind the users cache, which wraps the whole repository proxy, so only lookups that missed the cache are coalesced.
+ * <br><br>
+ * Coalescing is on unless {@code users.read-coalescing.enabled=false}.
+ * <br><br>
+ * This class is annotated with Spring's {@link org.springframework.context.annotation.Configuration} and {@link org.springframework.boot.autoconfigure.condition.ConditionalOnProperty} to only define its beans when coalescing is enabled.
+ * <br><br>
+ * This class is annotated with Spring's {@link org.springframework.context.annotation.Profile} as the reactive profile does not use the JPA repository.
+ */
+@Configuration
+@ConditionalOnProperty(name = "users.read-coalescing.enabled", havingValue = "true", matchIfMissing = true)
+@Profile("!reactive")
+public class ReadCoalescingConfiguration
+{
+	/**
+	 * The interceptor that coalesces reads.
+	 * <br><br>
+	 * A call waits for the read it joined for as long as the read may wait for a connection, {@code spring.datasource.hikari.connection-timeout}, and then runs its own.
+	 *
+	 * @param meterRegistry The meter registry.
+	 * @param connectionTimeout How long a read may wait for a connection, in milliseconds.
+	 * @return The interceptor.
+	 */
+	@Bean
+	public CoalescingRepositoryInterceptor coalescingRepositoryInterceptor(MeterRegistry meterRegistry, @Value("${spring.datasource.hikari.connection-timeout:30000}") long connectionTimeout)
+	{
+		return new CoalescingRepositoryInterceptor(meterRegistry, Duration.ofMillis(connectionTimeout));
+	}
+
+	/**
+	 * Add the {@link com.malcolmbaatjies.user.repositories.CoalescingRepositoryInterceptor CoalescingRepositoryInterceptor} in front of every other interceptor of the {@link com.malcolmbaatjies.user.repositories.UserRepository UserRepository} proxy, so that a coalesced read only opens one transaction and, when sharded, is only routed once.
+	 * <br><br>
+	 * This method is static so that the post processor is registered before the repository is created.
+	 *
+	 * @param interceptor The interceptor, looked up once the repository is created.
+	 * @return The post processor.
+	 */
+	@Bean
+	public static BeanPostProcessor coalescingRepositoryPostProcessor(ObjectProvider<CoalescingRepositoryInterceptor> interceptor)
+	{
+		return new BeanPostProcessor()
+		{
+			@Override
+			public Object postProcessBeforeInitialization(Object bean, String beanName)
+			{
+				if (bean instanceof RepositoryFactoryBeanSupport && UserRepository.class.equals(((RepositoryFactoryBeanSupport<?, ?, ?>) bean).getObjectType()))
+				{
+					((RepositoryFactoryBeanSupport<?, ?, ?>) bean).addRepositoryFactoryCustomizer(factory -> factory.addRepositoryProxyPostProcessor(
+						(proxyFactory, repositoryInformation) -> proxyFactory.addAdvice(0, interceptor.getObject())
+					));
+				}
+				return bean;
+			}
+		};
+	}
+}
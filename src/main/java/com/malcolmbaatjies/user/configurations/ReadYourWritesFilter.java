@@ -0,0 +1,117 @@
+package com.malcolmbaatjies.user.configurations;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+
+/**
+ * ReadYourWritesFilter
+ * <br><br>
+ * This class is used to pin requests to the primary database when they could otherwise miss a write that has not reached the read replicas yet, see {@link com.malcolmbaatjies.user.configurations.ReplicaRoutingDataSource ReplicaRoutingDataSource}.
+ * <br><br>
+ * Requests that write are pinned for their whole duration, so that the reads they make to check the write are consistent with it. They also give the client a {@value #COOKIE} cookie holding the end of the read-your-writes window, and the client's reads are pinned until the window ends. The window is kept by the client rather than by the server so that it holds whichever instance serves the next request. A window of zero turns the cookie off.
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter
+{
+	/**
+	 * The name of the cookie holding the end of the window, in milliseconds since the epoch.
+	 */
+	static final String COOKIE = "users-primary-until";
+
+	/**
+	 * How long reads are pinned after a write.
+	 */
+	private final Duration window;
+
+	/**
+	 * The clock.
+	 */
+	private final Clock clock;
+
+	/**
+	 * Constructor
+	 *
+	 * @param window How long reads are pinned after a write.
+	 * @param clock The clock.
+	 */
+	public ReadYourWritesFilter(Duration window, Clock clock)
+	{
+		this.window = window;
+		this.clock = clock;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException
+	{
+		boolean write = isWrite(request);
+		if (write && !window.isZero())
+		{
+			// Set before the response is committed, whether or not the write succeeds
+			Cookie cookie = new Cookie(COOKIE, String.valueOf(clock.millis() + window.toMillis()));
+			cookie.setMaxAge((int) ((window.toMillis() + 999) / 1000));
+			cookie.setPath("/");
+			cookie.setHttpOnly(true);
+			response.addCookie(cookie);
+		}
+
+		ReplicaRoutingDataSource.pinToPrimary(write || isInWindow(request));
+		try
+		{
+			filterChain.doFilter(request, response);
+		}
+		finally
+		{
+			ReplicaRoutingDataSource.pinToPrimary(false);
+		}
+	}
+
+	/**
+	 * Check whether a request may write.
+	 *
+	 * @param request The request.
+	 * @return Whether the request may write.
+	 */
+	private static boolean isWrite(HttpServletRequest request)
+	{
+		HttpMethod method = HttpMethod.resolve(request.getMethod());
+		return method != HttpMethod.GET && method != HttpMethod.HEAD && method != HttpMethod.OPTIONS;
+	}
+
+	/**
+	 * Check whether a request is inside its client's read-your-writes window.
+	 *
+	 * @param request The request.
+	 * @return Whether the window is still open.
+	 */
+	private boolean isInWindow(HttpServletRequest request)
+	{
+		Cookie[] cookies = request.getCookies();
+		if (cookies == null)
+		{
+			return false;
+		}
+		for (Cookie cookie : cookies)
+		{
+			if (COOKIE.equals(cookie.getName()))
+			{
+				try
+				{
+					return Long.parseLong(cookie.getValue()) > clock.millis();
+				}
+				catch (NumberFormatException e)
+				{
+					return false;
+				}
+			}
+		}
+		return false;
+	}
+}
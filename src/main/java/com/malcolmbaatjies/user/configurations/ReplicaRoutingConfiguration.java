@@ -0,0 +1,122 @@
+package com.malcolmbaatjies.user.configurations;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ReplicaRoutingConfiguration
+ * <br><br>
+ * This class is used to send read-only transactions to read replicas of the database, and everything else to the primary, through a {@link com.malcolmbaatjies.user.configurations.ReplicaRoutingDataSource ReplicaRoutingDataSource}. Spring Data repositories read in read-only transactions, so {@code GET /users} and {@code GET /users/search} are served by the replicas. Lookups by id are served by the replicas too, but a user read from a replica is not cached, see {@link com.malcolmbaatjies.user.repositories.UserRepository#findById UserRepository.findById}.
+ * <br><br>
+ * The primary is configured by {@code spring.datasource} as without replicas. Each replica in {@code users.datasource.replica-urls} gets its own connection pool with the same credentials and {@code spring.datasource.hikari} settings, named {@code users-replica-1}, {@code users-replica-2} and so on in the {@code hikaricp.connections.*} metrics. Replicas are chosen by {@code users.datasource.replica-strategy}, {@code round-robin} or {@code least-connections}.
+ * <br><br>
+ * A {@link com.malcolmbaatjies.user.configurations.ReadYourWritesFilter ReadYourWritesFilter} keeps a client's reads on the primary for {@code users.datasource.read-your-writes-window} after each of its writes.
+ * <br><br>
+ * This class is annotated with Lombok's {@link lombok.extern.log4j.Log4j2} to enable logging.
+ * <br><br>
+ * This class is annotated with Spring's {@link org.springframework.context.annotation.Configuration}, {@link org.springframework.boot.autoconfigure.condition.ConditionalOnProperty} and {@link org.springframework.boot.autoconfigure.condition.ConditionalOnExpression} to only define its beans when replicas are configured and the users table is not sharded, see {@link com.malcolmbaatjies.user.configurations.ShardingConfiguration ShardingConfiguration}.
+ * <br><br>
+ * This class is annotated with Spring's {@link org.springframework.context.annotation.Profile} as the reactive profile does not use JDBC.
+ */
+@Configuration
+@ConditionalOnProperty("users.datasource.replica-urls")
+@ConditionalOnExpression("'${users.sharding.shard-urls:}'.isEmpty()")
+@Profile("!reactive")
+@Log4j2
+public class ReplicaRoutingConfiguration implements DisposableBean
+{
+	/**
+	 * The replica connection pools, closed with the application context.
+	 */
+	private final List<HikariDataSource> replicas = new ArrayList<>();
+
+	/**
+	 * The primary's connection pool, configured as Spring Boot would configure the only data source.
+	 *
+	 * @param properties The data source properties.
+	 * @return The primary.
+	 */
+	@Bean
+	@ConfigurationProperties("spring.datasource.hikari")
+	public HikariDataSource primaryDataSource(DataSourceProperties properties)
+	{
+		return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+	}
+
+	/**
+	 * The data source used by the application, routing between the primary and the replicas.
+	 * <br><br>
+	 * The routing data source is wrapped in a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy} so that connections are only requested once the transaction is known to be read-only.
+	 *
+	 * @param primary The primary.
+	 * @param properties The data source properties.
+	 * @param environment The environment, to configure the replica pools like the primary's.
+	 * @param meterRegistry The meter registry, to publish the replica pool metrics.
+	 * @param replicaUrls The JDBC URLs of the replicas.
+	 * @param strategy How a replica is chosen.
+	 * @return The data source.
+	 */
+	@Bean
+	@Primary
+	public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary, DataSourceProperties properties, Environment environment, ObjectProvider<MeterRegistry> meterRegistry,
+		@Value("${users.datasource.replica-urls}") List<String> replicaUrls, @Value("${users.datasource.replica-strategy:round-robin}") ReplicaRoutingDataSource.Strategy strategy)
+	{
+		Binder binder = Binder.get(environment);
+		for (String replicaUrl : replicaUrls)
+		{
+			HikariDataSource replica = properties.initializeDataSourceBuilder().type(HikariDataSource.class).url(replicaUrl).build();
+			binder.bind("spring.datasource.hikari", Bindable.ofInstance(replica));
+			replica.setPoolName("users-replica-" + (replicas.size() + 1));
+			meterRegistry.ifAvailable(registry -> replica.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry)));
+			replicas.add(replica);
+		}
+		log.info("Routing read-only transactions to {} replicas by {}", replicas.size(), strategy);
+
+		return new LazyConnectionDataSourceProxy(new ReplicaRoutingDataSource(primary, replicas, strategy));
+	}
+
+	/**
+	 * Keep a client's reads on the primary after its writes.
+	 *
+	 * @param window How long reads are kept on the primary after a write.
+	 * @return The filter.
+	 */
+	@Bean
+	public ReadYourWritesFilter readYourWritesFilter(@Value("${users.datasource.read-your-writes-window:PT2S}") Duration window)
+	{
+		return new ReadYourWritesFilter(window, Clock.systemUTC());
+	}
+
+	/**
+	 * Close the replica connection pools.
+	 */
+	@Override
+	public void destroy()
+	{
+		replicas.forEach(HikariDataSource::close);
+	}
+}
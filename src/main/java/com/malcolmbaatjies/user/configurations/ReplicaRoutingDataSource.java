@@ -0,0 +1,357 @@
+package com.malcolmbaatjies.user.configurations;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ReplicaRoutingDataSource
+ * <br><br>
+ * This class is used to send the connections of read-only transactions to read replicas and every other connection to the primary, so that reads do not compete with writes on the primary.
+ * <br><br>
+ * The route is chosen when the connection is requested, from the transaction that is current at that time. Spring only marks a transaction as read-only after it has begun, so this data source must be wrapped in a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy} to defer the request until the first statement runs.
+ * <br><br>
+ * A replica is chosen by {@link Strategy#ROUND_ROBIN round-robin} or by {@link Strategy#LEAST_CONNECTIONS least connections}, counting the connections this data source has checked out of each replica and not yet closed. A thread can be pinned to the primary with {@link #pinToPrimary(boolean)}, e.g. to read its own writes before they have reached the replicas.
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource
+{
+	/**
+	 * Whether the current thread is pinned to the primary.
+	 */
+	private static final ThreadLocal<Boolean> PINNED_TO_PRIMARY = new ThreadLocal<>();
+
+	/**
+	 * Strategy
+	 * <br><br>
+	 * How a replica is chosen for a read-only connection.
+	 */
+	public enum Strategy
+	{
+		/**
+		 * Take the replicas in turn.
+		 */
+		ROUND_ROBIN,
+
+		/**
+		 * Take the replica with the fewest connections checked out, in turn among equals.
+		 */
+		LEAST_CONNECTIONS
+	}
+
+	/**
+	 * The primary, used for every connection outside of a read-only transaction.
+	 */
+	private final DataSource primary;
+
+	/**
+	 * The replicas.
+	 */
+	private final List<Replica> replicas;
+
+	/**
+	 * How a replica is chosen.
+	 */
+	private final Strategy strategy;
+
+	/**
+	 * The number of replica connections requested so far, used to take the replicas in turn.
+	 */
+	private final AtomicInteger turn = new AtomicInteger();
+
+	/**
+	 * Constructor
+	 *
+	 * @param primary The primary.
+	 * @param replicas The replicas. When empty every connection is taken from the primary.
+	 * @param strategy How a replica is chosen.
+	 */
+	public ReplicaRoutingDataSource(DataSource primary, List<? extends DataSource> replicas, Strategy strategy)
+	{
+		this.primary = primary;
+		this.replicas = new ArrayList<>(replicas.size());
+		for (DataSource replica : replicas)
+		{
+			this.replicas.add(new Replica(replica));
+		}
+		this.strategy = strategy;
+	}
+
+	/**
+	 * Pin the current thread to the primary, or release it.
+	 * <br><br>
+	 * While pinned, read-only transactions on the thread take their connections from the primary too.
+	 *
+	 * @param pinned Whether to pin the thread.
+	 */
+	public static void pinToPrimary(boolean pinned)
+	{
+		if (pinned)
+		{
+			PINNED_TO_PRIMARY.set(Boolean.TRUE);
+		}
+		else
+		{
+			PINNED_TO_PRIMARY.remove();
+		}
+	}
+
+	/**
+	 * Check whether the current thread is pinned to the primary.
+	 *
+	 * @return Whether the thread is pinned.
+	 */
+	public static boolean isPinnedToPrimary()
+	{
+		return PINNED_TO_PRIMARY.get() != null;
+	}
+
+	/**
+	 * Check whether a read-only transaction begun now on the current thread would read from a replica of the given data source.
+	 * <br><br>
+	 * It would not when the data source does not route to replicas, when the thread is pinned to the primary, or when the thread is in a read-write transaction, which the read-only one would join. This is used to keep users read from a replica out of the caches, where a replica that lags behind the primary would leave them stale.
+	 *
+	 * @param dataSource The data source, which may wrap a {@link ReplicaRoutingDataSource}.
+	 * @return Whether the read would come from a replica.
+	 */
+	public static boolean readsFromReplica(DataSource dataSource)
+	{
+		if (isPinnedToPrimary() || (TransactionSynchronizationManager.isActualTransactionActive() && !TransactionSynchronizationManager.isCurrentTransactionReadOnly()))
+		{
+			return false;
+		}
+		try
+		{
+			return dataSource.isWrapperFor(ReplicaRoutingDataSource.class) && !dataSource.unwrap(ReplicaRoutingDataSource.class).replicas.isEmpty();
+		}
+		catch (SQLException e)
+		{
+			return false;
+		}
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException
+	{
+		if (!routeToReplica())
+		{
+			return primary.getConnection();
+		}
+		return nextReplica().getConnection();
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException
+	{
+		if (!routeToReplica())
+		{
+			return primary.getConnection(username, password);
+		}
+		return nextReplica().getConnection(username, password);
+	}
+
+	/**
+	 * Unwrap the primary, which is the data source that is configured and monitored like a single data source would be.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T unwrap(Class<T> iface) throws SQLException
+	{
+		if (iface.isInstance(this))
+		{
+			return (T) this;
+		}
+		return primary.unwrap(iface);
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException
+	{
+		return iface.isInstance(this) || primary.isWrapperFor(iface);
+	}
+
+	/**
+	 * Get the data sources connections are routed to.
+	 *
+	 * @return The primary followed by the replicas, in the order the replicas were given.
+	 */
+	public List<DataSource> getTargetDataSources()
+	{
+		List<DataSource> targets = new ArrayList<>(replicas.size() + 1);
+		targets.add(primary);
+		for (Replica replica : replicas)
+		{
+			targets.add(replica.dataSource);
+		}
+		return targets;
+	}
+
+	/**
+	 * Get the number of connections checked out of each replica and not yet closed.
+	 *
+	 * @return The connections per replica, in the order the replicas were given.
+	 */
+	public int[] getReplicaConnections()
+	{
+		int[] connections = new int[replicas.size()];
+		for (int i = 0; i < connections.length; i++)
+		{
+			connections[i] = replicas.get(i).connections.get();
+		}
+		return connections;
+	}
+
+	/**
+	 * Check whether the connection being requested should come from a replica.
+	 *
+	 * @return Whether to route to a replica.
+	 */
+	private boolean routeToReplica()
+	{
+		return !replicas.isEmpty() && TransactionSynchronizationManager.isCurrentTransactionReadOnly() && !isPinnedToPrimary();
+	}
+
+	/**
+	 * Choose the replica for the next connection.
+	 *
+	 * @return The replica.
+	 */
+	private Replica nextReplica()
+	{
+		int first = Math.floorMod(turn.getAndIncrement(), replicas.size());
+		if (strategy == Strategy.ROUND_ROBIN)
+		{
+			return replicas.get(first);
+		}
+
+		// Scan from this turn's replica so that replicas with equally few connections are still taken in turn
+		Replica least = replicas.get(first);
+		for (int i = 1; i < replicas.size(); i++)
+		{
+			Replica replica = replicas.get((first + i) % replicas.size());
+			if (replica.connections.get() < least.connections.get())
+			{
+				least = replica;
+			}
+		}
+		return least;
+	}
+
+	/**
+	 * Replica
+	 * <br><br>
+	 * A replica and the number of connections checked out of it and not yet closed.
+	 */
+	private static final class Replica
+	{
+		/**
+		 * The replica.
+		 */
+		private final DataSource dataSource;
+
+		/**
+		 * The number of connections checked out and not yet closed.
+		 */
+		private final AtomicInteger connections = new AtomicInteger();
+
+		/**
+		 * Constructor
+		 *
+		 * @param dataSource The replica.
+		 */
+		private Replica(DataSource dataSource)
+		{
+			this.dataSource = dataSource;
+		}
+
+		/**
+		 * Get a connection, counted until it is closed.
+		 *
+		 * @return The connection.
+		 * @throws SQLException Thrown when the replica cannot give a connection.
+		 */
+		private Connection getConnection() throws SQLException
+		{
+			connections.incrementAndGet();
+			try
+			{
+				return countedUntilClosed(dataSource.getConnection());
+			}
+			catch (SQLException | RuntimeException e)
+			{
+				connections.decrementAndGet();
+				throw e;
+			}
+		}
+
+		/**
+		 * Get a connection for the given user, counted until it is closed.
+		 *
+		 * @param username The user.
+		 * @param password The user's password.
+		 * @return The connection.
+		 * @throws SQLException Thrown when the replica cannot give a connection.
+		 */
+		private Connection getConnection(String username, String password) throws SQLException
+		{
+			connections.incrementAndGet();
+			try
+			{
+				return countedUntilClosed(dataSource.getConnection(username, password));
+			}
+			catch (SQLException | RuntimeException e)
+			{
+				connections.decrementAndGet();
+				throw e;
+			}
+		}
+
+		/**
+		 * Wrap a connection so that closing it stops counting it, once.
+		 *
+		 * @param connection The connection.
+		 * @return The wrapped connection.
+		 */
+		private Connection countedUntilClosed(Connection connection)
+		{
+			AtomicBoolean closed = new AtomicBoolean();
+			return (Connection) Proxy.newProxyInstance(
+				Connection.class.getClassLoader(),
+				new Class<?>[] {Connection.class},
+				(proxy, method, args) -> {
+					if ("close".equals(method.getName()) && method.getParameterCount() == 0)
+					{
+						try
+						{
+							connection.close();
+						}
+						finally
+						{
+							if (closed.compareAndSet(false, true))
+							{
+								connections.decrementAndGet();
+							}
+						}
+						return null;
+					}
+					try
+					{
+						return method.invoke(connection, args);
+					}
+					catch (InvocationTargetException e)
+					{
+						throw e.getTargetException();
+					}
+				}
+			);
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package com.malcolmbaatjies.user.configurations;
+
+import lombok.extern.log4j.Log4j2;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.listener.logging.DefaultQueryLogEntryCreator;
+import org.apache.logging.log4j.Level;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * SampledSqlLogger
+ * <br><br>
+ * This class is used to log a sample of the SQL statements run through a data source proxy, instead of every statement as {@code spring.jpa.show-sql} does. A statement is logged at INFO with a probability of one in {@code rate}, and every statement that takes at least {@code slowThreshold}, or fails, is logged at WARN. Each entry carries the statement's execution time, its bind parameters and, for batches, the batch size.
+ * <br><br>
+ * Entries are only formatted for the statements that are logged.
+ * <br><br>
+ * This class is annotated with Lombok's {@link lombok.extern.log4j.Log4j2} to enable logging.
+ */
+@Log4j2
+public class SampledSqlLogger implements QueryExecutionListener
+{
+	/**
+	 * One in this many statements is logged, or none when zero.
+	 */
+	private final int rate;
+
+	/**
+	 * The execution time, in milliseconds, from which every statement is logged.
+	 */
+	private final long slowThresholdMillis;
+
+	/**
+	 * Formats the logged statements.
+	 */
+	private final DefaultQueryLogEntryCreator logEntryCreator = new DefaultQueryLogEntryCreator();
+
+	/**
+	 * Constructor
+	 *
+	 * @param rate          One in this many statements is logged, or none when zero.
+	 * @param slowThreshold The execution time from which every statement is logged.
+	 */
+	public SampledSqlLogger(int rate, Duration slowThreshold)
+	{
+		this.rate = rate;
+		this.slowThresholdMillis = slowThreshold.toMillis();
+	}
+
+	@Override
+	public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList)
+	{
+	}
+
+	@Override
+	public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList)
+	{
+		Level level = levelOf(execInfo);
+		if (level != null && log.isEnabled(level))
+		{
+			log.log(level, logEntryCreator.getLogEntry(execInfo, queryInfoList, true, true, false));
+		}
+	}
+
+	/**
+	 * Decide whether, and at which level, a statement is logged.
+	 *
+	 * @param execInfo The statement's execution.
+	 * @return The level, or null when the statement is not logged.
+	 */
+	Level levelOf(ExecutionInfo execInfo)
+	{
+		if (!execInfo.isSuccess() || execInfo.getElapsedTime() >= slowThresholdMillis)
+		{
+			return Level.WARN;
+		}
+		if (rate > 0 && ThreadLocalRandom.current().nextInt(rate) == 0)
+		{
+			return Level.INFO;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,292 @@
+package com.malcolmbaatjies.user.configurations;
+
+import com.malcolmbaatjies.user.entities.models.User;
+import com.malcolmbaatjies.user.repositories.CoalescingRepositoryInterceptor;
+import com.malcolmbaatjies.user.repositories.UserRepository;
+import com.malcolmbaatjies.user.repositories.sharding.EmailDirectory;
+import com.malcolmbaatjies.user.repositories.sharding.ShardRoutingDataSource;
+import com.malcolmbaatjies.user.repositories.sharding.ShardedIdGenerator;
+import com.malcolmbaatjies.user.repositories.sharding.ShardingRepositoryInterceptor;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.tool.hbm2ddl.SchemaUpdate;
+import org.hibernate.tool.schema.TargetType;
+import org.springframework.aop.Advisor;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * ShardingConfiguration
+ * <br><br>
+ * This class is used to spread the users table across several databases, the shards, under the {@link com.malcolmbaatjies.user.repositories.UserRepository UserRepository}. The repository is used as before, and a {@link com.malcolmbaatjies.user.repositories.sharding.ShardingRepositoryInterceptor ShardingRepositoryInterceptor} in its proxy routes each call to the shards it needs.
+ * <br><br>
+ * Shard 0 is configured by {@code spring.datasource} as without sharding, and also holds the id sequence and the {@link com.malcolmbaatjies.user.repositories.sharding.EmailDirectory EmailDirectory}. Each further shard in {@code users.sharding.shard-urls} gets its own connection pool with the same credentials and {@code spring.datasource.hikari} settings, named {@code users-shard-1}, {@code users-shard-2} and so on in the {@code hikaricp.connections.*} metrics. When {@code spring.jpa.hibernate.ddl-auto} creates or updates the schema, it does so on every shard.
+ * <br><br>
+ * The number of shards is carried in every id, so shards cannot be added once users are stored. For the same reason, users stored on shard 0 before it was sharded cannot be found, and the application refuses to start while shard 0 holds any, see {@link #unshardedUsersCheck}.
+ * <br><br>
+ * This class is annotated with Lombok's {@link lombok.extern.log4j.Log4j2} to enable logging.
+ * <br><br>
+ * This class is annotated with Spring's {@link org.springframework.context.annotation.Configuration} and {@link org.springframework.boot.autoconfigure.condition.ConditionalOnProperty} to only define its beans when shards are configured.
+ * <br><br>
+ * This class is annotated with Spring's {@link org.springframework.context.annotation.Profile} as the reactive profile does not use JDBC.
+ */
+@Configuration
+@ConditionalOnProperty("users.sharding.shard-urls")
+@Profile("!reactive")
+@Log4j2
+public class ShardingConfiguration implements DisposableBean
+{
+	/**
+	 * The connection pools of the shards after shard 0, closed with the application context.
+	 */
+	private final List<HikariDataSource> shardPools = new ArrayList<>();
+
+	/**
+	 * The executor the shards are read on in parallel, shut down with the application context.
+	 */
+	private ExecutorService executor;
+
+	/**
+	 * The connection pool of shard 0, configured as Spring Boot would configure the only data source.
+	 *
+	 * @param properties The data source properties.
+	 * @return Shard 0.
+	 */
+	@Bean
+	@ConfigurationProperties("spring.datasource.hikari")
+	public HikariDataSource primaryDataSource(DataSourceProperties properties)
+	{
+		return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+	}
+
+	/**
+	 * The shards.
+	 *
+	 * @param primary Shard 0.
+	 * @param properties The data source properties.
+	 * @param environment The environment, to configure the shard pools like shard 0's.
+	 * @param meterRegistry The meter registry, to publish the shard pool metrics.
+	 * @param shardUrls The JDBC URLs of the shards after shard 0.
+	 * @return The shards.
+	 */
+	@Bean
+	public ShardRoutingDataSource shardRoutingDataSource(@Qualifier("primaryDataSource") DataSource primary, DataSourceProperties properties, Environment environment, ObjectProvider<MeterRegistry> meterRegistry,
+		@Value("${users.sharding.shard-urls}") List<String> shardUrls)
+	{
+		Binder binder = Binder.get(environment);
+		List<DataSource> shards = new ArrayList<>();
+		shards.add(primary);
+		for (String shardUrl : shardUrls)
+		{
+			HikariDataSource shard = properties.initializeDataSourceBuilder().type(HikariDataSource.class).url(shardUrl).build();
+			binder.bind("spring.datasource.hikari", Bindable.ofInstance(shard));
+			shard.setPoolName("users-shard-" + shards.size());
+			meterRegistry.ifAvailable(registry -> shard.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry)));
+			shardPools.add(shard);
+			shards.add(shard);
+		}
+		if (environment.containsProperty("users.datasource.replica-urls"))
+		{
+			log.warn("users.datasource.replica-urls is ignored as the users table is sharded");
+		}
+		log.info("Sharding users across {} databases", shards.size());
+
+		return new ShardRoutingDataSource(shards);
+	}
+
+	/**
+	 * The data source used by the application, routing to the shard selected on the current thread.
+	 * <br><br>
+	 * The routing data source is wrapped in a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy} so that a transaction begun before its shard is selected still runs on that shard.
+	 *
+	 * @param shardRoutingDataSource The shards.
+	 * @return The data source.
+	 */
+	@Bean
+	@Primary
+	public DataSource dataSource(ShardRoutingDataSource shardRoutingDataSource)
+	{
+		return new LazyConnectionDataSourceProxy(shardRoutingDataSource);
+	}
+
+	/**
+	 * Tell the {@link com.malcolmbaatjies.user.repositories.sharding.ShardedIdGenerator ShardedIdGenerator} how many shards there are.
+	 *
+	 * @param shardRoutingDataSource The shards.
+	 * @return The customizer.
+	 */
+	@Bean
+	public HibernatePropertiesCustomizer shardCountCustomizer(ShardRoutingDataSource shardRoutingDataSource)
+	{
+		return properties -> properties.put(ShardedIdGenerator.SHARD_COUNT, shardRoutingDataSource.getShardCount());
+	}
+
+	/**
+	 * The email directory, kept on shard 0. Its table is created if it does not exist.
+	 *
+	 * @param primary Shard 0.
+	 * @return The email directory.
+	 */
+	@Bean
+	public EmailDirectory emailDirectory(@Qualifier("primaryDataSource") DataSource primary)
+	{
+		EmailDirectory emailDirectory = new EmailDirectory(primary);
+		emailDirectory.createTable();
+		return emailDirectory;
+	}
+
+	/**
+	 * The interceptor that routes the {@link com.malcolmbaatjies.user.repositories.UserRepository UserRepository} calls to the shards.
+	 *
+	 * @param shardRoutingDataSource The shards.
+	 * @param emailDirectory The email directory.
+	 * @param userRepository The repository.
+	 * @param transactionManager The transaction manager.
+	 * @param fanOutThreads The number of threads the shards are read on in parallel, shared by all requests.
+	 * @return The interceptor.
+	 */
+	@Bean
+	public ShardingRepositoryInterceptor shardingRepositoryInterceptor(ShardRoutingDataSource shardRoutingDataSource, EmailDirectory emailDirectory, ObjectProvider<UserRepository> userRepository,
+		ObjectProvider<PlatformTransactionManager> transactionManager, @Value("${users.sharding.fan-out-threads:16}") int fanOutThreads)
+	{
+		executor = Executors.newFixedThreadPool(fanOutThreads, new CustomizableThreadFactory("users-shard-"));
+		return new ShardingRepositoryInterceptor(shardRoutingDataSource, emailDirectory, executor, userRepository, transactionManager);
+	}
+
+	/**
+	 * Add the {@link com.malcolmbaatjies.user.repositories.sharding.ShardingRepositoryInterceptor ShardingRepositoryInterceptor} in front of every other interceptor of the {@link com.malcolmbaatjies.user.repositories.UserRepository UserRepository} proxy but the {@link com.malcolmbaatjies.user.repositories.CoalescingRepositoryInterceptor CoalescingRepositoryInterceptor}, so that each call it routes still begins its own transaction on the shard.
+	 * <br><br>
+	 * The repository's methods are checked to be routed as the proxy is built, so a method that is not fails the startup.
+	 * <br><br>
+	 * This method is static so that the post processor is registered before the repository is created.
+	 *
+	 * @param interceptor The interceptor, looked up once the repository is created.
+	 * @return The post processor.
+	 */
+	@Bean
+	public static BeanPostProcessor shardingRepositoryPostProcessor(ObjectProvider<ShardingRepositoryInterceptor> interceptor)
+	{
+		return new BeanPostProcessor()
+		{
+			@Override
+			public Object postProcessBeforeInitialization(Object bean, String beanName)
+			{
+				if (bean instanceof RepositoryFactoryBeanSupport && UserRepository.class.equals(((RepositoryFactoryBeanSupport<?, ?, ?>) bean).getObjectType()))
+				{
+					((RepositoryFactoryBeanSupport<?, ?, ?>) bean).addRepositoryFactoryCustomizer(factory -> factory.addRepositoryProxyPostProcessor(
+						(proxyFactory, repositoryInformation) -> {
+							ShardingRepositoryInterceptor.checkRouted(repositoryInformation.getRepositoryInterface());
+							// Behind the coalescing interceptor when it was added first, so that a coalesced read is only routed once
+							Advisor[] advisors = proxyFactory.getAdvisors();
+							proxyFactory.addAdvice(advisors.length > 0 && advisors[0].getAdvice() instanceof CoalescingRepositoryInterceptor ? 1 : 0, interceptor.getObject());
+						}
+					));
+				}
+				return bean;
+			}
+		};
+	}
+
+	/**
+	 * Refuse to start while shard 0 holds users stored before it was sharded, as their ids do not carry the shard and their emails are not in the {@link com.malcolmbaatjies.user.repositories.sharding.EmailDirectory EmailDirectory}, so they could neither be found by id nor kept unique.
+	 * <br><br>
+	 * Such users are found as those whose id does not carry shard 0 or whose email is not claimed for shard 0, and the check stops at the first one rather than counting them, as it runs at every startup. They must be moved before sharding is turned on, for example by exporting them and creating them again through the sharded application.
+	 *
+	 * @param primary Shard 0.
+	 * @param shardRoutingDataSource The shards.
+	 * @return The check, run once every bean is created and the schema exists.
+	 */
+	@Bean
+	public SmartInitializingSingleton unshardedUsersCheck(@Qualifier("primaryDataSource") DataSource primary, ShardRoutingDataSource shardRoutingDataSource)
+	{
+		return () -> {
+			List<Long> unsharded = new JdbcTemplate(primary).queryForList("SELECT u.id FROM users u WHERE MOD(u.id, ?) <> 0 OR (u.email IS NOT NULL AND NOT EXISTS (SELECT 1 FROM " + EmailDirectory.TABLE + " e WHERE e.email = u.email AND e.shard = 0)) LIMIT 1",
+				Long.class, shardRoutingDataSource.getShardCount());
+			if (!unsharded.isEmpty())
+			{
+				throw new IllegalStateException("Users on shard 0, such as " + unsharded.get(0) + ", were stored before it was sharded, and must be moved before sharding is turned on");
+			}
+		};
+	}
+
+	/**
+	 * Create or update the schema on the shards after shard 0, which Hibernate has already done for shard 0, when {@code spring.jpa.hibernate.ddl-auto} asks for it.
+	 *
+	 * @param entityManagerFactory The entity manager factory, whose settings the shards' schemas are built with.
+	 * @param shardRoutingDataSource The shards.
+	 * @param ddlAuto The {@code spring.jpa.hibernate.ddl-auto} setting.
+	 * @return The initializer, run once every bean is created.
+	 */
+	@Bean
+	public SmartInitializingSingleton shardSchemaInitializer(EntityManagerFactory entityManagerFactory, ShardRoutingDataSource shardRoutingDataSource, @Value("${spring.jpa.hibernate.ddl-auto:none}") String ddlAuto)
+	{
+		return () -> {
+			if (!Set.of("create", "create-drop", "update").contains(ddlAuto))
+			{
+				return;
+			}
+			Map<String, Object> settings = entityManagerFactory.unwrap(SessionFactoryImplementor.class).getProperties();
+			for (int shard = 1; shard < shardRoutingDataSource.getShardCount(); shard++)
+			{
+				Map<String, Object> shardSettings = new HashMap<>(settings);
+				shardSettings.remove(AvailableSettings.JPA_NON_JTA_DATASOURCE);
+				shardSettings.put(AvailableSettings.DATASOURCE, shardRoutingDataSource.getShard(shard));
+				StandardServiceRegistry registry = new StandardServiceRegistryBuilder().applySettings(shardSettings).build();
+				try
+				{
+					new SchemaUpdate().execute(EnumSet.of(TargetType.DATABASE), new MetadataSources(registry).addAnnotatedClass(User.class).buildMetadata());
+				}
+				finally
+				{
+					StandardServiceRegistryBuilder.destroy(registry);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Shut down the executor and close the shard connection pools.
+	 */
+	@Override
+	public void destroy()
+	{
+		if (executor != null)
+		{
+			executor.shutdownNow();
+		}
+		shardPools.forEach(HikariDataSource::close);
+	}
+}
@@ -0,0 +1,60 @@
+package com.malcolmbaatjies.user.configurations;
+
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+
+import java.time.Duration;
+
+/**
+ * SqlLoggingConfiguration
+ * <br><br>
+ * This class is used to log a sample of the SQL statements Hibernate runs, with their execution times and bind parameters, see {@link com.malcolmbaatjies.user.configurations.SampledSqlLogger SampledSqlLogger}. It replaces {@code spring.jpa.show-sql}, which writes every statement to stdout on the thread that runs it.
+ * <br><br>
+ * One in {@code users.logging.sql-sampling.rate} statements is logged, and every statement slower than {@code users.logging.sql-sampling.slow-threshold}. Entries are logged under {@code com.malcolmbaatjies.user.configurations.SampledSqlLogger}.
+ * <br><br>
+ * This class is annotated with Spring's {@link org.springframework.context.annotation.Configuration} and {@link org.springframework.boot.autoconfigure.condition.ConditionalOnProperty} to only define its beans when {@code users.logging.sql-sampling.enabled=true}, as in the {@code async-logging} profile.
+ * <br><br>
+ * This class is annotated with Spring's {@link org.springframework.context.annotation.Profile} as the reactive profile does not use JDBC.
+ */
+@Configuration
+@ConditionalOnProperty(name = "users.logging.sql-sampling.enabled", havingValue = "true")
+@Profile("!reactive")
+public class SqlLoggingConfiguration
+{
+	/**
+	 * Run the statements of the entity manager factory through a data source proxy that logs a sample of them.
+	 * <br><br>
+	 * The data source is wrapped where the entity manager factory uses it rather than as a bean, so that the data source bean keeps its type for the other post processors, such as the one that bounds it.
+	 * <br><br>
+	 * This method is static so that the post processor is registered before the entity manager factory is created.
+	 *
+	 * @param rate          One in this many statements is logged, or none when zero.
+	 * @param slowThreshold The execution time from which every statement is logged.
+	 * @return The bean post processor.
+	 */
+	@Bean
+	public static BeanPostProcessor sampledSqlLoggingPostProcessor(@Value("${users.logging.sql-sampling.rate:100}") int rate, @Value("${users.logging.sql-sampling.slow-threshold:PT0.2S}") Duration slowThreshold)
+	{
+		return new BeanPostProcessor()
+		{
+			@Override
+			public Object postProcessBeforeInitialization(Object bean, String beanName)
+			{
+				if (bean instanceof LocalContainerEntityManagerFactoryBean)
+				{
+					LocalContainerEntityManagerFactoryBean entityManagerFactoryBean = (LocalContainerEntityManagerFactoryBean) bean;
+					entityManagerFactoryBean.setDataSource(ProxyDataSourceBuilder.create("users", entityManagerFactoryBean.getDataSource())
+						.listener(new SampledSqlLogger(rate, slowThreshold))
+						.build());
+				}
+				return bean;
+			}
+		};
+	}
+}
@@ -0,0 +1,202 @@
+package com.malcolmbaatjies.user.configurations;
+
+import com.malcolmbaatjies.user.repositories.sharding.ShardRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * VirtualThreadConfiguration
+ * <br><br>
+ * This class is used to run request handling on virtual threads, one per request, instead of on Tomcat's pool of platform threads. A request blocked on the database then no longer holds a platform thread, so a slow database cannot exhaust the thread pool.
+ * <br><br>
+ * Without a thread pool there is nothing left limiting how many requests reach the database at once, so the application's data source is wrapped in a {@link com.malcolmbaatjies.user.configurations.BoundedDataSource} with one permit per connection of the pools behind it. When it routes to several pools, the primary and its read replicas or the shards, the permits are the sum of their sizes, so the cap is on the database connections of the whole application and each pool still queues the requests beyond its own size.
+ * <br><br>
+ * The mode is opt-in with {@code users.virtual-threads.enabled=true} and needs a Java 21 or later runtime. The executor is looked up at runtime so that the build itself does not require Java 21. Startup fails when the mode is enabled on a runtime without virtual threads.
+ * <br><br>
+ * This class is annotated with Lombok's {@link lombok.extern.log4j.Log4j2} to enable logging.
+ * <br><br>
+ * This class is annotated with Spring's {@link org.springframework.context.annotation.Configuration} and {@link org.springframework.boot.autoconfigure.condition.ConditionalOnProperty} to only define its beans when the mode is enabled, and with {@link org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication} as the reactive profile runs on Netty without blocking threads.
+ */
+@Configuration
+@ConditionalOnProperty(name = "users.virtual-threads.enabled", havingValue = "true")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@Log4j2
+public class VirtualThreadConfiguration
+{
+	/**
+	 * The name of the data source bean the application uses, whether it is the connection pool itself or routes to pools, see {@link com.malcolmbaatjies.user.configurations.ReplicaRoutingConfiguration ReplicaRoutingConfiguration} and {@link com.malcolmbaatjies.user.configurations.ShardingConfiguration ShardingConfiguration}.
+	 */
+	static final String DATA_SOURCE_BEAN = "dataSource";
+
+	/**
+	 * Run Tomcat's request handling on a new virtual thread per request.
+	 *
+	 * @return The Tomcat protocol handler customizer.
+	 */
+	@Bean
+	public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer()
+	{
+		ExecutorService executor = newVirtualThreadPerTaskExecutor();
+		log.info("Handling requests on virtual threads");
+		return protocolHandler -> protocolHandler.setExecutor(executor);
+	}
+
+	/**
+	 * Cap the connections checked out of the application's data source at the sum of the maximum pool sizes of the connection pools it is, or routes to.
+	 * <br><br>
+	 * Only the {@value #DATA_SOURCE_BEAN} bean is wrapped, so other data source beans, such as the pools a routing data source routes to, keep their type. The pool stays reachable through {@link javax.sql.DataSource#unwrap}.
+	 * <br><br>
+	 * The pools' configurations are validated first, since Hikari only fills in defaults such as the maximum pool size when its pool starts. Permits are waited for as long as the first pool, the primary or shard 0, waits for a connection.
+	 * <br><br>
+	 * This method is static so that the post processor is registered before the data source is created.
+	 *
+	 * @return The bean post processor.
+	 */
+	@Bean
+	public static BeanPostProcessor boundedDataSourcePostProcessor()
+	{
+		return new BeanPostProcessor()
+		{
+			@Override
+			public Object postProcessAfterInitialization(Object bean, String beanName)
+			{
+				if (!DATA_SOURCE_BEAN.equals(beanName) || !(bean instanceof DataSource))
+				{
+					return bean;
+				}
+				DataSource dataSource = (DataSource) bean;
+				List<HikariDataSource> pools = unwrapPools(dataSource);
+				if (pools.isEmpty())
+				{
+					log.warn("Data source {} is not backed by a Hikari connection pool, its connections are not capped", beanName);
+					return bean;
+				}
+				int maxConnections = 0;
+				for (HikariDataSource pool : pools)
+				{
+					pool.validate();
+					maxConnections += pool.getMaximumPoolSize();
+				}
+				log.info("Capping database connections at {} across {} pools", maxConnections, pools.size());
+				return new BoundedDataSource(dataSource, maxConnections, Duration.ofMillis(pools.get(0).getConnectionTimeout()));
+			}
+		};
+	}
+
+	/**
+	 * Get the Hikari connection pools a data source is, or routes to through a {@link com.malcolmbaatjies.user.repositories.sharding.ShardRoutingDataSource ShardRoutingDataSource} or a {@link com.malcolmbaatjies.user.configurations.ReplicaRoutingDataSource ReplicaRoutingDataSource}.
+	 *
+	 * @param dataSource The data source.
+	 * @return The connection pools, the primary or shard 0 first, or none when there are none.
+	 */
+	static List<HikariDataSource> unwrapPools(DataSource dataSource)
+	{
+		List<DataSource> targets = new ArrayList<>();
+		try
+		{
+			if (dataSource.isWrapperFor(ShardRoutingDataSource.class))
+			{
+				ShardRoutingDataSource shardRoutingDataSource = dataSource.unwrap(ShardRoutingDataSource.class);
+				for (int shard = 0; shard < shardRoutingDataSource.getShardCount(); shard++)
+				{
+					targets.add(shardRoutingDataSource.getShard(shard));
+				}
+			}
+			else if (dataSource.isWrapperFor(ReplicaRoutingDataSource.class))
+			{
+				targets.addAll(dataSource.unwrap(ReplicaRoutingDataSource.class).getTargetDataSources());
+			}
+			else
+			{
+				targets.add(dataSource);
+			}
+		}
+		catch (SQLException e)
+		{
+			targets.add(dataSource);
+		}
+
+		List<HikariDataSource> pools = new ArrayList<>(targets.size());
+		for (DataSource target : targets)
+		{
+			HikariDataSource pool = unwrapPool(target);
+			if (pool != null)
+			{
+				pools.add(pool);
+			}
+		}
+		return pools;
+	}
+
+	/**
+	 * Get the Hikari connection pool a data source is, or unwraps to.
+	 *
+	 * @param dataSource The data source.
+	 * @return The connection pool, or null when there is none.
+	 */
+	static HikariDataSource unwrapPool(DataSource dataSource)
+	{
+		try
+		{
+			return dataSource.isWrapperFor(HikariDataSource.class) ? dataSource.unwrap(HikariDataSource.class) : null;
+		}
+		catch (SQLException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Publish the connection permits of the {@link com.malcolmbaatjies.user.configurations.BoundedDataSource}.
+	 *
+	 * @param dataSource The data source.
+	 * @return The meter binder.
+	 */
+	@Bean
+	public MeterBinder boundedDataSourceMetrics(DataSource dataSource)
+	{
+		return registry -> {
+			try
+			{
+				dataSource.unwrap(BoundedDataSource.class).bindTo(registry);
+			}
+			catch (SQLException e)
+			{
+				log.warn("Data source is not bounded, connection permits are not published", e);
+			}
+		};
+	}
+
+	/**
+	 * Create an executor that starts a new virtual thread for each task.
+	 *
+	 * @return The executor.
+	 * @throws IllegalStateException Thrown when the runtime does not support virtual threads.
+	 */
+	static ExecutorService newVirtualThreadPerTaskExecutor()
+	{
+		try
+		{
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (ReflectiveOperationException e)
+		{
+			throw new IllegalStateException("users.virtual-threads.enabled requires Java 21 or later, running on " + Runtime.version(), e);
+		}
+	}
+}
@@ -0,0 +1,303 @@
+package com.malcolmbaatjies.user.controllers;
+
+import com.malcolmbaatjies.user.entities.exceptions.UserExistsException;
+import com.malcolmbaatjies.user.entities.exceptions.UserNotFoundException;
+import com.malcolmbaatjies.user.entities.exceptions.UserVersionMismatchException;
+import com.malcolmbaatjies.user.entities.models.User;
+import com.malcolmbaatjies.user.entities.requests.NewUserRequest;
+import com.malcolmbaatjies.user.entities.requests.UpdateUserRequest;
+import com.malcolmbaatjies.user.repositories.reactive.ReactiveUserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.validation.Valid;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * ReactiveUserController
+ * <br><br>
+ * This class is used to handle the user related requests without blocking, on the reactive stack. It serves the same {@code /users} endpoints with the same requests, responses and ETags as {@link com.malcolmbaatjies.user.controllers.UserController UserController}, through the {@link com.malcolmbaatjies.user.repositories.reactive.ReactiveUserRepository ReactiveUserRepository}.
+ * <br><br>
+ * Batch creation and sparse fieldsets are only served by {@link com.malcolmbaatjies.user.controllers.UserController UserController}.
+ * <br><br>
+ * This class is annotated with Spring's {@link org.springframework.web.bind.annotation.RestController} to indicate that it is used to handle requests and to return the response as JSON.
+ * <br><br>
+ * This class is annotated with Spring's {@link org.springframework.web.bind.annotation.RequestMapping} to specify the base URL for the controller.
+ * <br><br>
+ * This class is annotated with Spring's {@link org.springframework.context.annotation.Profile} to only serve requests when the reactive profile is active.
+ */
+@RestController
+@RequestMapping("/users")
+@Profile("reactive")
+public class ReactiveUserController
+{
+	/**
+	 * The number of users streamed from the database per request for more when exporting.
+	 */
+	static final int EXPORT_PREFETCH = 1000;
+
+	/**
+	 * The reactive user repository.
+	 */
+	private final ReactiveUserRepository userRepository;
+
+	/**
+	 * Constructor
+	 * <br><br>
+	 * This constructor is used to inject the {@link com.malcolmbaatjies.user.repositories.reactive.ReactiveUserRepository} into the ReactiveUserController.
+	 * <br><br>
+	 * @param userRepository The reactive user repository
+	 */
+	@Autowired
+	public ReactiveUserController(ReactiveUserRepository userRepository)
+	{
+		this.userRepository = userRepository;
+	}
+
+	/**
+	 * Get all users.
+	 * <br><br>
+	 * This method is used to get a page of users from the database, ordered by id and addressed by cursor, as in {@link com.malcolmbaatjies.user.controllers.UserController#getAllUsers UserController}. One more user than the page size is read to find out whether a next page exists.
+	 * <br><br>
+	 * @param after The id of the last user on the previous page. Defaults to 0 to start at the beginning.
+	 * @param limit The maximum number of users to return. Capped at {@link UserController#MAX_PAGE_SIZE}.
+	 * @return List of users
+	 */
+	@GetMapping("")
+	public Mono<ResponseEntity<List<User>>> getAllUsers(@RequestParam(defaultValue = "0") long after, @RequestParam(defaultValue = "" + UserController.DEFAULT_PAGE_SIZE) int limit)
+	{
+		int pageSize = Math.max(1, Math.min(limit, UserController.MAX_PAGE_SIZE));
+
+		return userRepository.findByIdGreaterThan(after, PageRequest.of(0, pageSize + 1, Sort.by("id")))
+			.collectList()
+			.map(users -> {
+				boolean hasNext = users.size() > pageSize;
+				List<User> page = hasNext ? users.subList(0, pageSize) : users;
+
+				ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.OK).eTag(UserETags.pageETag(page, hasNext, ""));
+				if (hasNext)
+				{
+					response.header(HttpHeaders.LINK, "</users?after=" + page.get(pageSize - 1).getId() + "&limit=" + pageSize + ">; rel=\"next\"");
+				}
+				return response.body(page);
+			});
+	}
+
+	/**
+	 * Export all users.
+	 * <br><br>
+	 * This method is used to stream every user in the database to the response as newline delimited JSON, ordered by id. Users are read from the database only as fast as the client consumes them, {@link #EXPORT_PREFETCH} at a time.
+	 * <br><br>
+	 * @return The users
+	 */
+	@GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+	public Flux<User> exportUsers()
+	{
+		return userRepository.findAllByOrderByIdAsc().limitRate(EXPORT_PREFETCH);
+	}
+
+	/**
+	 * Get a user by id.
+	 * <br><br>
+	 * The user is sent with its version as a strong ETag. A request with a matching {@code If-None-Match} header gets a {@code 304 Not Modified}.
+	 * <br><br>
+	 * @param id The user's id.
+	 * @return The user
+	 * @throws UserNotFoundException Signalled when the user is not found.
+	 */
+	@GetMapping("/{id}")
+	public Mono<ResponseEntity<User>> getUser(@PathVariable String id)
+	{
+		return userRepository.findById(Long.parseLong(id))
+			.switchIfEmpty(Mono.error(() -> new UserNotFoundException(id)))
+			.map(user -> ResponseEntity.status(HttpStatus.OK).eTag(String.valueOf(user.getVersion())).body(user));
+	}
+
+	/**
+	 * Create a user.
+	 * <br><br>
+	 * @param newUserRequest The new user details.
+	 * @return The created user
+	 * @throws UserExistsException Signalled when the user already exists.
+	 */
+	@PostMapping("")
+	public Mono<ResponseEntity<User>> createUser(@RequestBody @Valid NewUserRequest newUserRequest)
+	{
+		// Email uniqueness is enforced by the database so the insert is the only round trip
+		return userRepository.insert(
+				User.builder()
+					.firstName(newUserRequest.getFirstName())
+					.lastName(newUserRequest.getLastName())
+					.email(newUserRequest.getEmail())
+				.build()
+			)
+			.onErrorMap(DataIntegrityViolationException.class, e -> translateEmailConstraintViolation(e, newUserRequest.getEmail()))
+			.map(newUser -> ResponseEntity.status(HttpStatus.CREATED).header("Location", "/users/" + newUser.getId()).eTag(String.valueOf(newUser.getVersion())).body(newUser));
+	}
+
+	/**
+	 * Update a user.
+	 * <br><br>
+	 * When an {@code If-Match} header is given, the user is only updated if its version still matches the ETag. The update is also guarded by the version that was read, in the same update statement, so a concurrent change is reported instead of being overwritten.
+	 * <br><br>
+	 * @param id The user's id.
+	 * @param updateUserRequest The updated user details.
+	 * @param ifMatch The ETag the user must still have, or null to update any version.
+	 * @return The updated user
+	 * @throws UserNotFoundException Signalled when the user is not found.
+	 * @throws UserExistsException Signalled when the user already exists.
+	 * @throws UserVersionMismatchException Signalled when the user has changed since the given ETag, or concurrently.
+	 */
+	@PutMapping("/{id}")
+	public Mono<ResponseEntity<User>> updateUser(@PathVariable String id, @RequestBody @Valid UpdateUserRequest updateUserRequest, @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch)
+	{
+		Long expectedVersion = UserETags.parseIfMatch(id, ifMatch);
+
+		return userRepository.findById(Long.parseLong(id))
+			.switchIfEmpty(Mono.error(() -> new UserNotFoundException(id)))
+			.flatMap(existingUser -> {
+				if (expectedVersion != null && !expectedVersion.equals(existingUser.getVersion()))
+				{
+					return Mono.error(new UserVersionMismatchException(id));
+				}
+
+				User updatedUser = User.builder()
+					.id(existingUser.getId())
+					.firstName(Objects.requireNonNullElseGet(updateUserRequest.getFirstName(), existingUser::getFirstName))
+					.lastName(Objects.requireNonNullElseGet(updateUserRequest.getLastName(), existingUser::getLastName))
+					.email(Objects.requireNonNullElseGet(updateUserRequest.getEmail(), existingUser::getEmail))
+					.version(existingUser.getVersion() + 1)
+				.build();
+
+				return userRepository.updateFieldsById(updatedUser.getId(), updatedUser.getFirstName(), updatedUser.getLastName(), updatedUser.getEmail(), existingUser.getVersion())
+					.flatMap(updated -> updated == 0
+						? missingOrModified(id, existingUser.getVersion())
+						: Mono.just(updatedUser));
+			})
+			.onErrorMap(DataIntegrityViolationException.class, e -> translateEmailConstraintViolation(e, updateUserRequest.getEmail()))
+			.map(updatedUser -> ResponseEntity.status(HttpStatus.OK).eTag(String.valueOf(updatedUser.getVersion())).body(updatedUser));
+	}
+
+	/**
+	 * Patch a user.
+	 * <br><br>
+	 * This method is used to update only the given fields of a user in the database with a single update statement, following JSON merge patch semantics, as in {@link com.malcolmbaatjies.user.controllers.UserController#patchUser UserController}.
+	 * <br><br>
+	 * @param id The user's id.
+	 * @param updateUserRequest The user details to change.
+	 * @param ifMatch The ETag the user must still have, or null to update any version.
+	 * @return No content
+	 * @throws UserNotFoundException Signalled when the user is not found.
+	 * @throws UserExistsException Signalled when the email belongs to another user.
+	 * @throws UserVersionMismatchException Signalled when the user has changed since the given ETag.
+	 */
+	@PatchMapping(value = "/{id}", consumes = {"application/merge-patch+json", MediaType.APPLICATION_JSON_VALUE})
+	public Mono<ResponseEntity<Void>> patchUser(@PathVariable String id, @RequestBody @Valid UpdateUserRequest updateUserRequest, @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch)
+	{
+		long userId = Long.parseLong(id);
+		Long expectedVersion = UserETags.parseIfMatch(id, ifMatch);
+
+		if (updateUserRequest.getFirstName() == null && updateUserRequest.getLastName() == null && updateUserRequest.getEmail() == null)
+		{
+			return userRepository.findById(userId)
+				.switchIfEmpty(Mono.error(() -> new UserNotFoundException(id)))
+				.flatMap(existingUser -> {
+					if (expectedVersion != null && !expectedVersion.equals(existingUser.getVersion()))
+					{
+						return Mono.error(new UserVersionMismatchException(id));
+					}
+					return Mono.just(ResponseEntity.noContent().eTag(String.valueOf(existingUser.getVersion())).build());
+				});
+		}
+
+		return userRepository.updateFieldsById(userId, updateUserRequest.getFirstName(), updateUserRequest.getLastName(), updateUserRequest.getEmail(), expectedVersion)
+			.onErrorMap(DataIntegrityViolationException.class, e -> translateEmailConstraintViolation(e, updateUserRequest.getEmail()))
+			.flatMap(updated -> {
+				if (updated == 0)
+				{
+					return missingOrModified(id, expectedVersion);
+				}
+				if (expectedVersion != null)
+				{
+					return Mono.just(ResponseEntity.noContent().eTag(String.valueOf(expectedVersion + 1)).build());
+				}
+				return Mono.just(ResponseEntity.noContent().build());
+			});
+	}
+
+	/**
+	 * Delete a user.
+	 * <br><br>
+	 * This method is used to delete a user from the database with a single delete statement. The number of rows deleted is used to tell whether the user exists.
+	 * <br><br>
+	 * @param id The user's id.
+	 * @param ifMatch The ETag the user must still have, or null to delete any version.
+	 * @return No content
+	 * @throws UserNotFoundException Signalled when the user is not found.
+	 * @throws UserVersionMismatchException Signalled when the user has changed since the given ETag.
+	 */
+	@DeleteMapping("/{id}")
+	public Mono<ResponseEntity<Void>> deleteUser(@PathVariable String id, @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch)
+	{
+		long userId = Long.parseLong(id);
+		Long expectedVersion = UserETags.parseIfMatch(id, ifMatch);
+
+		Mono<Integer> deleted = expectedVersion == null
+			? userRepository.deleteUserById(userId)
+			: userRepository.deleteUserByIdAndVersion(userId, expectedVersion);
+
+		return deleted.flatMap(count -> count == 0
+			? missingOrModified(id, expectedVersion)
+			: Mono.just(ResponseEntity.noContent().build()));
+	}
+
+	/**
+	 * Explain why a conditional write matched no rows.
+	 * <br><br>
+	 * Without an expected version the user must be missing. With one, the user is looked up to tell a missing user from a changed one.
+	 * <br><br>
+	 * @param id The user's id.
+	 * @param expectedVersion The version the write expected, or null when it expected any version.
+	 * @param <T> The type of response.
+	 * @return The error to signal
+	 */
+	private <T> Mono<T> missingOrModified(String id, Long expectedVersion)
+	{
+		if (expectedVersion == null)
+		{
+			return Mono.error(new UserNotFoundException(id));
+		}
+		return userRepository.existsById(Long.parseLong(id))
+			.flatMap(exists -> Mono.error(exists ? new UserVersionMismatchException(id) : new UserNotFoundException(id)));
+	}
+
+	/**
+	 * Translate a data integrity violation on save.
+	 * <br><br>
+	 * R2DBC drivers do not expose the name of the violated constraint, so the violation is recognised by the constraint name in the database's message.
+	 * <br><br>
+	 * @param e The exception that was signalled on save.
+	 * @param email The email that was being saved.
+	 * @return The exception to signal
+	 */
+	private static Throwable translateEmailConstraintViolation(DataIntegrityViolationException e, String email)
+	{
+		String message = e.getMostSpecificCause().getMessage();
+		if (message != null && message.toLowerCase().contains(User.EMAIL_CONSTRAINT))
+		{
+			return new UserExistsException(email);
+		}
+		return e;
+	}
+}
@@ -1,20 +1,56 @@
 package com.malcolmbaatjies.user.controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.malcolmbaatjies.user.entities.exceptions.BatchTooLargeException;
+import com.malcolmbaatjies.user.entities.exceptions.CreateQueueFullException;
+import com.malcolmbaatjies.user.entities.exceptions.InvalidFieldsException;
+import com.malcolmbaatjies.user.entities.exceptions.PendingUserNotFoundException;
+import com.malcolmbaatjies.user.entities.exceptions.SearchIndexNotReadyException;
 import com.malcolmbaatjies.user.entities.exceptions.UserExistsException;
 import com.malcolmbaatjies.user.entities.exceptions.UserNotFoundException;
+import com.malcolmbaatjies.user.entities.exceptions.UserVersionMismatchException;
 import com.malcolmbaatjies.user.entities.models.User;
 import com.malcolmbaatjies.user.entities.requests.NewUserRequest;
 import com.malcolmbaatjies.user.entities.requests.UpdateUserRequest;
+import com.malcolmbaatjies.user.entities.responses.BatchUserResponse;
+import com.malcolmbaatjies.user.entities.responses.PendingUserResponse;
+import com.malcolmbaatjies.user.entities.responses.validation.ValidationErrorResponse;
+import com.malcolmbaatjies.user.indexes.EmailBloomFilter;
+import com.malcolmbaatjies.user.indexes.UserSearchIndex;
+import com.malcolmbaatjies.user.queues.UserCreateQueue;
 import com.malcolmbaatjies.user.repositories.UserRepository;
 import lombok.extern.log4j.Log4j2;
+import org.hibernate.exception.ConstraintViolationException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.lang.Nullable;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
+import javax.persistence.EntityManager;
+import javax.servlet.http.HttpServletResponse;
+import javax.validation.ConstraintViolation;
 import javax.validation.Valid;
-import java.util.List;
-import java.util.Objects;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * UserController
@@ -26,41 +62,210 @@ import java.util.Objects;
  * This class is annotated with Spring's {@link org.springframework.web.bind.annotation.RestController} to indicate that it is used to handle requests and to return the response as JSON.
  * <br><br>
  * This class is annotated with Spring's {@link org.springframework.web.bind.annotation.RequestMapping} to specify the base URL for the controller.
+ * <br><br>
+ * This class is annotated with Spring's {@link org.springframework.context.annotation.Profile} to stand down when the reactive profile is active, where {@link com.malcolmbaatjies.user.controllers.ReactiveUserController ReactiveUserController} serves the same requests.
  */
 @RestController
 @RequestMapping("/users")
+@Profile("!reactive")
 @Log4j2
 public class UserController
 {
+	/**
+	 * The number of users returned per page when no limit is requested.
+	 */
+	static final int DEFAULT_PAGE_SIZE = 50;
+
+	/**
+	 * The maximum number of users returned per page. Requested limits above this are capped.
+	 */
+	static final int MAX_PAGE_SIZE = 500;
+
+	/**
+	 * The maximum number of users that can be created in a single batch request.
+	 */
+	static final int MAX_BATCH_SIZE = 1000;
+
+	/**
+	 * The number of users returned by a search when no limit is requested.
+	 */
+	static final int DEFAULT_SEARCH_LIMIT = 10;
+
+	/**
+	 * The maximum number of users returned by a search. Requested limits above this are capped.
+	 */
+	static final int MAX_SEARCH_LIMIT = 50;
+
 	/**
 	 * The user repository.
 	 */
 	private final UserRepository userRepository;
 
+	/**
+	 * The entity manager, used to detach streamed users from the persistence context.
+	 */
+	private final EntityManager entityManager;
+
+	/**
+	 * The object mapper, used to write streamed users to the response.
+	 */
+	private final ObjectMapper objectMapper;
+
+	/**
+	 * The validator, used to validate the individual items of batch requests.
+	 */
+	private final Validator validator;
+
+	/**
+	 * The email Bloom filter, used to rule out emails that are definitely not taken without querying the database.
+	 */
+	private final EmailBloomFilter emailBloomFilter;
+
+	/**
+	 * The user search index, used to search users by partial name or email without scanning the users table.
+	 */
+	private final UserSearchIndex userSearchIndex;
+
+	/**
+	 * The create queue, used to create users asynchronously, or null when the asynchronous create mode is off.
+	 */
+	private final UserCreateQueue userCreateQueue;
+
 	/**
 	 * Constructor
 	 * <br><br>
-	 * This constructor is used to inject the {@link com.malcolmbaatjies.user.repositories.UserRepository} into the UserController.
+	 * This constructor is used to inject the {@link com.malcolmbaatjies.user.repositories.UserRepository}, {@link javax.persistence.EntityManager}, {@link com.fasterxml.jackson.databind.ObjectMapper}, {@link javax.validation.Validator}, {@link com.malcolmbaatjies.user.indexes.EmailBloomFilter}, {@link com.malcolmbaatjies.user.indexes.UserSearchIndex} and, when the asynchronous create mode is on, {@link com.malcolmbaatjies.user.queues.UserCreateQueue} into the UserController.
 	 * <br><br>
 	 * @param userRepository The user repository
+	 * @param entityManager The entity manager
+	 * @param objectMapper The object mapper
+	 * @param validator The validator
+	 * @param emailBloomFilter The email Bloom filter
+	 * @param userSearchIndex The user search index
+	 * @param userCreateQueue The create queue, or null when the asynchronous create mode is off
 	 */
 	@Autowired
-	public UserController(UserRepository userRepository)
+	public UserController(UserRepository userRepository, EntityManager entityManager, ObjectMapper objectMapper, Validator validator, EmailBloomFilter emailBloomFilter, UserSearchIndex userSearchIndex, @Nullable UserCreateQueue userCreateQueue)
 	{
 		this.userRepository = userRepository;
+		this.entityManager = entityManager;
+		this.objectMapper = objectMapper;
+		this.validator = validator;
+		this.emailBloomFilter = emailBloomFilter;
+		this.userSearchIndex = userSearchIndex;
+		this.userCreateQueue = userCreateQueue;
 	}
 
 	/**
 	 * Get all users.
 	 * <br><br>
-	 * This method is used to get all the users from the database.
+	 * This method is used to get a page of users from the database, ordered by id. Pages are addressed by cursor rather than by offset: the cursor is the id of the last user on the previous page, so every page costs the same no matter how deep into the table it is.
+	 * <br><br>
+	 * When there are more users after the returned page, a {@code Link} header with {@code rel="next"} is included pointing to the next page.
+	 * <br><br>
+	 * The page is sent with a strong ETag derived from the ids and versions of its users, the selected fields and the encoding it is sent in. A request with a matching {@code If-None-Match} header gets a {@code 304 Not Modified} without the page being serialized.
 	 * <br><br>
+	 * @param after The id of the last user on the previous page. Defaults to 0 to start at the beginning.
+	 * @param limit The maximum number of users to return. Capped at {@link #MAX_PAGE_SIZE}.
+	 * @param fields The fields to return for each user, or null for all fields. Only these columns are read from the database. The id is always returned.
+	 * @param accept The Accept header, which picks the encoding the {@code ETag} is for.
 	 * @return List of users
+	 * @throws InvalidFieldsException Thrown when a field does not exist.
 	 */
 	@GetMapping("")
-	public List<User> getAllUsers()
+	public ResponseEntity<List<User>> getAllUsers(@RequestParam(defaultValue = "0") long after, @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit, @RequestParam(required = false) List<String> fields, @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept)
+	{
+		int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+		PageRequest pageRequest = PageRequest.of(0, pageSize, Sort.by("id"));
+
+		Set<String> selectedFields = fields == null ? null : validateFields(fields);
+		Slice<User> page = selectedFields == null
+			? userRepository.findByIdGreaterThan(after, pageRequest)
+			: userRepository.findFieldsByIdGreaterThan(after, pageRequest, selectedFields);
+
+		ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.OK).eTag(UserETags.pageETag(page.getContent(), page.hasNext(), UserETags.representation(selectedFields, accept)));
+		if (page.hasNext())
+		{
+			Long nextCursor = page.getContent().get(page.getNumberOfElements() - 1).getId();
+			String selection = fields == null ? "" : "&fields=" + String.join(",", fields);
+			response.header(HttpHeaders.LINK, "</users?after=" + nextCursor + "&limit=" + pageSize + selection + ">; rel=\"next\"");
+		}
+
+		return response.body(page.getContent());
+	}
+
+	/**
+	 * Export all users.
+	 * <br><br>
+	 * This method is used to stream every user in the database to the response as newline delimited JSON, ordered by id. Each user is written as soon as it is read from the database cursor and is then detached from the persistence context, so memory use stays flat regardless of the size of the table.
+	 * <br><br>
+	 * @param response The response to write the users to.
+	 * @throws IOException Thrown when the response cannot be written to.
+	 */
+	@GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+	@Transactional(readOnly = true)
+	public void exportUsers(HttpServletResponse response) throws IOException
+	{
+		response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+		OutputStream out = response.getOutputStream();
+		ObjectWriter userWriter = objectMapper.writerFor(User.class)
+			.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+			.withRootValueSeparator("\n");
+
+		try (Stream<User> users = userRepository.streamAllByOrderByIdAsc(); SequenceWriter writer = userWriter.writeValues(out))
+		{
+			Iterator<User> iterator = users.iterator();
+			if (!iterator.hasNext())
+			{
+				return;
+			}
+
+			while (iterator.hasNext())
+			{
+				User user = iterator.next();
+				writer.write(user);
+				entityManager.detach(user);
+			}
+
+			// The separator is only written between users, so terminate the last line explicitly
+			writer.flush();
+			out.write('\n');
+		}
+	}
+
+	/**
+	 * Search users.
+	 * <br><br>
+	 * This method is used to find users whose first name, last name or email contain every term of a query, for autocomplete. Terms shorter than three characters only match the start of a field. The users are found in the in-memory {@link com.malcolmbaatjies.user.indexes.UserSearchIndex UserSearchIndex} and only the best matches are read from the database, by id.
+	 * <br><br>
+	 * The users are ranked by how well they match: a term equal to a whole field ranks above a term starting a field, which ranks above a term inside a field.
+	 * <br><br>
+	 * @param q The terms to search for, separated by whitespace.
+	 * @param limit The maximum number of users to return. Capped at {@link #MAX_SEARCH_LIMIT}.
+	 * @return The best matching users, best first
+	 * @throws SearchIndexNotReadyException Thrown when the search index has not been built yet.
+	 */
+	@GetMapping("/search")
+	public ResponseEntity<List<User>> searchUsers(@RequestParam String q, @RequestParam(defaultValue = "" + DEFAULT_SEARCH_LIMIT) int limit)
 	{
-		return userRepository.findAll();
+		List<Long> ids = userSearchIndex.search(q, Math.max(1, Math.min(limit, MAX_SEARCH_LIMIT)));
+		if (ids.isEmpty())
+		{
+			return ResponseEntity.status(HttpStatus.OK).body(List.of());
+		}
+
+		// Users deleted since they were found are left out
+		Map<Long, User> usersById = userRepository.findAllById(ids).stream().collect(Collectors.toMap(User::getId, Function.identity()));
+		List<User> users = new ArrayList<>(ids.size());
+		for (Long id : ids)
+		{
+			User user = usersById.get(id);
+			if (user != null)
+			{
+				users.add(user);
+			}
+		}
+		return ResponseEntity.status(HttpStatus.OK).body(users);
 	}
 
 	/**
@@ -68,16 +273,29 @@ public class UserController
 	 * <br><br>
 	 * This method is used to get a user from the database by id.
 	 * <br><br>
+	 * The user is sent with its version as a strong ETag, suffixed with the selected fields and with the encoding when it is not JSON. A request with a matching {@code If-None-Match} header gets a {@code 304 Not Modified} without the user being serialized, and without a database query when the user is cached.
+	 * <br><br>
 	 * @param id The user's id.
+	 * @param fields The fields to return, or null for all fields. Only these columns are read from the database, bypassing the user cache. The id is always returned.
+	 * @param accept The Accept header, which picks the encoding the {@code ETag} is for.
 	 * @return The user
 	 * @throws UserNotFoundException Thrown when the user is not found.
+	 * @throws InvalidFieldsException Thrown when a field does not exist.
 	 */
 	@GetMapping("/{id}")
-	public User getUser(@PathVariable String id)
+	public ResponseEntity<User> getUser(@PathVariable String id, @RequestParam(required = false) List<String> fields, @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept)
 	{
-		return userRepository.findById(Long.parseLong(id)).orElseThrow(
+		Set<String> selectedFields = fields == null ? null : validateFields(fields);
+		Optional<User> found = selectedFields == null
+			? userRepository.findById(Long.parseLong(id))
+			: userRepository.findFieldsById(Long.parseLong(id), selectedFields);
+
+		User user = found.orElseThrow(
 				() -> new UserNotFoundException(id)
 		);
+
+		// Spring answers a matching If-None-Match with 304 Not Modified before the body is written
+		return ResponseEntity.status(HttpStatus.OK).eTag(UserETags.userETag(user, UserETags.representation(selectedFields, accept))).body(user);
 	}
 
 	/**
@@ -86,27 +304,200 @@ public class UserController
 	 * This method is used to create a user in the database.
 	 * <br><br>
 	 * @param newUserRequest The new user details.
+	 * @param accept The Accept header, which picks the encoding the {@code ETag} is for.
 	 * @return The created user
 	 * @throws UserExistsException Thrown when the user already exists.
 	 */
 	@PostMapping("")
-	public ResponseEntity<User> createUser(@RequestBody @Valid NewUserRequest newUserRequest)
+	public ResponseEntity<User> createUser(@RequestBody @Valid NewUserRequest newUserRequest, @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept)
 	{
 		// Business Logic added in the Controller based on the requirements limiting the use of a service layer to keep the controller as 'Skinny' as possible. "Use constructor injection to inject the UserRepository into the UserController."
-		if(userRepository.existsUserByEmail(newUserRequest.getEmail()))
+		// Email uniqueness is enforced by the database so the insert is the only round trip and concurrent creates cannot both succeed
+		User newUser;
+		try
+		{
+			newUser = userRepository.save(
+				User.builder()
+					.firstName(newUserRequest.getFirstName())
+					.lastName(newUserRequest.getLastName())
+					.email(newUserRequest.getEmail())
+				.build()
+			);
+		}
+		catch (DataIntegrityViolationException e)
+		{
+			throw translateEmailConstraintViolation(e, newUserRequest.getEmail());
+		}
+		emailBloomFilter.put(newUser.getEmail());
+		userSearchIndex.put(newUser);
+
+		return ResponseEntity.status(HttpStatus.CREATED).header("Location", "/users/" + newUser.getId()).eTag(UserETags.userETag(newUser, UserETags.representation(null, accept))).body(newUser);
+	}
+
+	/**
+	 * Create a user asynchronously.
+	 * <br><br>
+	 * This method is used to queue a user to be created when the request asks for an asynchronous response with a {@code Prefer: respond-async} header. The user is validated, written to the journal of the {@link com.malcolmbaatjies.user.queues.UserCreateQueue UserCreateQueue} and a {@code 202 Accepted} is returned at once, with a {@code Location} header pointing to the user's status. Whether the email is taken is only known once the user is written to the database.
+	 * <br><br>
+	 * When the asynchronous create mode is off the preference is ignored and the user is created as by {@link #createUser(NewUserRequest, String)}.
+	 * <br><br>
+	 * @param newUserRequest The new user details.
+	 * @param accept The Accept header, which picks the encoding the {@code ETag} of a created user is for.
+	 * @return The status of the queued user, or the created user
+	 * @throws CreateQueueFullException Thrown when too many users are waiting to be created.
+	 * @throws UserExistsException Thrown when the user already exists and the asynchronous create mode is off.
+	 */
+	@PostMapping(value = "", headers = "Prefer=respond-async")
+	public ResponseEntity<?> createUserAsync(@RequestBody @Valid NewUserRequest newUserRequest, @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept)
+	{
+		if (userCreateQueue == null)
 		{
-			throw new UserExistsException(newUserRequest.getEmail());
+			return createUser(newUserRequest, accept);
 		}
 
-		User newUser = userRepository.save(
-			User.builder()
-				.firstName(newUserRequest.getFirstName())
-				.lastName(newUserRequest.getLastName())
-				.email(newUserRequest.getEmail())
-			.build()
+		String ticket = userCreateQueue.enqueue(newUserRequest);
+		return ResponseEntity.status(HttpStatus.ACCEPTED)
+			.location(URI.create("/users/pending/" + ticket))
+			.header("Preference-Applied", "respond-async")
+			.body(userCreateQueue.getStatus(ticket).orElseThrow());
+	}
+
+	/**
+	 * Get the status of a user created asynchronously.
+	 * <br><br>
+	 * This method is used to follow a user queued by {@link #createUserAsync(NewUserRequest, String)}. While the user is queued, and when it was refused, the status is returned. Once it is created a {@code 303 See Other} is returned, with a {@code Location} header pointing to the user and the user in the body.
+	 * <br><br>
+	 * @param ticket The ticket the user was queued under.
+	 * @return The status of the queued user
+	 * @throws PendingUserNotFoundException Thrown when the ticket is unknown or its status has expired.
+	 */
+	@GetMapping("/pending/{ticket}")
+	public ResponseEntity<PendingUserResponse> getPendingUser(@PathVariable String ticket)
+	{
+		PendingUserResponse pendingUser = Optional.ofNullable(userCreateQueue).flatMap(queue -> queue.getStatus(ticket)).orElseThrow(
+			() -> new PendingUserNotFoundException(ticket)
 		);
 
-		return ResponseEntity.status(HttpStatus.CREATED).header("Location", "/users/" + newUser.getId()).body(newUser);
+		if (pendingUser.getUser() != null)
+		{
+			return ResponseEntity.status(HttpStatus.SEE_OTHER).location(URI.create("/users/" + pendingUser.getUser().getId())).body(pendingUser);
+		}
+		return ResponseEntity.status(HttpStatus.OK).body(pendingUser);
+	}
+
+	/**
+	 * Create a batch of users.
+	 * <br><br>
+	 * This method is used to create many users in the database at once. Every item is validated on its own, all emails are checked for duplicates in a single query and the new users are inserted together using JDBC batching.
+	 * <br><br>
+	 * A result is returned for every item, in the same order as the request, holding either the created user or the reason the item was rejected. Items that reuse an email from earlier in the same batch, ignoring case as the unique constraint does, are rejected as duplicates. When the batch insert still violates the constraint, such as when an email is taken concurrently, the users are saved one by one and those whose email is taken are rejected.
+	 * <br><br>
+	 * @param newUserRequests The new user details.
+	 * @return The result for each item
+	 * @throws BatchTooLargeException Thrown when the batch holds more than {@link #MAX_BATCH_SIZE} items.
+	 */
+	@PostMapping("/batch")
+	public ResponseEntity<List<BatchUserResponse>> createUsers(@RequestBody List<NewUserRequest> newUserRequests)
+	{
+		if (newUserRequests.size() > MAX_BATCH_SIZE)
+		{
+			throw new BatchTooLargeException(newUserRequests.size(), MAX_BATCH_SIZE);
+		}
+
+		BatchUserResponse[] results = new BatchUserResponse[newUserRequests.size()];
+		Set<String> emails = new HashSet<>();
+
+		for (int i = 0; i < newUserRequests.size(); i++)
+		{
+			Set<ConstraintViolation<NewUserRequest>> violations = validator.validate(newUserRequests.get(i));
+			if (violations.isEmpty())
+			{
+				emails.add(User.normalizeEmail(newUserRequests.get(i).getEmail()));
+				continue;
+			}
+
+			ValidationErrorResponse validationErrors = ValidationErrorResponse.builder().build();
+			violations.forEach(violation -> validationErrors.addError(violation.getMessage()));
+			validationErrors.sort();
+
+			results[i] = BatchUserResponse.builder()
+				.status(HttpStatus.BAD_REQUEST.toString())
+				.message("Validation Failed.")
+				.errors(validationErrors.getErrors())
+				.build();
+		}
+
+		// Only emails the Bloom filter cannot rule out need to be checked against the database
+		Set<String> possibleTakenEmails = new HashSet<>();
+		for (String email : emails)
+		{
+			if (emailBloomFilter.mightContain(email))
+			{
+				possibleTakenEmails.add(email);
+			}
+		}
+
+		Set<String> takenEmails = new HashSet<>();
+		if (!possibleTakenEmails.isEmpty())
+		{
+			userRepository.findExistingEmails(possibleTakenEmails).forEach(email -> takenEmails.add(User.normalizeEmail(email)));
+		}
+		emailBloomFilter.recordFalsePositives(possibleTakenEmails.size() - takenEmails.size());
+		List<Integer> newUserIndexes = new ArrayList<>();
+		List<User> newUsers = new ArrayList<>();
+
+		for (int i = 0; i < newUserRequests.size(); i++)
+		{
+			if (results[i] != null)
+			{
+				continue;
+			}
+
+			NewUserRequest newUserRequest = newUserRequests.get(i);
+			if (!takenEmails.add(User.normalizeEmail(newUserRequest.getEmail())))
+			{
+				results[i] = emailTakenResult(newUserRequest.getEmail());
+				continue;
+			}
+
+			newUserIndexes.add(i);
+			newUsers.add(
+				User.builder()
+					.firstName(newUserRequest.getFirstName())
+					.lastName(newUserRequest.getLastName())
+					.email(newUserRequest.getEmail())
+				.build()
+			);
+		}
+
+		if (!newUsers.isEmpty())
+		{
+			try
+			{
+				List<User> savedUsers = userRepository.saveAll(newUsers);
+				for (int i = 0; i < savedUsers.size(); i++)
+				{
+					results[newUserIndexes.get(i)] = createdResult(savedUsers.get(i));
+				}
+			}
+			catch (DataIntegrityViolationException e)
+			{
+				// An email was taken concurrently, or differs from another only in case, which the unique constraint ignores, so save the users one by one to find which
+				for (int i = 0; i < newUsers.size(); i++)
+				{
+					try
+					{
+						results[newUserIndexes.get(i)] = createdResult(userRepository.save(newUsers.get(i)));
+					}
+					catch (DataIntegrityViolationException duplicate)
+					{
+						results[newUserIndexes.get(i)] = emailTakenResult(newUsers.get(i).getEmail());
+					}
+				}
+			}
+		}
+
+		return ResponseEntity.status(HttpStatus.MULTI_STATUS).body(Arrays.asList(results));
 	}
 
 	/**
@@ -114,48 +505,240 @@ public class UserController
 	 * <br><br>
 	 * This method is used to update a user in the database.
 	 * <br><br>
+	 * When an {@code If-Match} header is given, the user is only updated if its version still matches the ETag. The update is also guarded by the user's version in the database, so a concurrent change is reported instead of being overwritten.
+	 * <br><br>
+	 * The user is read from the database rather than the users cache, so that a cached copy that is behind the database does not fail every update with a version mismatch until it expires.
+	 * <br><br>
 	 * @param id The user's id.
 	 * @param updateUserRequest The updated user details.
+	 * @param ifMatch The ETag the user must still have, or null to update any version.
+	 * @param accept The Accept header, which picks the encoding the {@code ETag} is for.
 	 * @return The updated user
 	 * @throws UserNotFoundException Thrown when the user is not found.
 	 * @throws UserExistsException Thrown when the user already exists.
+	 * @throws UserVersionMismatchException Thrown when the user has changed since the given ETag, or concurrently.
 	 */
 	@PutMapping("/{id}")
 	@ResponseStatus(HttpStatus.OK)
-	public ResponseEntity<User> updateUser(@PathVariable String id, @RequestBody @Valid UpdateUserRequest updateUserRequest)
+	public ResponseEntity<User> updateUser(@PathVariable String id, @RequestBody @Valid UpdateUserRequest updateUserRequest, @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch, @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept)
 	{
-		User existingUser = userRepository.findById(Long.parseLong(id)).orElseThrow(
+		Long expectedVersion = UserETags.parseIfMatch(id, ifMatch);
+
+		User existingUser = userRepository.findCurrentById(Long.parseLong(id)).orElseThrow(
 			() -> new UserNotFoundException(id)
 		);
 
-		// Check if the email is being updated and if it exists in the database
-		if (updateUserRequest.getEmail() != null && !updateUserRequest.getEmail().equals(existingUser.getEmail()) && userRepository.existsUserByEmail(updateUserRequest.getEmail()))
+		if (expectedVersion != null && !expectedVersion.equals(existingUser.getVersion()))
 		{
-			throw new UserExistsException(updateUserRequest.getEmail());
+			throw new UserVersionMismatchException(id);
 		}
 
-		User updatedUser = userRepository.save(
-			User.builder()
-				.id(Long.parseLong(id))
-				.firstName(Objects.requireNonNullElseGet(updateUserRequest.getFirstName(), existingUser::getFirstName))
-				.lastName(Objects.requireNonNullElseGet(updateUserRequest.getLastName(), existingUser::getLastName))
-				.email(Objects.requireNonNullElseGet(updateUserRequest.getEmail(), existingUser::getEmail))
-			.build()
-		);
+		User updatedUser;
+		try
+		{
+			updatedUser = userRepository.save(
+				User.builder()
+					.id(Long.parseLong(id))
+					.firstName(Objects.requireNonNullElseGet(updateUserRequest.getFirstName(), existingUser::getFirstName))
+					.lastName(Objects.requireNonNullElseGet(updateUserRequest.getLastName(), existingUser::getLastName))
+					.email(Objects.requireNonNullElseGet(updateUserRequest.getEmail(), existingUser::getEmail))
+					.version(existingUser.getVersion())
+				.build()
+			);
+		}
+		catch (DataIntegrityViolationException e)
+		{
+			throw translateEmailConstraintViolation(e, updateUserRequest.getEmail());
+		}
+		catch (OptimisticLockingFailureException e)
+		{
+			throw new UserVersionMismatchException(id);
+		}
+		emailBloomFilter.put(updatedUser.getEmail());
+		userSearchIndex.put(updatedUser);
 
-		return ResponseEntity.status(HttpStatus.OK).body(updatedUser);
+		return ResponseEntity.status(HttpStatus.OK).eTag(UserETags.userETag(updatedUser, UserETags.representation(null, accept))).body(updatedUser);
+	}
+
+	/**
+	 * Patch a user.
+	 * <br><br>
+	 * This method is used to update only the given fields of a user in the database, following JSON merge patch semantics: fields that are left out or null are left unchanged. The change is made with a single update statement, without loading the user first, and the number of rows updated is used to tell whether the user exists.
+	 * <br><br>
+	 * When an {@code If-Match} header is given, the update statement only matches the user at that version and the new ETag is returned. Only when no row is updated is the user looked up, to tell a missing user from a changed one.
+	 * <br><br>
+	 * @param id The user's id.
+	 * @param updateUserRequest The user details to change.
+	 * @param ifMatch The ETag the user must still have, or null to update any version.
+	 * @return No content
+	 * @throws UserNotFoundException Thrown when the user is not found.
+	 * @throws UserExistsException Thrown when the email belongs to another user.
+	 * @throws UserVersionMismatchException Thrown when the user has changed since the given ETag.
+	 */
+	@PatchMapping(value = "/{id}", consumes = {"application/merge-patch+json", MediaType.APPLICATION_JSON_VALUE})
+	public ResponseEntity<Void> patchUser(@PathVariable String id, @RequestBody @Valid UpdateUserRequest updateUserRequest, @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch)
+	{
+		long userId = Long.parseLong(id);
+		Long expectedVersion = UserETags.parseIfMatch(id, ifMatch);
+
+		if (updateUserRequest.getFirstName() == null && updateUserRequest.getLastName() == null && updateUserRequest.getEmail() == null)
+		{
+			User existingUser = userRepository.findById(userId).orElseThrow(
+				() -> new UserNotFoundException(id)
+			);
+			if (expectedVersion != null && !expectedVersion.equals(existingUser.getVersion()))
+			{
+				throw new UserVersionMismatchException(id);
+			}
+			return ResponseEntity.noContent().eTag(String.valueOf(existingUser.getVersion())).build();
+		}
+
+		int updated;
+		try
+		{
+			updated = userRepository.updateFieldsById(userId, updateUserRequest.getFirstName(), updateUserRequest.getLastName(), updateUserRequest.getEmail(), expectedVersion);
+		}
+		catch (DataIntegrityViolationException e)
+		{
+			throw translateEmailConstraintViolation(e, updateUserRequest.getEmail());
+		}
+
+		if (updated == 0)
+		{
+			throw missingOrModified(id, expectedVersion);
+		}
+
+		if (updateUserRequest.getEmail() != null)
+		{
+			emailBloomFilter.put(updateUserRequest.getEmail());
+		}
+		userSearchIndex.update(userId, updateUserRequest.getFirstName(), updateUserRequest.getLastName(), updateUserRequest.getEmail());
+
+		if (expectedVersion != null)
+		{
+			return ResponseEntity.noContent().eTag(String.valueOf(expectedVersion + 1)).build();
+		}
+		return ResponseEntity.noContent().build();
 	}
 
 	/**
 	 * Delete a user.
 	 * <br><br>
-	 * This method is used to delete a user from the database.
+	 * This method is used to delete a user from the database with a single delete statement. The number of rows deleted is used to tell whether the user exists.
+	 * <br><br>
+	 * When an {@code If-Match} header is given, the delete statement only matches the user at that version.
 	 * <br><br>
 	 * @param id The user's id.
+	 * @param ifMatch The ETag the user must still have, or null to delete any version.
+	 * @return No content
+	 * @throws UserNotFoundException Thrown when the user is not found.
+	 * @throws UserVersionMismatchException Thrown when the user has changed since the given ETag.
 	 */
 	@DeleteMapping("/{id}")
-	public void deleteUser(@PathVariable String id)
+	public ResponseEntity<Void> deleteUser(@PathVariable String id, @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch)
+	{
+		long userId = Long.parseLong(id);
+		Long expectedVersion = UserETags.parseIfMatch(id, ifMatch);
+
+		int deleted = expectedVersion == null
+			? userRepository.deleteUserById(userId)
+			: userRepository.deleteUserByIdAndVersion(userId, expectedVersion);
+
+		if (deleted == 0)
+		{
+			throw missingOrModified(id, expectedVersion);
+		}
+		userSearchIndex.remove(userId);
+
+		return ResponseEntity.noContent().build();
+	}
+
+	/**
+	 * Explain why a conditional write matched no rows.
+	 * <br><br>
+	 * Without an expected version the user must be missing. With one, the user is looked up to tell a missing user from a changed one.
+	 * <br><br>
+	 * @param id The user's id.
+	 * @param expectedVersion The version the write expected, or null when it expected any version.
+	 * @return The exception to throw
+	 */
+	private RuntimeException missingOrModified(String id, Long expectedVersion)
 	{
-		userRepository.deleteById(Long.parseLong(id));
+		if (expectedVersion != null && userRepository.existsById(Long.parseLong(id)))
+		{
+			return new UserVersionMismatchException(id);
+		}
+		return new UserNotFoundException(id);
+	}
+
+	/**
+	 * Validate the fields selected by a request.
+	 * <br><br>
+	 * @param fields The names of the selected fields.
+	 * @return The selected fields
+	 * @throws InvalidFieldsException Thrown when a field does not exist.
+	 */
+	private static Set<String> validateFields(List<String> fields)
+	{
+		Set<String> selectedFields = new HashSet<>(fields);
+		if (!User.FIELDS.containsAll(selectedFields))
+		{
+			selectedFields.removeAll(User.FIELDS);
+			throw new InvalidFieldsException(selectedFields, User.FIELDS);
+		}
+		return selectedFields;
+	}
+
+	/**
+	 * Build the batch result of a created user, and add the user to the email Bloom filter and the search index.
+	 * <br><br>
+	 * @param savedUser The created user.
+	 * @return The result
+	 */
+	private BatchUserResponse createdResult(User savedUser)
+	{
+		emailBloomFilter.put(savedUser.getEmail());
+		userSearchIndex.put(savedUser);
+		return BatchUserResponse.builder()
+			.status(HttpStatus.CREATED.toString())
+			.message("User created.")
+			.user(savedUser)
+			.build();
+	}
+
+	/**
+	 * Build the batch result of an item whose email is already taken.
+	 * <br><br>
+	 * @param email The item's email.
+	 * @return The result
+	 */
+	private static BatchUserResponse emailTakenResult(String email)
+	{
+		return BatchUserResponse.builder()
+			.status(HttpStatus.BAD_REQUEST.toString())
+			.message(new UserExistsException(email).getMessage())
+			.build();
+	}
+
+	/**
+	 * Translate a data integrity violation on save.
+	 * <br><br>
+	 * When the violation is of the unique constraint on email, a {@link com.malcolmbaatjies.user.entities.exceptions.UserExistsException UserExistsException} for the given email is returned, otherwise the original exception is returned unchanged.
+	 * <br><br>
+	 * @param e The exception that was thrown on save.
+	 * @param email The email that was being saved.
+	 * @return The exception to throw
+	 */
+	private static RuntimeException translateEmailConstraintViolation(DataIntegrityViolationException e, String email)
+	{
+		if (e.getCause() instanceof ConstraintViolationException)
+		{
+			String constraintName = ((ConstraintViolationException) e.getCause()).getConstraintName();
+			if (constraintName != null && constraintName.toLowerCase().contains(User.EMAIL_CONSTRAINT))
+			{
+				return new UserExistsException(email);
+			}
+		}
+		return e;
 	}
 }
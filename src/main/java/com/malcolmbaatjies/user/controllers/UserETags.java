@@ -0,0 +1,176 @@
+package com.malcolmbaatjies.user.controllers;
+
+import com.malcolmbaatjies.user.configurations.ProtobufJacksonHttpMessageConverter;
+import com.malcolmbaatjies.user.entities.exceptions.UserVersionMismatchException;
+import com.malcolmbaatjies.user.entities.models.User;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * UserETags
+ * <br><br>
+ * This class is used to build and parse the ETags sent for users, so that the servlet and reactive controllers send the same ETags.
+ * <br><br>
+ * A user's ETag is its version. A page's ETag is a digest of the ids and versions of its users.
+ * <br><br>
+ * Strong ETags must differ between representations, so the ETag also carries what sets the representation apart from the whole user as JSON: the selected fields, sorted, when only some fields are sent, and the encoding when users are sent as CBOR, Smile or Protobuf, see {@link com.malcolmbaatjies.user.configurations.ContentNegotiationConfiguration ContentNegotiationConfiguration}. For example, {@code "3-email.id+cbor"} is version 3 with only the id and email, as CBOR. An {@code If-Match} header matches on the version alone, whichever representation its ETag came from.
+ */
+final class UserETags
+{
+	/**
+	 * The ETag suffix of each encoding users are sent in, in the order Spring MVC prefers them.
+	 */
+	private static final Map<MediaType, String> ENCODINGS = new LinkedHashMap<>();
+
+	/**
+	 * The value of an ETag of a user: the version, then the selected fields and the encoding when there are any.
+	 */
+	private static final Pattern USER_ETAG = Pattern.compile("(\\d{1,18})(-[A-Za-z.]+)?(\\+[a-z]+)?");
+
+	static
+	{
+		ENCODINGS.put(MediaType.APPLICATION_JSON, "");
+		ENCODINGS.put(MediaType.APPLICATION_CBOR, "+cbor");
+		ENCODINGS.put(MediaType.parseMediaType("application/x-jackson-smile"), "+smile");
+		ENCODINGS.put(MediaType.parseMediaType(ProtobufJacksonHttpMessageConverter.MEDIA_TYPE), "+protobuf");
+	}
+
+	private UserETags()
+	{
+	}
+
+	/**
+	 * Parse the version from an {@code If-Match} header.
+	 * <br><br>
+	 * The header must hold a single strong ETag as sent by the user controllers, in any representation, or {@code *} to match any version.
+	 * <br><br>
+	 * @param id The user's id.
+	 * @param ifMatch The If-Match header, or null when it was not sent.
+	 * @return The version, or null when any version matches
+	 * @throws UserVersionMismatchException Thrown when the header cannot match any version of the user.
+	 */
+	static Long parseIfMatch(String id, String ifMatch)
+	{
+		if (ifMatch == null || ifMatch.trim().equals("*"))
+		{
+			return null;
+		}
+
+		String eTag = ifMatch.trim();
+		if (eTag.length() > 2 && eTag.startsWith("\"") && eTag.endsWith("\""))
+		{
+			Matcher matcher = USER_ETAG.matcher(eTag.substring(1, eTag.length() - 1));
+			if (matcher.matches() && (matcher.group(3) == null || ENCODINGS.containsValue(matcher.group(3))))
+			{
+				return Long.parseLong(matcher.group(1));
+			}
+		}
+		throw new UserVersionMismatchException(id);
+	}
+
+	/**
+	 * Describe the representation a response is sent in, as the suffix of its ETag.
+	 * <br><br>
+	 * The id is always sent, so it is counted among the selected fields whether or not it was asked for.
+	 * <br><br>
+	 * @param fields The fields selected for each user, or null when all fields are sent.
+	 * @param accept The Accept header, or null when it was not sent.
+	 * @return The suffix, empty for whole users as JSON
+	 */
+	static String representation(Collection<String> fields, String accept)
+	{
+		if (fields == null)
+		{
+			return encoding(accept);
+		}
+		TreeSet<String> sortedFields = new TreeSet<>(fields);
+		sortedFields.add("id");
+		return "-" + String.join(".", sortedFields) + encoding(accept);
+	}
+
+	/**
+	 * Describe the encoding a response is sent in, as the suffix of its ETag.
+	 * <br><br>
+	 * The encoding is chosen from the {@code Accept} header as Spring MVC chooses the message converter: the most specific, highest quality acceptable media type wins, and wildcards go to the first encoding they match.
+	 * <br><br>
+	 * @param accept The Accept header, or null when it was not sent.
+	 * @return The suffix, empty for JSON
+	 */
+	private static String encoding(String accept)
+	{
+		if (accept == null)
+		{
+			return "";
+		}
+
+		List<MediaType> acceptable;
+		try
+		{
+			acceptable = MediaType.parseMediaTypes(accept);
+		}
+		catch (InvalidMediaTypeException e)
+		{
+			return "";
+		}
+		MediaType.sortBySpecificityAndQuality(acceptable);
+		for (MediaType mediaType : acceptable)
+		{
+			if (mediaType.getQualityValue() == 0)
+			{
+				continue;
+			}
+			for (Map.Entry<MediaType, String> encoding : ENCODINGS.entrySet())
+			{
+				if (mediaType.isCompatibleWith(encoding.getKey()))
+				{
+					return encoding.getValue();
+				}
+			}
+		}
+		return "";
+	}
+
+	/**
+	 * Build the ETag of a user.
+	 * <br><br>
+	 * @param user The user.
+	 * @param representation The representation the user is sent in, see {@link #representation}.
+	 * @return The ETag
+	 */
+	static String userETag(User user, String representation)
+	{
+		return user.getVersion() + representation;
+	}
+
+	/**
+	 * Build the ETag of a page of users.
+	 * <br><br>
+	 * The ETag is a digest of the id and version of every user on the page, of whether a next page exists and of the representation, including the selected fields, so it changes whenever a user on the page is added, updated or removed.
+	 * <br><br>
+	 * @param users The users on the page.
+	 * @param hasNext Whether a next page exists.
+	 * @param representation The representation the page is sent in, see {@link #representation}.
+	 * @return The ETag
+	 */
+	static String pageETag(List<User> users, boolean hasNext, String representation)
+	{
+		StringBuilder key = new StringBuilder();
+		for (User user : users)
+		{
+			key.append(user.getId()).append(':').append(user.getVersion()).append(',');
+		}
+		key.append(hasNext).append(representation);
+
+		return DigestUtils.md5DigestAsHex(key.toString().getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,16 @@
+package com.malcolmbaatjies.user.entities.exceptions;
+
+/**
+ * ABaseException
+ * <br><br>
+ * This abstract class is used to represent the base runtime exception for expected outcomes, such as a missing user or a duplicate email, that are mapped to a response by the {@link com.malcolmbaatjies.user.handlers.GlobalExceptionHandler}.
+ * <br><br>
+ * These exceptions are stackless: the stack trace is never filled in and suppression is disabled, since only the message ends up in the response. Filling in the stack trace walks the whole request stack, which made these exceptions most of the allocations on not-found heavy traffic.
+ */
+public abstract class ABaseException extends RuntimeException
+{
+	protected ABaseException(String message)
+	{
+		super(message, null, false, false);
+	}
+}
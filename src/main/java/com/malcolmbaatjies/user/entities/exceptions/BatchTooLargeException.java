@@ -0,0 +1,14 @@
+package com.malcolmbaatjies.user.entities.exceptions;
+
+/**
+ * BatchTooLargeException
+ * <br><br>
+ * This class is used to represent the runtime exception when a batch request holds more items than allowed.
+ */
+public class BatchTooLargeException extends ABaseException
+{
+	public BatchTooLargeException(int size, int maxSize)
+	{
+		super("Batch of [" + size + "] items exceeds the maximum of [" + maxSize + "]");
+	}
+}
@@ -0,0 +1,14 @@
+package com.malcolmbaatjies.user.entities.exceptions;
+
+/**
+ * CreateQueueFullException
+ * <br><br>
+ * This class is used to represent the runtime exception when a user cannot be queued to be created because the queue is full.
+ */
+public class CreateQueueFullException extends ABaseException
+{
+	public CreateQueueFullException(int capacity)
+	{
+		super("The queue of [" + capacity + "] users waiting to be created is full. Please try again later");
+	}
+}
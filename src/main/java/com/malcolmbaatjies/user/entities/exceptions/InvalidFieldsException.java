@@ -0,0 +1,16 @@
+package com.malcolmbaatjies.user.entities.exceptions;
+
+import java.util.Collection;
+
+/**
+ * InvalidFieldsException
+ * <br><br>
+ * This class is used to represent the runtime exception when a request selects fields that do not exist.
+ */
+public class InvalidFieldsException extends ABaseException
+{
+	public InvalidFieldsException(Collection<String> fields, Collection<String> validFields)
+	{
+		super("Fields " + fields + " are invalid, expected any of " + validFields);
+	}
+}
@@ -0,0 +1,14 @@
+package com.malcolmbaatjies.user.entities.exceptions;
+
+/**
+ * PendingUserNotFoundException
+ * <br><br>
+ * This class is used to represent the runtime exception when a queued user is not found, either because the ticket is unknown or because its status has expired.
+ */
+public class PendingUserNotFoundException extends ABaseException
+{
+	public PendingUserNotFoundException(String ticket)
+	{
+		super("Pending user with ticket [" + ticket + "] not found");
+	}
+}
@@ -0,0 +1,14 @@
+package com.malcolmbaatjies.user.entities.exceptions;
+
+/**
+ * SearchIndexNotReadyException
+ * <br><br>
+ * This class is used to represent the runtime exception when a search is made before the search index has been built.
+ */
+public class SearchIndexNotReadyException extends ABaseException
+{
+	public SearchIndexNotReadyException()
+	{
+		super("The search index is still being built. Please try again shortly");
+	}
+}
@@ -5,7 +5,7 @@ package com.malcolmbaatjies.user.entities.exceptions;
  * <br><br>
  * This class is used to represent the runtime exception when a user already exists.
  */
-public class UserExistsException extends RuntimeException
+public class UserExistsException extends ABaseException
 {
 	public UserExistsException(String email)
 	{
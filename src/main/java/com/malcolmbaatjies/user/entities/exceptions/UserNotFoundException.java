@@ -5,7 +5,7 @@ package com.malcolmbaatjies.user.entities.exceptions;
  * <br><br>
  * This class is used to represent the runtime exception when a user is not found.
  */
-public class UserNotFoundException extends RuntimeException
+public class UserNotFoundException extends ABaseException
 {
 	public UserNotFoundException(String id)
 	{
@@ -0,0 +1,14 @@
+package com.malcolmbaatjies.user.entities.exceptions;
+
+/**
+ * UserVersionMismatchException
+ * <br><br>
+ * This class is used to represent the runtime exception when a user has changed since the version given in a conditional request.
+ */
+public class UserVersionMismatchException extends ABaseException
+{
+	public UserVersionMismatchException(String id)
+	{
+		super("User with id [" + id + "] has been modified");
+	}
+}
@@ -1,8 +1,17 @@
 package com.malcolmbaatjies.user.entities.models;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import javax.persistence.*;
+import java.util.List;
+import java.util.Locale;
 
 /**
  * User
@@ -11,10 +20,20 @@ import javax.persistence.*;
  * <br><br>
  * This class is annotated with Lombok's {@link lombok.Builder}, {@link lombok.Getter}, {@link lombok.ToString}, {@link lombok.AllArgsConstructor} and {@link lombok.NoArgsConstructor} to generate the builder, getter, toString, all-args and no-args constructor methods during compile time.
  * <br><br>
- * This class is annotated with JPA's {@link javax.persistence.Entity} and {@link javax.persistence.Table} to indicate that it is an entity and to specify the table name.
+ * This class is annotated with JPA's {@link javax.persistence.Entity} and {@link javax.persistence.Table} to indicate that it is an entity, to specify the table name and to declare the unique constraint on email.
+ * <br><br>
+ * This class is annotated with Spring Data Relational's {@link org.springframework.data.relational.core.mapping.Table} to map it to the same table when it is read and written through R2DBC by the reactive profile.
+ * <br><br>
+ * This class is annotated with Jackson's {@link com.fasterxml.jackson.annotation.JsonInclude} so that partial users, loaded with only some fields selected, are written with only those fields.
+ * <br><br>
+ * This class is annotated with JPA's {@link javax.persistence.Cacheable} and Hibernate's {@link org.hibernate.annotations.Cache} to keep users in the {@value #CACHE_REGION} region of the second-level cache, see {@link com.malcolmbaatjies.user.configurations.EntityCacheConfiguration EntityCacheConfiguration}. The region is read-write: an updated user is locked in the region until its transaction commits, so no transaction reads it stale, and a user loaded before an update cannot replace the newer version. Bulk updates and deletes of users, such as {@code updateFieldsById}, empty the whole region.
  */
 @Entity
-@Table(name = "users")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = User.CACHE_REGION)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Table(name = "users", uniqueConstraints = @UniqueConstraint(name = User.EMAIL_CONSTRAINT, columnNames = "email"))
+@org.springframework.data.relational.core.mapping.Table("users")
 @Getter
 @ToString
 @Builder
@@ -22,13 +41,43 @@ import javax.persistence.*;
 @NoArgsConstructor
 public class User
 {
+	/**
+	 * The number of ids reserved from the sequence per round trip.
+	 */
+	public static final int ID_ALLOCATION_SIZE = 50;
+
+	/**
+	 * The name of the unique constraint on the email column.
+	 */
+	public static final String EMAIL_CONSTRAINT = "uk_users_email";
+
+	/**
+	 * The second-level cache region of users.
+	 */
+	public static final String CACHE_REGION = "user-entities";
+
+	/**
+	 * The names of the fields that can be selected on their own.
+	 */
+	public static final List<String> FIELDS = List.of("id", "firstName", "lastName", "email");
+
 	/**
 	 * The user's unique identifier.
 	 * <br><br>
-	 * This field is annotated with JPA's {@link javax.persistence.Id} and {@link javax.persistence.GeneratedValue} to indicate that it is the primary key and to specify the generation strategy.
+	 * This field is annotated with JPA's {@link javax.persistence.Id} and {@link javax.persistence.GeneratedValue} and Hibernate's {@link org.hibernate.annotations.GenericGenerator} to indicate that it is the primary key and to specify the generation strategy.
+	 * <br><br>
+	 * Ids are allocated from a pooled sequence, {@link #ID_ALLOCATION_SIZE} at a time, so Hibernate knows the id before the insert and can batch inserts. The sequence is kept in a table, as MySQL has no sequences, which is also read on a connection of its own. When the users table is sharded the id also carries the user's shard, see {@link com.malcolmbaatjies.user.repositories.sharding.ShardedIdGenerator ShardedIdGenerator}.
+	 * <br><br>
+	 * This field is annotated with Spring Data's {@link org.springframework.data.annotation.Id} to indicate that it is the primary key to R2DBC.
 	 */
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@org.springframework.data.annotation.Id
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "users_seq")
+	@GenericGenerator(name = "users_seq", strategy = "com.malcolmbaatjies.user.repositories.sharding.ShardedIdGenerator", parameters = {
+		@Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "users_seq"),
+		@Parameter(name = SequenceStyleGenerator.INCREMENT_PARAM, value = "" + User.ID_ALLOCATION_SIZE),
+		@Parameter(name = SequenceStyleGenerator.FORCE_TBL_PARAM, value = "true")
+	})
 	private Long id;
 
 	/**
@@ -54,4 +103,27 @@ public class User
 	 */
 	@Column(name = "email")
 	private String email;
+
+	/**
+	 * The user's version.
+	 * <br><br>
+	 * This field is annotated with JPA's {@link javax.persistence.Version} and {@link javax.persistence.Column} to have Hibernate increment it on every update and to specify the column name.
+	 * <br><br>
+	 * This field is annotated with Jackson's {@link com.fasterxml.jackson.annotation.JsonIgnore} as it is sent to clients as the ETag header rather than in the body.
+	 */
+	@Version
+	@Column(name = "version", nullable = false)
+	@JsonIgnore
+	private Long version;
+
+	/**
+	 * Normalize an email for comparison, as the unique constraint on email ignores case.
+	 *
+	 * @param email The email.
+	 * @return The lower case email.
+	 */
+	public static String normalizeEmail(String email)
+	{
+		return email.toLowerCase(Locale.ROOT);
+	}
 }
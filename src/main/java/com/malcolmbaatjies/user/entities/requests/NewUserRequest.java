@@ -1,10 +1,10 @@
 package com.malcolmbaatjies.user.entities.requests;
 
+import com.malcolmbaatjies.user.entities.requests.validation.ValidEmail;
 import lombok.Builder;
 import lombok.Getter;
 
 import javax.validation.constraints.NotBlank;
-import javax.validation.constraints.Pattern;
 
 /**
  * NewUserRequest
@@ -13,7 +13,7 @@ import javax.validation.constraints.Pattern;
  * <br><br>
  * This class is annotated with Lombok's {@link lombok.Builder} and {@link lombok.Getter} to generate the builder and getter methods during compile time.
  * <br><br>
- * This class is annotated with {@link javax.validation.constraints.NotBlank} and {@link javax.validation.constraints.Pattern} to validate the first name, last name and email fields.
+ * This class is annotated with {@link javax.validation.constraints.NotBlank} and {@link com.malcolmbaatjies.user.entities.requests.validation.ValidEmail} to validate the first name, last name and email fields.
  */
 @Builder
 @Getter
@@ -34,9 +34,9 @@ public class NewUserRequest implements IBaseRequest
 	/**
 	 * {@link javax.validation.constraints.NotBlank} Validation Reference: {@link com.malcolmbaatjies.user.entities.responses.validation.ValidationErrorCodes#USER_EMAIL_REQUIRED User Email Required}
 	 * <br>
-	 * {@link javax.validation.constraints.Pattern} Validation Reference: {@link com.malcolmbaatjies.user.entities.responses.validation.ValidationErrorCodes#USER_EMAIL_INVALID User Email Invalid}
+	 * {@link com.malcolmbaatjies.user.entities.requests.validation.ValidEmail} Validation Reference: {@link com.malcolmbaatjies.user.entities.responses.validation.ValidationErrorCodes#USER_EMAIL_INVALID User Email Invalid}
 	 */
 	@NotBlank(message = "4003")
-	@Pattern(message = "4004", regexp = "^[a-zA-Z0-9._%+-]+@[a-zA-Z0-9.-]+\\.[a-zA-Z]{2,}$")
+	@ValidEmail(message = "4004")
 	private String email;
 }
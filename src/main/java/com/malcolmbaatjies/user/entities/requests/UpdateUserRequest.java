@@ -1,10 +1,10 @@
 package com.malcolmbaatjies.user.entities.requests;
 
+import com.malcolmbaatjies.user.entities.requests.validation.ValidEmail;
 import lombok.Builder;
 import lombok.Getter;
 
 import javax.validation.constraints.NotBlank;
-import javax.validation.constraints.Pattern;
 
 /**
  * UpdateUserRequest
@@ -13,7 +13,7 @@ import javax.validation.constraints.Pattern;
  * <br><br>
  * This class is annotated with Lombok's {@link lombok.Builder} and {@link lombok.Getter} to generate the builder and getter methods during compile time.
  * <br><br>
- * This class is annotated with {@link javax.validation.constraints.Pattern} to validate the email field.
+ * This class is annotated with {@link com.malcolmbaatjies.user.entities.requests.validation.ValidEmail} to validate the email field.
  */
 @Builder
 @Getter
@@ -24,8 +24,8 @@ public class UpdateUserRequest implements IBaseRequest
 	private String lastName;
 
 	/**
-	 * {@link javax.validation.constraints.Pattern} Validation Reference: {@link com.malcolmbaatjies.user.entities.responses.validation.ValidationErrorCodes#USER_EMAIL_INVALID User Email Invalid}
+	 * {@link com.malcolmbaatjies.user.entities.requests.validation.ValidEmail} Validation Reference: {@link com.malcolmbaatjies.user.entities.responses.validation.ValidationErrorCodes#USER_EMAIL_INVALID User Email Invalid}
 	 */
-	@Pattern(message = "4004", regexp = "^[a-zA-Z0-9._%+-]+@[a-zA-Z0-9.-]+\\.[a-zA-Z]{2,}$")
+	@ValidEmail(message = "4004")
 	private String email;
 }
@@ -0,0 +1,121 @@
+package com.malcolmbaatjies.user.entities.requests.validation;
+
+import javax.validation.ConstraintValidator;
+import javax.validation.ConstraintValidatorContext;
+
+/**
+ * EmailValidator
+ * <br><br>
+ * This class is used to validate the fields annotated with {@link com.malcolmbaatjies.user.entities.requests.validation.ValidEmail}.
+ * <br><br>
+ * The email is checked in a single pass over its characters, without a regular expression and without allocating. It is stateless, so one instance is shared by every validation.
+ */
+public class EmailValidator implements ConstraintValidator<ValidEmail, String>
+{
+	/**
+	 * The minimum length of the top level domain.
+	 */
+	private static final int MIN_TOP_LEVEL_DOMAIN_LENGTH = 2;
+
+	/**
+	 * Check whether a value is a valid email.
+	 *
+	 * @param value The value to validate.
+	 * @param context The constraint validator context.
+	 * @return True when the value is null or a valid email.
+	 */
+	@Override
+	public boolean isValid(String value, ConstraintValidatorContext context)
+	{
+		return value == null || isValid(value);
+	}
+
+	/**
+	 * Check whether an email is valid.
+	 *
+	 * @param email The email to validate.
+	 * @return True when the email is valid.
+	 */
+	public static boolean isValid(CharSequence email)
+	{
+		int length = email.length();
+		int at = -1;
+		for (int i = 0; i < length; i++)
+		{
+			char c = email.charAt(i);
+			if (c == '@')
+			{
+				at = i;
+				break;
+			}
+			if (!isLocalPartChar(c))
+			{
+				return false;
+			}
+		}
+		if (at < 1)
+		{
+			return false;
+		}
+
+		int lastDot = -1;
+		for (int i = at + 1; i < length; i++)
+		{
+			char c = email.charAt(i);
+			if (c == '.')
+			{
+				lastDot = i;
+			}
+			else if (!isLetterOrDigit(c) && c != '-')
+			{
+				return false;
+			}
+		}
+		if (lastDot <= at + 1 || length - lastDot - 1 < MIN_TOP_LEVEL_DOMAIN_LENGTH)
+		{
+			return false;
+		}
+
+		for (int i = lastDot + 1; i < length; i++)
+		{
+			if (!isLetter(email.charAt(i)))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Check whether a character may appear in the local part of an email.
+	 *
+	 * @param c The character.
+	 * @return True when the character is a letter, digit or one of {@code ._%+-}.
+	 */
+	private static boolean isLocalPartChar(char c)
+	{
+		return isLetterOrDigit(c) || c == '.' || c == '_' || c == '%' || c == '+' || c == '-';
+	}
+
+	/**
+	 * Check whether a character is an ASCII letter or digit.
+	 *
+	 * @param c The character.
+	 * @return True when the character is an ASCII letter or digit.
+	 */
+	private static boolean isLetterOrDigit(char c)
+	{
+		return isLetter(c) || (c >= '0' && c <= '9');
+	}
+
+	/**
+	 * Check whether a character is an ASCII letter.
+	 *
+	 * @param c The character.
+	 * @return True when the character is an ASCII letter.
+	 */
+	private static boolean isLetter(char c)
+	{
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+}
@@ -0,0 +1,46 @@
+package com.malcolmbaatjies.user.entities.requests.validation;
+
+import javax.validation.Constraint;
+import javax.validation.Payload;
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * ValidEmail
+ * <br><br>
+ * This annotation is used to validate that a field holds an email address.
+ * <br><br>
+ * An email is valid when it has a local part of letters, digits and {@code ._%+-}, a single {@code @}, and a domain of letters, digits, {@code .} and {@code -} ending in a dot followed by at least two letters. This is the same language as the pattern {@code ^[a-zA-Z0-9._%+-]+@[a-zA-Z0-9.-]+\.[a-zA-Z]{2,}$}, checked by {@link com.malcolmbaatjies.user.entities.requests.validation.EmailValidator} without a regular expression.
+ * <br><br>
+ * A null value is valid, use {@link javax.validation.constraints.NotBlank} to require the field.
+ */
+@Documented
+@Constraint(validatedBy = EmailValidator.class)
+@Target({ElementType.FIELD, ElementType.PARAMETER})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ValidEmail
+{
+	/**
+	 * The validation error code reported when the email is invalid.
+	 *
+	 * @return The validation error code.
+	 */
+	String message() default "4004";
+
+	/**
+	 * The validation groups.
+	 *
+	 * @return The validation groups.
+	 */
+	Class<?>[] groups() default {};
+
+	/**
+	 * The validation payload.
+	 *
+	 * @return The validation payload.
+	 */
+	Class<? extends Payload>[] payload() default {};
+}
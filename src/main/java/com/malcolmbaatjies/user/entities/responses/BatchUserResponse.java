@@ -0,0 +1,34 @@
+package com.malcolmbaatjies.user.entities.responses;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.malcolmbaatjies.user.entities.models.User;
+import com.malcolmbaatjies.user.entities.responses.validation.ValidationError;
+import lombok.Getter;
+import lombok.experimental.SuperBuilder;
+
+import java.util.List;
+
+/**
+ * BatchUserResponse
+ * <br><br>
+ * This class is used to represent the result of a single item in a batch request. The result holds the created user when the item succeeded, or the validation errors when the item failed validation.
+ * <br><br>
+ * This class is annotated with Lombok's {@link lombok.Getter} and {@link lombok.experimental.SuperBuilder} to generate the getter methods and builder methods during compile time.
+ * <br><br>
+ * This class is annotated with Jackson's {@link com.fasterxml.jackson.annotation.JsonInclude} to leave out the fields that do not apply to the result.
+ */
+@SuperBuilder
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchUserResponse extends ABaseResponse
+{
+	/**
+	 * The created user.
+	 */
+	private User user;
+
+	/**
+	 * The list of validation errors.
+	 */
+	private List<ValidationError> errors;
+}
@@ -0,0 +1,31 @@
+package com.malcolmbaatjies.user.entities.responses;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.malcolmbaatjies.user.entities.models.User;
+import lombok.Getter;
+import lombok.experimental.SuperBuilder;
+
+/**
+ * PendingUserResponse
+ * <br><br>
+ * This class is used to represent the status of a user that was queued to be created. The status holds the created user once it has been written to the database.
+ * <br><br>
+ * This class is annotated with Lombok's {@link lombok.Getter} and {@link lombok.experimental.SuperBuilder} to generate the getter methods and builder methods during compile time.
+ * <br><br>
+ * This class is annotated with Jackson's {@link com.fasterxml.jackson.annotation.JsonInclude} to leave out the fields that do not apply to the status.
+ */
+@SuperBuilder
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PendingUserResponse extends ABaseResponse
+{
+	/**
+	 * The ticket the user was queued under.
+	 */
+	private String ticket;
+
+	/**
+	 * The created user.
+	 */
+	private User user;
+}
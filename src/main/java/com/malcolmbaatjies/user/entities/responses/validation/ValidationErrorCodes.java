@@ -1,16 +1,19 @@
 package com.malcolmbaatjies.user.entities.responses.validation;
 
-import lombok.AllArgsConstructor;
 import lombok.Getter;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * ValidationErrorCodes
  * <br><br>
  * This enum is used to represent the validation error codes.
  * <br><br>
- * This enum is annotated with Lombok's {@link lombok.AllArgsConstructor} and {@link lombok.Getter} to generate the all-args constructor and getter methods during compile time.
+ * Codes are looked up through a map built once when the enum is loaded, and each value holds the single {@link com.malcolmbaatjies.user.entities.responses.validation.ValidationError} returned for it, so mapping a field error allocates nothing.
+ * <br><br>
+ * This enum is annotated with Lombok's {@link lombok.Getter} to generate the getter methods during compile time.
  */
-@AllArgsConstructor
 @Getter
 public enum ValidationErrorCodes
 {
@@ -31,6 +34,37 @@ public enum ValidationErrorCodes
 	 */
 	private final String message;
 
+	/**
+	 * The validation error shared by every response that reports this code.
+	 */
+	private final ValidationError error;
+
+	/**
+	 * The validation error codes by code.
+	 */
+	private static final Map<String, ValidationErrorCodes> BY_CODE = new HashMap<>();
+
+	static
+	{
+		for (ValidationErrorCodes value : ValidationErrorCodes.values())
+		{
+			BY_CODE.put(value.getCode(), value);
+		}
+	}
+
+	/**
+	 * Create a validation error code.
+	 *
+	 * @param code The validation error code.
+	 * @param message The validation error message.
+	 */
+	ValidationErrorCodes(String code, String message)
+	{
+		this.code = code;
+		this.message = message;
+		this.error = new ValidationError(code, message);
+	}
+
 	/**
 	 * Get the validation error code from the given code.
 	 *
@@ -39,14 +73,11 @@ public enum ValidationErrorCodes
 	 */
 	public static ValidationErrorCodes fromCode(String code)
 	{
-		for (ValidationErrorCodes value : ValidationErrorCodes.values())
+		if (code == null)
 		{
-			if (value.getCode().equals(code))
-			{
-				return value;
-			}
+			return UNEXPECTED_ERROR;
 		}
-		return UNEXPECTED_ERROR;
+		return BY_CODE.getOrDefault(code, UNEXPECTED_ERROR);
 	}
 
 	/**
@@ -57,7 +88,6 @@ public enum ValidationErrorCodes
 	 */
 	public static ValidationError getErrorFromCode(String code)
 	{
-		ValidationErrorCodes errorCode = fromCode(code);
-		return ValidationError.builder().code(errorCode.getCode()).message(errorCode.getMessage()).build();
+		return fromCode(code).getError();
 	}
 }
@@ -0,0 +1,191 @@
+package com.malcolmbaatjies.user.handlers;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Scheduler;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * ExceptionLogThrottle
+ * <br><br>
+ * This class is used to collapse repeated identical exceptions in the log into counts, so that a failure hit by every request, such as the database being down, does not write a full stack trace per request.
+ * <br><br>
+ * Exceptions are identical when they are of the same class, thrown from the same place, with causes of the same classes; their messages are left out as they often carry ids. The first of them is logged, and the others are counted rather than logged until a window has passed since it. When the window ends the count of those that were not logged is reported with their kind, whether or not another identical exception follows, and the next one is logged again. Counts are also reported when a kind is forgotten to make room for others.
+ * <br><br>
+ * A window of zero logs every exception.
+ */
+public class ExceptionLogThrottle
+{
+	/**
+	 * The most kinds of exceptions counted at once, beyond which the least recent are forgotten.
+	 */
+	private static final int MAXIMUM_KINDS = 1000;
+
+	/**
+	 * The window, in nanoseconds, after a logged exception during which identical ones are only counted.
+	 */
+	private final long windowNanos;
+
+	/**
+	 * The current window of each kind of exception. A window is removed once it ends, or when its kind is forgotten, and its count is then reported.
+	 */
+	private final Cache<String, Window> windows;
+
+	/**
+	 * Constructor
+	 * <br><br>
+	 * Windows are ended on time by the JVM's scheduler, so the count of a burst of exceptions is reported once the window after it ends.
+	 *
+	 * @param window       The window after a logged exception during which identical ones are only counted.
+	 * @param onSuppressed Called with the kind of exception and the number of them that were not logged, when a window in which some were not logged ends.
+	 */
+	public ExceptionLogThrottle(Duration window, ObjLongConsumer<String> onSuppressed)
+	{
+		this(window, onSuppressed, System::nanoTime, Scheduler.systemScheduler());
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param window       The window after a logged exception during which identical ones are only counted.
+	 * @param onSuppressed Called with the kind of exception and the number of them that were not logged, when a window in which some were not logged ends.
+	 * @param nanoTime     The clock, in nanoseconds.
+	 * @param scheduler    Ends the windows on time, or {@link Scheduler#disabledScheduler()} to only end them as exceptions are counted or on {@link #cleanUp()}.
+	 */
+	ExceptionLogThrottle(Duration window, ObjLongConsumer<String> onSuppressed, LongSupplier nanoTime, Scheduler scheduler)
+	{
+		this.windowNanos = window.toNanos();
+		this.windows = Caffeine.newBuilder()
+			.maximumSize(MAXIMUM_KINDS)
+			.expireAfter(new WindowExpiry(windowNanos))
+			.ticker(nanoTime::getAsLong)
+			.scheduler(scheduler)
+			// Reported on the thread that removes the window, as it is only a log entry
+			.executor(Runnable::run)
+			.<String, Window>removalListener((kind, ended, cause) ->
+			{
+				if (cause.wasEvicted() && ended != null && ended.suppressed > 0)
+				{
+					onSuppressed.accept(kind, ended.suppressed);
+				}
+			})
+			.build();
+	}
+
+	/**
+	 * Count an exception and decide whether it should be logged.
+	 *
+	 * @param e The exception.
+	 * @return Whether the exception should be logged, false when it is only counted.
+	 */
+	public boolean onException(Throwable e)
+	{
+		if (windowNanos <= 0)
+		{
+			return true;
+		}
+
+		boolean[] log = {false};
+		windows.asMap().compute(kindOf(e), (kind, window) ->
+		{
+			// An ended window is removed, and reported, before this is called
+			if (window != null)
+			{
+				window.suppressed++;
+				return window;
+			}
+			log[0] = true;
+			return new Window();
+		});
+		return log[0];
+	}
+
+	/**
+	 * End the windows that are due, and report their counts, without waiting for the scheduler.
+	 */
+	void cleanUp()
+	{
+		windows.cleanUp();
+	}
+
+	/**
+	 * Describe the kind of an exception: its class and where it was thrown, and the same for each of its causes.
+	 *
+	 * @param e The exception.
+	 * @return The kind.
+	 */
+	private static String kindOf(Throwable e)
+	{
+		// Bounded, as causes can form a cycle
+		StringBuilder kind = new StringBuilder();
+		for (Throwable cause = e; cause != null && kind.length() < 1024; cause = cause.getCause())
+		{
+			kind.append(cause.getClass().getName());
+			StackTraceElement[] stackTrace = cause.getStackTrace();
+			if (stackTrace.length > 0)
+			{
+				kind.append('@').append(stackTrace[0]);
+			}
+			kind.append(';');
+		}
+		return kind.toString();
+	}
+
+	/**
+	 * Window
+	 * <br><br>
+	 * The window of a kind of exception, only changed inside the atomic {@code compute} of its entry.
+	 */
+	private static final class Window
+	{
+		/**
+		 * The number of exceptions that were not logged in the window.
+		 */
+		private volatile long suppressed;
+	}
+
+	/**
+	 * WindowExpiry
+	 * <br><br>
+	 * Ends a window a fixed time after it started, however many exceptions it counts.
+	 */
+	private static final class WindowExpiry implements Expiry<String, Window>
+	{
+		/**
+		 * The length of a window, in nanoseconds.
+		 */
+		private final long windowNanos;
+
+		/**
+		 * Constructor
+		 *
+		 * @param windowNanos The length of a window, in nanoseconds.
+		 */
+		private WindowExpiry(long windowNanos)
+		{
+			this.windowNanos = windowNanos;
+		}
+
+		@Override
+		public long expireAfterCreate(String kind, Window window, long currentTime)
+		{
+			return windowNanos;
+		}
+
+		@Override
+		public long expireAfterUpdate(String kind, Window window, long currentTime, long currentDuration)
+		{
+			return currentDuration;
+		}
+
+		@Override
+		public long expireAfterRead(String kind, Window window, long currentTime, long currentDuration)
+		{
+			return currentDuration;
+		}
+	}
+}
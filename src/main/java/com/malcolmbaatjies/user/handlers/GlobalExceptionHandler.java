@@ -1,24 +1,40 @@
 package com.malcolmbaatjies.user.handlers;
 
 
+import com.malcolmbaatjies.user.entities.exceptions.BatchTooLargeException;
+import com.malcolmbaatjies.user.entities.exceptions.CreateQueueFullException;
+import com.malcolmbaatjies.user.entities.exceptions.InvalidFieldsException;
+import com.malcolmbaatjies.user.entities.exceptions.PendingUserNotFoundException;
+import com.malcolmbaatjies.user.entities.exceptions.SearchIndexNotReadyException;
 import com.malcolmbaatjies.user.entities.exceptions.UserExistsException;
 import com.malcolmbaatjies.user.entities.exceptions.UserNotFoundException;
+import com.malcolmbaatjies.user.entities.exceptions.UserVersionMismatchException;
 import com.malcolmbaatjies.user.entities.responses.ApiErrorResponse;
 import com.malcolmbaatjies.user.entities.responses.validation.ValidationErrorResponse;
 import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.validation.BindException;
+import org.springframework.validation.BindingResult;
 import org.springframework.validation.FieldError;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.bind.support.WebExchangeBindException;
+
+import java.time.Duration;
+import java.util.LinkedHashSet;
 
 /**
  * GlobalExceptionHandler
  * <br><br>
  * This class is used to handle exceptions globally.
  * <br><br>
+ * Unhandled exceptions are logged with their stack trace, but repeated identical ones are collapsed into counts for {@code users.logging.error-window} after each one that is logged, and the count is logged when the window ends, see {@link com.malcolmbaatjies.user.handlers.ExceptionLogThrottle ExceptionLogThrottle}.
+ * <br><br>
  * This class is annotated with Lombok's {@link lombok.extern.log4j.Log4j2} to enable logging.
  * <br><br>
  * This class is annotated with Spring's {@link org.springframework.web.bind.annotation.RestControllerAdvice} to indicate that it is used to handle exceptions globally.
@@ -27,6 +43,21 @@ import org.springframework.web.bind.annotation.RestControllerAdvice;
 @Log4j2
 public class GlobalExceptionHandler
 {
+	/**
+	 * Decides which unhandled exceptions are logged.
+	 */
+	private final ExceptionLogThrottle exceptionLogThrottle;
+
+	/**
+	 * Constructor
+	 *
+	 * @param errorWindow The window after a logged exception during which identical ones are only counted, zero to log every exception.
+	 */
+	public GlobalExceptionHandler(@Value("${users.logging.error-window:PT0S}") Duration errorWindow)
+	{
+		this.exceptionLogThrottle = new ExceptionLogThrottle(errorWindow, (kind, suppressed) -> log.error("Internal Exception, {} identical exceptions were not logged in the {} after the last one: {}", suppressed, errorWindow, kind));
+	}
+
 	/**
 	 * {@link org.springframework.validation.BindException} Handler.
 	 * <br><br>
@@ -40,10 +71,38 @@ public class GlobalExceptionHandler
 	@ResponseBody
 	ValidationErrorResponse onBindException(
 		BindException e)
+	{
+		return validationErrorResponse(e.getBindingResult());
+	}
+
+	/**
+	 * {@link org.springframework.web.bind.support.WebExchangeBindException} Handler.
+	 * <br><br>
+	 * This method handles the WebExchangeBindExceptions, which the validation framework throws instead of BindExceptions on incoming requests to the reactive stack. The response is the same as from {@link #onBindException}.
+	 * <br><br>
+	 * @param e The exception that was thrown.
+	 * @return {@link com.malcolmbaatjies.user.entities.responses.validation.ValidationErrorResponse}
+	 */
+	@ExceptionHandler(WebExchangeBindException.class)
+	@ResponseStatus(HttpStatus.BAD_REQUEST)
+	@ResponseBody
+	ValidationErrorResponse onWebExchangeBindException(
+		WebExchangeBindException e)
+	{
+		return validationErrorResponse(e.getBindingResult());
+	}
+
+	/**
+	 * Build the response for a request that failed validation, with one error per invalid field.
+	 * <br><br>
+	 * @param bindingResult The result of validating the request.
+	 * @return {@link com.malcolmbaatjies.user.entities.responses.validation.ValidationErrorResponse}
+	 */
+	private static ValidationErrorResponse validationErrorResponse(BindingResult bindingResult)
 	{
 		ValidationErrorResponse error = ValidationErrorResponse.builder().status(HttpStatus.BAD_REQUEST.toString()).message("Validation Failed.").build();
 
-		for (FieldError fieldError : e.getBindingResult().getFieldErrors())
+		for (FieldError fieldError : bindingResult.getFieldErrors())
 		{
 			log.error("Field Error: {}", fieldError.getDefaultMessage());
 			error.addError(fieldError.getDefaultMessage());
@@ -90,6 +149,139 @@ public class GlobalExceptionHandler
 			.build();
 	}
 
+	/**
+	 * {@link com.malcolmbaatjies.user.entities.exceptions.UserVersionMismatchException} handler
+	 * <br><br>
+	 * This method handles the User Version Mismatch Exceptions which are thrown when a user has changed since the version given in the If-Match header, or was changed concurrently. An appropriate message is returned.
+	 * <br><br>
+	 * @param e The exception that was thrown
+	 * @return {@link com.malcolmbaatjies.user.entities.responses.ApiErrorResponse}
+	 */
+	@ExceptionHandler(UserVersionMismatchException.class)
+	@ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+	@ResponseBody
+	ApiErrorResponse onUserVersionMismatchException(UserVersionMismatchException e)
+	{
+		return ApiErrorResponse.builder()
+			.status(HttpStatus.PRECONDITION_FAILED.toString())
+			.message(e.getMessage())
+			.build();
+	}
+
+	/**
+	 * {@link com.malcolmbaatjies.user.entities.exceptions.BatchTooLargeException} handler
+	 * <br><br>
+	 * This method handles the Batch Too Large Exceptions which are thrown when a batch request holds more items than allowed. An appropriate message is returned.
+	 * <br><br>
+	 * @param e The exception that was thrown
+	 * @return {@link com.malcolmbaatjies.user.entities.responses.ApiErrorResponse}
+	 */
+	@ExceptionHandler(BatchTooLargeException.class)
+	@ResponseStatus(HttpStatus.PAYLOAD_TOO_LARGE)
+	@ResponseBody
+	ApiErrorResponse onBatchTooLargeException(BatchTooLargeException e)
+	{
+		return ApiErrorResponse.builder()
+			.status(HttpStatus.PAYLOAD_TOO_LARGE.toString())
+			.message(e.getMessage())
+			.build();
+	}
+
+	/**
+	 * {@link com.malcolmbaatjies.user.entities.exceptions.InvalidFieldsException} handler
+	 * <br><br>
+	 * This method handles the Invalid Fields Exceptions which are thrown when a request selects fields that do not exist. An appropriate message is returned.
+	 * <br><br>
+	 * @param e The exception that was thrown
+	 * @return {@link com.malcolmbaatjies.user.entities.responses.ApiErrorResponse}
+	 */
+	@ExceptionHandler(InvalidFieldsException.class)
+	@ResponseStatus(HttpStatus.BAD_REQUEST)
+	@ResponseBody
+	ApiErrorResponse onInvalidFieldsException(InvalidFieldsException e)
+	{
+		return ApiErrorResponse.builder()
+			.status(HttpStatus.BAD_REQUEST.toString())
+			.message(e.getMessage())
+			.build();
+	}
+
+	/**
+	 * {@link com.malcolmbaatjies.user.entities.exceptions.SearchIndexNotReadyException} handler
+	 * <br><br>
+	 * This method handles the Search Index Not Ready Exceptions which are thrown when a search is made before the search index has been built at startup. An appropriate message is returned.
+	 * <br><br>
+	 * @param e The exception that was thrown
+	 * @return {@link com.malcolmbaatjies.user.entities.responses.ApiErrorResponse}
+	 */
+	@ExceptionHandler(SearchIndexNotReadyException.class)
+	@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+	@ResponseBody
+	ApiErrorResponse onSearchIndexNotReadyException(SearchIndexNotReadyException e)
+	{
+		return ApiErrorResponse.builder()
+			.status(HttpStatus.SERVICE_UNAVAILABLE.toString())
+			.message(e.getMessage())
+			.build();
+	}
+
+	/**
+	 * {@link com.malcolmbaatjies.user.entities.exceptions.CreateQueueFullException} handler
+	 * <br><br>
+	 * This method handles the Create Queue Full Exceptions which are thrown when a user is created asynchronously while too many users are waiting to be written to the database. An appropriate message is returned so the client backs off and tries again.
+	 * <br><br>
+	 * @param e The exception that was thrown
+	 * @return {@link com.malcolmbaatjies.user.entities.responses.ApiErrorResponse}
+	 */
+	@ExceptionHandler(CreateQueueFullException.class)
+	@ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+	@ResponseBody
+	ApiErrorResponse onCreateQueueFullException(CreateQueueFullException e)
+	{
+		return ApiErrorResponse.builder()
+			.status(HttpStatus.TOO_MANY_REQUESTS.toString())
+			.message(e.getMessage())
+			.build();
+	}
+
+	/**
+	 * {@link com.malcolmbaatjies.user.entities.exceptions.PendingUserNotFoundException} handler
+	 * <br><br>
+	 * This method handles the Pending User Not Found Exceptions which are thrown when the status of an unknown or expired ticket is requested. An appropriate message is returned.
+	 * <br><br>
+	 * @param e The exception that was thrown
+	 * @return {@link com.malcolmbaatjies.user.entities.responses.ApiErrorResponse}
+	 */
+	@ExceptionHandler(PendingUserNotFoundException.class)
+	@ResponseStatus(HttpStatus.NOT_FOUND)
+	@ResponseBody
+	ApiErrorResponse onPendingUserNotFoundException(PendingUserNotFoundException e)
+	{
+		return ApiErrorResponse.builder()
+			.status(HttpStatus.NOT_FOUND.toString())
+			.message(e.getMessage())
+			.build();
+	}
+
+	/**
+	 * {@link org.springframework.web.HttpMediaTypeNotAcceptableException} handler
+	 * <br><br>
+	 * This method handles the Http Media Type Not Acceptable Exceptions which are thrown when a response cannot be written in any of the encodings the request accepts, such as a Protobuf request for a body without a message in the schema. The encodings the response is available in are returned.
+	 * <br><br>
+	 * @param e The exception that was thrown
+	 * @return {@link com.malcolmbaatjies.user.entities.responses.ApiErrorResponse}
+	 */
+	@ExceptionHandler(HttpMediaTypeNotAcceptableException.class)
+	@ResponseStatus(HttpStatus.NOT_ACCEPTABLE)
+	@ResponseBody
+	ApiErrorResponse onHttpMediaTypeNotAcceptableException(HttpMediaTypeNotAcceptableException e)
+	{
+		return ApiErrorResponse.builder()
+			.status(HttpStatus.NOT_ACCEPTABLE.toString())
+			.message(e.getSupportedMediaTypes().isEmpty() ? e.getMessage() : "The response is only available as " + MediaType.toString(new LinkedHashSet<>(e.getSupportedMediaTypes())))
+			.build();
+	}
+
 	/**
 	 * {@link java.lang.Exception} handler
 	 * <br><br>
@@ -103,7 +295,10 @@ public class GlobalExceptionHandler
 	@ResponseBody
 	ApiErrorResponse onException(Exception e)
 	{
-		log.error("Internal Exception:", e);
+		if (exceptionLogThrottle.onException(e))
+		{
+			log.error("Internal Exception:", e);
+		}
 		return ApiErrorResponse.builder()
 			.status(HttpStatus.INTERNAL_SERVER_ERROR.toString())
 			.message("An internal exception has occurred. Please contact Malcolm Baatjies for support.")
@@ -0,0 +1,167 @@
+package com.malcolmbaatjies.user.indexes;
+
+import lombok.Getter;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * BloomFilter
+ * <br><br>
+ * This class is used to represent a compact, thread safe, probabilistic set of strings. A Bloom filter never reports a string that was added as absent, but may report a string that was never added as present with a probability close to the configured false positive rate.
+ * <br><br>
+ * Strings are hashed without allocating, so checking and adding are cheap enough for the request path.
+ * <br><br>
+ * This class is annotated with Lombok's {@link lombok.Getter} to generate the getter methods during compile time.
+ */
+@Getter
+public class BloomFilter
+{
+	/**
+	 * The number of bits in the filter.
+	 */
+	private final long numBits;
+
+	/**
+	 * The number of bits set per string.
+	 */
+	private final int numHashes;
+
+	/**
+	 * The bits of the filter.
+	 */
+	private final AtomicLongArray bits;
+
+	/**
+	 * The number of bits currently set.
+	 */
+	private final AtomicLong bitCount = new AtomicLong();
+
+	/**
+	 * Constructor
+	 * <br><br>
+	 * This constructor sizes the filter to hold the expected number of strings at the given false positive rate.
+	 * <br><br>
+	 * @param expectedInsertions The number of strings the filter is expected to hold.
+	 * @param falsePositiveRate The acceptable false positive rate once the filter holds the expected number of strings.
+	 */
+	public BloomFilter(long expectedInsertions, double falsePositiveRate)
+	{
+		if (expectedInsertions <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1)
+		{
+			throw new IllegalArgumentException("Expected insertions must be positive and the false positive rate must be between 0 and 1");
+		}
+
+		long words = Math.max(1, (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)) / Long.SIZE));
+		this.bits = new AtomicLongArray(Math.toIntExact(words));
+		this.numBits = words * Long.SIZE;
+		this.numHashes = Math.max(1, (int) Math.round((double) numBits / expectedInsertions * Math.log(2)));
+	}
+
+	/**
+	 * Add a string to the filter.
+	 *
+	 * @param value The string to add.
+	 */
+	public void put(String value)
+	{
+		long hash1 = hash(value);
+		long hash2 = mix(hash1);
+		for (int i = 0; i < numHashes; i++)
+		{
+			long bit = ((hash1 + i * hash2) & Long.MAX_VALUE) % numBits;
+			int word = (int) (bit >>> 6);
+			long mask = 1L << bit;
+
+			long current;
+			do
+			{
+				current = bits.get(word);
+				if ((current & mask) != 0)
+				{
+					break;
+				}
+			}
+			while (!bits.compareAndSet(word, current, current | mask));
+
+			if ((current & mask) == 0)
+			{
+				bitCount.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Check if a string might have been added to the filter.
+	 *
+	 * @param value The string to check.
+	 * @return False if the string was definitely never added, true if it might have been.
+	 */
+	public boolean mightContain(String value)
+	{
+		long hash1 = hash(value);
+		long hash2 = mix(hash1);
+		for (int i = 0; i < numHashes; i++)
+		{
+			long bit = ((hash1 + i * hash2) & Long.MAX_VALUE) % numBits;
+			if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Get the expected false positive rate given the bits currently set.
+	 *
+	 * @return The expected false positive rate.
+	 */
+	public double getExpectedFalsePositiveRate()
+	{
+		return Math.pow((double) bitCount.get() / numBits, numHashes);
+	}
+
+	/**
+	 * Get the size of the filter's bits in bytes.
+	 *
+	 * @return The size in bytes.
+	 */
+	public long getSizeInBytes()
+	{
+		return numBits / Byte.SIZE;
+	}
+
+	/**
+	 * Hash a string with 64-bit FNV-1a.
+	 *
+	 * @param value The string to hash.
+	 * @return The hash.
+	 */
+	private static long hash(String value)
+	{
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < value.length(); i++)
+		{
+			hash ^= value.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * Derive a second, independent hash with the MurmurHash3 finalizer.
+	 *
+	 * @param hash The hash to mix.
+	 * @return The mixed hash.
+	 */
+	private static long mix(long hash)
+	{
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash | 1;
+	}
+}
@@ -0,0 +1,214 @@
+package com.malcolmbaatjies.user.indexes;
+
+import com.malcolmbaatjies.user.entities.models.User;
+import com.malcolmbaatjies.user.repositories.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.stream.Stream;
+
+/**
+ * EmailBloomFilter
+ * <br><br>
+ * This class is used to keep an in-memory {@link com.malcolmbaatjies.user.indexes.BloomFilter BloomFilter} of the emails of all users, so that emails which are definitely not taken can be ruled out without querying the database. Only possible hits need to be checked against the database.
+ * <br><br>
+ * Emails are compared ignoring case, as the unique constraint on email does.
+ * <br><br>
+ * The filter is built in the background at startup by streaming the email column and is rebuilt periodically, since emails that are deleted or changed cannot be removed from a Bloom filter. Until the first build completes every email is reported as a possible hit. Writes must add the emails they save with {@link #put(String)}.
+ * <br><br>
+ * The filter is sized with {@code users.email-filter.expected-insertions} and {@code users.email-filter.false-positive-rate}, and rebuilt every {@code users.email-filter.rebuild-interval}.
+ * <br><br>
+ * This class is annotated with Lombok's {@link lombok.extern.log4j.Log4j2} to enable logging.
+ * <br><br>
+ * This class is annotated with Spring's {@link org.springframework.stereotype.Component} to indicate that it is a Spring managed bean.
+ * <br><br>
+ * This class is annotated with Spring's {@link org.springframework.context.annotation.Profile} as it reads through the JPA repository, which the reactive profile does not define.
+ */
+@Component
+@Profile("!reactive")
+@Log4j2
+public class EmailBloomFilter
+{
+	/**
+	 * The user repository.
+	 */
+	private final UserRepository userRepository;
+
+	/**
+	 * The transaction template, used to stream the emails inside a read-only transaction.
+	 */
+	private final TransactionTemplate transactionTemplate;
+
+	/**
+	 * The number of emails the filter is sized for.
+	 */
+	private final long expectedInsertions;
+
+	/**
+	 * The false positive rate the filter is sized for.
+	 */
+	private final double falsePositiveRate;
+
+	/**
+	 * The current filter, or null until the first build completes.
+	 */
+	private volatile BloomFilter filter;
+
+	/**
+	 * The filter being rebuilt, or null when no rebuild is running. Emails added during a rebuild are added to both filters so none are lost on the swap.
+	 */
+	private volatile BloomFilter rebuildingFilter;
+
+	/**
+	 * Counts the emails the filter ruled out.
+	 */
+	private final Counter negatives;
+
+	/**
+	 * Counts the emails the filter reported as possible hits.
+	 */
+	private final Counter positives;
+
+	/**
+	 * Counts the possible hits that turned out not to exist in the database.
+	 */
+	private final Counter falsePositives;
+
+	/**
+	 * Constructor
+	 * <br><br>
+	 * This constructor is used to inject the {@link com.malcolmbaatjies.user.repositories.UserRepository}, {@link org.springframework.transaction.PlatformTransactionManager} and {@link io.micrometer.core.instrument.MeterRegistry} and the filter sizing into the EmailBloomFilter.
+	 * <br><br>
+	 * @param userRepository The user repository
+	 * @param transactionManager The transaction manager
+	 * @param meterRegistry The meter registry
+	 * @param expectedInsertions The number of emails the filter is sized for
+	 * @param falsePositiveRate The false positive rate the filter is sized for
+	 */
+	@Autowired
+	public EmailBloomFilter(UserRepository userRepository, PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+		@Value("${users.email-filter.expected-insertions:1000000}") long expectedInsertions,
+		@Value("${users.email-filter.false-positive-rate:0.01}") double falsePositiveRate)
+	{
+		this.userRepository = userRepository;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.transactionTemplate.setReadOnly(true);
+		this.expectedInsertions = expectedInsertions;
+		this.falsePositiveRate = falsePositiveRate;
+
+		this.negatives = Counter.builder("users.email.filter.checks").tag("result", "negative").description("Emails ruled out by the email Bloom filter").register(meterRegistry);
+		this.positives = Counter.builder("users.email.filter.checks").tag("result", "positive").description("Emails reported as possible hits by the email Bloom filter").register(meterRegistry);
+		this.falsePositives = Counter.builder("users.email.filter.false.positives").description("Possible hits that were not found in the database").register(meterRegistry);
+		Gauge.builder("users.email.filter.expected.fpp", this, f -> f.filter == null ? 1 : f.filter.getExpectedFalsePositiveRate())
+			.description("The expected false positive rate of the email Bloom filter given its fill")
+			.register(meterRegistry);
+		Gauge.builder("users.email.filter.observed.fpp", this, EmailBloomFilter::getObservedFalsePositiveRate)
+			.description("The fraction of emails not in the database that the email Bloom filter failed to rule out")
+			.register(meterRegistry);
+	}
+
+	/**
+	 * Check if an email might belong to a user.
+	 *
+	 * @param email The email to check.
+	 * @return False if the email definitely does not belong to a user, true if it might.
+	 */
+	public boolean mightContain(String email)
+	{
+		BloomFilter current = filter;
+		if (current != null && !current.mightContain(User.normalizeEmail(email)))
+		{
+			negatives.increment();
+			return false;
+		}
+		positives.increment();
+		return true;
+	}
+
+	/**
+	 * Add an email that now belongs to a user.
+	 *
+	 * @param email The email to add.
+	 */
+	public void put(String email)
+	{
+		// The rebuilding filter is read before the current one: a rebuild publishes its filter before it clears the rebuilding one, so the email reaches the new filter either way
+		BloomFilter rebuilding = rebuildingFilter;
+		BloomFilter current = filter;
+		String normalized = User.normalizeEmail(email);
+		if (rebuilding != null)
+		{
+			rebuilding.put(normalized);
+		}
+		if (current != null && current != rebuilding)
+		{
+			current.put(normalized);
+		}
+	}
+
+	/**
+	 * Record possible hits that the database showed do not exist.
+	 *
+	 * @param count The number of false positives.
+	 */
+	public void recordFalsePositives(int count)
+	{
+		falsePositives.increment(count);
+	}
+
+	/**
+	 * Rebuild the filter from the emails in the database.
+	 * <br><br>
+	 * This runs in the background once at startup and then every {@code users.email-filter.rebuild-interval} after the previous rebuild finished. The new filter replaces the current one once it is complete.
+	 */
+	@Scheduled(fixedDelayString = "${users.email-filter.rebuild-interval:PT1H}")
+	public void rebuild()
+	{
+		long start = System.nanoTime();
+		BloomFilter rebuilding = new BloomFilter(expectedInsertions, falsePositiveRate);
+		rebuildingFilter = rebuilding;
+		try
+		{
+			long count = transactionTemplate.execute(status -> {
+				try (Stream<String> emails = userRepository.streamAllEmails())
+				{
+					return emails.mapToLong(email -> {
+						rebuilding.put(User.normalizeEmail(email));
+						return 1;
+					}).sum();
+				}
+			});
+			filter = rebuilding;
+
+			log.info("Email Bloom filter rebuilt with {} emails in {} ms using {} bytes, expected false positive rate {}", count, (System.nanoTime() - start) / 1_000_000, rebuilding.getSizeInBytes(), rebuilding.getExpectedFalsePositiveRate());
+		}
+		catch (RuntimeException e)
+		{
+			log.error("Email Bloom filter rebuild failed", e);
+		}
+		finally
+		{
+			rebuildingFilter = null;
+		}
+	}
+
+	/**
+	 * Get the fraction of emails not in the database that the filter failed to rule out.
+	 *
+	 * @return The observed false positive rate.
+	 */
+	private double getObservedFalsePositiveRate()
+	{
+		double absent = negatives.count() + falsePositives.count();
+		return absent == 0 ? 0 : falsePositives.count() / absent;
+	}
+}
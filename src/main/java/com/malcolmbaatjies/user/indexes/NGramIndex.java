@@ -0,0 +1,860 @@
+package com.malcolmbaatjies.user.indexes;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * NGramIndex
+ * <br><br>
+ * This class is used to represent a compact, thread safe, in-memory index for finding documents by partial text. Each document is an id and a few text fields, and a query finds the documents whose fields contain every one of its terms, ranked so that exact field matches come before field prefixes and field prefixes before matches inside a field. Matching ignores case.
+ * <br><br>
+ * Fields are broken into overlapping {@value #GRAM_LENGTH} character grams, starting with two start markers so that the first characters of a field form grams of their own. Terms of {@value #GRAM_LENGTH} characters or more are looked up by all their grams and match anywhere in a field. Shorter terms are looked up by their start gram and only match the start of a field, as is expected of autocomplete.
+ * <br><br>
+ * Documents are numbered in the order they are added, and each gram has a posting list of the numbers of the documents that hold it. As numbers only grow, posting lists are append-only and are stored as delta-encoded varints, usually a byte or two per entry. The posting lists only narrow a query down to candidates, which are then checked against the fields themselves, kept lowercased as UTF-8 in a single byte array, so grams that share a key never produce false matches.
+ * <br><br>
+ * Removing or changing a document only marks its number as removed, and a changed document is added again under a new number. The space taken by removed documents is only reclaimed by building a new index.
+ */
+public class NGramIndex
+{
+	/**
+	 * The number of characters in a gram.
+	 */
+	public static final int GRAM_LENGTH = 3;
+
+	/**
+	 * The number of candidates below which the remaining posting lists are not intersected, as checking the candidates' fields directly is cheaper.
+	 */
+	static final int CHECK_THRESHOLD = 4096;
+
+	/**
+	 * The marker for the start of a field.
+	 */
+	private static final char START = '\u0001';
+
+	/**
+	 * The number of bits each character takes in a gram key. Characters past this range share a key.
+	 */
+	private static final int CHAR_BITS = 10;
+
+	/**
+	 * The byte separating the fields of a document.
+	 */
+	private static final byte SEPARATOR = 0;
+
+	/**
+	 * The score of a term equal to a whole field.
+	 */
+	private static final int EXACT = 4;
+
+	/**
+	 * The score of a term starting a field.
+	 */
+	private static final int PREFIX = 2;
+
+	/**
+	 * The score of a term inside a field.
+	 */
+	private static final int INFIX = 1;
+
+	/**
+	 * Guards the index. Queries share it, writes take it exclusively.
+	 */
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * The posting list of each gram, by gram key.
+	 */
+	private final Map<Integer, Postings> postings = new HashMap<>();
+
+	/**
+	 * The number of each document, by id.
+	 */
+	private final LongIntMap numbers = new LongIntMap();
+
+	/**
+	 * The numbers of removed documents.
+	 */
+	private final BitSet removed = new BitSet();
+
+	/**
+	 * The id of each document, by number.
+	 */
+	private long[] ids = new long[1024];
+
+	/**
+	 * Where the fields of each document start in {@link #text}, by number. The fields end where the next document's start.
+	 */
+	private int[] textStarts = new int[ids.length + 1];
+
+	/**
+	 * The fields of every document, lowercased as UTF-8 and separated by {@link #SEPARATOR}.
+	 */
+	private byte[] text = new byte[16 * 1024];
+
+	/**
+	 * The number of document numbers handed out.
+	 */
+	private int numbered;
+
+	/**
+	 * The number of documents that are not removed.
+	 */
+	private int size;
+
+	/**
+	 * Add a document, replacing any document with the same id.
+	 *
+	 * @param id The document's id.
+	 * @param fields The document's fields. Null fields are indexed as empty.
+	 */
+	public void put(long id, String... fields)
+	{
+		String[] lowercased = new String[fields.length];
+		for (int i = 0; i < fields.length; i++)
+		{
+			lowercased[i] = fields[i] == null ? "" : fields[i].toLowerCase(Locale.ROOT);
+		}
+
+		lock.writeLock().lock();
+		try
+		{
+			removeLocked(id);
+			addLocked(id, lowercased);
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Change some fields of a document. Nothing is done when there is no document with the id.
+	 *
+	 * @param id The document's id.
+	 * @param fields The document's new fields, null where a field is unchanged.
+	 */
+	public void update(long id, String... fields)
+	{
+		lock.writeLock().lock();
+		try
+		{
+			int number = numbers.get(id);
+			if (number < 0)
+			{
+				return;
+			}
+
+			String[] updated = fieldsOf(number, fields.length);
+			for (int i = 0; i < fields.length; i++)
+			{
+				if (fields[i] != null)
+				{
+					updated[i] = fields[i].toLowerCase(Locale.ROOT);
+				}
+			}
+			removeLocked(id);
+			addLocked(id, updated);
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Remove a document.
+	 *
+	 * @param id The document's id.
+	 * @return True if there was a document with the id.
+	 */
+	public boolean remove(long id)
+	{
+		lock.writeLock().lock();
+		try
+		{
+			return removeLocked(id);
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Check whether there is a document with an id.
+	 *
+	 * @param id The document's id.
+	 * @return True if there is a document with the id.
+	 */
+	public boolean contains(long id)
+	{
+		lock.readLock().lock();
+		try
+		{
+			return numbers.get(id) >= 0;
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Find the documents whose fields contain every term of a query, best matches first.
+	 * <br><br>
+	 * Each term scores its best match among the document's fields: {@value #EXACT} for a whole field, {@value #PREFIX} for the start of a field and {@value #INFIX} inside a field. Documents are ranked by their total score, then by the length of their fields, shortest first, then by id.
+	 *
+	 * @param query The terms, separated by whitespace.
+	 * @param limit The maximum number of documents to return.
+	 * @return The ids of the best matching documents, best first.
+	 */
+	public List<Long> search(String query, int limit)
+	{
+		String[] terms = query.trim().toLowerCase(Locale.ROOT).split("\\s+");
+		if (limit <= 0 || terms[0].isEmpty())
+		{
+			return List.of();
+		}
+		byte[][] termBytes = new byte[terms.length][];
+		for (int i = 0; i < terms.length; i++)
+		{
+			termBytes[i] = terms[i].getBytes(StandardCharsets.UTF_8);
+		}
+
+		lock.readLock().lock();
+		try
+		{
+			List<Postings> lists = new ArrayList<>();
+			for (String term : terms)
+			{
+				for (int gram : queryGrams(term))
+				{
+					Postings list = postings.get(gram);
+					if (list == null)
+					{
+						return List.of();
+					}
+					lists.add(list);
+				}
+			}
+
+			// Start from the rarest gram and stop intersecting once few enough candidates are left to check directly
+			lists.sort(Comparator.comparingInt(list -> list.count));
+			int[] candidates = lists.get(0).toArray();
+			for (int i = 1; i < lists.size() && candidates.length > CHECK_THRESHOLD; i++)
+			{
+				candidates = lists.get(i).intersect(candidates);
+			}
+
+			PriorityQueue<Hit> best = new PriorityQueue<>(limit + 1, Hit.WORST_FIRST);
+			for (int number : candidates)
+			{
+				if (removed.get(number))
+				{
+					continue;
+				}
+				int score = score(number, terms, termBytes);
+				if (score > 0)
+				{
+					best.add(new Hit(ids[number], score, textStarts[number + 1] - textStarts[number]));
+					if (best.size() > limit)
+					{
+						best.poll();
+					}
+				}
+			}
+
+			Long[] ranked = new Long[best.size()];
+			for (int i = ranked.length - 1; i >= 0; i--)
+			{
+				ranked[i] = best.poll().id;
+			}
+			return Arrays.asList(ranked);
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Get the number of documents in the index.
+	 *
+	 * @return The number of documents.
+	 */
+	public int getSize()
+	{
+		lock.readLock().lock();
+		try
+		{
+			return size;
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Get the approximate memory taken by the index.
+	 *
+	 * @return The size in bytes.
+	 */
+	public long getSizeInBytes()
+	{
+		lock.readLock().lock();
+		try
+		{
+			// Each posting list also costs a map entry, a boxed key and the list object, about 80 bytes together
+			long bytes = text.length + (long) ids.length * Long.BYTES + (long) textStarts.length * Integer.BYTES + numbers.getSizeInBytes() + removed.size() / Byte.SIZE;
+			for (Postings list : postings.values())
+			{
+				bytes += list.bytes.length + 80;
+			}
+			return bytes;
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Add a document with lowercased fields under a new number. The write lock must be held.
+	 *
+	 * @param id The document's id.
+	 * @param fields The document's lowercased fields.
+	 */
+	private void addLocked(long id, String[] fields)
+	{
+		int number = numbered++;
+		if (number == ids.length)
+		{
+			ids = Arrays.copyOf(ids, ids.length * 2);
+			textStarts = Arrays.copyOf(textStarts, ids.length + 1);
+		}
+		ids[number] = id;
+
+		int end = textStarts[number];
+		for (int i = 0; i < fields.length; i++)
+		{
+			byte[] field = fields[i].getBytes(StandardCharsets.UTF_8);
+			if (end + field.length + 1 > text.length)
+			{
+				text = Arrays.copyOf(text, Math.max(text.length * 2, end + field.length + 1));
+			}
+			if (i > 0)
+			{
+				text[end++] = SEPARATOR;
+			}
+			System.arraycopy(field, 0, text, end, field.length);
+			end += field.length;
+		}
+		textStarts[number + 1] = end;
+
+		numbers.put(id, number);
+		size++;
+
+		for (String field : fields)
+		{
+			String padded = "" + START + START + field;
+			for (int i = 0; i + GRAM_LENGTH <= padded.length(); i++)
+			{
+				postings.computeIfAbsent(gram(padded.charAt(i), padded.charAt(i + 1), padded.charAt(i + 2)), gram -> new Postings()).add(number);
+			}
+		}
+	}
+
+	/**
+	 * Remove a document. The write lock must be held.
+	 *
+	 * @param id The document's id.
+	 * @return True if there was a document with the id.
+	 */
+	private boolean removeLocked(long id)
+	{
+		int number = numbers.remove(id);
+		if (number < 0)
+		{
+			return false;
+		}
+		removed.set(number);
+		size--;
+		return true;
+	}
+
+	/**
+	 * Get the lowercased fields of a document.
+	 *
+	 * @param number The document's number.
+	 * @param count The number of fields the document has.
+	 * @return The fields.
+	 */
+	private String[] fieldsOf(int number, int count)
+	{
+		String[] fields = new String[count];
+		Arrays.fill(fields, "");
+		int field = 0;
+		int fieldStart = textStarts[number];
+		int end = textStarts[number + 1];
+		for (int i = fieldStart; i <= end && field < count; i++)
+		{
+			if (i == end || text[i] == SEPARATOR)
+			{
+				fields[field++] = new String(text, fieldStart, i - fieldStart, StandardCharsets.UTF_8);
+				fieldStart = i + 1;
+			}
+		}
+		return fields;
+	}
+
+	/**
+	 * Score a document against every term of a query.
+	 *
+	 * @param number The document's number.
+	 * @param terms The lowercased terms.
+	 * @param termBytes The lowercased terms as UTF-8.
+	 * @return The total score, or 0 when a term does not match.
+	 */
+	private int score(int number, String[] terms, byte[][] termBytes)
+	{
+		int total = 0;
+		for (int t = 0; t < terms.length; t++)
+		{
+			boolean prefixOnly = terms[t].length() < GRAM_LENGTH;
+			byte[] term = termBytes[t];
+			int best = 0;
+			int fieldStart = textStarts[number];
+			int end = textStarts[number + 1];
+			for (int i = fieldStart; i <= end; i++)
+			{
+				if (i < end && text[i] != SEPARATOR)
+				{
+					continue;
+				}
+				int fieldLength = i - fieldStart;
+				if (fieldLength == term.length && matchesAt(fieldStart, term))
+				{
+					best = EXACT;
+					break;
+				}
+				if (fieldLength > term.length && matchesAt(fieldStart, term))
+				{
+					best = Math.max(best, PREFIX);
+				}
+				else if (best == 0 && !prefixOnly)
+				{
+					for (int at = fieldStart + 1; at + term.length <= i; at++)
+					{
+						if (matchesAt(at, term))
+						{
+							best = INFIX;
+							break;
+						}
+					}
+				}
+				fieldStart = i + 1;
+			}
+			if (best == 0)
+			{
+				return 0;
+			}
+			total += best;
+		}
+		return total;
+	}
+
+	/**
+	 * Check whether a term appears in {@link #text} at a position.
+	 *
+	 * @param at The position.
+	 * @param term The term as UTF-8.
+	 * @return True if the term appears at the position.
+	 */
+	private boolean matchesAt(int at, byte[] term)
+	{
+		for (int i = 0; i < term.length; i++)
+		{
+			if (text[at + i] != term[i])
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Get the grams a lowercased term is looked up by: all its grams, or for short terms the start gram.
+	 *
+	 * @param term The lowercased term.
+	 * @return The gram keys.
+	 */
+	private static int[] queryGrams(String term)
+	{
+		if (term.length() < GRAM_LENGTH)
+		{
+			String padded = (term.length() == 1 ? "" + START + START : "" + START) + term;
+			return new int[] {gram(padded.charAt(0), padded.charAt(1), padded.charAt(2))};
+		}
+		int[] grams = new int[term.length() - GRAM_LENGTH + 1];
+		for (int i = 0; i < grams.length; i++)
+		{
+			grams[i] = gram(term.charAt(i), term.charAt(i + 1), term.charAt(i + 2));
+		}
+		return grams;
+	}
+
+	/**
+	 * Get the key of a gram.
+	 *
+	 * @param first The first character.
+	 * @param second The second character.
+	 * @param third The third character.
+	 * @return The key.
+	 */
+	private static int gram(char first, char second, char third)
+	{
+		return fold(first) << (2 * CHAR_BITS) | fold(second) << CHAR_BITS | fold(third);
+	}
+
+	/**
+	 * Fit a character into {@value #CHAR_BITS} bits, folding the characters past that range together.
+	 *
+	 * @param c The character.
+	 * @return The folded character.
+	 */
+	private static int fold(char c)
+	{
+		return Math.min(c, (1 << CHAR_BITS) - 1);
+	}
+
+	/**
+	 * Hit
+	 * <br><br>
+	 * A matching document and how well it matched.
+	 */
+	private static final class Hit
+	{
+		/**
+		 * Orders hits from the worst match to the best.
+		 */
+		private static final Comparator<Hit> WORST_FIRST = Comparator.<Hit>comparingInt(hit -> hit.score)
+			.thenComparing(Comparator.<Hit>comparingInt(hit -> hit.length).reversed())
+			.thenComparing(Comparator.<Hit>comparingLong(hit -> hit.id).reversed());
+
+		/**
+		 * The document's id.
+		 */
+		private final long id;
+
+		/**
+		 * The document's score.
+		 */
+		private final int score;
+
+		/**
+		 * The length of the document's fields.
+		 */
+		private final int length;
+
+		/**
+		 * Constructor
+		 *
+		 * @param id The document's id.
+		 * @param score The document's score.
+		 * @param length The length of the document's fields.
+		 */
+		private Hit(long id, int score, int length)
+		{
+			this.id = id;
+			this.score = score;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * Postings
+	 * <br><br>
+	 * The increasing numbers of the documents holding a gram, each stored as its difference from the previous one in a varint of 7 bits per byte.
+	 */
+	private static final class Postings
+	{
+		/**
+		 * The encoded numbers.
+		 */
+		private byte[] bytes = new byte[4];
+
+		/**
+		 * The number of bytes used.
+		 */
+		private int length;
+
+		/**
+		 * The last number added.
+		 */
+		private int last = -1;
+
+		/**
+		 * The number of numbers added.
+		 */
+		private int count;
+
+		/**
+		 * Add a number, greater than or equal to the last one. A repeat of the last number is ignored.
+		 *
+		 * @param number The number.
+		 */
+		private void add(int number)
+		{
+			if (number == last)
+			{
+				return;
+			}
+			if (length + 5 > bytes.length)
+			{
+				bytes = Arrays.copyOf(bytes, bytes.length * 2);
+			}
+			int delta = number - last;
+			while ((delta & ~0x7F) != 0)
+			{
+				bytes[length++] = (byte) (delta & 0x7F | 0x80);
+				delta >>>= 7;
+			}
+			bytes[length++] = (byte) delta;
+			last = number;
+			count++;
+		}
+
+		/**
+		 * Decode every number.
+		 *
+		 * @return The numbers, in increasing order.
+		 */
+		private int[] toArray()
+		{
+			int[] numbers = new int[count];
+			int position = 0;
+			int number = -1;
+			for (int i = 0; i < count; i++)
+			{
+				int delta = 0;
+				int shift = 0;
+				byte b;
+				do
+				{
+					b = bytes[position++];
+					delta |= (b & 0x7F) << shift;
+					shift += 7;
+				}
+				while (b < 0);
+				number += delta;
+				numbers[i] = number;
+			}
+			return numbers;
+		}
+
+		/**
+		 * Keep the given numbers that are also in this list.
+		 *
+		 * @param sorted The numbers, in increasing order.
+		 * @return The numbers in both, in increasing order.
+		 */
+		private int[] intersect(int[] sorted)
+		{
+			int[] both = new int[Math.min(sorted.length, count)];
+			int found = 0;
+			int position = 0;
+			int decoded = 0;
+			int number = -1;
+			for (int candidate : sorted)
+			{
+				while (number < candidate && decoded < count)
+				{
+					int delta = 0;
+					int shift = 0;
+					byte b;
+					do
+					{
+						b = bytes[position++];
+						delta |= (b & 0x7F) << shift;
+						shift += 7;
+					}
+					while (b < 0);
+					number += delta;
+					decoded++;
+				}
+				if (number == candidate)
+				{
+					both[found++] = candidate;
+				}
+				else if (number < candidate)
+				{
+					break;
+				}
+			}
+			return Arrays.copyOf(both, found);
+		}
+	}
+
+	/**
+	 * LongIntMap
+	 * <br><br>
+	 * A map from long keys to non-negative int values in two flat arrays, using open addressing with linear probing, so that no key or value is boxed.
+	 */
+	private static final class LongIntMap
+	{
+		/**
+		 * The key marking an empty slot.
+		 */
+		private static final long EMPTY = Long.MIN_VALUE;
+
+		/**
+		 * The keys, by slot.
+		 */
+		private long[] keys = emptyKeys(16);
+
+		/**
+		 * The values, by slot.
+		 */
+		private int[] values = new int[16];
+
+		/**
+		 * The number of keys.
+		 */
+		private int size;
+
+		/**
+		 * Get the value of a key.
+		 *
+		 * @param key The key.
+		 * @return The value, or -1 when the key is absent.
+		 */
+		private int get(long key)
+		{
+			int mask = keys.length - 1;
+			for (int slot = slot(key, mask); ; slot = (slot + 1) & mask)
+			{
+				if (keys[slot] == key)
+				{
+					return values[slot];
+				}
+				if (keys[slot] == EMPTY)
+				{
+					return -1;
+				}
+			}
+		}
+
+		/**
+		 * Set the value of a key.
+		 *
+		 * @param key The key.
+		 * @param value The value.
+		 */
+		private void put(long key, int value)
+		{
+			if ((size + 1) * 2 > keys.length)
+			{
+				long[] oldKeys = keys;
+				int[] oldValues = values;
+				keys = emptyKeys(oldKeys.length * 2);
+				values = new int[oldKeys.length * 2];
+				size = 0;
+				for (int i = 0; i < oldKeys.length; i++)
+				{
+					if (oldKeys[i] != EMPTY)
+					{
+						put(oldKeys[i], oldValues[i]);
+					}
+				}
+			}
+
+			int mask = keys.length - 1;
+			int slot = slot(key, mask);
+			while (keys[slot] != EMPTY && keys[slot] != key)
+			{
+				slot = (slot + 1) & mask;
+			}
+			if (keys[slot] == EMPTY)
+			{
+				keys[slot] = key;
+				size++;
+			}
+			values[slot] = value;
+		}
+
+		/**
+		 * Remove a key.
+		 *
+		 * @param key The key.
+		 * @return The key's value, or -1 when the key was absent.
+		 */
+		private int remove(long key)
+		{
+			int mask = keys.length - 1;
+			int hole = slot(key, mask);
+			while (keys[hole] != key)
+			{
+				if (keys[hole] == EMPTY)
+				{
+					return -1;
+				}
+				hole = (hole + 1) & mask;
+			}
+			int value = values[hole];
+
+			// Shift back the keys after the hole that would no longer be found past it
+			for (int slot = (hole + 1) & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask)
+			{
+				int home = slot(keys[slot], mask);
+				boolean reachable = hole <= slot ? hole < home && home <= slot : hole < home || home <= slot;
+				if (!reachable)
+				{
+					keys[hole] = keys[slot];
+					values[hole] = values[slot];
+					hole = slot;
+				}
+			}
+			keys[hole] = EMPTY;
+			size--;
+			return value;
+		}
+
+		/**
+		 * Get the memory taken by the map.
+		 *
+		 * @return The size in bytes.
+		 */
+		private long getSizeInBytes()
+		{
+			return (long) keys.length * (Long.BYTES + Integer.BYTES);
+		}
+
+		/**
+		 * Get the slot a key is first looked for in.
+		 *
+		 * @param key The key.
+		 * @param mask The number of slots less one.
+		 * @return The slot.
+		 */
+		private static int slot(long key, int mask)
+		{
+			long hash = key * 0x9E3779B97F4A7C15L;
+			return (int) (hash ^ (hash >>> 32)) & mask;
+		}
+
+		/**
+		 * Create an array of empty slots.
+		 *
+		 * @param length The number of slots.
+		 * @return The keys.
+		 */
+		private static long[] emptyKeys(int length)
+		{
+			long[] keys = new long[length];
+			Arrays.fill(keys, EMPTY);
+			return keys;
+		}
+	}
+}
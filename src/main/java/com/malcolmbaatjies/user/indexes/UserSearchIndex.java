@@ -0,0 +1,295 @@
+package com.malcolmbaatjies.user.indexes;
+
+import com.malcolmbaatjies.user.configurations.ReplicaRoutingDataSource;
+import com.malcolmbaatjies.user.entities.exceptions.SearchIndexNotReadyException;
+import com.malcolmbaatjies.user.entities.models.User;
+import com.malcolmbaatjies.user.repositories.UserRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * UserSearchIndex
+ * <br><br>
+ * This class is used to keep an in-memory {@link com.malcolmbaatjies.user.indexes.NGramIndex NGramIndex} over the first name, last name and email of all users, so that users can be searched by partial text without scanning the users table.
+ * <br><br>
+ * The index is built in the background at startup by streaming the users table and is rebuilt periodically to reclaim the space of removed and changed users. Until the first build completes searches are refused. Writes must keep the index up to date with {@link #put(User)}, {@link #update(long, String, String, String)} and {@link #remove(long)}.
+ * <br><br>
+ * The index is rebuilt every {@code users.search.rebuild-interval}.
+ * <br><br>
+ * This class is annotated with Lombok's {@link lombok.extern.log4j.Log4j2} to enable logging.
+ * <br><br>
+ * This class is annotated with Spring's {@link org.springframework.stereotype.Component} to indicate that it is a Spring managed bean.
+ * <br><br>
+ * This class is annotated with Spring's {@link org.springframework.context.annotation.Profile} as it reads through the JPA repository, which the reactive profile does not define.
+ */
+@Component
+@Profile("!reactive")
+@Log4j2
+public class UserSearchIndex
+{
+	/**
+	 * The user repository.
+	 */
+	private final UserRepository userRepository;
+
+	/**
+	 * The entity manager, used to detach streamed users from the persistence context.
+	 */
+	private final EntityManager entityManager;
+
+	/**
+	 * The transaction template, used to stream the users inside a read-only transaction. The rebuild pins its thread to the primary, so the transaction is not served by a replica.
+	 */
+	private final TransactionTemplate transactionTemplate;
+
+	/**
+	 * The transaction template used to reload a changed user. It is not read-only, so the user is read from the primary rather than a replica, and not through a read another caller had already started.
+	 */
+	private final TransactionTemplate reloadTransactionTemplate;
+
+	/**
+	 * The current index, or null until the first build completes.
+	 */
+	private volatile NGramIndex index;
+
+	/**
+	 * The rebuild that is running, or null when none is. Writes during a rebuild are applied to both indexes so none are lost on the swap.
+	 */
+	private volatile Rebuild runningRebuild;
+
+	/**
+	 * Constructor
+	 * <br><br>
+	 * This constructor is used to inject the {@link com.malcolmbaatjies.user.repositories.UserRepository}, {@link javax.persistence.EntityManager}, {@link org.springframework.transaction.PlatformTransactionManager} and {@link io.micrometer.core.instrument.MeterRegistry} into the UserSearchIndex.
+	 * <br><br>
+	 * @param userRepository The user repository
+	 * @param entityManager The entity manager
+	 * @param transactionManager The transaction manager
+	 * @param meterRegistry The meter registry
+	 */
+	@Autowired
+	public UserSearchIndex(UserRepository userRepository, EntityManager entityManager, PlatformTransactionManager transactionManager, MeterRegistry meterRegistry)
+	{
+		this.userRepository = userRepository;
+		this.entityManager = entityManager;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.transactionTemplate.setReadOnly(true);
+		this.reloadTransactionTemplate = new TransactionTemplate(transactionManager);
+
+		Gauge.builder("users.search.index.users", this, i -> i.index == null ? 0 : i.index.getSize())
+			.description("The number of users in the search index")
+			.register(meterRegistry);
+		Gauge.builder("users.search.index.bytes", this, i -> i.index == null ? 0 : i.index.getSizeInBytes())
+			.description("The approximate memory taken by the search index")
+			.baseUnit("bytes")
+			.register(meterRegistry);
+	}
+
+	/**
+	 * Find the users matching a query, best matches first. See {@link NGramIndex#search(String, int)}.
+	 *
+	 * @param query The terms to search for, separated by whitespace.
+	 * @param limit The maximum number of users to return.
+	 * @return The ids of the best matching users, best first.
+	 * @throws SearchIndexNotReadyException Thrown when the index has not been built yet.
+	 */
+	public List<Long> search(String query, int limit)
+	{
+		NGramIndex current = index;
+		if (current == null)
+		{
+			throw new SearchIndexNotReadyException();
+		}
+		return current.search(query, limit);
+	}
+
+	/**
+	 * Add a user that was created or replaced.
+	 *
+	 * @param user The saved user.
+	 */
+	public void put(User user)
+	{
+		// The running rebuild is read before the current index: a rebuild publishes its index before it stops running, so the write reaches the new index either way
+		Rebuild rebuild = runningRebuild;
+		NGramIndex current = index;
+		if (rebuild != null)
+		{
+			synchronized (rebuild)
+			{
+				rebuild.written.add(user.getId());
+				rebuild.index.put(user.getId(), user.getFirstName(), user.getLastName(), user.getEmail());
+			}
+		}
+		if (current != null && (rebuild == null || current != rebuild.index))
+		{
+			current.put(user.getId(), user.getFirstName(), user.getLastName(), user.getEmail());
+		}
+	}
+
+	/**
+	 * Change some fields of a user.
+	 * <br><br>
+	 * When a rebuild is running and has not read the user yet, the user is reloaded from the database into the rebuilt index, as its unchanged fields are not known here and the rebuild may be reading from before the change.
+	 *
+	 * @param id The user's id.
+	 * @param firstName The user's new first name, or null when it is unchanged.
+	 * @param lastName The user's new last name, or null when it is unchanged.
+	 * @param email The user's new email, or null when it is unchanged.
+	 */
+	public void update(long id, String firstName, String lastName, String email)
+	{
+		Rebuild rebuild = runningRebuild;
+		NGramIndex current = index;
+		if (rebuild != null)
+		{
+			boolean reload;
+			synchronized (rebuild)
+			{
+				rebuild.written.add(id);
+				reload = !rebuild.index.contains(id);
+				if (!reload)
+				{
+					rebuild.index.update(id, firstName, lastName, email);
+				}
+			}
+			if (reload)
+			{
+				reloadInto(rebuild, id);
+			}
+		}
+		if (current != null && (rebuild == null || current != rebuild.index))
+		{
+			current.update(id, firstName, lastName, email);
+		}
+	}
+
+	/**
+	 * Remove a user that was deleted.
+	 *
+	 * @param id The user's id.
+	 */
+	public void remove(long id)
+	{
+		Rebuild rebuild = runningRebuild;
+		NGramIndex current = index;
+		if (rebuild != null)
+		{
+			synchronized (rebuild)
+			{
+				rebuild.written.add(id);
+				rebuild.index.remove(id);
+			}
+		}
+		if (current != null && (rebuild == null || current != rebuild.index))
+		{
+			current.remove(id);
+		}
+	}
+
+	/**
+	 * Load a user from the database into the index of a running rebuild.
+	 * <br><br>
+	 * The user is only added when no other write reached the rebuilt index while it was loaded, as that write is at least as recent.
+	 *
+	 * @param rebuild The running rebuild.
+	 * @param id The user's id.
+	 */
+	private void reloadInto(Rebuild rebuild, long id)
+	{
+		try
+		{
+			reloadTransactionTemplate.executeWithoutResult(status -> userRepository.findById(id).ifPresent(user -> {
+				synchronized (rebuild)
+				{
+					if (!rebuild.index.contains(id))
+					{
+						rebuild.index.put(id, user.getFirstName(), user.getLastName(), user.getEmail());
+					}
+				}
+			}));
+		}
+		catch (RuntimeException e)
+		{
+			// The user is left out of the rebuilt index until the next rebuild rather than failing the write that changed it
+			log.warn("Could not reload user {} into the search index being rebuilt", id, e);
+		}
+	}
+
+	/**
+	 * Rebuild the index from the users in the database.
+	 * <br><br>
+	 * This runs in the background once at startup and then every {@code users.search.rebuild-interval} after the previous rebuild finished. The new index replaces the current one once it is complete.
+	 * <br><br>
+	 * The users are read from the primary even when there are read replicas. Only writes made while the rebuild runs are applied to the new index, so a replica that had not caught up on an earlier write, such as a delete, would leave the rebuilt index without it until the next rebuild.
+	 */
+	@Scheduled(fixedDelayString = "${users.search.rebuild-interval:PT6H}")
+	public void rebuild()
+	{
+		long start = System.nanoTime();
+		Rebuild rebuild = new Rebuild();
+		runningRebuild = rebuild;
+		ReplicaRoutingDataSource.pinToPrimary(true);
+		try
+		{
+			transactionTemplate.executeWithoutResult(status -> {
+				try (Stream<User> users = userRepository.streamAllByOrderByIdAsc())
+				{
+					users.forEach(user -> {
+						synchronized (rebuild)
+						{
+							if (!rebuild.written.contains(user.getId()))
+							{
+								rebuild.index.put(user.getId(), user.getFirstName(), user.getLastName(), user.getEmail());
+							}
+						}
+						entityManager.detach(user);
+					});
+				}
+			});
+			index = rebuild.index;
+
+			log.info("Search index rebuilt with {} users in {} ms using {} bytes", rebuild.index.getSize(), (System.nanoTime() - start) / 1_000_000, rebuild.index.getSizeInBytes());
+		}
+		catch (RuntimeException e)
+		{
+			log.error("Search index rebuild failed", e);
+		}
+		finally
+		{
+			ReplicaRoutingDataSource.pinToPrimary(false);
+			runningRebuild = null;
+		}
+	}
+
+	/**
+	 * Rebuild
+	 * <br><br>
+	 * An index being rebuilt and the ids written while it is, which the rebuild must not overwrite with what it read from the database before the write. Both are guarded by the rebuild's lock.
+	 */
+	private static final class Rebuild
+	{
+		/**
+		 * The index being rebuilt.
+		 */
+		private final NGramIndex index = new NGramIndex();
+
+		/**
+		 * The ids written during the rebuild.
+		 */
+		private final Set<Long> written = new HashSet<>();
+	}
+}
@@ -0,0 +1,339 @@
+package com.malcolmbaatjies.user.queues;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CreateJournal
+ * <br><br>
+ * This class is used to keep the users waiting to be created in an append-only file, so that they are not lost when the application crashes or restarts before writing them to the database.
+ * <br><br>
+ * Each line of the file is a JSON entry. An entry with a user records that the user was queued, and an entry with {@code done} records that the user with that ticket was handled and need not be recovered. The file is compacted by rewriting it with only the users still waiting.
+ * <br><br>
+ * Appends are written to the file under a lock but forced to the disk outside it, and each force covers every append written before it, so concurrent requests share a single fsync instead of queueing for one each.
+ * <br><br>
+ * This class is annotated with Lombok's {@link lombok.extern.log4j.Log4j2} to enable logging.
+ */
+@Log4j2
+class CreateJournal implements Closeable
+{
+	/**
+	 * The journal file.
+	 */
+	private final Path path;
+
+	/**
+	 * Writes entries as JSON.
+	 */
+	private final ObjectWriter writer;
+
+	/**
+	 * Reads entries from JSON.
+	 */
+	private final ObjectReader reader;
+
+	/**
+	 * Whether appends are forced to the disk before they are acknowledged.
+	 */
+	private final boolean fsync;
+
+	/**
+	 * Guards forcing the file, and is taken before the journal itself when both are needed.
+	 */
+	private final Object forceLock = new Object();
+
+	/**
+	 * The open journal file. Guarded by the journal.
+	 */
+	private FileChannel channel;
+
+	/**
+	 * The number of bytes appended since the journal was opened, across rewrites. Guarded by the journal.
+	 */
+	private long appended;
+
+	/**
+	 * The number of bytes written to the current file. Guarded by the journal.
+	 */
+	private long size;
+
+	/**
+	 * The number of appended bytes known to be on the disk. Guarded by {@link #forceLock}.
+	 */
+	private long forced;
+
+	/**
+	 * Constructor
+	 *
+	 * @param path The journal file, created along with its directory when missing.
+	 * @param objectMapper The object mapper.
+	 * @param fsync Whether appends are forced to the disk before they are acknowledged.
+	 * @throws IOException Thrown when the file cannot be opened.
+	 */
+	CreateJournal(Path path, ObjectMapper objectMapper, boolean fsync) throws IOException
+	{
+		this.path = path;
+		this.writer = objectMapper.writerFor(Entry.class);
+		this.reader = objectMapper.readerFor(Entry.class);
+		this.fsync = fsync;
+		if (path.toAbsolutePath().getParent() != null)
+		{
+			Files.createDirectories(path.toAbsolutePath().getParent());
+		}
+		this.channel = open(path);
+		this.size = channel.size();
+	}
+
+	/**
+	 * Read the users that were queued and not handled, then compact the journal down to them.
+	 * <br><br>
+	 * A last line that cannot be read was torn by a crash part way through an append, which was never acknowledged, and is dropped.
+	 *
+	 * @return The users still waiting, in the order they were queued.
+	 * @throws IOException Thrown when the file cannot be read or rewritten.
+	 */
+	List<Entry> recover() throws IOException
+	{
+		Map<String, Entry> waiting = new LinkedHashMap<>();
+		try (BufferedReader lines = Files.newBufferedReader(path, StandardCharsets.UTF_8))
+		{
+			String line;
+			int number = 0;
+			while ((line = lines.readLine()) != null)
+			{
+				number++;
+				if (line.isBlank())
+				{
+					continue;
+				}
+				Entry entry;
+				try
+				{
+					entry = reader.readValue(line);
+				}
+				catch (JsonProcessingException e)
+				{
+					log.warn("Skipping unreadable line {} of create journal {}", number, path);
+					continue;
+				}
+				if (entry.isDone())
+				{
+					waiting.remove(entry.getTicket());
+				}
+				else
+				{
+					waiting.put(entry.getTicket(), entry);
+				}
+			}
+		}
+
+		List<Entry> entries = new ArrayList<>(waiting.values());
+		rewrite(entries);
+		return entries;
+	}
+
+	/**
+	 * Append entries. They are only on the disk once {@link #force(long)} returns for the returned position.
+	 *
+	 * @param entries The entries.
+	 * @return The position to force up to.
+	 * @throws IOException Thrown when the file cannot be written.
+	 */
+	synchronized long append(Collection<Entry> entries) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.wrap(encode(entries));
+		while (buffer.hasRemaining())
+		{
+			channel.write(buffer);
+		}
+		size += buffer.limit();
+		appended += buffer.limit();
+		return appended;
+	}
+
+	/**
+	 * Wait until everything appended up to a position is on the disk. Whoever forces the file first forces the appends of everyone waiting behind it.
+	 *
+	 * @param position The position returned by {@link #append(Collection)}.
+	 * @throws IOException Thrown when the file cannot be forced.
+	 */
+	void force(long position) throws IOException
+	{
+		if (!fsync)
+		{
+			return;
+		}
+		synchronized (forceLock)
+		{
+			if (forced >= position)
+			{
+				return;
+			}
+			long target;
+			FileChannel current;
+			synchronized (this)
+			{
+				target = appended;
+				current = channel;
+			}
+			current.force(false);
+			forced = target;
+		}
+	}
+
+	/**
+	 * Replace the journal with one holding only the given users, atomically.
+	 *
+	 * @param entries The users still waiting.
+	 * @throws IOException Thrown when the file cannot be rewritten.
+	 */
+	void rewrite(Collection<Entry> entries) throws IOException
+	{
+		synchronized (forceLock)
+		{
+			synchronized (this)
+			{
+				Path rewritten = path.resolveSibling(path.getFileName() + ".tmp");
+				byte[] bytes = encode(entries);
+				try (FileChannel out = FileChannel.open(rewritten, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+				{
+					ByteBuffer buffer = ByteBuffer.wrap(bytes);
+					while (buffer.hasRemaining())
+					{
+						out.write(buffer);
+					}
+					out.force(false);
+				}
+				channel.close();
+				Files.move(rewritten, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				channel = open(path);
+				size = bytes.length;
+				forced = appended;
+			}
+		}
+	}
+
+	/**
+	 * Get the size of the journal file.
+	 *
+	 * @return The size in bytes.
+	 */
+	synchronized long size()
+	{
+		return size;
+	}
+
+	@Override
+	public synchronized void close() throws IOException
+	{
+		channel.close();
+	}
+
+	/**
+	 * Encode entries as lines of JSON.
+	 *
+	 * @param entries The entries.
+	 * @return The encoded lines.
+	 * @throws IOException Thrown when an entry cannot be encoded.
+	 */
+	private byte[] encode(Collection<Entry> entries) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream(entries.size() * 128);
+		for (Entry entry : entries)
+		{
+			writer.writeValue(out, entry);
+			out.write('\n');
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Open a journal file for appending.
+	 *
+	 * @param path The journal file.
+	 * @return The channel.
+	 * @throws IOException Thrown when the file cannot be opened.
+	 */
+	private static FileChannel open(Path path) throws IOException
+	{
+		return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * Entry
+	 * <br><br>
+	 * A line of the journal: a queued user, or the ticket of a user that was handled.
+	 * <br><br>
+	 * This class is annotated with Lombok's {@link lombok.Getter}, {@link lombok.Setter}, {@link lombok.NoArgsConstructor} and {@link lombok.AllArgsConstructor} so that Jackson can read and write it.
+	 * <br><br>
+	 * This class is annotated with Jackson's {@link com.fasterxml.jackson.annotation.JsonInclude} to leave the user out of done entries.
+	 */
+	@Getter
+	@Setter
+	@NoArgsConstructor
+	@AllArgsConstructor
+	@JsonInclude(JsonInclude.Include.NON_DEFAULT)
+	static class Entry
+	{
+		/**
+		 * The ticket the user was queued under.
+		 */
+		private String ticket;
+
+		/**
+		 * The user's first name.
+		 */
+		private String firstName;
+
+		/**
+		 * The user's last name.
+		 */
+		private String lastName;
+
+		/**
+		 * The user's email.
+		 */
+		private String email;
+
+		/**
+		 * Whether the user was handled.
+		 */
+		private boolean done;
+
+		/**
+		 * Create the entry recording that a user was handled.
+		 *
+		 * @param ticket The ticket the user was queued under.
+		 * @return The entry.
+		 */
+		static Entry done(String ticket)
+		{
+			return new Entry(ticket, null, null, null, true);
+		}
+	}
+}
@@ -0,0 +1,548 @@
+package com.malcolmbaatjies.user.queues;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.malcolmbaatjies.user.entities.exceptions.CreateQueueFullException;
+import com.malcolmbaatjies.user.entities.exceptions.UserExistsException;
+import com.malcolmbaatjies.user.entities.models.User;
+import com.malcolmbaatjies.user.entities.requests.NewUserRequest;
+import com.malcolmbaatjies.user.entities.responses.PendingUserResponse;
+import com.malcolmbaatjies.user.indexes.EmailBloomFilter;
+import com.malcolmbaatjies.user.indexes.UserSearchIndex;
+import com.malcolmbaatjies.user.repositories.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+
+/**
+ * UserCreateQueue
+ * <br><br>
+ * This class is used to create users asynchronously, so that signup spikes are absorbed by a queue instead of by the database. A queued user is acknowledged once it is in the {@link com.malcolmbaatjies.user.queues.CreateJournal CreateJournal} on the local disk, and a background writer drains the queue into the database in batches, the same way as a batch create.
+ * <br><br>
+ * The queue holds at most {@code users.async-create.capacity} users, and further users are refused with a {@link com.malcolmbaatjies.user.entities.exceptions.CreateQueueFullException CreateQueueFullException} until the writer catches up. When the database fails a batch, the writer waits {@code users.async-create.retry-delay} and tries the same batch again. Users left in the journal by a crash or a shutdown are queued again at startup. A user that was written but not yet marked as handled then finds its email taken; as it may be the user itself, the user with the email is looked up and, when it has the same names, the queued user is recorded as created by it rather than refused. The same is done for a batch retried after the database failed, as the failure may have come after the commit.
+ * <br><br>
+ * The status of each queued user is kept in memory for {@code users.async-create.status-ttl} after it last changed.
+ * <br><br>
+ * This class is annotated with Lombok's {@link lombok.extern.log4j.Log4j2} to enable logging.
+ * <br><br>
+ * This class is annotated with Spring's {@link org.springframework.stereotype.Component} to indicate that it is a Spring managed bean.
+ * <br><br>
+ * This class is annotated with Spring's {@link org.springframework.boot.autoconfigure.condition.ConditionalOnProperty} as the asynchronous create mode is opt-in, with {@code users.async-create.enabled}.
+ * <br><br>
+ * This class is annotated with Spring's {@link org.springframework.context.annotation.Profile} as it writes through the JPA repository, which the reactive profile does not define.
+ */
+@Component
+@ConditionalOnProperty(name = "users.async-create.enabled", havingValue = "true")
+@Profile("!reactive")
+@Log4j2
+public class UserCreateQueue implements SmartLifecycle
+{
+	/**
+	 * How long the writer waits for a user before checking whether it should stop.
+	 */
+	private static final long POLL_MILLIS = 100;
+
+	/**
+	 * The user repository.
+	 */
+	private final UserRepository userRepository;
+
+	/**
+	 * The email Bloom filter, used to rule out emails that are definitely not taken without querying the database.
+	 */
+	private final EmailBloomFilter emailBloomFilter;
+
+	/**
+	 * The user search index, kept up to date with the created users.
+	 */
+	private final UserSearchIndex userSearchIndex;
+
+	/**
+	 * The journal of queued users.
+	 */
+	private final CreateJournal journal;
+
+	/**
+	 * The maximum number of queued users.
+	 */
+	private final int capacity;
+
+	/**
+	 * The maximum number of users written per batch.
+	 */
+	private final int batchSize;
+
+	/**
+	 * How long to wait before retrying a batch the database failed.
+	 */
+	private final Duration retryDelay;
+
+	/**
+	 * The journal size past which it is compacted.
+	 */
+	private final long compactBytes;
+
+	/**
+	 * The queued users, in the order they were queued. Only added to while holding the queue's lock, so that the capacity check and the journal stay in step.
+	 */
+	private final BlockingQueue<CreateJournal.Entry> queue = new LinkedBlockingQueue<>();
+
+	/**
+	 * The tickets of the queued users that may already be in the database, as they were recovered from the journal or were in a batch the database failed.
+	 */
+	private final Set<String> retried = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * The status of each queued user, by ticket.
+	 */
+	private final Cache<String, PendingUserResponse> statuses;
+
+	/**
+	 * Counts the users written to the database.
+	 */
+	private final Counter created;
+
+	/**
+	 * Counts the users refused by the database as duplicates.
+	 */
+	private final Counter failed;
+
+	/**
+	 * Counts the users refused because the queue was full.
+	 */
+	private final Counter rejected;
+
+	/**
+	 * Times each batch written to the database.
+	 */
+	private final Timer batches;
+
+	/**
+	 * The background writer, or null when it is not running.
+	 */
+	private volatile Thread writer;
+
+	/**
+	 * Whether the writer should keep running.
+	 */
+	private volatile boolean running;
+
+	/**
+	 * Constructor
+	 * <br><br>
+	 * This constructor is used to inject the {@link com.malcolmbaatjies.user.repositories.UserRepository}, {@link com.malcolmbaatjies.user.indexes.EmailBloomFilter}, {@link com.malcolmbaatjies.user.indexes.UserSearchIndex}, {@link com.fasterxml.jackson.databind.ObjectMapper} and {@link io.micrometer.core.instrument.MeterRegistry} and the queue settings into the UserCreateQueue. The users left in the journal are queued again.
+	 * <br><br>
+	 * @param userRepository The user repository
+	 * @param emailBloomFilter The email Bloom filter
+	 * @param userSearchIndex The user search index
+	 * @param objectMapper The object mapper
+	 * @param meterRegistry The meter registry
+	 * @param journalPath The journal file
+	 * @param fsync Whether users are forced to the disk before they are acknowledged
+	 * @param capacity The maximum number of queued users
+	 * @param batchSize The maximum number of users written per batch
+	 * @param retryDelay How long to wait before retrying a batch the database failed
+	 * @param compactBytes The journal size past which it is compacted
+	 * @param statusTtl How long the status of a queued user is kept after it last changed
+	 * @throws IOException Thrown when the journal cannot be opened or recovered.
+	 */
+	@Autowired
+	public UserCreateQueue(UserRepository userRepository, EmailBloomFilter emailBloomFilter, UserSearchIndex userSearchIndex, ObjectMapper objectMapper, MeterRegistry meterRegistry,
+		@Value("${users.async-create.journal:data/create-journal.log}") String journalPath,
+		@Value("${users.async-create.fsync:true}") boolean fsync,
+		@Value("${users.async-create.capacity:100000}") int capacity,
+		@Value("${users.async-create.batch-size:500}") int batchSize,
+		@Value("${users.async-create.retry-delay:PT1S}") Duration retryDelay,
+		@Value("${users.async-create.journal-compact-bytes:67108864}") long compactBytes,
+		@Value("${users.async-create.status-ttl:PT1H}") Duration statusTtl) throws IOException
+	{
+		this.userRepository = userRepository;
+		this.emailBloomFilter = emailBloomFilter;
+		this.userSearchIndex = userSearchIndex;
+		this.capacity = capacity;
+		this.batchSize = batchSize;
+		this.retryDelay = retryDelay;
+		this.compactBytes = compactBytes;
+		this.statuses = Caffeine.newBuilder().expireAfterWrite(statusTtl).build();
+		this.journal = new CreateJournal(Path.of(journalPath), objectMapper, fsync);
+
+		this.created = Counter.builder("users.create.queue.drained").tag("result", "created").description("Queued users written to the database").register(meterRegistry);
+		this.failed = Counter.builder("users.create.queue.drained").tag("result", "exists").description("Queued users refused as their email was taken").register(meterRegistry);
+		this.rejected = Counter.builder("users.create.queue.rejected").description("Users refused because the create queue was full").register(meterRegistry);
+		this.batches = Timer.builder("users.create.queue.batch").description("The time taken to write a batch of queued users to the database").register(meterRegistry);
+		Gauge.builder("users.create.queue.depth", queue, Collection::size)
+			.description("The number of users waiting to be written to the database")
+			.register(meterRegistry);
+		Gauge.builder("users.create.queue.journal.bytes", this, q -> q.journal.size())
+			.description("The size of the create journal")
+			.baseUnit("bytes")
+			.register(meterRegistry);
+
+		for (CreateJournal.Entry entry : journal.recover())
+		{
+			statuses.put(entry.getTicket(), pending(entry.getTicket()));
+			retried.add(entry.getTicket());
+			queue.add(entry);
+		}
+		if (!queue.isEmpty())
+		{
+			log.info("Recovered {} queued users from create journal {}", queue.size(), journalPath);
+		}
+	}
+
+	/**
+	 * Queue a user to be created. The user is on the disk when this returns.
+	 *
+	 * @param newUserRequest The new user details, already validated.
+	 * @return The ticket to look up the user's status with.
+	 * @throws CreateQueueFullException Thrown when the queue is full.
+	 */
+	public String enqueue(NewUserRequest newUserRequest)
+	{
+		String ticket = UUID.randomUUID().toString();
+		CreateJournal.Entry entry = new CreateJournal.Entry(ticket, newUserRequest.getFirstName(), newUserRequest.getLastName(), newUserRequest.getEmail(), false);
+		try
+		{
+			long position;
+			synchronized (queue)
+			{
+				if (queue.size() >= capacity)
+				{
+					rejected.increment();
+					throw new CreateQueueFullException(capacity);
+				}
+				position = journal.append(List.of(entry));
+				statuses.put(ticket, pending(ticket));
+				queue.add(entry);
+			}
+			journal.force(position);
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException("Could not journal the queued user", e);
+		}
+		return ticket;
+	}
+
+	/**
+	 * Get the status of a queued user.
+	 *
+	 * @param ticket The ticket the user was queued under.
+	 * @return The status, or empty when the ticket is unknown or its status expired.
+	 */
+	public Optional<PendingUserResponse> getStatus(String ticket)
+	{
+		return Optional.ofNullable(statuses.getIfPresent(ticket));
+	}
+
+	/**
+	 * Write the users at the head of the queue to the database, without waiting for more to arrive.
+	 *
+	 * @return False when the queue was empty.
+	 */
+	boolean drain()
+	{
+		List<CreateJournal.Entry> batch = new ArrayList<>(batchSize);
+		queue.drainTo(batch, batchSize);
+		return !batch.isEmpty() && write(batch);
+	}
+
+	/**
+	 * Write a batch of queued users to the database and mark them as handled in the journal.
+	 * <br><br>
+	 * Users whose email is taken, or repeated earlier in the batch in any case, are refused, unless they may already have been written, see {@link #refuseOrFind}, and the rest are inserted together. When an insert still hits the unique email constraint, because of a user created at the same time, the batch falls back to inserting its users one at a time. As a sharded insert commits each shard on its own, some of the batch may already have been written by then, so a user refused in the fallback is looked up first.
+	 *
+	 * @param batch The users.
+	 * @return False when the database failed and the batch must be retried.
+	 */
+	boolean write(List<CreateJournal.Entry> batch)
+	{
+		long start = System.nanoTime();
+		try
+		{
+			// Compared in lower case, like the unique constraint on email
+			Set<String> emails = new HashSet<>();
+			Set<String> possibleTakenEmails = new HashSet<>();
+			for (CreateJournal.Entry entry : batch)
+			{
+				String email = User.normalizeEmail(entry.getEmail());
+				if (emails.add(email) && emailBloomFilter.mightContain(email))
+				{
+					possibleTakenEmails.add(email);
+				}
+			}
+			Set<String> takenEmails = new HashSet<>();
+			if (!possibleTakenEmails.isEmpty())
+			{
+				userRepository.findExistingEmails(possibleTakenEmails).forEach(email -> takenEmails.add(User.normalizeEmail(email)));
+			}
+			emailBloomFilter.recordFalsePositives(possibleTakenEmails.size() - takenEmails.size());
+
+			List<CreateJournal.Entry> toCreate = new ArrayList<>(batch.size());
+			for (CreateJournal.Entry entry : batch)
+			{
+				if (takenEmails.add(User.normalizeEmail(entry.getEmail())))
+				{
+					toCreate.add(entry);
+				}
+				else
+				{
+					refuseOrFind(entry, false);
+				}
+			}
+
+			if (!toCreate.isEmpty())
+			{
+				try
+				{
+					List<User> saved = userRepository.saveAll(toCreate.stream().map(UserCreateQueue::toUser).collect(Collectors.toList()));
+					for (int i = 0; i < saved.size(); i++)
+					{
+						accept(toCreate.get(i), saved.get(i));
+					}
+				}
+				catch (DataIntegrityViolationException e)
+				{
+					for (CreateJournal.Entry entry : toCreate)
+					{
+						try
+						{
+							accept(entry, userRepository.save(toUser(entry)));
+						}
+						catch (DataIntegrityViolationException duplicate)
+						{
+							refuseOrFind(entry, true);
+						}
+					}
+				}
+			}
+		}
+		catch (DataAccessException e)
+		{
+			log.warn("Could not write {} queued users, retrying in {}", batch.size(), retryDelay, e);
+			batch.forEach(entry -> retried.add(entry.getTicket()));
+			return false;
+		}
+		finally
+		{
+			batches.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+		batch.forEach(entry -> retried.remove(entry.getTicket()));
+
+		try
+		{
+			List<CreateJournal.Entry> done = new ArrayList<>(batch.size());
+			batch.forEach(entry -> done.add(CreateJournal.Entry.done(entry.getTicket())));
+			journal.force(journal.append(done));
+
+			if (journal.size() > compactBytes)
+			{
+				synchronized (queue)
+				{
+					journal.rewrite(new ArrayList<>(queue));
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			// The users are in the database, and are found there by email when the journal is recovered
+			log.error("Could not mark {} queued users as handled in the create journal", batch.size(), e);
+		}
+		return true;
+	}
+
+	@Override
+	public void start()
+	{
+		running = true;
+		writer = new Thread(this::run, "users-create-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	@Override
+	public void stop()
+	{
+		running = false;
+		Thread stopping = writer;
+		if (stopping != null)
+		{
+			try
+			{
+				// The batch being written is finished, the rest stays in the journal for the next start
+				stopping.join();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+		writer = null;
+		try
+		{
+			journal.close();
+		}
+		catch (IOException e)
+		{
+			log.warn("Could not close the create journal", e);
+		}
+	}
+
+	@Override
+	public boolean isRunning()
+	{
+		return writer != null;
+	}
+
+	/**
+	 * Drain the queue into the database until stopped.
+	 */
+	private void run()
+	{
+		List<CreateJournal.Entry> batch = new ArrayList<>(batchSize);
+		while (running)
+		{
+			try
+			{
+				if (batch.isEmpty())
+				{
+					CreateJournal.Entry first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+					if (first == null)
+					{
+						continue;
+					}
+					batch.add(first);
+					queue.drainTo(batch, batchSize - 1);
+				}
+
+				if (write(batch))
+				{
+					batch.clear();
+				}
+				else
+				{
+					Thread.sleep(retryDelay.toMillis());
+				}
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				return;
+			}
+			catch (RuntimeException e)
+			{
+				log.error("Create writer failed on a batch of {} queued users, retrying in {}", batch.size(), retryDelay, e);
+				batch.forEach(entry -> retried.add(entry.getTicket()));
+				LockSupport.parkNanos(retryDelay.toNanos());
+			}
+		}
+	}
+
+	/**
+	 * Record that a queued user was created.
+	 *
+	 * @param entry The queued user.
+	 * @param user The created user.
+	 */
+	private void accept(CreateJournal.Entry entry, User user)
+	{
+		emailBloomFilter.put(user.getEmail());
+		userSearchIndex.put(user);
+		statuses.put(entry.getTicket(), PendingUserResponse.builder()
+			.status(HttpStatus.CREATED.toString())
+			.message("User created.")
+			.ticket(entry.getTicket())
+			.user(user)
+			.build());
+		created.increment();
+	}
+
+	/**
+	 * Record that a queued user's email was taken. A user that may already have been written, because it was retried or its batch was partly written, is recorded as created by the user with its email, when that user has the same names, and is otherwise refused.
+	 *
+	 * @param entry The queued user.
+	 * @param partlyWritten Whether the user's batch may have been partly written.
+	 */
+	private void refuseOrFind(CreateJournal.Entry entry, boolean partlyWritten)
+	{
+		Optional<User> written = partlyWritten || retried.contains(entry.getTicket()) ? userRepository.findUserByEmail(entry.getEmail())
+			.filter(user -> Objects.equals(user.getFirstName(), entry.getFirstName()) && Objects.equals(user.getLastName(), entry.getLastName())) : Optional.empty();
+		if (written.isPresent())
+		{
+			accept(entry, written.get());
+		}
+		else
+		{
+			refuse(entry);
+		}
+	}
+
+	/**
+	 * Record that a queued user was refused as its email was taken.
+	 *
+	 * @param entry The queued user.
+	 */
+	private void refuse(CreateJournal.Entry entry)
+	{
+		statuses.put(entry.getTicket(), PendingUserResponse.builder()
+			.status(HttpStatus.BAD_REQUEST.toString())
+			.message(new UserExistsException(entry.getEmail()).getMessage())
+			.ticket(entry.getTicket())
+			.build());
+		failed.increment();
+	}
+
+	/**
+	 * Build the status of a user that is still queued.
+	 *
+	 * @param ticket The ticket the user was queued under.
+	 * @return The status.
+	 */
+	private static PendingUserResponse pending(String ticket)
+	{
+		return PendingUserResponse.builder()
+			.status(HttpStatus.ACCEPTED.toString())
+			.message("User queued.")
+			.ticket(ticket)
+			.build();
+	}
+
+	/**
+	 * Build the new user for a queued user.
+	 *
+	 * @param entry The queued user.
+	 * @return The new user.
+	 */
+	private static User toUser(CreateJournal.Entry entry)
+	{
+		return User.builder()
+			.firstName(entry.getFirstName())
+			.lastName(entry.getLastName())
+			.email(entry.getEmail())
+			.build();
+	}
+}
@@ -0,0 +1,115 @@
+package com.malcolmbaatjies.user.repositories;
+
+import com.malcolmbaatjies.user.configurations.ReplicaRoutingDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * CoalescingRepositoryInterceptor
+ * <br><br>
+ * This class is used to coalesce concurrent identical reads of the {@link com.malcolmbaatjies.user.repositories.UserRepository UserRepository}: while a lookup of a user by id or a check for an email is running, further calls for the same id or email wait for it and share its result, or its exception, instead of each sending the same query to the database. This keeps a burst of requests for a popular user, such as right after its cache entry expired, down to a single query.
+ * <br><br>
+ * A call waits for the lookup it joined for at most the given timeout, the time the lookup itself may wait for a database connection, and then runs its own query, so a lookup that hangs does not hold up every call that joined it for longer than running alone would have.
+ * <br><br>
+ * A call only joins a lookup that is still running, so it never sees a result read before it was made other than one that was being read as it was made. Calls made inside a transaction are not coalesced, as they must read through their own transaction, and calls on a thread pinned to the primary only share reads with each other, as a read served by a replica may not show their own writes yet.
+ * <br><br>
+ * Each call that shared another's query is counted by {@code users.reads.coalesced}, tagged by method.
+ */
+public class CoalescingRepositoryInterceptor implements MethodInterceptor
+{
+	/**
+	 * The methods that are coalesced, which all take a single argument identifying what they read.
+	 */
+	static final List<String> METHODS = List.of("findById", "existsUserByEmail");
+
+	/**
+	 * The running reads, by method name, argument and whether the reading thread is pinned to the primary.
+	 */
+	private final ConcurrentMap<List<Object>, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+	/**
+	 * The number of calls that shared another's read, by method name.
+	 */
+	private final Map<String, Counter> coalesced = new ConcurrentHashMap<>();
+
+	/**
+	 * How long a call waits for the read it joined before running its own.
+	 */
+	private final Duration timeout;
+
+	/**
+	 * Constructor
+	 *
+	 * @param meterRegistry The meter registry.
+	 * @param timeout How long a call waits for the read it joined before running its own.
+	 */
+	public CoalescingRepositoryInterceptor(MeterRegistry meterRegistry, Duration timeout)
+	{
+		this.timeout = timeout;
+		for (String method : METHODS)
+		{
+			coalesced.put(method, Counter.builder("users.reads.coalesced").tag("method", method).description("Repository reads that shared the result of an identical read already running").register(meterRegistry));
+		}
+	}
+
+	@Override
+	public Object invoke(MethodInvocation invocation) throws Throwable
+	{
+		String method = invocation.getMethod().getName();
+		Object[] arguments = invocation.getArguments();
+		Counter counter = coalesced.get(method);
+		if (counter == null || arguments.length != 1 || arguments[0] == null || TransactionSynchronizationManager.isActualTransactionActive())
+		{
+			return invocation.proceed();
+		}
+
+		List<Object> key = List.of(method, arguments[0], ReplicaRoutingDataSource.isPinnedToPrimary());
+		CompletableFuture<Object> read = new CompletableFuture<>();
+		CompletableFuture<Object> running = inFlight.putIfAbsent(key, read);
+		if (running != null)
+		{
+			counter.increment();
+			try
+			{
+				return running.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+			}
+			catch (ExecutionException e)
+			{
+				throw e.getCause();
+			}
+			catch (TimeoutException e)
+			{
+				return invocation.proceed();
+			}
+		}
+
+		// The read is removed before it completes so that no call made after it returned can join it
+		Object result;
+		try
+		{
+			result = invocation.proceed();
+		}
+		catch (Throwable e)
+		{
+			inFlight.remove(key, read);
+			read.completeExceptionally(e);
+			throw e;
+		}
+		inFlight.remove(key, read);
+		read.complete(result);
+		return result;
+	}
+}
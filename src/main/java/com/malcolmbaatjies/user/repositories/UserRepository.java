@@ -1,8 +1,28 @@
 package com.malcolmbaatjies.user.repositories;
 
 import com.malcolmbaatjies.user.entities.models.User;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.CachePut;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_CACHE_MODE;
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 /**
  * UserRespository
@@ -10,10 +30,112 @@ import org.springframework.stereotype.Repository;
  * This interface extends the JpaRepository to allow for interaction with the Database.
  * <br><br>
  * This interface is annotated with Spring's {@link org.springframework.stereotype.Repository} to indicate that it is used to interact with the Database.
+ * <br><br>
+ * Lookups by id are read through the {@value #CACHE} cache, which is kept current by {@link #save}, {@link #updateFieldsById}, {@link #deleteById}, {@link #deleteUserById} and {@link #deleteUserByIdAndVersion}. The cache size and TTL are configured with {@code spring.cache.caffeine.spec}. Behind it, the users themselves are kept in Hibernate's second-level cache, see {@link com.malcolmbaatjies.user.configurations.EntityCacheConfiguration EntityCacheConfiguration}.
  */
 @Repository
-public interface UserRepository extends JpaRepository<User, Long>
+public interface UserRepository extends JpaRepository<User, Long>, UserRepositoryCustom
 {
+	/**
+	 * The number of rows fetched from the database per round trip when streaming users.
+	 */
+	int STREAM_FETCH_SIZE = 1000;
+
+	/**
+	 * The name of the cache holding users by id.
+	 */
+	String CACHE = "users";
+
+	/**
+	 * Get a user by id.
+	 * <br><br>
+	 * The user is read from the {@value #CACHE} cache when present, otherwise it is loaded from the database and cached. Users that are not found are not cached.
+	 * <br><br>
+	 * The user is loaded in a read-only transaction, so it is served by a read replica when there are any, see {@link UserRepositoryCustomImpl#findById}. A user read from a replica is put in neither the {@value #CACHE} cache nor Hibernate's second-level cache, so a replica that has not caught up on a write cannot leave the user stale in them until they expire.
+	 *
+	 * @param id The user's id.
+	 * @return The user, if found.
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	@Cacheable(cacheNames = CACHE, key = "#p0", unless = "#result == null || T(com.malcolmbaatjies.user.configurations.ReplicaRoutingDataSource).readsFromReplica(@dataSource)")
+	Optional<User> findById(Long id);
+
+	/**
+	 * Get a user by id from the database, past the {@value #CACHE} cache.
+	 * <br><br>
+	 * This is used where the user's current version is needed to write it, as the cached copy can be behind the database, e.g. after a write made by another instance. The user is read with a query, so it is not taken from Hibernate's second-level cache either.
+	 *
+	 * @param id The user's id.
+	 * @return The user, if found.
+	 */
+	@Transactional
+	Optional<User> findCurrentById(Long id);
+
+	/**
+	 * Get a user's email and lock the user's row until the caller's transaction ends.
+	 * <br><br>
+	 * This is used to read the email a write replaces in the same transaction as the write, so that concurrent writes of the same user see each other's emails, see {@link com.malcolmbaatjies.user.repositories.sharding.ShardingRepositoryInterceptor ShardingRepositoryInterceptor}. It must be called inside a transaction.
+	 *
+	 * @param id The user's id.
+	 * @return The email, or empty when the user does not exist or has no email.
+	 */
+	@Query(value = "SELECT email FROM users WHERE id = :id FOR UPDATE", nativeQuery = true)
+	Optional<String> findLockedEmailById(@Param("id") Long id);
+
+	/**
+	 * Save a user.
+	 * <br><br>
+	 * The saved user replaces any cached copy in the {@value #CACHE} cache.
+	 *
+	 * @param user The user to save.
+	 * @param <S> The type of user.
+	 * @return The saved user.
+	 */
+	@Override
+	@CachePut(cacheNames = CACHE, key = "#result.id")
+	<S extends User> S save(S user);
+
+	/**
+	 * Delete a user by id.
+	 * <br><br>
+	 * The user is evicted from the {@value #CACHE} cache.
+	 *
+	 * @param id The user's id.
+	 */
+	@Override
+	@CacheEvict(cacheNames = CACHE, key = "#p0")
+	void deleteById(Long id);
+
+	/**
+	 * Delete a user by id.
+	 * <br><br>
+	 * Unlike {@link #deleteById}, this runs a single {@code DELETE FROM users WHERE id = ?} without loading the user first, and reports a missing user through the returned count rather than an exception. The user is evicted from the {@value #CACHE} cache.
+	 *
+	 * @param id The user's id.
+	 * @return The number of users deleted, 0 when no user has the given id.
+	 */
+	@Modifying
+	@Transactional
+	@CacheEvict(cacheNames = CACHE, key = "#p0")
+	@Query("DELETE FROM User u WHERE u.id = :id")
+	int deleteUserById(@Param("id") Long id);
+
+	/**
+	 * Delete a user by id if it has the given version.
+	 * <br><br>
+	 * This runs a single {@code DELETE FROM users WHERE id = ? AND version = ?}. The user is evicted from the {@value #CACHE} cache.
+	 *
+	 * @param id The user's id.
+	 * @param version The version the user must have to be deleted.
+	 * @return The number of users deleted, 0 when no user has the given id and version.
+	 */
+	@Modifying
+	@Transactional
+	@CacheEvict(cacheNames = CACHE, key = "#p0")
+	@Query("DELETE FROM User u WHERE u.id = :id AND u.version = :version")
+	int deleteUserByIdAndVersion(@Param("id") Long id, @Param("version") Long version);
+
 	/**
 	 * Check if a user exists by email.
 	 *
@@ -21,4 +143,78 @@ public interface UserRepository extends JpaRepository<User, Long>
 	 * @return True if the user exists, false otherwise.
 	 */
 	boolean existsUserByEmail(String email);
+
+	/**
+	 * Find a user by email.
+	 * <br><br>
+	 * The user is read in a read-write transaction, so it comes from the primary even when there are read replicas.
+	 *
+	 * @param email The user's email.
+	 * @return The user, or empty when no user has the email.
+	 */
+	@Transactional
+	Optional<User> findUserByEmail(String email);
+
+	/**
+	 * Get which of the given emails already belong to a user.
+	 * <br><br>
+	 * This is used to check a whole batch of emails for duplicates in a single query.
+	 *
+	 * @param emails The emails to check.
+	 * @return The emails that already exist.
+	 */
+	@Query("SELECT u.email FROM User u WHERE u.email IN :emails")
+	List<String> findExistingEmails(@Param("emails") Collection<String> emails);
+
+	/**
+	 * Get a slice of users with an id greater than the given id.
+	 * <br><br>
+	 * This is used for keyset (cursor) pagination. The query seeks directly to the given id on the primary key index and reads at most {@link Pageable#getPageSize()} rows, so the cost of a page does not grow with how deep into the table it is. The given {@link Pageable} should always be for the first page and sorted by id.
+	 * <br><br>
+	 * The page is read in a read-only transaction, so it is served by a read replica when there are any, and the users are not put in Hibernate's second-level cache.
+	 *
+	 * @param id The id to seek past.
+	 * @param pageable The page size and sort order.
+	 * @return The slice of users.
+	 */
+	@Transactional(readOnly = true)
+	@QueryHints(@QueryHint(name = HINT_CACHE_MODE, value = "GET"))
+	Slice<User> findByIdGreaterThan(Long id, Pageable pageable);
+
+	/**
+	 * Get the users with the given ids.
+	 * <br><br>
+	 * The users may be read from a read replica, so they are not put in Hibernate's second-level cache.
+	 *
+	 * @param ids The users' ids.
+	 * @return The users found, in no particular order.
+	 */
+	@Override
+	@QueryHints(@QueryHint(name = HINT_CACHE_MODE, value = "GET"))
+	List<User> findAllById(Iterable<Long> ids);
+
+	/**
+	 * Stream all users ordered by id.
+	 * <br><br>
+	 * The rows are read forward-only from a database cursor, {@link #STREAM_FETCH_SIZE} at a time, instead of being loaded into a list, and are loaded read-only so Hibernate keeps no dirty-checking snapshots. They may be read from a read replica, so they are not put in Hibernate's second-level cache. The caller must consume the stream inside a transaction, close it when done and detach each user once it has been processed to keep memory flat.
+	 *
+	 * @return The stream of users.
+	 */
+	@QueryHints({
+		@QueryHint(name = HINT_FETCH_SIZE, value = "" + STREAM_FETCH_SIZE),
+		@QueryHint(name = HINT_READONLY, value = "true"),
+		@QueryHint(name = HINT_CACHE_MODE, value = "GET")
+	})
+	Stream<User> streamAllByOrderByIdAsc();
+
+	/**
+	 * Stream the emails of all users.
+	 * <br><br>
+	 * Only the email column is read, forward-only from a database cursor, {@link #STREAM_FETCH_SIZE} rows at a time. The caller must consume the stream inside a transaction and close it when done.
+	 *
+	 * @return The stream of emails.
+	 */
+	@Query("SELECT u.email FROM User u")
+	@QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "" + STREAM_FETCH_SIZE))
+	Stream<String> streamAllEmails();
 }
@@ -0,0 +1,65 @@
+package com.malcolmbaatjies.user.repositories;
+
+import com.malcolmbaatjies.user.entities.models.User;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+
+import java.util.Collection;
+import java.util.Optional;
+
+/**
+ * UserRepositoryCustom
+ * <br><br>
+ * This interface declares the {@link com.malcolmbaatjies.user.repositories.UserRepository UserRepository} methods that cannot be derived by Spring Data and are implemented by hand in {@link com.malcolmbaatjies.user.repositories.UserRepositoryCustomImpl UserRepositoryCustomImpl}.
+ */
+public interface UserRepositoryCustom
+{
+	/**
+	 * Update the given fields of a user by id.
+	 * <br><br>
+	 * This runs a single {@code UPDATE users SET ... WHERE id = ?} that only sets the fields that are not null, without loading the user first. At least one field must be given. The user's version is incremented and the user is evicted from the {@value UserRepository#CACHE} cache.
+	 *
+	 * @param id The user's id.
+	 * @param firstName The new first name, or null to leave it unchanged.
+	 * @param lastName The new last name, or null to leave it unchanged.
+	 * @param email The new email, or null to leave it unchanged.
+	 * @param expectedVersion The version the user must have to be updated, or null to update any version.
+	 * @return The number of users updated, 0 when no user has the given id and version.
+	 */
+	@CacheEvict(cacheNames = UserRepository.CACHE, key = "#p0")
+	int updateFieldsById(Long id, String firstName, String lastName, String email, Long expectedVersion);
+
+	/**
+	 * Get a user by id from the database.
+	 * <br><br>
+	 * This replaces Spring Data's lookup by id so that users read from a read replica are not put in Hibernate's second-level cache, see {@link UserRepository#findById}.
+	 *
+	 * @param id The user's id.
+	 * @return The user, if found.
+	 */
+	Optional<User> findById(Long id);
+
+	/**
+	 * Get the given fields of a user by id.
+	 * <br><br>
+	 * Only the id, version and given columns are selected. The returned user is not managed and its other fields are null.
+	 *
+	 * @param id The user's id.
+	 * @param fields The names of the fields to select.
+	 * @return The partial user, if found.
+	 */
+	Optional<User> findFieldsById(Long id, Collection<String> fields);
+
+	/**
+	 * Get the given fields of a slice of users with an id greater than the given id.
+	 * <br><br>
+	 * This is the projected form of {@link UserRepository#findByIdGreaterThan}. Only the id, version and given columns are selected. The returned users are not managed and their other fields are null.
+	 *
+	 * @param id The id to seek past.
+	 * @param pageable The page size. Users are always sorted by id.
+	 * @param fields The names of the fields to select.
+	 * @return The slice of partial users.
+	 */
+	Slice<User> findFieldsByIdGreaterThan(Long id, Pageable pageable, Collection<String> fields);
+}
@@ -0,0 +1,167 @@
+package com.malcolmbaatjies.user.repositories;
+
+import com.malcolmbaatjies.user.configurations.ReplicaRoutingDataSource;
+import com.malcolmbaatjies.user.entities.models.User;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.CacheStoreMode;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Tuple;
+import javax.persistence.criteria.*;
+import javax.sql.DataSource;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * UserRepositoryCustomImpl
+ * <br><br>
+ * This class implements the {@link com.malcolmbaatjies.user.repositories.UserRepositoryCustom UserRepositoryCustom} methods of the {@link com.malcolmbaatjies.user.repositories.UserRepository UserRepository}. Spring Data finds it by the {@code Impl} suffix.
+ */
+public class UserRepositoryCustomImpl implements UserRepositoryCustom
+{
+	/**
+	 * The entity manager.
+	 */
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	/**
+	 * The data source, to tell whether a read is served by a read replica.
+	 */
+	private final DataSource dataSource;
+
+	/**
+	 * Constructor
+	 *
+	 * @param dataSource The data source.
+	 */
+	public UserRepositoryCustomImpl(DataSource dataSource)
+	{
+		this.dataSource = dataSource;
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public Optional<User> findById(Long id)
+	{
+		// A user read from a replica may be behind the primary, so it is only read through the second-level cache, not put in it
+		Map<String, Object> hints = ReplicaRoutingDataSource.readsFromReplica(dataSource)
+			? Map.of(AvailableSettings.JPA_SHARED_CACHE_STORE_MODE, CacheStoreMode.BYPASS)
+			: Map.of();
+		return Optional.ofNullable(entityManager.find(User.class, id, hints));
+	}
+
+	@Override
+	@Transactional
+	public int updateFieldsById(Long id, String firstName, String lastName, String email, Long expectedVersion)
+	{
+		CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+		CriteriaUpdate<User> update = criteriaBuilder.createCriteriaUpdate(User.class);
+		Root<User> user = update.from(User.class);
+
+		if (firstName != null)
+		{
+			update.set(user.get("firstName"), firstName);
+		}
+		if (lastName != null)
+		{
+			update.set(user.get("lastName"), lastName);
+		}
+		if (email != null)
+		{
+			update.set(user.get("email"), email);
+		}
+
+		// Bulk updates bypass Hibernate's versioning, so increment the version explicitly
+		update.set(user.<Long>get("version"), criteriaBuilder.sum(user.get("version"), 1L));
+		if (expectedVersion == null)
+		{
+			update.where(criteriaBuilder.equal(user.get("id"), id));
+		}
+		else
+		{
+			update.where(criteriaBuilder.equal(user.get("id"), id), criteriaBuilder.equal(user.get("version"), expectedVersion));
+		}
+
+		return entityManager.createQuery(update).executeUpdate();
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public Optional<User> findFieldsById(Long id, Collection<String> fields)
+	{
+		CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Tuple> query = criteriaBuilder.createTupleQuery();
+		Root<User> user = query.from(User.class);
+
+		query.multiselect(selections(user, fields)).where(criteriaBuilder.equal(user.get("id"), id));
+
+		return entityManager.createQuery(query).getResultStream().findFirst().map(tuple -> toUser(tuple, fields));
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public Slice<User> findFieldsByIdGreaterThan(Long id, Pageable pageable, Collection<String> fields)
+	{
+		CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Tuple> query = criteriaBuilder.createTupleQuery();
+		Root<User> user = query.from(User.class);
+
+		query.multiselect(selections(user, fields))
+			.where(criteriaBuilder.greaterThan(user.get("id"), id))
+			.orderBy(criteriaBuilder.asc(user.get("id")));
+
+		// Read one extra row to tell whether there is a next slice, as Spring Data does for derived slice queries
+		List<User> users = entityManager.createQuery(query)
+			.setMaxResults(pageable.getPageSize() + 1)
+			.getResultStream()
+			.map(tuple -> toUser(tuple, fields))
+			.collect(Collectors.toList());
+
+		boolean hasNext = users.size() > pageable.getPageSize();
+		return new SliceImpl<>(hasNext ? users.subList(0, pageable.getPageSize()) : users, pageable, hasNext);
+	}
+
+	/**
+	 * Build the selections for the given fields, always including the id and version.
+	 *
+	 * @param user The user root.
+	 * @param fields The names of the fields to select.
+	 * @return The selections.
+	 */
+	private static List<Selection<?>> selections(Root<User> user, Collection<String> fields)
+	{
+		Set<String> names = new LinkedHashSet<>(List.of("id", "version"));
+		names.addAll(fields);
+
+		List<Selection<?>> selections = new ArrayList<>(names.size());
+		for (String name : names)
+		{
+			selections.add(user.get(name).alias(name));
+		}
+		return selections;
+	}
+
+	/**
+	 * Build a partial user from a row of selected fields.
+	 *
+	 * @param tuple The row.
+	 * @param fields The names of the fields that were selected.
+	 * @return The partial user.
+	 */
+	private static User toUser(Tuple tuple, Collection<String> fields)
+	{
+		return User.builder()
+			.id(tuple.get("id", Long.class))
+			.version(tuple.get("version", Long.class))
+			.firstName(fields.contains("firstName") ? tuple.get("firstName", String.class) : null)
+			.lastName(fields.contains("lastName") ? tuple.get("lastName", String.class) : null)
+			.email(fields.contains("email") ? tuple.get("email", String.class) : null)
+			.build();
+	}
+}
@@ -0,0 +1,63 @@
+package com.malcolmbaatjies.user.repositories.reactive;
+
+import com.malcolmbaatjies.user.entities.models.User;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * ReactiveUserRepository
+ * <br><br>
+ * This interface extends the ReactiveCrudRepository to allow for non-blocking interaction with the Database through R2DBC. It is the reactive counterpart of {@link com.malcolmbaatjies.user.repositories.UserRepository UserRepository} and is only enabled by the reactive profile.
+ * <br><br>
+ * This interface is annotated with Spring's {@link org.springframework.stereotype.Repository} to indicate that it is used to interact with the Database.
+ */
+@Repository
+public interface ReactiveUserRepository extends ReactiveCrudRepository<User, Long>, ReactiveUserRepositoryCustom
+{
+	/**
+	 * Get a page of users with an id greater than the given id.
+	 * <br><br>
+	 * This is the reactive form of {@link com.malcolmbaatjies.user.repositories.UserRepository#findByIdGreaterThan}. Request one more user than the page size to find out whether a next page exists.
+	 *
+	 * @param id The id to seek past.
+	 * @param pageable The number of users to get and their order.
+	 * @return The users.
+	 */
+	Flux<User> findByIdGreaterThan(Long id, Pageable pageable);
+
+	/**
+	 * Get every user, ordered by id.
+	 * <br><br>
+	 * Rows are emitted as they are read, following the subscriber's demand.
+	 *
+	 * @return The users.
+	 */
+	Flux<User> findAllByOrderByIdAsc();
+
+	/**
+	 * Delete a user by id with a single delete statement.
+	 *
+	 * @param id The user's id.
+	 * @return The number of users deleted, 0 when no user has the given id.
+	 */
+	@Modifying
+	@Query("DELETE FROM users WHERE id = :id")
+	Mono<Integer> deleteUserById(@Param("id") Long id);
+
+	/**
+	 * Delete a user by id and version with a single delete statement.
+	 *
+	 * @param id The user's id.
+	 * @param version The version the user must have to be deleted.
+	 * @return The number of users deleted, 0 when no user has the given id and version.
+	 */
+	@Modifying
+	@Query("DELETE FROM users WHERE id = :id AND version = :version")
+	Mono<Integer> deleteUserByIdAndVersion(@Param("id") Long id, @Param("version") Long version);
+}
@@ -0,0 +1,38 @@
+package com.malcolmbaatjies.user.repositories.reactive;
+
+import com.malcolmbaatjies.user.entities.models.User;
+import reactor.core.publisher.Mono;
+
+/**
+ * ReactiveUserRepositoryCustom
+ * <br><br>
+ * This interface declares the {@link com.malcolmbaatjies.user.repositories.reactive.ReactiveUserRepository ReactiveUserRepository} methods that cannot be derived by Spring Data and are implemented by hand in {@link com.malcolmbaatjies.user.repositories.reactive.ReactiveUserRepositoryCustomImpl ReactiveUserRepositoryCustomImpl}.
+ */
+public interface ReactiveUserRepositoryCustom
+{
+	/**
+	 * Insert a new user.
+	 * <br><br>
+	 * R2DBC cannot generate ids from a sequence, so the id is allocated from the same {@code users_seq} that Hibernate uses, {@value User#ID_ALLOCATION_SIZE} ids at a time, and ids never collide with those allocated by the servlet stack.
+	 *
+	 * The user is inserted at version 0, as Hibernate does. Spring Data's own version checks are not used as JPA rejects them on an entity, so writes are guarded by the version explicitly with {@link #updateFieldsById}.
+	 *
+	 * @param user The user to insert, without an id.
+	 * @return The inserted user, with its id and initial version.
+	 */
+	Mono<User> insert(User user);
+
+	/**
+	 * Update the given fields of a user by id.
+	 * <br><br>
+	 * This is the reactive form of {@link com.malcolmbaatjies.user.repositories.UserRepositoryCustom#updateFieldsById}: a single {@code UPDATE users SET ... WHERE id = ?} that only sets the fields that are not null and increments the version. At least one field must be given.
+	 *
+	 * @param id The user's id.
+	 * @param firstName The new first name, or null to leave it unchanged.
+	 * @param lastName The new last name, or null to leave it unchanged.
+	 * @param email The new email, or null to leave it unchanged.
+	 * @param expectedVersion The version the user must have to be updated, or null to update any version.
+	 * @return The number of users updated, 0 when no user has the given id and version.
+	 */
+	Mono<Integer> updateFieldsById(Long id, String firstName, String lastName, String email, Long expectedVersion);
+}
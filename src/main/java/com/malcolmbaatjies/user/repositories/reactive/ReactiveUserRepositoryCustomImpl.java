@@ -0,0 +1,198 @@
+package com.malcolmbaatjies.user.repositories.reactive;
+
+import com.malcolmbaatjies.user.entities.models.User;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.ReactiveTransactionManager;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * ReactiveUserRepositoryCustomImpl
+ * <br><br>
+ * This class implements {@link com.malcolmbaatjies.user.repositories.reactive.ReactiveUserRepositoryCustom ReactiveUserRepositoryCustom} with the {@link org.springframework.r2dbc.core.DatabaseClient} and {@link org.springframework.data.r2dbc.core.R2dbcEntityTemplate}.
+ */
+public class ReactiveUserRepositoryCustomImpl implements ReactiveUserRepositoryCustom
+{
+	/**
+	 * The database client.
+	 */
+	private final DatabaseClient databaseClient;
+
+	/**
+	 * The entity template, used to insert users.
+	 */
+	private final R2dbcEntityTemplate entityTemplate;
+
+	/**
+	 * The transactional operator, used to reserve blocks of ids atomically.
+	 */
+	private final TransactionalOperator transactionalOperator;
+
+	/**
+	 * The block of ids currently being handed out. Starts exhausted so that the first insert reserves a block.
+	 */
+	private final AtomicReference<IdBlock> idBlock = new AtomicReference<>(new IdBlock(1, 0));
+
+	/**
+	 * Constructor
+	 *
+	 * @param entityTemplate The entity template.
+	 * @param transactionManager The reactive transaction manager.
+	 */
+	@Autowired
+	public ReactiveUserRepositoryCustomImpl(R2dbcEntityTemplate entityTemplate, ReactiveTransactionManager transactionManager)
+	{
+		this.databaseClient = entityTemplate.getDatabaseClient();
+		this.entityTemplate = entityTemplate;
+		this.transactionalOperator = TransactionalOperator.create(transactionManager);
+	}
+
+	@Override
+	public Mono<User> insert(User user)
+	{
+		return nextId().flatMap(id -> entityTemplate.insert(
+			User.builder()
+				.id(id)
+				.firstName(user.getFirstName())
+				.lastName(user.getLastName())
+				.email(user.getEmail())
+				.version(0L)
+			.build()
+		));
+	}
+
+	@Override
+	public Mono<Integer> updateFieldsById(Long id, String firstName, String lastName, String email, Long expectedVersion)
+	{
+		StringBuilder sql = new StringBuilder("UPDATE users SET ");
+		if (firstName != null)
+		{
+			sql.append("first_name = :firstName, ");
+		}
+		if (lastName != null)
+		{
+			sql.append("last_name = :lastName, ");
+		}
+		if (email != null)
+		{
+			sql.append("email = :email, ");
+		}
+		sql.append("version = version + 1 WHERE id = :id");
+		if (expectedVersion != null)
+		{
+			sql.append(" AND version = :version");
+		}
+
+		DatabaseClient.GenericExecuteSpec update = databaseClient.sql(sql.toString()).bind("id", id);
+		if (firstName != null)
+		{
+			update = update.bind("firstName", firstName);
+		}
+		if (lastName != null)
+		{
+			update = update.bind("lastName", lastName);
+		}
+		if (email != null)
+		{
+			update = update.bind("email", email);
+		}
+		if (expectedVersion != null)
+		{
+			update = update.bind("version", expectedVersion);
+		}
+		return update.fetch().rowsUpdated();
+	}
+
+	/**
+	 * Get the next id, reserving a new block of ids when the current one is exhausted.
+	 *
+	 * @return The id.
+	 */
+	private Mono<Long> nextId()
+	{
+		return Mono.defer(() -> {
+			long id = idBlock.get().next();
+			if (id > 0)
+			{
+				return Mono.just(id);
+			}
+			return reserveIdBlock().map(block -> {
+				idBlock.set(block);
+				return block.first;
+			});
+		});
+	}
+
+	/**
+	 * Reserve the next block of ids from {@code users_seq}.
+	 * <br><br>
+	 * This mirrors Hibernate's pooled optimizer over a sequence table: the value read is the highest id of the block, and the table is advanced by {@value User#ID_ALLOCATION_SIZE} for the next caller.
+	 *
+	 * @return The block, with its first id already taken.
+	 */
+	private Mono<IdBlock> reserveIdBlock()
+	{
+		return databaseClient.sql("SELECT next_val FROM users_seq FOR UPDATE")
+			.map(row -> row.get("next_val", Long.class))
+			.one()
+			.flatMap(hi -> databaseClient.sql("UPDATE users_seq SET next_val = :next WHERE next_val = :hi")
+				.bind("next", hi + User.ID_ALLOCATION_SIZE)
+				.bind("hi", hi)
+				.fetch()
+				.rowsUpdated()
+				.thenReturn(new IdBlock(Math.max(1, hi - User.ID_ALLOCATION_SIZE + 1), hi)))
+			.as(transactionalOperator::transactional);
+	}
+
+	/**
+	 * IdBlock
+	 * <br><br>
+	 * A block of ids reserved from the sequence, handed out in order. Its first id is taken when it is created.
+	 */
+	private static final class IdBlock
+	{
+		/**
+		 * The first id of the block.
+		 */
+		private final long first;
+
+		/**
+		 * The last id of the block.
+		 */
+		private final long last;
+
+		/**
+		 * The next id to hand out.
+		 */
+		private final AtomicLong next;
+
+		/**
+		 * Constructor
+		 *
+		 * @param first The first id of the block.
+		 * @param last The last id of the block.
+		 */
+		private IdBlock(long first, long last)
+		{
+			this.first = first;
+			this.last = last;
+			this.next = new AtomicLong(first + 1);
+		}
+
+		/**
+		 * Take the next id.
+		 *
+		 * @return The id, or 0 when the block is exhausted.
+		 */
+		private long next()
+		{
+			long id = next.getAndIncrement();
+			return id <= last ? id : 0;
+		}
+	}
+}
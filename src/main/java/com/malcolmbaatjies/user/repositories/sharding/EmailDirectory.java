@@ -0,0 +1,217 @@
+package com.malcolmbaatjies.user.repositories.sharding;
+
+import com.malcolmbaatjies.user.entities.models.User;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * EmailDirectory
+ * <br><br>
+ * This class is used to record which shard holds the user with each email, in the {@value #TABLE} table of a single database. Each shard's unique constraint only covers its own users, so the directory is what keeps an email unique across shards: an email is claimed for a shard before a user is stored with it, and a claim for a second shard is rejected as a violation of the {@value User#EMAIL_CONSTRAINT} constraint.
+ * <br><br>
+ * Claims are released once the user is deleted or changes email. A claim left behind by a write that failed halfway only blocks its email for other shards, and is taken over by the next user stored with that email on the same shard.
+ */
+public class EmailDirectory
+{
+	/**
+	 * The name of the directory table.
+	 */
+	public static final String TABLE = "user_emails";
+
+	/**
+	 * The JDBC template.
+	 */
+	private final JdbcTemplate jdbcTemplate;
+
+	/**
+	 * The named parameter JDBC template, used to look up many emails at once.
+	 */
+	private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+	/**
+	 * The transaction template, used to claim many emails at once.
+	 */
+	private final TransactionTemplate transactionTemplate;
+
+	/**
+	 * Constructor
+	 *
+	 * @param dataSource The database holding the directory.
+	 */
+	public EmailDirectory(DataSource dataSource)
+	{
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.jdbcTemplate.setFetchSize(1000);
+		this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+		this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+	}
+
+	/**
+	 * Create the directory table if it does not exist.
+	 */
+	public void createTable()
+	{
+		jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + TABLE + " (email VARCHAR(255) NOT NULL PRIMARY KEY, shard INT NOT NULL)");
+	}
+
+	/**
+	 * Get the shard holding the user with an email.
+	 *
+	 * @param email The email.
+	 * @return The shard number, or null when no user has the email.
+	 */
+	public Integer findShard(String email)
+	{
+		List<Integer> shards = jdbcTemplate.queryForList("SELECT shard FROM " + TABLE + " WHERE email = ?", Integer.class, email);
+		return shards.isEmpty() ? null : shards.get(0);
+	}
+
+	/**
+	 * Get which of the given emails belong to a user.
+	 *
+	 * @param emails The emails to check.
+	 * @return The emails that belong to a user.
+	 */
+	public List<String> findExisting(Collection<String> emails)
+	{
+		return namedParameterJdbcTemplate.queryForList("SELECT email FROM " + TABLE + " WHERE email IN (:emails)", new MapSqlParameterSource("emails", emails), String.class);
+	}
+
+	/**
+	 * Stream every email in the directory. The caller must close the stream when done.
+	 *
+	 * @return The stream of emails.
+	 */
+	public Stream<String> streamEmails()
+	{
+		return jdbcTemplate.queryForStream("SELECT email FROM " + TABLE, (resultSet, row) -> resultSet.getString(1));
+	}
+
+	/**
+	 * Claim an email for a shard.
+	 *
+	 * @param email The email.
+	 * @param shard The shard number.
+	 * @return True if the email was claimed by this call, false if it was already claimed for the shard.
+	 * @throws DataIntegrityViolationException Thrown when the email is claimed for another shard.
+	 */
+	public boolean claim(String email, int shard)
+	{
+		for (int attempt = 0; ; attempt++)
+		{
+			try
+			{
+				jdbcTemplate.update("INSERT INTO " + TABLE + " (email, shard) VALUES (?, ?)", email, shard);
+				return true;
+			}
+			catch (DuplicateKeyException e)
+			{
+				Integer owner = findShard(email);
+				if (owner != null && owner == shard)
+				{
+					return false;
+				}
+				// A claim that was released since the insert failed is retried once
+				if (owner != null || attempt > 0)
+				{
+					throw emailTaken(email, e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Claim emails for shards, in one batch when none of them are claimed yet.
+	 *
+	 * @param emails The emails.
+	 * @param shards The shard number for each email.
+	 * @return Whether each email was claimed by this call, false where it was already claimed for its shard.
+	 * @throws DataIntegrityViolationException Thrown when an email is claimed for another shard. The emails claimed by this call are released first.
+	 */
+	public boolean[] claimAll(List<String> emails, List<Integer> shards)
+	{
+		boolean[] claimed = new boolean[emails.size()];
+		try
+		{
+			transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate("INSERT INTO " + TABLE + " (email, shard) VALUES (?, ?)", new BatchPreparedStatementSetter()
+			{
+				@Override
+				public void setValues(PreparedStatement statement, int i) throws SQLException
+				{
+					statement.setString(1, emails.get(i));
+					statement.setInt(2, shards.get(i));
+				}
+
+				@Override
+				public int getBatchSize()
+				{
+					return emails.size();
+				}
+			}));
+			Arrays.fill(claimed, true);
+			return claimed;
+		}
+		catch (DuplicateKeyException e)
+		{
+			// The batch was rolled back, so claim one at a time to find out which emails were taken
+		}
+
+		for (int i = 0; i < claimed.length; i++)
+		{
+			try
+			{
+				claimed[i] = claim(emails.get(i), shards.get(i));
+			}
+			catch (RuntimeException e)
+			{
+				for (int j = 0; j < i; j++)
+				{
+					if (claimed[j])
+					{
+						release(emails.get(j), shards.get(j));
+					}
+				}
+				throw e;
+			}
+		}
+		return claimed;
+	}
+
+	/**
+	 * Release an email from a shard.
+	 *
+	 * @param email The email.
+	 * @param shard The shard number. The email is left alone when it is claimed for another shard.
+	 */
+	public void release(String email, int shard)
+	{
+		jdbcTemplate.update("DELETE FROM " + TABLE + " WHERE email = ? AND shard = ?", email, shard);
+	}
+
+	/**
+	 * Create the exception for an email that is claimed for another shard, in the form the database would report a violation of the {@value User#EMAIL_CONSTRAINT} constraint.
+	 *
+	 * @param email The email.
+	 * @param cause The exception thrown by the claim.
+	 * @return The exception.
+	 */
+	private static DataIntegrityViolationException emailTaken(String email, DuplicateKeyException cause)
+	{
+		String message = "Email " + email + " belongs to a user on another shard";
+		SQLException sqlException = cause.getCause() instanceof SQLException ? (SQLException) cause.getCause() : new SQLException(message);
+		return new DataIntegrityViolationException(message, new ConstraintViolationException(message, sqlException, User.EMAIL_CONSTRAINT));
+	}
+}
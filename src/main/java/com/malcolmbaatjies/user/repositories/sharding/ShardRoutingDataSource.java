@@ -0,0 +1,129 @@
+package com.malcolmbaatjies.user.repositories.sharding;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * ShardRoutingDataSource
+ * <br><br>
+ * This class is used to spread the users table across several databases, the shards, behind the single data source that JPA is configured with. Connections are taken from the shard selected for the current thread with {@link #useShard(Integer)}, or from shard 0 when none is selected.
+ * <br><br>
+ * The shard is read when the connection is requested, so this data source should be wrapped in a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy} to defer the request until the first statement runs. Shard 0 also holds everything that is not sharded, such as the id sequence and the {@link com.malcolmbaatjies.user.repositories.sharding.EmailDirectory EmailDirectory}.
+ */
+public class ShardRoutingDataSource extends AbstractDataSource
+{
+	/**
+	 * The shard selected for the current thread.
+	 */
+	private static final ThreadLocal<Integer> CURRENT_SHARD = new ThreadLocal<>();
+
+	/**
+	 * The shards, by shard number.
+	 */
+	private final List<? extends DataSource> shards;
+
+	/**
+	 * Constructor
+	 *
+	 * @param shards The shards, by shard number.
+	 */
+	public ShardRoutingDataSource(List<? extends DataSource> shards)
+	{
+		this.shards = List.copyOf(shards);
+	}
+
+	/**
+	 * Select the shard for the current thread.
+	 *
+	 * @param shard The shard number, or null to clear the selection.
+	 */
+	public static void useShard(Integer shard)
+	{
+		if (shard == null)
+		{
+			CURRENT_SHARD.remove();
+		}
+		else
+		{
+			CURRENT_SHARD.set(shard);
+		}
+	}
+
+	/**
+	 * Get the shard selected for the current thread.
+	 *
+	 * @return The shard number, or null when none is selected.
+	 */
+	public static Integer currentShard()
+	{
+		return CURRENT_SHARD.get();
+	}
+
+	/**
+	 * Get the number of shards.
+	 *
+	 * @return The number of shards.
+	 */
+	public int getShardCount()
+	{
+		return shards.size();
+	}
+
+	/**
+	 * Get a shard.
+	 *
+	 * @param shard The shard number.
+	 * @return The shard.
+	 */
+	public DataSource getShard(int shard)
+	{
+		return shards.get(shard);
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException
+	{
+		return currentDataSource().getConnection();
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException
+	{
+		return currentDataSource().getConnection(username, password);
+	}
+
+	/**
+	 * Unwrap shard 0, which is the data source that is configured and monitored like a single data source would be.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T unwrap(Class<T> iface) throws SQLException
+	{
+		if (iface.isInstance(this))
+		{
+			return (T) this;
+		}
+		return shards.get(0).unwrap(iface);
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException
+	{
+		return iface.isInstance(this) || shards.get(0).isWrapperFor(iface);
+	}
+
+	/**
+	 * Get the data source of the shard selected for the current thread.
+	 *
+	 * @return The data source.
+	 */
+	private DataSource currentDataSource()
+	{
+		Integer shard = CURRENT_SHARD.get();
+		return shards.get(shard == null ? 0 : shard);
+	}
+}
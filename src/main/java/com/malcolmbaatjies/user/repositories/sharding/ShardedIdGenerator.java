@@ -0,0 +1,73 @@
+package com.malcolmbaatjies.user.repositories.sharding;
+
+import org.hibernate.HibernateException;
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.io.Serializable;
+import java.util.Properties;
+
+/**
+ * ShardedIdGenerator
+ * <br><br>
+ * This class is used to generate user ids that carry the shard the user is stored on, so that a user can be found from its id alone.
+ * <br><br>
+ * Ids are allocated from a single pooled sequence on shard 0, read on a connection of its own as the sequence is kept in a table, so they stay unique across shards, and are spread out as {@code sequenceValue * shardCount + shard}. The shard of an id is then {@code id % shardCount}. With a single shard the ids are the sequence values, as they were before sharding.
+ * <br><br>
+ * The number of shards is read from the {@value #SHARD_COUNT} Hibernate setting, and the shard from the one selected on the current thread with {@link ShardRoutingDataSource#useShard(Integer)}. The shard count must not change once users are stored, as it would change the shard of every id.
+ */
+public class ShardedIdGenerator extends SequenceStyleGenerator
+{
+	/**
+	 * The Hibernate setting holding the number of shards.
+	 */
+	public static final String SHARD_COUNT = "users.sharding.shard-count";
+
+	/**
+	 * The number of shards.
+	 */
+	private int shardCount;
+
+	/**
+	 * Get the shard a user is stored on.
+	 *
+	 * @param id The user's id.
+	 * @param shardCount The number of shards.
+	 * @return The shard number.
+	 */
+	public static int shardOf(long id, int shardCount)
+	{
+		return (int) Math.floorMod(id, (long) shardCount);
+	}
+
+	@Override
+	public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException
+	{
+		super.configure(type, params, serviceRegistry);
+		shardCount = ConfigurationHelper.getInt(SHARD_COUNT, serviceRegistry.getService(ConfigurationService.class).getSettings(), 1);
+	}
+
+	@Override
+	public Serializable generate(SharedSessionContractImplementor session, Object object) throws HibernateException
+	{
+		Integer shard = ShardRoutingDataSource.currentShard();
+
+		// Reserve sequence values from shard 0 whichever shard the user is stored on
+		ShardRoutingDataSource.useShard(0);
+		long value;
+		try
+		{
+			value = ((Number) super.generate(session, object)).longValue();
+		}
+		finally
+		{
+			ShardRoutingDataSource.useShard(shard);
+		}
+		return value * shardCount + (shard == null ? 0 : shard);
+	}
+}
@@ -0,0 +1,720 @@
+package com.malcolmbaatjies.user.repositories.sharding;
+
+import com.malcolmbaatjies.user.entities.models.User;
+import com.malcolmbaatjies.user.repositories.UserRepository;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.ProxyMethodInvocation;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * ShardingRepositoryInterceptor
+ * <br><br>
+ * This class is used to spread the {@link com.malcolmbaatjies.user.repositories.UserRepository UserRepository} across the shards of a {@link com.malcolmbaatjies.user.repositories.sharding.ShardRoutingDataSource ShardRoutingDataSource}. It is the first interceptor of the repository proxy, so each call it routes to a shard still runs in its own transaction, on that shard.
+ * <br><br>
+ * <ul>
+ *     <li>Calls by id run on the shard carried in the id, see {@link com.malcolmbaatjies.user.repositories.sharding.ShardedIdGenerator ShardedIdGenerator}.</li>
+ *     <li>New users are stored on the shard picked by the hash of their email.</li>
+ *     <li>Lookups of many ids are grouped by shard and each group runs on its shard in parallel.</li>
+ *     <li>Pages and the export run on every shard in parallel and are merged by id.</li>
+ *     <li>Email lookups are answered by the {@link com.malcolmbaatjies.user.repositories.sharding.EmailDirectory EmailDirectory}, which every write that sets an email claims it in first, and a user found by email is read on the shard the directory holds it on.</li>
+ * </ul>
+ * Calls made while a shard is selected on the thread run on that shard as they are. Other methods that would have to read every shard are not supported: the methods the application declares on the repository are checked when its proxy is built, see {@link #checkRouted}, and the other methods inherited from Spring Data fail when they are called without a shard selected.
+ */
+public class ShardingRepositoryInterceptor implements MethodInterceptor
+{
+	/**
+	 * The methods routed by name, besides the calls by id.
+	 */
+	private static final Set<String> ROUTED_METHODS = Set.of("findByIdGreaterThan", "findFieldsByIdGreaterThan", "streamAllByOrderByIdAsc", "streamAllEmails", "existsUserByEmail", "findUserByEmail",
+		"findExistingEmails", "findAllById", "count", "save", "saveAll", "updateFieldsById", "deleteById", "deleteUserById", "deleteUserByIdAndVersion");
+
+	/**
+	 * The shards.
+	 */
+	private final ShardRoutingDataSource shards;
+
+	/**
+	 * The email directory.
+	 */
+	private final EmailDirectory emailDirectory;
+
+	/**
+	 * The executor the shards are read on in parallel.
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * The repository, used to page through each shard for the export.
+	 */
+	private final ObjectProvider<UserRepository> userRepository;
+
+	/**
+	 * The transaction manager, used to lock a user's row on its shard while its email is changed or it is deleted.
+	 */
+	private final ObjectProvider<PlatformTransactionManager> transactionManager;
+
+	/**
+	 * Constructor
+	 *
+	 * @param shards The shards.
+	 * @param emailDirectory The email directory.
+	 * @param executor The executor the shards are read on in parallel.
+	 * @param userRepository The repository.
+	 * @param transactionManager The transaction manager.
+	 */
+	public ShardingRepositoryInterceptor(ShardRoutingDataSource shards, EmailDirectory emailDirectory, ExecutorService executor, ObjectProvider<UserRepository> userRepository, ObjectProvider<PlatformTransactionManager> transactionManager)
+	{
+		this.shards = shards;
+		this.emailDirectory = emailDirectory;
+		this.executor = executor;
+		this.userRepository = userRepository;
+		this.transactionManager = transactionManager;
+	}
+
+	/**
+	 * Get the shard a new user is stored on.
+	 *
+	 * @param email The user's email.
+	 * @param shardCount The number of shards.
+	 * @return The shard number.
+	 */
+	public static int shardFor(String email, int shardCount)
+	{
+		return email == null ? 0 : Math.floorMod(User.normalizeEmail(email).hashCode(), shardCount);
+	}
+
+	/**
+	 * Check that every method the application declares on a repository is routed across the shards, so that a method added without a route fails at startup rather than when it is called.
+	 * <br><br>
+	 * The methods inherited from Spring Data are left out, as most of them would have to read every shard and the application only calls those that are routed.
+	 *
+	 * @param repositoryInterface The repository interface.
+	 * @throws IllegalStateException Thrown when a method is not routed.
+	 */
+	public static void checkRouted(Class<?> repositoryInterface)
+	{
+		Set<String> unrouted = new TreeSet<>();
+		for (Method method : repositoryInterface.getMethods())
+		{
+			if (method.getDeclaringClass().getName().startsWith("org.springframework.data.") || method.isDefault() || Modifier.isStatic(method.getModifiers()))
+			{
+				continue;
+			}
+			Class<?>[] parameterTypes = method.getParameterTypes();
+			if (!ROUTED_METHODS.contains(method.getName()) && !(isById(method.getName()) && parameterTypes.length > 0 && parameterTypes[0].isAssignableFrom(Long.class)))
+			{
+				unrouted.add(method.getName());
+			}
+		}
+		if (!unrouted.isEmpty())
+		{
+			throw new IllegalStateException(repositoryInterface.getSimpleName() + " methods " + unrouted + " are not supported across shards");
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public Object invoke(MethodInvocation invocation) throws Throwable
+	{
+		if (ShardRoutingDataSource.currentShard() != null)
+		{
+			return invocation.proceed();
+		}
+
+		Object[] arguments = invocation.getArguments();
+		String method = invocation.getMethod().getName();
+		switch (method)
+		{
+			case "findByIdGreaterThan":
+			case "findFieldsByIdGreaterThan":
+				return mergeSlices(invocation, (Pageable) arguments[1]);
+			case "streamAllByOrderByIdAsc":
+				return mergeStreams();
+			case "streamAllEmails":
+				return emailDirectory.streamEmails();
+			case "existsUserByEmail":
+				return emailDirectory.findShard((String) arguments[0]) != null;
+			case "findUserByEmail":
+				Integer shard = emailDirectory.findShard((String) arguments[0]);
+				return shard == null ? Optional.empty() : proceedOn(shard, invocation);
+			case "findExistingEmails":
+				return emailDirectory.findExisting((Collection<String>) arguments[0]);
+			case "findAllById":
+				return findAllById(invocation, (Iterable<Long>) arguments[0]);
+			case "count":
+				return fanOut(invocation).stream().mapToLong(count -> (Long) count).sum();
+			case "save":
+				return save(invocation, (User) arguments[0]);
+			case "saveAll":
+				return saveAll(invocation, (Iterable<User>) arguments[0]);
+			case "updateFieldsById":
+				return changeEmail(invocation, (Long) arguments[0], (String) arguments[3]);
+			case "deleteById":
+			case "deleteUserById":
+			case "deleteUserByIdAndVersion":
+				return delete(invocation, (Long) arguments[0]);
+			default:
+				if (isById(method) && arguments.length > 0 && arguments[0] instanceof Long)
+				{
+					return proceedOn(shardOf((Long) arguments[0]), invocation);
+				}
+				throw new UnsupportedOperationException("UserRepository." + method + " is not supported across shards");
+		}
+	}
+
+	/**
+	 * Check whether a method is called by id, and is run on the shard carried in its first argument.
+	 *
+	 * @param method The method name.
+	 * @return True when the method is called by id.
+	 */
+	private static boolean isById(String method)
+	{
+		return method.endsWith("ById");
+	}
+
+	/**
+	 * Save a user. A new user is stored on the shard picked by its email, after the email is claimed for that shard.
+	 *
+	 * @param invocation The call.
+	 * @param user The user.
+	 * @return The saved user.
+	 */
+	private Object save(MethodInvocation invocation, User user) throws Throwable
+	{
+		if (user.getId() != null)
+		{
+			return changeEmail(invocation, user.getId(), user.getEmail());
+		}
+
+		int shard = shardFor(user.getEmail(), shards.getShardCount());
+		boolean claimed = user.getEmail() != null && emailDirectory.claim(user.getEmail(), shard);
+		try
+		{
+			return proceedOn(shard, invocation);
+		}
+		catch (Throwable e)
+		{
+			if (claimed)
+			{
+				emailDirectory.release(user.getEmail(), shard);
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Save users. New users are grouped by shard and each group is saved on its shard in parallel, after their emails are claimed in one batch.
+	 * <br><br>
+	 * Each group is saved in its own transaction, so when a group fails the groups saved on other shards are kept. The emails of the failed groups are released before the failure is thrown.
+	 *
+	 * @param invocation The call.
+	 * @param users The users.
+	 * @return The saved users, in the order they were given.
+	 */
+	private Object saveAll(MethodInvocation invocation, Iterable<User> users) throws Throwable
+	{
+		List<User> userList = new ArrayList<>();
+		users.forEach(userList::add);
+
+		// Users that already exist may change email, which is handled one at a time by save
+		if (userList.stream().anyMatch(user -> user.getId() != null))
+		{
+			List<User> saved = new ArrayList<>(userList.size());
+			for (User user : userList)
+			{
+				saved.add(userRepository.getObject().save(user));
+			}
+			return saved;
+		}
+
+		int shardCount = shards.getShardCount();
+		List<String> emails = new ArrayList<>();
+		List<Integer> emailShards = new ArrayList<>();
+		Map<Integer, List<Integer>> indexesByShard = new TreeMap<>();
+		for (int i = 0; i < userList.size(); i++)
+		{
+			String email = userList.get(i).getEmail();
+			int shard = shardFor(email, shardCount);
+			indexesByShard.computeIfAbsent(shard, key -> new ArrayList<>()).add(i);
+			if (email != null)
+			{
+				emails.add(email);
+				emailShards.add(shard);
+			}
+		}
+		boolean[] claimed = emails.isEmpty() ? new boolean[0] : emailDirectory.claimAll(emails, emailShards);
+
+		Map<Integer, Future<Object>> groups = new TreeMap<>();
+		for (Map.Entry<Integer, List<Integer>> group : indexesByShard.entrySet())
+		{
+			List<User> groupUsers = new ArrayList<>(group.getValue().size());
+			group.getValue().forEach(i -> groupUsers.add(userList.get(i)));
+			groups.put(group.getKey(), submit(group.getKey(), ((ProxyMethodInvocation) invocation).invocableClone(groupUsers)));
+		}
+
+		Object[] saved = new Object[userList.size()];
+		Throwable failure = null;
+		Set<Integer> failedShards = new HashSet<>();
+		for (Map.Entry<Integer, Future<Object>> group : groups.entrySet())
+		{
+			try
+			{
+				Iterator<Integer> indexes = indexesByShard.get(group.getKey()).iterator();
+				for (Object user : (Iterable<?>) join(group.getValue()))
+				{
+					saved[indexes.next()] = user;
+				}
+			}
+			catch (Throwable e)
+			{
+				failedShards.add(group.getKey());
+				failure = failure == null ? e : failure;
+			}
+		}
+
+		if (failure != null)
+		{
+			for (int i = 0; i < claimed.length; i++)
+			{
+				if (claimed[i] && failedShards.contains(emailShards.get(i)))
+				{
+					emailDirectory.release(emails.get(i), emailShards.get(i));
+				}
+			}
+			throw failure;
+		}
+		return new ArrayList<>(Arrays.asList(saved));
+	}
+
+	/**
+	 * Write a user that may change its email. The new email is claimed for the user's shard before the write and the old one is released after it.
+	 * <br><br>
+	 * The old email is read with the user's row locked in the write's transaction, and released once it commits, so that concurrent writes of the same user release the email each of them replaced. The new email is claimed before the transaction begins, so that it does not hold a connection while waiting for another.
+	 *
+	 * @param invocation The call.
+	 * @param id The user's id.
+	 * @param email The user's new email, or null when it is not changed.
+	 * @return The result of the call.
+	 */
+	private Object changeEmail(MethodInvocation invocation, Long id, String email) throws Throwable
+	{
+		int shard = shardOf(id);
+		if (email == null)
+		{
+			return proceedOn(shard, invocation);
+		}
+
+		// A claim that was already held may be the user's own email, which is not changed
+		boolean claimed = emailDirectory.claim(email, shard);
+		String[] oldEmail = new String[1];
+		Object result;
+		try
+		{
+			result = proceedLockedOn(shard, id, invocation, oldEmail);
+		}
+		catch (Throwable e)
+		{
+			if (claimed)
+			{
+				emailDirectory.release(email, shard);
+			}
+			throw e;
+		}
+
+		if (Integer.valueOf(0).equals(result))
+		{
+			if (claimed)
+			{
+				emailDirectory.release(email, shard);
+			}
+		}
+		else if (oldEmail[0] != null && !oldEmail[0].equals(email))
+		{
+			emailDirectory.release(oldEmail[0], shard);
+		}
+		return result;
+	}
+
+	/**
+	 * Delete a user and release its email, read with the user's row locked in the delete's transaction.
+	 *
+	 * @param invocation The call.
+	 * @param id The user's id.
+	 * @return The result of the call.
+	 */
+	private Object delete(MethodInvocation invocation, Long id) throws Throwable
+	{
+		int shard = shardOf(id);
+		String[] email = new String[1];
+		Object result = proceedLockedOn(shard, id, invocation, email);
+		if (email[0] != null && !Integer.valueOf(0).equals(result))
+		{
+			emailDirectory.release(email[0], shard);
+		}
+		return result;
+	}
+
+	/**
+	 * Run a call on a shard on the current thread, in a transaction that first locks the user's row and reads its email.
+	 *
+	 * @param shard The shard number.
+	 * @param id The user's id.
+	 * @param invocation The call.
+	 * @param email Receives the user's email before the call, or null when the user does not exist.
+	 * @return The result.
+	 */
+	private Object proceedLockedOn(int shard, Long id, MethodInvocation invocation, String[] email) throws Throwable
+	{
+		ShardRoutingDataSource.useShard(shard);
+		try
+		{
+			return new TransactionTemplate(transactionManager.getObject()).execute(status -> {
+				email[0] = userRepository.getObject().findLockedEmailById(id).orElse(null);
+				try
+				{
+					return invocation.proceed();
+				}
+				catch (RuntimeException | Error e)
+				{
+					throw e;
+				}
+				catch (Throwable e)
+				{
+					throw new UndeclaredThrowableException(e);
+				}
+			});
+		}
+		catch (UndeclaredThrowableException e)
+		{
+			throw e.getUndeclaredThrowable();
+		}
+		finally
+		{
+			ShardRoutingDataSource.useShard(null);
+		}
+	}
+
+	/**
+	 * Find users by id. The ids are grouped by the shard they carry and each group is read on its shard in parallel.
+	 *
+	 * @param invocation The call.
+	 * @param ids The ids.
+	 * @return The users found, grouped by shard.
+	 */
+	private Object findAllById(MethodInvocation invocation, Iterable<Long> ids) throws Throwable
+	{
+		Map<Integer, List<Long>> idsByShard = new TreeMap<>();
+		for (Long id : ids)
+		{
+			idsByShard.computeIfAbsent(shardOf(id), key -> new ArrayList<>()).add(id);
+		}
+
+		List<Future<Object>> groups = new ArrayList<>(idsByShard.size());
+		for (Map.Entry<Integer, List<Long>> group : idsByShard.entrySet())
+		{
+			groups.add(submit(group.getKey(), ((ProxyMethodInvocation) invocation).invocableClone(group.getValue())));
+		}
+		List<Object> users = new ArrayList<>();
+		for (Future<Object> group : groups)
+		{
+			((Iterable<?>) join(group)).forEach(users::add);
+		}
+		return users;
+	}
+
+	/**
+	 * Get a slice from every shard and merge them into the slice that a single database would have returned.
+	 * <br><br>
+	 * Each shard returns up to a page of users past the cursor, so the first page of the merged users is the page across all shards.
+	 *
+	 * @param invocation The call.
+	 * @param pageable The page size.
+	 * @return The merged slice.
+	 */
+	@SuppressWarnings("unchecked")
+	private Slice<User> mergeSlices(MethodInvocation invocation, Pageable pageable) throws Throwable
+	{
+		List<User> users = new ArrayList<>();
+		boolean hasNext = false;
+		for (Object slice : fanOut(invocation))
+		{
+			users.addAll(((Slice<User>) slice).getContent());
+			hasNext |= ((Slice<User>) slice).hasNext();
+		}
+		users.sort(Comparator.comparing(User::getId));
+		if (users.size() > pageable.getPageSize())
+		{
+			users = new ArrayList<>(users.subList(0, pageable.getPageSize()));
+			hasNext = true;
+		}
+		return new SliceImpl<>(users, pageable, hasNext);
+	}
+
+	/**
+	 * Stream all users ordered by id, merged from every shard.
+	 * <br><br>
+	 * Each shard is paged through by id, {@link UserRepository#STREAM_FETCH_SIZE} users at a time, and the pages are merged as they are consumed. The first pages are read in parallel. The users are not managed.
+	 *
+	 * @return The stream of users.
+	 */
+	private Stream<User> mergeStreams() throws Throwable
+	{
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new MergingIterator(), Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+	}
+
+	/**
+	 * Run a call on every shard in parallel.
+	 *
+	 * @param invocation The call.
+	 * @return The result of each shard, by shard number.
+	 */
+	private List<Object> fanOut(MethodInvocation invocation) throws Throwable
+	{
+		List<Future<Object>> futures = new ArrayList<>(shards.getShardCount());
+		for (int shard = 0; shard < shards.getShardCount(); shard++)
+		{
+			futures.add(submit(shard, ((ProxyMethodInvocation) invocation).invocableClone()));
+		}
+		List<Object> results = new ArrayList<>(futures.size());
+		try
+		{
+			for (Future<Object> future : futures)
+			{
+				results.add(join(future));
+			}
+		}
+		catch (Throwable e)
+		{
+			futures.forEach(future -> future.cancel(true));
+			throw e;
+		}
+		return results;
+	}
+
+	/**
+	 * Run a call on a shard on the executor.
+	 *
+	 * @param shard The shard number.
+	 * @param invocation The call.
+	 * @return The result.
+	 */
+	private Future<Object> submit(int shard, MethodInvocation invocation)
+	{
+		return executor.submit(() -> {
+			try
+			{
+				return proceedOn(shard, invocation);
+			}
+			catch (Exception | Error e)
+			{
+				throw e;
+			}
+			catch (Throwable e)
+			{
+				throw new UndeclaredThrowableException(e);
+			}
+		});
+	}
+
+	/**
+	 * Wait for the result of a call run on the executor.
+	 *
+	 * @param future The call.
+	 * @param <T> The type of the result.
+	 * @return The result.
+	 * @throws Throwable The exception thrown by the call.
+	 */
+	private static <T> T join(Future<T> future) throws Throwable
+	{
+		try
+		{
+			return future.get();
+		}
+		catch (ExecutionException e)
+		{
+			throw e.getCause();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw e;
+		}
+	}
+
+	/**
+	 * Run a call on a shard on the current thread.
+	 *
+	 * @param shard The shard number.
+	 * @param invocation The call.
+	 * @return The result.
+	 */
+	private static Object proceedOn(int shard, MethodInvocation invocation) throws Throwable
+	{
+		ShardRoutingDataSource.useShard(shard);
+		try
+		{
+			return invocation.proceed();
+		}
+		finally
+		{
+			ShardRoutingDataSource.useShard(null);
+		}
+	}
+
+	/**
+	 * Get the shard a user is stored on.
+	 *
+	 * @param id The user's id.
+	 * @return The shard number.
+	 */
+	private int shardOf(Long id)
+	{
+		return ShardedIdGenerator.shardOf(id, shards.getShardCount());
+	}
+
+	/**
+	 * MergingIterator
+	 * <br><br>
+	 * Iterates over the users of every shard by id, paging through each shard as its users are consumed.
+	 */
+	private final class MergingIterator implements Iterator<User>
+	{
+		/**
+		 * The page read from each shard per round trip, always the first page past the shard's cursor.
+		 */
+		private final Pageable page = PageRequest.of(0, UserRepository.STREAM_FETCH_SIZE, Sort.by("id"));
+
+		/**
+		 * The users read from each shard and not yet consumed.
+		 */
+		private final List<Deque<User>> buffers = new ArrayList<>();
+
+		/**
+		 * Whether each shard has users past its buffer.
+		 */
+		private final boolean[] hasMore;
+
+		/**
+		 * Constructor
+		 */
+		private MergingIterator() throws Throwable
+		{
+			int shardCount = shards.getShardCount();
+			hasMore = new boolean[shardCount];
+			List<Future<Slice<User>>> firstPages = new ArrayList<>(shardCount);
+			for (int shard = 0; shard < shardCount; shard++)
+			{
+				buffers.add(new ArrayDeque<>());
+				firstPages.add(read(shard, 0L));
+			}
+			for (int shard = 0; shard < shardCount; shard++)
+			{
+				fill(shard, join(firstPages.get(shard)));
+			}
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			for (Deque<User> buffer : buffers)
+			{
+				if (!buffer.isEmpty())
+				{
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public User next()
+		{
+			int next = -1;
+			for (int shard = 0; shard < buffers.size(); shard++)
+			{
+				User head = buffers.get(shard).peekFirst();
+				if (head != null && (next < 0 || head.getId() < buffers.get(next).peekFirst().getId()))
+				{
+					next = shard;
+				}
+			}
+			if (next < 0)
+			{
+				throw new NoSuchElementException();
+			}
+
+			Deque<User> buffer = buffers.get(next);
+			User user = buffer.pollFirst();
+			if (buffer.isEmpty() && hasMore[next])
+			{
+				try
+				{
+					fill(next, join(read(next, user.getId())));
+				}
+				catch (RuntimeException | Error e)
+				{
+					throw e;
+				}
+				catch (Throwable e)
+				{
+					throw new UndeclaredThrowableException(e);
+				}
+			}
+			return user;
+		}
+
+		/**
+		 * Read the next page of a shard on the executor.
+		 *
+		 * @param shard The shard number.
+		 * @param after The id to read past.
+		 * @return The page.
+		 */
+		private Future<Slice<User>> read(int shard, long after)
+		{
+			UserRepository repository = userRepository.getObject();
+			return executor.submit(() -> {
+				ShardRoutingDataSource.useShard(shard);
+				try
+				{
+					return repository.findByIdGreaterThan(after, page);
+				}
+				finally
+				{
+					ShardRoutingDataSource.useShard(null);
+				}
+			});
+		}
+
+		/**
+		 * Buffer a page read from a shard.
+		 *
+		 * @param shard The shard number.
+		 * @param slice The page.
+		 */
+		private void fill(int shard, Slice<User> slice)
+		{
+			buffers.get(shard).addAll(slice.getContent());
+			hasMore[shard] = slice.hasNext();
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package com.malcolmbaatjies.user.configurations;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+/**
+ * BoundedDataSourceTest
+ * <br><br>
+ * This class is used to test the BoundedDataSource class.
+ */
+@ExtendWith(MockitoExtension.class)
+class BoundedDataSourceTest
+{
+	/**
+	 * The mocked data source.
+	 */
+	@Mock
+	private DataSource mockedDataSource;
+
+	/**
+	 * The bounded data source, allowing two connections at once.
+	 */
+	private BoundedDataSource boundedDataSource;
+
+	/**
+	 * Setup the bounded data source.
+	 */
+	@BeforeEach
+	void setup()
+	{
+		boundedDataSource = new BoundedDataSource(mockedDataSource, 2, Duration.ofMillis(10));
+	}
+
+	/**
+	 * Test that a permit is taken for each connection and given back once when it is closed.
+	 */
+	@Test
+	void permitReleasedOnClose() throws SQLException
+	{
+		Connection connection = mock(Connection.class);
+		when(mockedDataSource.getConnection()).thenReturn(connection);
+
+		Connection first = boundedDataSource.getConnection();
+		boundedDataSource.getConnection();
+		assertEquals(0, boundedDataSource.getAvailablePermits());
+
+		first.close();
+		first.close();
+
+		assertEquals(1, boundedDataSource.getAvailablePermits());
+		verify(connection, times(2)).close();
+	}
+
+	/**
+	 * Test that a connection is not requested once every permit is taken, and the caller times out.
+	 */
+	@Test
+	void timeoutWhenExhausted() throws SQLException
+	{
+		when(mockedDataSource.getConnection()).thenReturn(mock(Connection.class));
+
+		boundedDataSource.getConnection();
+		boundedDataSource.getConnection();
+
+		assertThrows(SQLTimeoutException.class, () -> boundedDataSource.getConnection());
+		verify(mockedDataSource, times(2)).getConnection();
+	}
+
+	/**
+	 * Test that the permit is given back when the connection cannot be obtained.
+	 */
+	@Test
+	void permitReleasedOnFailure() throws SQLException
+	{
+		when(mockedDataSource.getConnection()).thenThrow(new SQLException("Connection refused"));
+
+		assertThrows(SQLException.class, () -> boundedDataSource.getConnection());
+
+		assertEquals(2, boundedDataSource.getAvailablePermits());
+	}
+
+	/**
+	 * Test that the bounded data source unwraps to itself, and otherwise to the capped data source or what it wraps.
+	 */
+	@Test
+	void unwrapsCappedDataSource() throws SQLException
+	{
+		HikariDataSource pool = new HikariDataSource();
+		when(mockedDataSource.isWrapperFor(HikariDataSource.class)).thenReturn(true);
+		when(mockedDataSource.unwrap(HikariDataSource.class)).thenReturn(pool);
+
+		assertSame(boundedDataSource, boundedDataSource.unwrap(BoundedDataSource.class));
+		assertTrue(boundedDataSource.isWrapperFor(BoundedDataSource.class));
+		assertTrue(boundedDataSource.isWrapperFor(HikariDataSource.class));
+		assertSame(pool, boundedDataSource.unwrap(HikariDataSource.class));
+	}
+
+	/**
+	 * Test that other calls are passed through to the connection.
+	 */
+	@Test
+	void delegatesToConnection() throws SQLException
+	{
+		Connection connection = mock(Connection.class);
+		when(mockedDataSource.getConnection()).thenReturn(connection);
+		when(connection.getAutoCommit()).thenReturn(true);
+
+		Connection bounded = boundedDataSource.getConnection();
+
+		assertEquals(true, bounded.getAutoCommit());
+		doThrow(new SQLException("Closed")).when(connection).commit();
+		assertThrows(SQLException.class, bounded::commit);
+	}
+}
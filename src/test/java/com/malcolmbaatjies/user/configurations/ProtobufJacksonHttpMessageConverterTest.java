@@ -0,0 +1,158 @@
+package com.malcolmbaatjies.user.configurations;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.protobuf.ProtobufFactory;
+import com.fasterxml.jackson.dataformat.protobuf.schema.NativeProtobufSchema;
+import com.fasterxml.jackson.dataformat.protobuf.schema.ProtobufSchemaLoader;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import com.malcolmbaatjies.user.entities.models.User;
+import com.malcolmbaatjies.user.entities.requests.NewUserRequest;
+import com.malcolmbaatjies.user.entities.responses.BatchUserResponse;
+import com.malcolmbaatjies.user.entities.responses.validation.ValidationErrorResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.http.MockHttpInputMessage;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ProtobufJacksonHttpMessageConverterTest
+ * <br><br>
+ * This class is used to test the ProtobufJacksonHttpMessageConverter class against the schema it serves.
+ */
+class ProtobufJacksonHttpMessageConverterTest
+{
+	/**
+	 * The Protobuf media type.
+	 */
+	private static final MediaType PROTOBUF = MediaType.parseMediaType(ProtobufJacksonHttpMessageConverter.MEDIA_TYPE);
+
+	/**
+	 * The converter under test.
+	 */
+	private ProtobufJacksonHttpMessageConverter converter;
+
+	/**
+	 * The object mapper the converter writes with.
+	 */
+	private ObjectMapper objectMapper;
+
+	/**
+	 * The schema the converter serves.
+	 */
+	private NativeProtobufSchema schema;
+
+	/**
+	 * Build the converter as the application does, where Spring Boot registers the parameter names module.
+	 */
+	@BeforeEach
+	public void setup() throws IOException
+	{
+		objectMapper = Jackson2ObjectMapperBuilder.json().modulesToInstall(new ParameterNamesModule()).factory(new ProtobufFactory()).build();
+		converter = new ProtobufJacksonHttpMessageConverter(objectMapper);
+		try (InputStream in = new ClassPathResource(ProtobufJacksonHttpMessageConverter.SCHEMA).getInputStream())
+		{
+			schema = ProtobufSchemaLoader.std.loadNative(in, false);
+		}
+	}
+
+	/**
+	 * Test that a user is written without its version and read back, in fewer bytes than JSON.
+	 */
+	@Test
+	void userRoundTrip() throws IOException
+	{
+		User user = User.builder().id(42L).firstName("John").lastName("Doe").email("johndoe@mail.com").version(3L).build();
+
+		MockHttpOutputMessage output = new MockHttpOutputMessage();
+		converter.write(user, User.class, PROTOBUF, output);
+		User read = (User) converter.read(User.class, null, new MockHttpInputMessage(output.getBodyAsBytes()));
+
+		assertEquals(ProtobufJacksonHttpMessageConverter.MEDIA_TYPE, output.getHeaders().getContentType().toString());
+		assertEquals(42L, read.getId());
+		assertEquals("John", read.getFirstName());
+		assertEquals("Doe", read.getLastName());
+		assertEquals("johndoe@mail.com", read.getEmail());
+		assertNull(read.getVersion());
+		assertTrue(output.getBodyAsBytes().length < new ObjectMapper().writeValueAsBytes(user).length);
+	}
+
+	/**
+	 * Test that a list of users is written as a UserList message, and that fields left out of a user are left out of its message.
+	 */
+	@Test
+	void writeUserList() throws IOException
+	{
+		Type type = ResolvableType.forClassWithGenerics(List.class, User.class).getType();
+		List<User> users = List.of(User.builder().id(1L).email("a@mail.com").build(), User.builder().id(2L).email("b@mail.com").build());
+
+		MockHttpOutputMessage output = new MockHttpOutputMessage();
+		assertTrue(converter.canWrite(type, users.getClass(), PROTOBUF));
+		assertEquals(List.of(PROTOBUF), converter.getSupportedMediaTypes(users.getClass()));
+		converter.write(users, type, PROTOBUF, output);
+		JsonNode read = objectMapper.readerFor(JsonNode.class).with(schema.forType("UserList")).readValue(output.getBodyAsBytes());
+
+		assertEquals(2, read.get("users").size());
+		assertEquals(2L, read.get("users").get(1).get("id").asLong());
+		assertEquals("b@mail.com", read.get("users").get(1).get("email").asText());
+		assertFalse(read.get("users").get(1).has("firstName"));
+	}
+
+	/**
+	 * Test that a new user request is read, and that a body that is not a message is refused.
+	 */
+	@Test
+	void readNewUserRequest() throws IOException
+	{
+		byte[] body = objectMapper.writer(schema.forType("NewUserRequest")).writeValueAsBytes(NewUserRequest.builder().firstName("Jane").lastName("Doe").email("janedoe@mail.com").build());
+
+		assertTrue(converter.canRead(NewUserRequest.class, null, PROTOBUF));
+		NewUserRequest read = (NewUserRequest) converter.read(NewUserRequest.class, null, new MockHttpInputMessage(body));
+
+		assertEquals("Jane", read.getFirstName());
+		assertEquals("Doe", read.getLastName());
+		assertEquals("janedoe@mail.com", read.getEmail());
+		assertThrows(HttpMessageNotReadableException.class, () -> converter.read(NewUserRequest.class, null, new MockHttpInputMessage(new byte[]{(byte) 0xFF, (byte) 0xFF})));
+	}
+
+	/**
+	 * Test that a validation error response is written with its errors.
+	 */
+	@Test
+	void writeValidationErrorResponse() throws IOException
+	{
+		ValidationErrorResponse response = ValidationErrorResponse.builder().status("400 BAD_REQUEST").message("Invalid fields").build();
+		response.addError("4001");
+
+		MockHttpOutputMessage output = new MockHttpOutputMessage();
+		converter.write(response, ValidationErrorResponse.class, PROTOBUF, output);
+		JsonNode read = objectMapper.readerFor(JsonNode.class).with(schema.forType("ValidationErrorResponse")).readValue(output.getBodyAsBytes());
+
+		assertEquals("400 BAD_REQUEST", read.get("status").asText());
+		assertEquals("4001", read.get("errors").get(0).get("code").asText());
+	}
+
+	/**
+	 * Test that bodies without a message in the schema are left to the other converters.
+	 */
+	@Test
+	void unsupportedTypes()
+	{
+		assertFalse(converter.canWrite(BatchUserResponse.class, PROTOBUF));
+		assertFalse(converter.canWrite(ResolvableType.forClassWithGenerics(List.class, BatchUserResponse.class).getType(), List.class, PROTOBUF));
+		assertFalse(converter.canRead(ResolvableType.forClassWithGenerics(List.class, NewUserRequest.class).getType(), null, PROTOBUF));
+		assertFalse(converter.canWrite(User.class, MediaType.APPLICATION_JSON));
+	}
+}
@@ -0,0 +1,100 @@
+package com.malcolmbaatjies.user.configurations;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ReadYourWritesFilterTest
+ * <br><br>
+ * This class is used to test the {@link com.malcolmbaatjies.user.configurations.ReadYourWritesFilter ReadYourWritesFilter} class.
+ */
+class ReadYourWritesFilterTest
+{
+	/**
+	 * The time the requests are made at.
+	 */
+	private static final Instant NOW = Instant.ofEpochMilli(1_000_000);
+
+	/**
+	 * The {@link com.malcolmbaatjies.user.configurations.ReadYourWritesFilter ReadYourWritesFilter}, with a two second window.
+	 */
+	private final ReadYourWritesFilter filter = new ReadYourWritesFilter(Duration.ofSeconds(2), Clock.fixed(NOW, ZoneOffset.UTC));
+
+	/**
+	 * Test that a write is pinned to the primary and opens the client's window.
+	 */
+	@Test
+	void writePinnedAndOpensWindow() throws ServletException, IOException
+	{
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		assertTrue(pinnedDuring(filter, new MockHttpServletRequest("PATCH", "/users/1"), response));
+		assertFalse(ReplicaRoutingDataSource.isPinnedToPrimary());
+
+		Cookie cookie = response.getCookie(ReadYourWritesFilter.COOKIE);
+		assertNotNull(cookie);
+		assertEquals(String.valueOf(NOW.toEpochMilli() + 2000), cookie.getValue());
+		assertEquals(2, cookie.getMaxAge());
+	}
+
+	/**
+	 * Test that a read is pinned to the primary only while its client's window is open.
+	 */
+	@Test
+	void readPinnedInWindow() throws ServletException, IOException
+	{
+		MockHttpServletRequest inWindow = new MockHttpServletRequest("GET", "/users/1");
+		inWindow.setCookies(new Cookie(ReadYourWritesFilter.COOKIE, String.valueOf(NOW.toEpochMilli() + 1)));
+		MockHttpServletRequest afterWindow = new MockHttpServletRequest("GET", "/users/1");
+		afterWindow.setCookies(new Cookie(ReadYourWritesFilter.COOKIE, String.valueOf(NOW.toEpochMilli())));
+		MockHttpServletRequest invalid = new MockHttpServletRequest("GET", "/users/1");
+		invalid.setCookies(new Cookie(ReadYourWritesFilter.COOKIE, "forever"));
+
+		assertTrue(pinnedDuring(filter, inWindow, new MockHttpServletResponse()));
+		assertFalse(pinnedDuring(filter, afterWindow, new MockHttpServletResponse()));
+		assertFalse(pinnedDuring(filter, invalid, new MockHttpServletResponse()));
+		assertFalse(pinnedDuring(filter, new MockHttpServletRequest("GET", "/users/1"), new MockHttpServletResponse()));
+	}
+
+	/**
+	 * Test that no window is opened when the window is zero, while the write itself is still pinned.
+	 */
+	@Test
+	void zeroWindow() throws ServletException, IOException
+	{
+		ReadYourWritesFilter zeroWindowFilter = new ReadYourWritesFilter(Duration.ZERO, Clock.fixed(NOW, ZoneOffset.UTC));
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		assertTrue(pinnedDuring(zeroWindowFilter, new MockHttpServletRequest("POST", "/users"), response));
+		assertNull(response.getCookie(ReadYourWritesFilter.COOKIE));
+	}
+
+	/**
+	 * Run a request through a filter and report whether it was pinned to the primary while it was handled.
+	 *
+	 * @param filter The filter.
+	 * @param request The request.
+	 * @param response The response.
+	 * @return Whether the request was pinned.
+	 */
+	private static boolean pinnedDuring(ReadYourWritesFilter filter, MockHttpServletRequest request, MockHttpServletResponse response) throws ServletException, IOException
+	{
+		AtomicBoolean pinned = new AtomicBoolean();
+		FilterChain chain = (chainRequest, chainResponse) -> pinned.set(ReplicaRoutingDataSource.isPinnedToPrimary());
+		filter.doFilter(request, response, chain);
+		return pinned.get();
+	}
+}
@@ -0,0 +1,178 @@
+package com.malcolmbaatjies.user.configurations;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ReplicaRoutingDataSourceTest
+ * <br><br>
+ * This class is used to test the {@link com.malcolmbaatjies.user.configurations.ReplicaRoutingDataSource ReplicaRoutingDataSource} class against embedded databases standing in for the primary and two replicas. Each database holds its own name, so a query shows which one it ran on.
+ */
+class ReplicaRoutingDataSourceTest
+{
+	/**
+	 * The primary.
+	 */
+	private EmbeddedDatabase primary;
+
+	/**
+	 * The first replica.
+	 */
+	private EmbeddedDatabase replica1;
+
+	/**
+	 * The second replica.
+	 */
+	private EmbeddedDatabase replica2;
+
+	/**
+	 * Start the databases.
+	 */
+	@BeforeEach
+	public void setup()
+	{
+		primary = database("primary");
+		replica1 = database("replica1");
+		replica2 = database("replica2");
+	}
+
+	/**
+	 * Stop the databases.
+	 */
+	@AfterEach
+	public void teardown()
+	{
+		ReplicaRoutingDataSource.pinToPrimary(false);
+		primary.shutdown();
+		replica1.shutdown();
+		replica2.shutdown();
+	}
+
+	/**
+	 * Test that read-only transactions run on the replica and all other statements on the primary.
+	 */
+	@Test
+	void readOnlyTransactionsUseReplica()
+	{
+		DataSource dataSource = new LazyConnectionDataSourceProxy(new ReplicaRoutingDataSource(primary, List.of(replica1), ReplicaRoutingDataSource.Strategy.ROUND_ROBIN));
+
+		assertEquals("replica1", nameInTransaction(dataSource, true));
+		assertEquals("primary", nameInTransaction(dataSource, false));
+		assertEquals("primary", new JdbcTemplate(dataSource).queryForObject("SELECT name FROM node", String.class));
+	}
+
+	/**
+	 * Test that read-only transactions run on the primary while the thread is pinned to it.
+	 */
+	@Test
+	void pinnedToPrimary()
+	{
+		DataSource dataSource = new LazyConnectionDataSourceProxy(new ReplicaRoutingDataSource(primary, List.of(replica1), ReplicaRoutingDataSource.Strategy.ROUND_ROBIN));
+
+		ReplicaRoutingDataSource.pinToPrimary(true);
+		assertEquals("primary", nameInTransaction(dataSource, true));
+
+		ReplicaRoutingDataSource.pinToPrimary(false);
+		assertEquals("replica1", nameInTransaction(dataSource, true));
+	}
+
+	/**
+	 * Test that read-only transactions run on the primary when there are no replicas.
+	 */
+	@Test
+	void noReplicas()
+	{
+		DataSource dataSource = new LazyConnectionDataSourceProxy(new ReplicaRoutingDataSource(primary, List.of(), ReplicaRoutingDataSource.Strategy.ROUND_ROBIN));
+
+		assertEquals("primary", nameInTransaction(dataSource, true));
+	}
+
+	/**
+	 * Test that the replicas are taken in turn.
+	 */
+	@Test
+	void roundRobin()
+	{
+		DataSource dataSource = new LazyConnectionDataSourceProxy(new ReplicaRoutingDataSource(primary, List.of(replica1, replica2), ReplicaRoutingDataSource.Strategy.ROUND_ROBIN));
+
+		assertEquals("replica1", nameInTransaction(dataSource, true));
+		assertEquals("replica2", nameInTransaction(dataSource, true));
+		assertEquals("replica1", nameInTransaction(dataSource, true));
+		assertEquals("replica2", nameInTransaction(dataSource, true));
+	}
+
+	/**
+	 * Test that the replica with the fewest open connections is taken, and that closed connections stop counting.
+	 */
+	@Test
+	void leastConnections() throws SQLException
+	{
+		ReplicaRoutingDataSource routingDataSource = new ReplicaRoutingDataSource(primary, List.of(replica1, replica2), ReplicaRoutingDataSource.Strategy.LEAST_CONNECTIONS);
+		DataSource dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+
+		Connection held;
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+		try
+		{
+			held = routingDataSource.getConnection();
+		}
+		finally
+		{
+			TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+		}
+		assertArrayEquals(new int[] {1, 0}, routingDataSource.getReplicaConnections());
+
+		assertEquals("replica2", nameInTransaction(dataSource, true));
+		assertEquals("replica2", nameInTransaction(dataSource, true));
+		assertArrayEquals(new int[] {1, 0}, routingDataSource.getReplicaConnections());
+
+		held.close();
+		held.close();
+		assertArrayEquals(new int[] {0, 0}, routingDataSource.getReplicaConnections());
+	}
+
+	/**
+	 * Read the name of the database a transaction runs on.
+	 *
+	 * @param dataSource The data source.
+	 * @param readOnly Whether the transaction is read-only.
+	 * @return The name of the database.
+	 */
+	private static String nameInTransaction(DataSource dataSource, boolean readOnly)
+	{
+		TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+		transactionTemplate.setReadOnly(readOnly);
+		return transactionTemplate.execute(status -> new JdbcTemplate(dataSource).queryForObject("SELECT name FROM node", String.class));
+	}
+
+	/**
+	 * Start an embedded database that holds its own name.
+	 *
+	 * @param name The name of the database.
+	 * @return The database.
+	 */
+	private static EmbeddedDatabase database(String name)
+	{
+		EmbeddedDatabase database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).setName(name).build();
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(database);
+		jdbcTemplate.execute("CREATE TABLE node (name VARCHAR(16))");
+		jdbcTemplate.update("INSERT INTO node VALUES (?)", name);
+		return database;
+	}
+}
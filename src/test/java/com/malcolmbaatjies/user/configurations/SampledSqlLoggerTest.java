@@ -0,0 +1,78 @@
+package com.malcolmbaatjies.user.configurations;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import org.apache.logging.log4j.Level;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SampledSqlLoggerTest
+ * <br><br>
+ * This class is used to test which statements the {@link com.malcolmbaatjies.user.configurations.SampledSqlLogger SampledSqlLogger} class logs.
+ */
+class SampledSqlLoggerTest
+{
+	/**
+	 * Test that slow and failed statements are always logged at WARN.
+	 */
+	@Test
+	void slowAndFailedLogged()
+	{
+		SampledSqlLogger logger = new SampledSqlLogger(0, Duration.ofMillis(200));
+
+		assertEquals(Level.WARN, logger.levelOf(execution(200, true)));
+		assertEquals(Level.WARN, logger.levelOf(execution(1, false)));
+		assertNull(logger.levelOf(execution(199, true)));
+	}
+
+	/**
+	 * Test that every statement is logged at INFO with a rate of one.
+	 */
+	@Test
+	void everyStatementSampled()
+	{
+		SampledSqlLogger logger = new SampledSqlLogger(1, Duration.ofMillis(200));
+
+		for (int i = 0; i < 100; i++)
+		{
+			assertEquals(Level.INFO, logger.levelOf(execution(1, true)));
+		}
+	}
+
+	/**
+	 * Test that about one in rate statements is logged.
+	 */
+	@Test
+	void oneInRateSampled()
+	{
+		SampledSqlLogger logger = new SampledSqlLogger(100, Duration.ofMillis(200));
+
+		int logged = 0;
+		for (int i = 0; i < 100_000; i++)
+		{
+			if (logger.levelOf(execution(1, true)) != null)
+			{
+				logged++;
+			}
+		}
+		assertTrue(logged > 700 && logged < 1300, "Sampled " + logged + " of 100000");
+	}
+
+	/**
+	 * Create the execution of a statement.
+	 *
+	 * @param elapsedMillis How long the statement took.
+	 * @param success       Whether it succeeded.
+	 * @return The execution.
+	 */
+	private static ExecutionInfo execution(long elapsedMillis, boolean success)
+	{
+		ExecutionInfo execution = new ExecutionInfo();
+		execution.setElapsedTime(elapsedMillis);
+		execution.setSuccess(success);
+		return execution;
+	}
+}
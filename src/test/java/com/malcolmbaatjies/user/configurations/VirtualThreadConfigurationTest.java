@@ -0,0 +1,125 @@
+package com.malcolmbaatjies.user.configurations;
+
+import com.malcolmbaatjies.user.repositories.sharding.ShardRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * VirtualThreadConfigurationTest
+ * <br><br>
+ * This class is used to test which data sources the {@link com.malcolmbaatjies.user.configurations.VirtualThreadConfiguration VirtualThreadConfiguration} caps.
+ */
+class VirtualThreadConfigurationTest
+{
+	/**
+	 * The post processor that caps the application's data source.
+	 */
+	private final BeanPostProcessor boundedDataSourcePostProcessor = VirtualThreadConfiguration.boundedDataSourcePostProcessor();
+
+	/**
+	 * The connection pool, never started.
+	 */
+	private final HikariDataSource pool = pool("virtualthreads", 7);
+
+	/**
+	 * A second connection pool, never started, standing for a replica or a shard.
+	 */
+	private final HikariDataSource otherPool = pool("virtualthreadsother", 3);
+
+	/**
+	 * Close the connection pools.
+	 */
+	@AfterEach
+	public void teardown()
+	{
+		pool.close();
+		otherPool.close();
+	}
+
+	/**
+	 * Test that the application's data source is capped at its pool's size, and that the pool can still be unwrapped.
+	 */
+	@Test
+	void dataSourceBounded() throws SQLException
+	{
+		Object bean = boundedDataSourcePostProcessor.postProcessAfterInitialization(pool, VirtualThreadConfiguration.DATA_SOURCE_BEAN);
+
+		BoundedDataSource bounded = assertInstanceOf(BoundedDataSource.class, bean);
+		assertEquals(7, bounded.getAvailablePermits());
+		assertSame(pool, bounded.unwrap(HikariDataSource.class));
+	}
+
+	/**
+	 * Test that an application data source routing to a pool is capped at the pool's size.
+	 */
+	@Test
+	void routingDataSourceBounded() throws SQLException
+	{
+		DataSource routing = new LazyConnectionDataSourceProxy(pool);
+
+		Object bean = boundedDataSourcePostProcessor.postProcessAfterInitialization(routing, VirtualThreadConfiguration.DATA_SOURCE_BEAN);
+
+		BoundedDataSource bounded = assertInstanceOf(BoundedDataSource.class, bean);
+		assertEquals(7, bounded.getAvailablePermits());
+		assertSame(routing, bounded.getTargetDataSource());
+	}
+
+	/**
+	 * Test that an application data source routing to the primary and a replica is capped at the sum of their pools' sizes.
+	 */
+	@Test
+	void replicaRoutingDataSourceBoundedBySum()
+	{
+		DataSource routing = new LazyConnectionDataSourceProxy(new ReplicaRoutingDataSource(pool, List.of(otherPool), ReplicaRoutingDataSource.Strategy.ROUND_ROBIN));
+
+		Object bean = boundedDataSourcePostProcessor.postProcessAfterInitialization(routing, VirtualThreadConfiguration.DATA_SOURCE_BEAN);
+
+		assertEquals(10, assertInstanceOf(BoundedDataSource.class, bean).getAvailablePermits());
+	}
+
+	/**
+	 * Test that an application data source routing to shards is capped at the sum of their pools' sizes.
+	 */
+	@Test
+	void shardRoutingDataSourceBoundedBySum()
+	{
+		DataSource routing = new LazyConnectionDataSourceProxy(new ShardRoutingDataSource(List.of(pool, otherPool)));
+
+		Object bean = boundedDataSourcePostProcessor.postProcessAfterInitialization(routing, VirtualThreadConfiguration.DATA_SOURCE_BEAN);
+
+		assertEquals(10, assertInstanceOf(BoundedDataSource.class, bean).getAvailablePermits());
+	}
+
+	/**
+	 * Test that other data source beans, such as the pools a routing data source routes to, keep their type.
+	 */
+	@Test
+	void otherDataSourcesKept()
+	{
+		assertSame(pool, boundedDataSourcePostProcessor.postProcessAfterInitialization(pool, "primaryDataSource"));
+	}
+
+	/**
+	 * Build a connection pool, without starting it.
+	 *
+	 * @param database The name of the in-memory database.
+	 * @param maximumPoolSize The maximum number of connections.
+	 * @return The connection pool.
+	 */
+	private static HikariDataSource pool(String database, int maximumPoolSize)
+	{
+		HikariDataSource pool = new HikariDataSource();
+		pool.setJdbcUrl("jdbc:h2:mem:" + database);
+		pool.setMaximumPoolSize(maximumPoolSize);
+		return pool;
+	}
+}
@@ -0,0 +1,263 @@
+package com.malcolmbaatjies.user.controllers;
+
+import com.malcolmbaatjies.user.entities.exceptions.UserExistsException;
+import com.malcolmbaatjies.user.entities.exceptions.UserNotFoundException;
+import com.malcolmbaatjies.user.entities.exceptions.UserVersionMismatchException;
+import com.malcolmbaatjies.user.entities.models.User;
+import com.malcolmbaatjies.user.entities.requests.NewUserRequest;
+import com.malcolmbaatjies.user.entities.requests.UpdateUserRequest;
+import com.malcolmbaatjies.user.repositories.reactive.ReactiveUserRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * ReactiveUserControllerTest
+ * <br><br>
+ * This class is used to test the {@link com.malcolmbaatjies.user.controllers.ReactiveUserController ReactiveUserController} class.
+ * <br><br>
+ * This class is annotated with JUnit 5's {@link org.junit.jupiter.api.extension.ExtendWith} to enable the {@link org.mockito.junit.jupiter.MockitoExtension MockitoExtension} for the JUnit 5 test.
+ */
+@ExtendWith(MockitoExtension.class)
+class ReactiveUserControllerTest
+{
+	/**
+	 * The mocked {@link com.malcolmbaatjies.user.repositories.reactive.ReactiveUserRepository ReactiveUserRepository}.
+	 */
+	@Mock
+	private ReactiveUserRepository mockedUserRepository;
+
+	/**
+	 * The {@link com.malcolmbaatjies.user.controllers.ReactiveUserController ReactiveUserController}.
+	 * <br><br>
+	 * This is annotated with Mockito's {@link org.mockito.InjectMocks} to indicate that it is the object under test.
+	 */
+	@InjectMocks
+	private ReactiveUserController userController;
+
+	/**
+	 * Get all users.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.ReactiveUserController#getAllUsers(long, int) getAllUsers} method to confirm that one more user than the page size is read and that a next page link is returned when it exists.
+	 */
+	@Test
+	void getAllUsersNextPage()
+	{
+		when(mockedUserRepository.findByIdGreaterThan(1L, PageRequest.of(0, 2, Sort.by("id")))).thenReturn(Flux.just(
+			User.builder().id(2L).firstName("Jane").lastName("Doe").email("janedoe@mail.com").version(0L).build(),
+			User.builder().id(3L).firstName("John").lastName("Doe").email("johndoe@mail.com").version(0L).build()
+		));
+
+		ResponseEntity<List<User>> usersResponse = userController.getAllUsers(1, 1).block();
+
+		assertEquals(200, usersResponse.getStatusCodeValue());
+		assertEquals(1, usersResponse.getBody().size());
+		assertEquals("Jane", usersResponse.getBody().get(0).getFirstName());
+		assertEquals("</users?after=2&limit=1>; rel=\"next\"", usersResponse.getHeaders().getFirst(HttpHeaders.LINK));
+		assertEquals("\"" + UserETags.pageETag(usersResponse.getBody(), true, "") + "\"", usersResponse.getHeaders().getETag());
+	}
+
+	/**
+	 * Export users.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.ReactiveUserController#exportUsers() exportUsers} method to confirm that users are requested from the database in bounded batches rather than all at once.
+	 */
+	@Test
+	void exportUsers()
+	{
+		Flux<User> users = Flux.range(1, 2500).map(id -> User.builder().id((long) id).build());
+		List<Long> requests = new ArrayList<>();
+		when(mockedUserRepository.findAllByOrderByIdAsc()).thenReturn(users.doOnRequest(requests::add));
+
+		StepVerifier.create(userController.exportUsers())
+			.expectNextCount(2500)
+			.verifyComplete();
+
+		assertEquals((long) ReactiveUserController.EXPORT_PREFETCH, requests.get(0));
+		assertTrue(requests.stream().allMatch(n -> n <= ReactiveUserController.EXPORT_PREFETCH));
+	}
+
+	/**
+	 * Get user.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.ReactiveUserController#getUser(String) getUser} method.
+	 */
+	@Test
+	void getUser200()
+	{
+		when(mockedUserRepository.findById(1L)).thenReturn(Mono.just(User.builder().id(1L).firstName("John").lastName("Doe").email("johndoe@mail.com").version(3L).build()));
+
+		ResponseEntity<User> userResponse = userController.getUser("1").block();
+
+		assertEquals(200, userResponse.getStatusCodeValue());
+		assertEquals("\"3\"", userResponse.getHeaders().getETag());
+		assertEquals("John", userResponse.getBody().getFirstName());
+	}
+
+	/**
+	 * Get user.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.ReactiveUserController#getUser(String) getUser} method to confirm that a {@link com.malcolmbaatjies.user.entities.exceptions.UserNotFoundException UserNotFoundException} is signalled when the user is not found.
+	 */
+	@Test
+	void getUser404()
+	{
+		when(mockedUserRepository.findById(3L)).thenReturn(Mono.empty());
+
+		StepVerifier.create(userController.getUser("3"))
+			.expectError(UserNotFoundException.class)
+			.verify();
+	}
+
+	/**
+	 * Create user.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.ReactiveUserController#createUser(NewUserRequest) createUser} method.
+	 */
+	@Test
+	void createUser201()
+	{
+		when(mockedUserRepository.insert(any(User.class))).thenAnswer(invocation -> {
+			User user = invocation.getArgument(0);
+			return Mono.just(User.builder().id(51L).firstName(user.getFirstName()).lastName(user.getLastName()).email(user.getEmail()).version(0L).build());
+		});
+
+		ResponseEntity<User> userResponse = userController.createUser(
+			NewUserRequest.builder()
+				.firstName("James")
+				.lastName("Bell")
+				.email("jamesbell@mail.com")
+				.build()
+		).block();
+
+		assertEquals(201, userResponse.getStatusCodeValue());
+		assertEquals("/users/51", userResponse.getHeaders().getFirst("Location"));
+		assertEquals("\"0\"", userResponse.getHeaders().getETag());
+		assertEquals("jamesbell@mail.com", userResponse.getBody().getEmail());
+	}
+
+	/**
+	 * Create user.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.ReactiveUserController#createUser(NewUserRequest) createUser} method to confirm that a {@link com.malcolmbaatjies.user.entities.exceptions.UserExistsException UserExistsException} is signalled when the email is taken.
+	 */
+	@Test
+	void createUser400()
+	{
+		when(mockedUserRepository.insert(any(User.class))).thenReturn(Mono.error(new DataIntegrityViolationException("insert failed",
+			new SQLIntegrityConstraintViolationException("Duplicate entry 'jamesbell@mail.com' for key 'users.UK_USERS_EMAIL'"))));
+
+		StepVerifier.create(userController.createUser(
+				NewUserRequest.builder()
+					.firstName("James")
+					.lastName("Bell")
+					.email("jamesbell@mail.com")
+					.build()
+			))
+			.expectError(UserExistsException.class)
+			.verify();
+	}
+
+	/**
+	 * Update user.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.ReactiveUserController#updateUser(String, UpdateUserRequest, String) updateUser} method to confirm that the fields that are not given are kept and that the update is guarded by the version that was read.
+	 */
+	@Test
+	void updateUserFirstName200()
+	{
+		when(mockedUserRepository.findById(1L)).thenReturn(Mono.just(User.builder().id(1L).firstName("John").lastName("Doe").email("johndoe@mail.com").version(2L).build()));
+		when(mockedUserRepository.updateFieldsById(1L, "James", "Doe", "johndoe@mail.com", 2L)).thenReturn(Mono.just(1));
+
+		ResponseEntity<User> userResponse = userController.updateUser("1", UpdateUserRequest.builder().firstName("James").build(), null).block();
+
+		assertEquals(200, userResponse.getStatusCodeValue());
+		assertEquals("\"3\"", userResponse.getHeaders().getETag());
+		assertEquals("James", userResponse.getBody().getFirstName());
+		assertEquals("Doe", userResponse.getBody().getLastName());
+	}
+
+	/**
+	 * Update user.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.ReactiveUserController#updateUser(String, UpdateUserRequest, String) updateUser} method to confirm that a concurrent update is signalled as a {@link com.malcolmbaatjies.user.entities.exceptions.UserVersionMismatchException UserVersionMismatchException}.
+	 */
+	@Test
+	void updateUserConcurrent412()
+	{
+		when(mockedUserRepository.findById(1L)).thenReturn(Mono.just(User.builder().id(1L).firstName("John").lastName("Doe").email("johndoe@mail.com").version(2L).build()));
+		when(mockedUserRepository.updateFieldsById(1L, "James", "Doe", "johndoe@mail.com", 2L)).thenReturn(Mono.just(0));
+		when(mockedUserRepository.existsById(1L)).thenReturn(Mono.just(true));
+
+		StepVerifier.create(userController.updateUser("1", UpdateUserRequest.builder().firstName("James").build(), "\"2\""))
+			.expectError(UserVersionMismatchException.class)
+			.verify();
+	}
+
+	/**
+	 * Patch user.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.ReactiveUserController#patchUser(String, UpdateUserRequest, String) patchUser} method to confirm that a {@link com.malcolmbaatjies.user.entities.exceptions.UserVersionMismatchException UserVersionMismatchException} is signalled when the user exists at another version.
+	 */
+	@Test
+	void patchUserIfMatch412()
+	{
+		when(mockedUserRepository.updateFieldsById(1L, "James", null, null, 2L)).thenReturn(Mono.just(0));
+		when(mockedUserRepository.existsById(1L)).thenReturn(Mono.just(true));
+
+		StepVerifier.create(userController.patchUser("1", UpdateUserRequest.builder().firstName("James").build(), "\"2\""))
+			.expectError(UserVersionMismatchException.class)
+			.verify();
+	}
+
+	/**
+	 * Delete user.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.ReactiveUserController#deleteUser(String, String) deleteUser} method to confirm that the delete is conditional on the If-Match version.
+	 */
+	@Test
+	void deleteUserIfMatch204()
+	{
+		when(mockedUserRepository.deleteUserByIdAndVersion(1L, 2L)).thenReturn(Mono.just(1));
+
+		ResponseEntity<Void> userResponse = userController.deleteUser("1", "\"2\"").block();
+
+		assertEquals(204, userResponse.getStatusCodeValue());
+		verify(mockedUserRepository, never()).deleteUserById(any());
+	}
+
+	/**
+	 * Delete user.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.ReactiveUserController#deleteUser(String, String) deleteUser} method to confirm that a {@link com.malcolmbaatjies.user.entities.exceptions.UserNotFoundException UserNotFoundException} is signalled when the user is not found.
+	 */
+	@Test
+	void deleteUser404()
+	{
+		when(mockedUserRepository.deleteUserById(3L)).thenReturn(Mono.just(0));
+
+		StepVerifier.create(userController.deleteUser("3", null))
+			.expectError(UserNotFoundException.class)
+			.verify();
+	}
+}
@@ -1,26 +1,61 @@
 package com.malcolmbaatjies.user.controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.malcolmbaatjies.user.entities.exceptions.BatchTooLargeException;
+import com.malcolmbaatjies.user.entities.exceptions.InvalidFieldsException;
+import com.malcolmbaatjies.user.entities.exceptions.PendingUserNotFoundException;
 import com.malcolmbaatjies.user.entities.exceptions.UserExistsException;
 import com.malcolmbaatjies.user.entities.exceptions.UserNotFoundException;
+import com.malcolmbaatjies.user.entities.exceptions.UserVersionMismatchException;
 import com.malcolmbaatjies.user.entities.models.User;
 import com.malcolmbaatjies.user.entities.requests.NewUserRequest;
 import com.malcolmbaatjies.user.entities.requests.UpdateUserRequest;
+import com.malcolmbaatjies.user.entities.responses.BatchUserResponse;
+import com.malcolmbaatjies.user.entities.responses.PendingUserResponse;
+import com.malcolmbaatjies.user.entities.responses.validation.ValidationError;
+import com.malcolmbaatjies.user.indexes.EmailBloomFilter;
+import com.malcolmbaatjies.user.indexes.UserSearchIndex;
+import com.malcolmbaatjies.user.queues.UserCreateQueue;
 import com.malcolmbaatjies.user.repositories.UserRepository;
+import org.hibernate.exception.ConstraintViolationException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletResponse;
 
+import javax.persistence.EntityManager;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -43,6 +78,48 @@ class UserControllerTest
 	@Mock
 	private UserRepository mockedUserRepository;
 
+	/**
+	 * The mocked {@link javax.persistence.EntityManager EntityManager}.
+	 * <br><br>
+	 * This is used to verify that streamed users are detached from the persistence context.
+	 */
+	@Mock
+	private EntityManager mockedEntityManager;
+
+	/**
+	 * The {@link com.fasterxml.jackson.databind.ObjectMapper ObjectMapper}.
+	 * <br><br>
+	 * This is annotated with Mockito's {@link org.mockito.Spy} so that the real object mapper is injected into the UserController.
+	 */
+	@Spy
+	private ObjectMapper objectMapper = new ObjectMapper();
+
+	/**
+	 * The mocked {@link com.malcolmbaatjies.user.indexes.EmailBloomFilter EmailBloomFilter}.
+	 */
+	@Mock
+	private EmailBloomFilter mockedEmailBloomFilter;
+
+	/**
+	 * The mocked {@link com.malcolmbaatjies.user.indexes.UserSearchIndex UserSearchIndex}.
+	 */
+	@Mock
+	private UserSearchIndex mockedUserSearchIndex;
+
+	/**
+	 * The mocked {@link com.malcolmbaatjies.user.queues.UserCreateQueue UserCreateQueue}.
+	 */
+	@Mock
+	private UserCreateQueue mockedUserCreateQueue;
+
+	/**
+	 * The {@link javax.validation.Validator Validator}.
+	 * <br><br>
+	 * This is annotated with Mockito's {@link org.mockito.Spy} so that the real validator is injected into the UserController.
+	 */
+	@Spy
+	private Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+
 	/**
 	 * The {@link com.malcolmbaatjies.user.controllers.UserController UserController}.
 	 * <br><br>
@@ -56,12 +133,12 @@ class UserControllerTest
 	/**
 	 * Get all users.
 	 * <br><br>
-	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#getAllUsers() getAllUsers} method.
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#getAllUsers(long, int, List, String) getAllUsers} method.
 	 */
 	@Test
 	void getAllUsers()
 	{
-		when(mockedUserRepository.findAll()).thenReturn(List.of(
+		when(mockedUserRepository.findByIdGreaterThan(0L, PageRequest.of(0, UserController.DEFAULT_PAGE_SIZE, Sort.by("id")))).thenReturn(new SliceImpl<>(List.of(
 			User.builder()
 				.id(1L)
 				.firstName("John")
@@ -74,9 +151,15 @@ class UserControllerTest
 				.lastName("Doe")
 				.email("janedoe@mail.com")
 				.build()
-		));
+		)));
+
+		ResponseEntity<List<User>> usersResponse = userController.getAllUsers(0, UserController.DEFAULT_PAGE_SIZE, null, null);
 
-		List<User> users = userController.getAllUsers();
+		assertEquals(200, usersResponse.getStatusCodeValue());
+		assertNull(usersResponse.getHeaders().getFirst(HttpHeaders.LINK));
+		assertNotNull(usersResponse.getHeaders().getETag());
+
+		List<User> users = usersResponse.getBody();
 
 		assertEquals(2, users.size());
 		assertEquals("John", users.get(0).getFirstName());
@@ -87,10 +170,163 @@ class UserControllerTest
 		assertEquals("janedoe@mail.com", users.get(1).getEmail());
 	}
 
+	/**
+	 * Get all users.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#getAllUsers(long, int, List, String) getAllUsers} method to confirm that the same page gets a different ETag in each encoding.
+	 */
+	@Test
+	void getAllUsersETagPerEncoding()
+	{
+		when(mockedUserRepository.findByIdGreaterThan(0L, PageRequest.of(0, UserController.DEFAULT_PAGE_SIZE, Sort.by("id")))).thenReturn(new SliceImpl<>(List.of(
+			User.builder()
+				.id(1L)
+				.firstName("John")
+				.lastName("Doe")
+				.email("johndoe@mail.com")
+				.version(0L)
+				.build()
+		)));
+
+		String json = userController.getAllUsers(0, UserController.DEFAULT_PAGE_SIZE, null, null).getHeaders().getETag();
+		String cbor = userController.getAllUsers(0, UserController.DEFAULT_PAGE_SIZE, null, "application/cbor").getHeaders().getETag();
+
+		assertNotEquals(json, cbor);
+		assertEquals(json, userController.getAllUsers(0, UserController.DEFAULT_PAGE_SIZE, null, "application/json").getHeaders().getETag());
+	}
+
+	/**
+	 * Get all users.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#getAllUsers(long, int, List, String) getAllUsers} method to confirm that a next page link is returned when there are more users after the page.
+	 */
+	@Test
+	void getAllUsersNextPage()
+	{
+		PageRequest pageRequest = PageRequest.of(0, 1, Sort.by("id"));
+		when(mockedUserRepository.findByIdGreaterThan(1L, pageRequest)).thenReturn(new SliceImpl<>(List.of(
+			User.builder()
+				.id(2L)
+				.firstName("Jane")
+				.lastName("Doe")
+				.email("janedoe@mail.com")
+				.build()
+		), pageRequest, true));
+
+		ResponseEntity<List<User>> usersResponse = userController.getAllUsers(1, 1, null, null);
+
+		assertEquals(1, usersResponse.getBody().size());
+		assertEquals("</users?after=2&limit=1>; rel=\"next\"", usersResponse.getHeaders().getFirst(HttpHeaders.LINK));
+	}
+
+	/**
+	 * Get all users.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#getAllUsers(long, int, List, String) getAllUsers} method to confirm that the requested limit is capped at the maximum page size.
+	 */
+	@Test
+	void getAllUsersLimitCapped()
+	{
+		when(mockedUserRepository.findByIdGreaterThan(0L, PageRequest.of(0, UserController.MAX_PAGE_SIZE, Sort.by("id")))).thenReturn(new SliceImpl<>(List.of()));
+
+		ResponseEntity<List<User>> usersResponse = userController.getAllUsers(0, Integer.MAX_VALUE, null, null);
+
+		assertEquals(0, usersResponse.getBody().size());
+	}
+
+	/**
+	 * Get all users.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#getAllUsers(long, int, List, String) getAllUsers} method to confirm that only the selected fields are read, and that they are part of the ETag.
+	 */
+	@Test
+	void getAllUsersFields()
+	{
+		PageRequest pageRequest = PageRequest.of(0, UserController.DEFAULT_PAGE_SIZE, Sort.by("id"));
+		when(mockedUserRepository.findFieldsByIdGreaterThan(0L, pageRequest, Set.of("email"))).thenReturn(new SliceImpl<>(List.of(
+			User.builder()
+				.id(1L)
+				.email("johndoe@mail.com")
+				.build()
+		)));
+
+		ResponseEntity<List<User>> usersResponse = userController.getAllUsers(0, UserController.DEFAULT_PAGE_SIZE, List.of("email"), null);
+
+		assertEquals("johndoe@mail.com", usersResponse.getBody().get(0).getEmail());
+		assertNull(usersResponse.getBody().get(0).getFirstName());
+		assertNotEquals("\"" + UserETags.pageETag(usersResponse.getBody(), false, "") + "\"", usersResponse.getHeaders().getETag());
+		assertEquals(UserETags.representation(Set.of("email"), null), UserETags.representation(Set.of("id", "email"), null));
+		verify(mockedUserRepository, never()).findByIdGreaterThan(any(), any());
+	}
+
+	/**
+	 * Get all users.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#getAllUsers(long, int, List, String) getAllUsers} method to confirm that an {@link com.malcolmbaatjies.user.entities.exceptions.InvalidFieldsException InvalidFieldsException} is thrown when a selected field does not exist.
+	 */
+	@Test
+	void getAllUsersInvalidFields()
+	{
+		assertThrows(InvalidFieldsException.class, () -> userController.getAllUsers(0, UserController.DEFAULT_PAGE_SIZE, List.of("email", "password"), null));
+	}
+
+	/**
+	 * Export users.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#exportUsers(javax.servlet.http.HttpServletResponse) exportUsers} method.
+	 */
+	@Test
+	void exportUsers() throws IOException
+	{
+		User john = User.builder()
+			.id(1L)
+			.firstName("John")
+			.lastName("Doe")
+			.email("johndoe@mail.com")
+			.build();
+		User jane = User.builder()
+			.id(2L)
+			.firstName("Jane")
+			.lastName("Doe")
+			.email("janedoe@mail.com")
+			.build();
+		when(mockedUserRepository.streamAllByOrderByIdAsc()).thenReturn(Stream.of(john, jane));
+
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		userController.exportUsers(response);
+
+		assertEquals(MediaType.APPLICATION_NDJSON_VALUE, response.getContentType());
+
+		String[] lines = response.getContentAsString().split("\n", -1);
+
+		assertEquals(3, lines.length);
+		assertEquals("johndoe@mail.com", objectMapper.readTree(lines[0]).get("email").asText());
+		assertEquals("janedoe@mail.com", objectMapper.readTree(lines[1]).get("email").asText());
+		assertEquals("", lines[2]);
+		verify(mockedEntityManager).detach(john);
+		verify(mockedEntityManager).detach(jane);
+	}
+
+	/**
+	 * Export users.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#exportUsers(javax.servlet.http.HttpServletResponse) exportUsers} method to confirm that nothing is written when there are no users.
+	 */
+	@Test
+	void exportUsersEmpty() throws IOException
+	{
+		when(mockedUserRepository.streamAllByOrderByIdAsc()).thenReturn(Stream.empty());
+
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		userController.exportUsers(response);
+
+		assertEquals("", response.getContentAsString());
+	}
+
 	/**
 	 * Get user by id.
 	 * <br><br>
-	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#getUser(String) getUser} method.
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#getUser(String, List, String) getUser} method.
 	 */
 	@Test
 	void getUser200()
@@ -101,10 +337,16 @@ class UserControllerTest
 				.firstName("John")
 				.lastName("Doe")
 				.email("johndoe@mail.com")
+				.version(4L)
 				.build()
 		));
 
-		User userResponse = userController.getUser("1");
+		ResponseEntity<User> response = userController.getUser("1", null, null);
+
+		assertEquals(200, response.getStatusCodeValue());
+		assertEquals("\"4\"", response.getHeaders().getETag());
+
+		User userResponse = response.getBody();
 
 		assertEquals("John", userResponse.getFirstName());
 		assertEquals("Doe", userResponse.getLastName());
@@ -114,23 +356,159 @@ class UserControllerTest
 	/**
 	 * Get user by id.
 	 * <br><br>
-	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#getUser(String) getUser} method to confirm that a {@link com.malcolmbaatjies.user.entities.exceptions.UserNotFoundException UserNotFoundException} is thrown when the user is not found.
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#getUser(String, List, String) getUser} method to confirm that each encoding of a user gets its own ETag, and that each of them matches the user's version in an If-Match header.
+	 */
+	@Test
+	void getUserETagPerEncoding()
+	{
+		when(mockedUserRepository.findById(1L)).thenReturn(java.util.Optional.of(
+			User.builder()
+				.id(1L)
+				.firstName("John")
+				.lastName("Doe")
+				.email("johndoe@mail.com")
+				.version(4L)
+				.build()
+		));
+
+		assertEquals("\"4\"", userController.getUser("1", null, "application/json, application/cbor;q=0.5").getHeaders().getETag());
+		assertEquals("\"4+cbor\"", userController.getUser("1", null, "application/cbor").getHeaders().getETag());
+		assertEquals("\"4+smile\"", userController.getUser("1", null, "application/json;q=0.5, application/x-jackson-smile").getHeaders().getETag());
+		assertEquals("\"4+protobuf\"", userController.getUser("1", null, "application/x-protobuf").getHeaders().getETag());
+		assertEquals("\"4\"", userController.getUser("1", null, "*/*").getHeaders().getETag());
+
+		assertEquals(4L, UserETags.parseIfMatch("1", "\"4+cbor\""));
+		assertThrows(UserVersionMismatchException.class, () -> UserETags.parseIfMatch("1", "\"4+xml\""));
+	}
+
+	/**
+	 * Get user by id.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#getUser(String, List, String) getUser} method to confirm that a {@link com.malcolmbaatjies.user.entities.exceptions.UserNotFoundException UserNotFoundException} is thrown, without a stack trace, when the user is not found.
 	 */
 	@Test
 	void getUser404()
 	{
-		assertThrows(UserNotFoundException.class, () -> userController.getUser("3"));
+		UserNotFoundException e = assertThrows(UserNotFoundException.class, () -> userController.getUser("3", null, null));
+
+		assertEquals(0, e.getStackTrace().length);
+	}
+
+	/**
+	 * Get user by id.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#getUser(String, List, String) getUser} method to confirm that only the selected fields are read, and that they are part of the ETag.
+	 */
+	@Test
+	void getUserFields200()
+	{
+		when(mockedUserRepository.findFieldsById(1L, Set.of("firstName", "lastName"))).thenReturn(java.util.Optional.of(
+			User.builder()
+				.id(1L)
+				.firstName("John")
+				.lastName("Doe")
+				.version(4L)
+				.build()
+		));
+
+		ResponseEntity<User> response = userController.getUser("1", List.of("firstName", "lastName"), null);
+
+		assertEquals("\"4-firstName.id.lastName\"", response.getHeaders().getETag());
+		assertEquals(4L, UserETags.parseIfMatch("1", response.getHeaders().getETag()));
+		assertEquals("John", response.getBody().getFirstName());
+		assertNull(response.getBody().getEmail());
+		verify(mockedUserRepository, never()).findById(any());
+	}
+
+	/**
+	 * Search users.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#searchUsers(String, int) searchUsers} method to confirm that the users are returned in the order the search index ranked them, leaving out users that no longer exist.
+	 */
+	@Test
+	void searchUsers200()
+	{
+		when(mockedUserSearchIndex.search("jo", 10)).thenReturn(List.of(3L, 1L, 2L));
+		when(mockedUserRepository.findAllById(List.of(3L, 1L, 2L))).thenReturn(List.of(
+			User.builder().id(1L).firstName("Johnny").lastName("Doe").email("johnny@mail.com").build(),
+			User.builder().id(3L).firstName("Jo").lastName("Smith").email("jo@mail.com").build()
+		));
+
+		ResponseEntity<List<User>> response = userController.searchUsers("jo", 10);
+
+		assertEquals(200, response.getStatusCodeValue());
+		assertEquals(List.of(3L, 1L), response.getBody().stream().map(User::getId).collect(Collectors.toList()));
+	}
+
+	/**
+	 * Search users.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#searchUsers(String, int) searchUsers} method to confirm that the limit is capped and that the database is not queried when nothing matches.
+	 */
+	@Test
+	void searchUsersNoMatches()
+	{
+		when(mockedUserSearchIndex.search("zz", UserController.MAX_SEARCH_LIMIT)).thenReturn(List.of());
+
+		ResponseEntity<List<User>> response = userController.searchUsers("zz", 1000);
+
+		assertTrue(response.getBody().isEmpty());
+		verify(mockedUserRepository, never()).findAllById(any());
+	}
+
+	/**
+	 * Create user asynchronously.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#createUserAsync(NewUserRequest, String) createUserAsync} method to confirm that the user is queued and a status URL is returned without touching the database.
+	 */
+	@Test
+	void createUserAsync202()
+	{
+		NewUserRequest newUserRequest = NewUserRequest.builder().firstName("John").lastName("Doe").email("johndoe@mail.com").build();
+		when(mockedUserCreateQueue.enqueue(newUserRequest)).thenReturn("ticket");
+		when(mockedUserCreateQueue.getStatus("ticket")).thenReturn(java.util.Optional.of(
+			PendingUserResponse.builder().status(HttpStatus.ACCEPTED.toString()).message("User queued.").ticket("ticket").build()
+		));
+
+		ResponseEntity<?> response = userController.createUserAsync(newUserRequest, null);
+
+		assertEquals(202, response.getStatusCodeValue());
+		assertEquals("/users/pending/ticket", response.getHeaders().getLocation().toString());
+		assertEquals("ticket", ((PendingUserResponse) response.getBody()).getTicket());
+		verify(mockedUserRepository, never()).save(any());
+	}
+
+	/**
+	 * Get pending user.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#getPendingUser(String) getPendingUser} method to confirm that a created user redirects to the user, and a queued one does not.
+	 */
+	@Test
+	void getPendingUser()
+	{
+		when(mockedUserCreateQueue.getStatus("created")).thenReturn(java.util.Optional.of(
+			PendingUserResponse.builder().status(HttpStatus.CREATED.toString()).ticket("created").user(User.builder().id(7L).build()).build()
+		));
+		when(mockedUserCreateQueue.getStatus("queued")).thenReturn(java.util.Optional.of(
+			PendingUserResponse.builder().status(HttpStatus.ACCEPTED.toString()).ticket("queued").build()
+		));
+
+		ResponseEntity<PendingUserResponse> created = userController.getPendingUser("created");
+		assertEquals(303, created.getStatusCodeValue());
+		assertEquals("/users/7", created.getHeaders().getLocation().toString());
+
+		assertEquals(200, userController.getPendingUser("queued").getStatusCodeValue());
+		assertThrows(PendingUserNotFoundException.class, () -> userController.getPendingUser("unknown"));
 	}
 
 	/**
 	 * Create user.
 	 * <br><br>
-	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#createUser(NewUserRequest) createUser} method.
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#createUser(NewUserRequest, String) createUser} method.
 	 */
 	@Test
 	void createUser201()
 	{
-		when(mockedUserRepository.existsUserByEmail("jamesbell@mail.com")).thenReturn(false);
 		when(mockedUserRepository.save(User.builder()
 			.id(any())
 			.firstName("James")
@@ -150,7 +528,8 @@ class UserControllerTest
 				.firstName("James")
 				.lastName("Bell")
 				.email("jamesbell@mail.com")
-				.build()
+				.build(),
+			null
 		);
 
 		assertEquals(201, userResponse.getStatusCodeValue());
@@ -170,31 +549,202 @@ class UserControllerTest
 	/**
 	 * Create user.
 	 * <br><br>
-	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#createUser(NewUserRequest) createUser} method to confirm that a {@link com.malcolmbaatjies.user.entities.exceptions.UserExistsException UserExistsException} is thrown when the user already exists.
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#createUser(NewUserRequest, String) createUser} method to confirm that a {@link com.malcolmbaatjies.user.entities.exceptions.UserExistsException UserExistsException} is thrown when the user already exists.
 	 */
 	@Test
 	void createUser400()
 	{
-		when(mockedUserRepository.existsUserByEmail("jamesbell@mail.com")).thenReturn(true);
+		when(mockedUserRepository.save(any(User.class))).thenThrow(emailConstraintViolation());
 
 		assertThrows(UserExistsException.class, () -> userController.createUser(
+			NewUserRequest.builder()
+				.firstName("James")
+				.lastName("Bell")
+				.email("jamesbell@mail.com")
+				.build(),
+			null
+		));
+	}
+
+	/**
+	 * Create user.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#createUser(NewUserRequest, String) createUser} method to confirm that data integrity violations other than a duplicate email are not reported as a {@link com.malcolmbaatjies.user.entities.exceptions.UserExistsException UserExistsException}.
+	 */
+	@Test
+	void createUser500()
+	{
+		when(mockedUserRepository.save(any(User.class))).thenThrow(new DataIntegrityViolationException("Data too long for column 'email'"));
+
+		assertThrows(DataIntegrityViolationException.class, () -> userController.createUser(
+			NewUserRequest.builder()
+				.firstName("James")
+				.lastName("Bell")
+				.email("jamesbell@mail.com")
+				.build(),
+			null
+		));
+	}
+
+	/**
+	 * Create users.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#createUsers(List) createUsers} method to confirm that valid items are created, invalid items are rejected with their validation errors and duplicate emails are rejected, both against the database and within the batch.
+	 */
+	@Test
+	void createUsers207()
+	{
+		when(mockedEmailBloomFilter.mightContain(anyString())).thenReturn(true);
+		when(mockedUserRepository.findExistingEmails(Set.of("jamesbell@mail.com", "johndoe@mail.com"))).thenReturn(List.of("johndoe@mail.com"));
+		when(mockedUserRepository.saveAll(anyList())).thenReturn(List.of(User.builder()
+			.id(3L)
+			.firstName("James")
+			.lastName("Bell")
+			.email("jamesbell@mail.com")
+			.build()
+		));
+
+		ResponseEntity<List<BatchUserResponse>> batchResponse = userController.createUsers(List.of(
+			NewUserRequest.builder()
+				.firstName("James")
+				.lastName("Bell")
+				.email("jamesbell@mail.com")
+				.build(),
+			NewUserRequest.builder()
+				.email("janedoe")
+				.build(),
+			NewUserRequest.builder()
+				.firstName("John")
+				.lastName("Doe")
+				.email("johndoe@mail.com")
+				.build(),
+			NewUserRequest.builder()
+				.firstName("Jim")
+				.lastName("Bell")
+				.email("jamesbell@mail.com")
+				.build()
+		));
+
+		assertEquals(207, batchResponse.getStatusCodeValue());
+
+		List<BatchUserResponse> results = batchResponse.getBody();
+
+		assertEquals(4, results.size());
+		assertEquals(HttpStatus.CREATED.toString(), results.get(0).getStatus());
+		assertEquals(3, results.get(0).getUser().getId());
+		assertEquals(HttpStatus.BAD_REQUEST.toString(), results.get(1).getStatus());
+		assertEquals(List.of("4001", "4002", "4004"), results.get(1).getErrors().stream().map(ValidationError::getCode).collect(Collectors.toList()));
+		assertEquals(HttpStatus.BAD_REQUEST.toString(), results.get(2).getStatus());
+		assertEquals("User with email [johndoe@mail.com] already exists", results.get(2).getMessage());
+		assertEquals(HttpStatus.BAD_REQUEST.toString(), results.get(3).getStatus());
+		assertEquals("User with email [jamesbell@mail.com] already exists", results.get(3).getMessage());
+	}
+
+	/**
+	 * Create users.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#createUsers(List) createUsers} method to confirm that the database is not checked for duplicates when the email Bloom filter rules out every email.
+	 */
+	@Test
+	void createUsersBloomFilterNegative()
+	{
+		when(mockedEmailBloomFilter.mightContain("jamesbell@mail.com")).thenReturn(false);
+		when(mockedUserRepository.saveAll(anyList())).thenReturn(List.of(User.builder()
+			.id(3L)
+			.firstName("James")
+			.lastName("Bell")
+			.email("jamesbell@mail.com")
+			.build()
+		));
+
+		ResponseEntity<List<BatchUserResponse>> batchResponse = userController.createUsers(List.of(
 			NewUserRequest.builder()
 				.firstName("James")
 				.lastName("Bell")
 				.email("jamesbell@mail.com")
 				.build()
 		));
+
+		assertEquals(HttpStatus.CREATED.toString(), batchResponse.getBody().get(0).getStatus());
+		verify(mockedUserRepository, never()).findExistingEmails(any());
+		verify(mockedEmailBloomFilter).put("jamesbell@mail.com");
+	}
+
+	/**
+	 * Create users.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#createUsers(List) createUsers} method to confirm that emails differing only in case are duplicates, both within the batch and against the database.
+	 */
+	@Test
+	void createUsersCaseVariantEmails()
+	{
+		when(mockedEmailBloomFilter.mightContain(anyString())).thenReturn(true);
+		when(mockedUserRepository.findExistingEmails(Set.of("jamesbell@mail.com", "johndoe@mail.com"))).thenReturn(List.of("JohnDoe@mail.com"));
+		when(mockedUserRepository.saveAll(anyList())).thenReturn(List.of(User.builder().id(3L).email("JamesBell@mail.com").build()));
+
+		ResponseEntity<List<BatchUserResponse>> batchResponse = userController.createUsers(List.of(
+			NewUserRequest.builder().firstName("James").lastName("Bell").email("JamesBell@mail.com").build(),
+			NewUserRequest.builder().firstName("Jim").lastName("Bell").email("jamesbell@mail.com").build(),
+			NewUserRequest.builder().firstName("John").lastName("Doe").email("johndoe@mail.com").build()
+		));
+
+		List<BatchUserResponse> results = batchResponse.getBody();
+		assertEquals(HttpStatus.CREATED.toString(), results.get(0).getStatus());
+		assertEquals("User with email [jamesbell@mail.com] already exists", results.get(1).getMessage());
+		assertEquals("User with email [johndoe@mail.com] already exists", results.get(2).getMessage());
+		verify(mockedUserRepository).saveAll(argThat(users -> users instanceof List && ((List<?>) users).size() == 1));
+	}
+
+	/**
+	 * Create users.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#createUsers(List) createUsers} method to confirm that when the batch insert violates the unique constraint on email, such as when an email was taken concurrently, the users are saved one by one and only those whose email is taken are rejected.
+	 */
+	@Test
+	void createUsersConcurrentDuplicate()
+	{
+		when(mockedEmailBloomFilter.mightContain(anyString())).thenReturn(false);
+		when(mockedUserRepository.saveAll(anyList())).thenThrow(new DataIntegrityViolationException("Duplicate entry"));
+		when(mockedUserRepository.save(argThat(user -> user != null && user.getEmail().equals("jamesbell@mail.com")))).thenReturn(User.builder().id(3L).email("jamesbell@mail.com").build());
+		when(mockedUserRepository.save(argThat(user -> user != null && user.getEmail().equals("johndoe@mail.com")))).thenThrow(new DataIntegrityViolationException("Duplicate entry"));
+
+		ResponseEntity<List<BatchUserResponse>> batchResponse = userController.createUsers(List.of(
+			NewUserRequest.builder().firstName("James").lastName("Bell").email("jamesbell@mail.com").build(),
+			NewUserRequest.builder().firstName("John").lastName("Doe").email("johndoe@mail.com").build()
+		));
+
+		List<BatchUserResponse> results = batchResponse.getBody();
+		assertEquals(207, batchResponse.getStatusCodeValue());
+		assertEquals(HttpStatus.CREATED.toString(), results.get(0).getStatus());
+		assertEquals(3, results.get(0).getUser().getId());
+		assertEquals(HttpStatus.BAD_REQUEST.toString(), results.get(1).getStatus());
+		assertEquals("User with email [johndoe@mail.com] already exists", results.get(1).getMessage());
+		verify(mockedEmailBloomFilter).put("jamesbell@mail.com");
+		verify(mockedEmailBloomFilter, never()).put("johndoe@mail.com");
+	}
+
+	/**
+	 * Create users.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#createUsers(List) createUsers} method to confirm that a {@link com.malcolmbaatjies.user.entities.exceptions.BatchTooLargeException BatchTooLargeException} is thrown when the batch is too large.
+	 */
+	@Test
+	void createUsers413()
+	{
+		List<NewUserRequest> newUserRequests = Collections.nCopies(UserController.MAX_BATCH_SIZE + 1, NewUserRequest.builder().build());
+
+		assertThrows(BatchTooLargeException.class, () -> userController.createUsers(newUserRequests));
 	}
 
 	/**
 	 * Update user.
 	 * <br><br>
-	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#updateUser(String, UpdateUserRequest) updateUser} method.
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#updateUser(String, UpdateUserRequest, String, String) updateUser} method.
 	 */
 	@Test
 	void updateUserFirstName200()
 	{
-		when(mockedUserRepository.findById(1L)).thenReturn(java.util.Optional.of(
+		when(mockedUserRepository.findCurrentById(1L)).thenReturn(java.util.Optional.of(
 			User.builder()
 				.id(1L)
 				.firstName("John")
@@ -212,7 +762,9 @@ class UserControllerTest
 
 		ResponseEntity<User> userResponse = userController.updateUser(
 			"1",
-			UpdateUserRequest.builder().firstName("james").build()
+			UpdateUserRequest.builder().firstName("james").build(),
+			null,
+			null
 		);
 
 		assertEquals(200, userResponse.getStatusCodeValue());
@@ -228,12 +780,12 @@ class UserControllerTest
 	/**
 	 * Update user.
 	 * <br><br>
-	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#updateUser(String, UpdateUserRequest) updateUser} method.
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#updateUser(String, UpdateUserRequest, String, String) updateUser} method.
 	 */
 	@Test
 	void updateUserLastName200()
 	{
-		when(mockedUserRepository.findById(1L)).thenReturn(java.util.Optional.of(
+		when(mockedUserRepository.findCurrentById(1L)).thenReturn(java.util.Optional.of(
 			User.builder()
 				.id(1L)
 				.firstName("John")
@@ -251,7 +803,9 @@ class UserControllerTest
 
 		ResponseEntity<User> userResponse = userController.updateUser(
 			"1",
-			UpdateUserRequest.builder().firstName("james").build()
+			UpdateUserRequest.builder().firstName("james").build(),
+			null,
+			null
 		);
 
 		assertEquals(200, userResponse.getStatusCodeValue());
@@ -267,12 +821,12 @@ class UserControllerTest
 	/**
 	 * Update user.
 	 * <br><br>
-	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#updateUser(String, UpdateUserRequest) updateUser} method.
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#updateUser(String, UpdateUserRequest, String, String) updateUser} method.
 	 */
 	@Test
 	void updateUserEmail200()
 	{
-		when(mockedUserRepository.findById(1L)).thenReturn(java.util.Optional.of(
+		when(mockedUserRepository.findCurrentById(1L)).thenReturn(java.util.Optional.of(
 			User.builder()
 				.id(1L)
 				.firstName("John")
@@ -290,7 +844,9 @@ class UserControllerTest
 
 		ResponseEntity<User> userResponse = userController.updateUser(
 			"1",
-			UpdateUserRequest.builder().firstName("james").build()
+			UpdateUserRequest.builder().firstName("james").build(),
+			null,
+			null
 		);
 
 		assertEquals(200, userResponse.getStatusCodeValue());
@@ -306,26 +862,119 @@ class UserControllerTest
 	/**
 	 * Update user.
 	 * <br><br>
-	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#updateUser(String, UpdateUserRequest) updateUser} method to confirm that a {@link com.malcolmbaatjies.user.entities.exceptions.UserNotFoundException UserNotFoundException} is thrown when the user is not found.
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#updateUser(String, UpdateUserRequest, String, String) updateUser} method to confirm that the version of the existing user is saved and the new version is returned as the ETag.
+	 */
+	@Test
+	void updateUserVersion200()
+	{
+		when(mockedUserRepository.findCurrentById(1L)).thenReturn(java.util.Optional.of(
+			User.builder()
+				.id(1L)
+				.firstName("John")
+				.lastName("Doe")
+				.email("johndoe@mail.com")
+				.version(2L)
+				.build()
+		));
+		when(mockedUserRepository.save(argThat(user -> user.getVersion() == 2L))).thenReturn(User.builder()
+			.id(1L)
+			.firstName("James")
+			.lastName("Doe")
+			.email("johndoe@mail.com")
+			.version(3L)
+			.build()
+		);
+
+		ResponseEntity<User> userResponse = userController.updateUser(
+			"1",
+			UpdateUserRequest.builder().firstName("James").build(),
+			null,
+			null
+		);
+
+		assertEquals("\"3\"", userResponse.getHeaders().getETag());
+		verify(mockedUserRepository, never()).findById(any());
+	}
+
+	/**
+	 * Update user.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#updateUser(String, UpdateUserRequest, String, String) updateUser} method to confirm that a {@link com.malcolmbaatjies.user.entities.exceptions.UserVersionMismatchException UserVersionMismatchException} is thrown when the user has changed since the If-Match version.
+	 */
+	@Test
+	void updateUserIfMatch412()
+	{
+		when(mockedUserRepository.findCurrentById(1L)).thenReturn(java.util.Optional.of(
+			User.builder()
+				.id(1L)
+				.firstName("John")
+				.lastName("Doe")
+				.email("johndoe@mail.com")
+				.version(3L)
+				.build()
+		));
+
+		assertThrows(UserVersionMismatchException.class, () -> userController.updateUser(
+			"1",
+			UpdateUserRequest.builder().firstName("James").build(),
+			"\"2\"",
+			null
+		));
+		verify(mockedUserRepository, never()).save(any());
+	}
+
+	/**
+	 * Update user.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#updateUser(String, UpdateUserRequest, String, String) updateUser} method to confirm that a {@link com.malcolmbaatjies.user.entities.exceptions.UserVersionMismatchException UserVersionMismatchException} is thrown when the user is changed concurrently.
+	 */
+	@Test
+	void updateUserConcurrent412()
+	{
+		when(mockedUserRepository.findCurrentById(1L)).thenReturn(java.util.Optional.of(
+			User.builder()
+				.id(1L)
+				.firstName("John")
+				.lastName("Doe")
+				.email("johndoe@mail.com")
+				.version(2L)
+				.build()
+		));
+		when(mockedUserRepository.save(any(User.class))).thenThrow(new ObjectOptimisticLockingFailureException(User.class, 1L));
+
+		assertThrows(UserVersionMismatchException.class, () -> userController.updateUser(
+			"1",
+			UpdateUserRequest.builder().firstName("James").build(),
+			"\"2\"",
+			null
+		));
+	}
+
+	/**
+	 * Update user.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#updateUser(String, UpdateUserRequest, String, String) updateUser} method to confirm that a {@link com.malcolmbaatjies.user.entities.exceptions.UserNotFoundException UserNotFoundException} is thrown when the user is not found.
 	 */
 	@Test
 	void updateUser404()
 	{
 		assertThrows(UserNotFoundException.class, () -> userController.updateUser(
 			"3",
-			UpdateUserRequest.builder().firstName("james").build()
+			UpdateUserRequest.builder().firstName("james").build(),
+			null,
+			null
 		));
 	}
 
 	/**
 	 * Update user.
 	 * <br><br>
-	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#updateUser(String, UpdateUserRequest) updateUser} method to confirm that a {@link com.malcolmbaatjies.user.entities.exceptions.UserExistsException UserExistsException} is thrown when the user already exists.
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#updateUser(String, UpdateUserRequest, String, String) updateUser} method to confirm that a {@link com.malcolmbaatjies.user.entities.exceptions.UserExistsException UserExistsException} is thrown when the user already exists.
 	 */
 	@Test
 	void updateUserEmail400()
 	{
-		when(mockedUserRepository.findById(1L)).thenReturn(java.util.Optional.of(
+		when(mockedUserRepository.findCurrentById(1L)).thenReturn(java.util.Optional.of(
 			User.builder()
 				.id(1L)
 				.firstName("James")
@@ -333,22 +982,213 @@ class UserControllerTest
 				.email("jamesdoe@mail.com")
 				.build()
 		));
-		when(mockedUserRepository.existsUserByEmail("johndoe@mail.com")).thenReturn(true);
+		when(mockedUserRepository.save(any(User.class))).thenThrow(emailConstraintViolation());
 
 		assertThrows(UserExistsException.class, () -> userController.updateUser(
 			"1",
-			UpdateUserRequest.builder().email("johndoe@mail.com").build()
+			UpdateUserRequest.builder().email("johndoe@mail.com").build(),
+			null,
+			null
+		));
+	}
+
+	/**
+	 * Patch user.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#patchUser(String, UpdateUserRequest, String) patchUser} method to confirm that only the given fields are updated.
+	 */
+	@Test
+	void patchUser204()
+	{
+		when(mockedUserRepository.updateFieldsById(1L, "James", null, null, null)).thenReturn(1);
+
+		ResponseEntity<Void> userResponse = userController.patchUser(
+			"1",
+			UpdateUserRequest.builder().firstName("James").build(),
+			null
+		);
+
+		assertEquals(204, userResponse.getStatusCodeValue());
+		verify(mockedUserRepository, never()).findById(any());
+		verify(mockedUserSearchIndex).update(1L, "James", null, null);
+	}
+
+	/**
+	 * Patch user.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#patchUser(String, UpdateUserRequest, String) patchUser} method to confirm that an empty patch only checks that the user exists.
+	 */
+	@Test
+	void patchUserEmpty204()
+	{
+		when(mockedUserRepository.findById(1L)).thenReturn(java.util.Optional.of(
+			User.builder()
+				.id(1L)
+				.firstName("John")
+				.lastName("Doe")
+				.email("johndoe@mail.com")
+				.version(2L)
+				.build()
+		));
+
+		ResponseEntity<Void> userResponse = userController.patchUser("1", UpdateUserRequest.builder().build(), null);
+
+		assertEquals(204, userResponse.getStatusCodeValue());
+		verify(mockedUserRepository, never()).updateFieldsById(any(), any(), any(), any(), any());
+	}
+
+	/**
+	 * Patch user.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#patchUser(String, UpdateUserRequest, String) patchUser} method to confirm that a {@link com.malcolmbaatjies.user.entities.exceptions.UserNotFoundException UserNotFoundException} is thrown when no user is updated.
+	 */
+	@Test
+	void patchUser404()
+	{
+		when(mockedUserRepository.updateFieldsById(3L, "James", null, null, null)).thenReturn(0);
+
+		assertThrows(UserNotFoundException.class, () -> userController.patchUser(
+			"3",
+			UpdateUserRequest.builder().firstName("James").build(),
+			null
+		));
+	}
+
+	/**
+	 * Patch user.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#patchUser(String, UpdateUserRequest, String) patchUser} method to confirm that a {@link com.malcolmbaatjies.user.entities.exceptions.UserExistsException UserExistsException} is thrown when the email belongs to another user.
+	 */
+	@Test
+	void patchUserEmail400()
+	{
+		when(mockedUserRepository.updateFieldsById(1L, null, null, "johndoe@mail.com", null)).thenThrow(emailConstraintViolation());
+
+		assertThrows(UserExistsException.class, () -> userController.patchUser(
+			"1",
+			UpdateUserRequest.builder().email("johndoe@mail.com").build(),
+			null
+		));
+	}
+
+	/**
+	 * Patch user.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#patchUser(String, UpdateUserRequest, String) patchUser} method to confirm that the update is conditional on the If-Match version and the next version is returned as the ETag.
+	 */
+	@Test
+	void patchUserIfMatch204()
+	{
+		when(mockedUserRepository.updateFieldsById(1L, "James", null, null, 2L)).thenReturn(1);
+
+		ResponseEntity<Void> userResponse = userController.patchUser(
+			"1",
+			UpdateUserRequest.builder().firstName("James").build(),
+			"\"2\""
+		);
+
+		assertEquals(204, userResponse.getStatusCodeValue());
+		assertEquals("\"3\"", userResponse.getHeaders().getETag());
+	}
+
+	/**
+	 * Patch user.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#patchUser(String, UpdateUserRequest, String) patchUser} method to confirm that a {@link com.malcolmbaatjies.user.entities.exceptions.UserVersionMismatchException UserVersionMismatchException} is thrown when the user exists at another version.
+	 */
+	@Test
+	void patchUserIfMatch412()
+	{
+		when(mockedUserRepository.updateFieldsById(1L, "James", null, null, 2L)).thenReturn(0);
+		when(mockedUserRepository.existsById(1L)).thenReturn(true);
+
+		assertThrows(UserVersionMismatchException.class, () -> userController.patchUser(
+			"1",
+			UpdateUserRequest.builder().firstName("James").build(),
+			"\"2\""
 		));
 	}
 
 	/**
 	 * Delete user.
 	 * <br><br>
-	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#deleteUser(String) deleteUser} method.
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#deleteUser(String, String) deleteUser} method.
 	 */
 	@Test
-	void deleteUser200()
+	void deleteUser204()
 	{
-		assertDoesNotThrow(() -> userController.deleteUser("1"));
+		when(mockedUserRepository.deleteUserById(1L)).thenReturn(1);
+
+		ResponseEntity<Void> userResponse = userController.deleteUser("1", null);
+
+		assertEquals(204, userResponse.getStatusCodeValue());		verify(mockedUserSearchIndex).remove(1L);
+	}
+
+	/**
+	 * Delete user.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#deleteUser(String, String) deleteUser} method to confirm that a {@link com.malcolmbaatjies.user.entities.exceptions.UserNotFoundException UserNotFoundException} is thrown when the user is not found.
+	 */
+	@Test
+	void deleteUser404()
+	{
+		when(mockedUserRepository.deleteUserById(3L)).thenReturn(0);
+
+		assertThrows(UserNotFoundException.class, () -> userController.deleteUser("3", null));
+	}
+
+	/**
+	 * Delete user.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#deleteUser(String, String) deleteUser} method to confirm that the delete is conditional on the If-Match version.
+	 */
+	@Test
+	void deleteUserIfMatch204()
+	{
+		when(mockedUserRepository.deleteUserByIdAndVersion(1L, 2L)).thenReturn(1);
+
+		ResponseEntity<Void> userResponse = userController.deleteUser("1", "\"2\"");
+
+		assertEquals(204, userResponse.getStatusCodeValue());
+		verify(mockedUserRepository, never()).deleteUserById(any());
+	}
+
+	/**
+	 * Delete user.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#deleteUser(String, String) deleteUser} method to confirm that a {@link com.malcolmbaatjies.user.entities.exceptions.UserNotFoundException UserNotFoundException} is thrown when the user does not exist at any version.
+	 */
+	@Test
+	void deleteUserIfMatch404()
+	{
+		when(mockedUserRepository.deleteUserByIdAndVersion(3L, 2L)).thenReturn(0);
+		when(mockedUserRepository.existsById(3L)).thenReturn(false);
+
+		assertThrows(UserNotFoundException.class, () -> userController.deleteUser("3", "\"2\""));
+	}
+
+	/**
+	 * Delete user.
+	 * <br><br>
+	 * This tests the {@link com.malcolmbaatjies.user.controllers.UserController#deleteUser(String, String) deleteUser} method to confirm that a {@link com.malcolmbaatjies.user.entities.exceptions.UserVersionMismatchException UserVersionMismatchException} is thrown when the If-Match header is not an ETag of a user.
+	 */
+	@Test
+	void deleteUserIfMatchInvalid412()
+	{
+		assertThrows(UserVersionMismatchException.class, () -> userController.deleteUser("1", "W/\"2\""));
+		verify(mockedUserRepository, never()).deleteUserByIdAndVersion(any(), any());
+	}
+
+	/**
+	 * Build the exception thrown by the repository when the unique constraint on email is violated.
+	 *
+	 * @return The exception.
+	 */
+	private static DataIntegrityViolationException emailConstraintViolation()
+	{
+		return new DataIntegrityViolationException(
+			"could not execute statement",
+			new ConstraintViolationException("Duplicate entry", new SQLException("Duplicate entry"), "users." + User.EMAIL_CONSTRAINT)
+		);
 	}
-}
\ No newline at end of file
+}
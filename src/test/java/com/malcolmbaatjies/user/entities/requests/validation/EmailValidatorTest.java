@@ -0,0 +1,78 @@
+package com.malcolmbaatjies.user.entities.requests.validation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * EmailValidatorTest
+ * <br><br>
+ * This class is used to test the EmailValidator class against the pattern it replaces.
+ */
+class EmailValidatorTest
+{
+	/**
+	 * The email pattern previously used to validate requests.
+	 */
+	private static final Pattern EMAIL_PATTERN = Pattern.compile("^[a-zA-Z0-9._%+-]+@[a-zA-Z0-9.-]+\\.[a-zA-Z]{2,}$");
+
+	/**
+	 * Test that a null email is valid, so that it is left to {@link javax.validation.constraints.NotBlank}.
+	 */
+	@Test
+	void nullIsValid()
+	{
+		assertTrue(new EmailValidator().isValid(null, null));
+	}
+
+	/**
+	 * Test that valid emails are accepted.
+	 */
+	@Test
+	void validEmails()
+	{
+		for (String email : List.of("johndoe@mail.com", "j.doe+tag@sub.mail.co.za", "a%b_c-d@x-y.io", "a@b.c.de", "a@..co", "a@b-.com"))
+		{
+			assertTrue(EmailValidator.isValid(email), email);
+		}
+	}
+
+	/**
+	 * Test that invalid emails are rejected.
+	 */
+	@Test
+	void invalidEmails()
+	{
+		for (String email : List.of("", "@", "johndoe", "johndoe@", "@mail.com", "johndoe@mail", "johndoe@.com", "johndoe@mail.c", "johndoe@mail.c0m", "john doe@mail.com", "john@doe@mail.com", "johndoe@mail.com\n", "jöhn@mail.com", "johndoe@mail_x.com"))
+		{
+			assertFalse(EmailValidator.isValid(email), email);
+		}
+	}
+
+	/**
+	 * Test that the validator agrees with the pattern on random emails built from the characters that matter to it.
+	 */
+	@Test
+	void matchesPattern()
+	{
+		String alphabet = "aZ09._%+-@ #";
+		Random random = new Random(42);
+		StringBuilder email = new StringBuilder();
+		for (int i = 0; i < 100_000; i++)
+		{
+			email.setLength(0);
+			int length = random.nextInt(12);
+			for (int j = 0; j < length; j++)
+			{
+				email.append(alphabet.charAt(random.nextInt(alphabet.length())));
+			}
+			assertEquals(EMAIL_PATTERN.matcher(email).matches(), EmailValidator.isValid(email), email.toString());
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package com.malcolmbaatjies.user.entities.responses.validation;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * ValidationErrorCodesTest
+ * <br><br>
+ * This class is used to test the ValidationErrorCodes enum.
+ */
+class ValidationErrorCodesTest
+{
+	/**
+	 * Test that every code is found by its code.
+	 */
+	@Test
+	void fromCode()
+	{
+		for (ValidationErrorCodes value : ValidationErrorCodes.values())
+		{
+			assertSame(value, ValidationErrorCodes.fromCode(value.getCode()));
+		}
+	}
+
+	/**
+	 * Test that unknown and missing codes map to the unexpected error.
+	 */
+	@Test
+	void fromCodeUnknown()
+	{
+		assertSame(ValidationErrorCodes.UNEXPECTED_ERROR, ValidationErrorCodes.fromCode("9999"));
+		assertSame(ValidationErrorCodes.UNEXPECTED_ERROR, ValidationErrorCodes.fromCode(null));
+	}
+
+	/**
+	 * Test that the same validation error is returned for a code every time.
+	 */
+	@Test
+	void getErrorFromCode()
+	{
+		ValidationError error = ValidationErrorCodes.getErrorFromCode("4004");
+
+		assertSame(error, ValidationErrorCodes.getErrorFromCode("4004"));
+		assertEquals("4004", error.getCode());
+		assertEquals("Email is invalid", error.getMessage());
+	}
+}
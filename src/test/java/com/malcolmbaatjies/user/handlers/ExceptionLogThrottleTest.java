@@ -0,0 +1,162 @@
+package com.malcolmbaatjies.user.handlers;
+
+import com.github.benmanes.caffeine.cache.Scheduler;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ExceptionLogThrottleTest
+ * <br><br>
+ * This class is used to test the {@link com.malcolmbaatjies.user.handlers.ExceptionLogThrottle ExceptionLogThrottle} class.
+ */
+class ExceptionLogThrottleTest
+{
+	/**
+	 * The clock, in nanoseconds.
+	 */
+	private final AtomicLong now = new AtomicLong();
+
+	/**
+	 * The reported counts of exceptions that were not logged, by kind.
+	 */
+	private final Map<String, Long> reported = new LinkedHashMap<>();
+
+	/**
+	 * The {@link com.malcolmbaatjies.user.handlers.ExceptionLogThrottle ExceptionLogThrottle}, with a one minute window that only ends as exceptions are counted or on clean up.
+	 */
+	private final ExceptionLogThrottle throttle = new ExceptionLogThrottle(Duration.ofMinutes(1), reported::put, now::get, Scheduler.disabledScheduler());
+
+	/**
+	 * Test that identical exceptions are counted rather than logged until the window has passed, and that the count is reported before the next one is logged.
+	 */
+	@Test
+	void identicalExceptionsCollapsed()
+	{
+		assertTrue(throttle.onException(exception("user 1")));
+		assertFalse(throttle.onException(exception("user 2")));
+		assertFalse(throttle.onException(exception("user 3")));
+		assertTrue(reported.isEmpty());
+
+		now.addAndGet(Duration.ofMinutes(1).toNanos());
+
+		assertTrue(throttle.onException(exception("user 4")));
+		assertEquals(Map.of(kindOf(exception("user 1")), 2L), reported);
+		assertFalse(throttle.onException(exception("user 5")));
+	}
+
+	/**
+	 * Test that the count of a burst of exceptions that stops is reported when its window ends, without another identical exception.
+	 */
+	@Test
+	void burstThatStopsReported()
+	{
+		throttle.onException(exception("user 1"));
+		throttle.onException(exception("user 2"));
+		throttle.onException(exception("user 3"));
+
+		now.addAndGet(Duration.ofSeconds(59).toNanos());
+		throttle.cleanUp();
+		assertTrue(reported.isEmpty());
+
+		now.addAndGet(Duration.ofSeconds(1).toNanos());
+		throttle.cleanUp();
+		assertEquals(Map.of(kindOf(exception("user 1")), 2L), reported);
+	}
+
+	/**
+	 * Test that a window in which every exception was logged is not reported.
+	 */
+	@Test
+	void nothingSuppressedNotReported()
+	{
+		throttle.onException(exception("user 1"));
+
+		now.addAndGet(Duration.ofMinutes(1).toNanos());
+		throttle.cleanUp();
+
+		assertTrue(reported.isEmpty());
+	}
+
+	/**
+	 * Test that the counts of kinds of exceptions forgotten to make room for others are reported rather than dropped.
+	 */
+	@Test
+	void evictedKindsReported()
+	{
+		for (int line = 1; line <= 2000; line++)
+		{
+			throttle.onException(exceptionAt(line));
+			throttle.onException(exceptionAt(line));
+		}
+		throttle.cleanUp();
+
+		assertFalse(reported.isEmpty());
+		assertTrue(reported.values().stream().allMatch(suppressed -> suppressed == 1));
+	}
+
+	/**
+	 * Test that exceptions of another class, thrown from another place or with another cause are not collapsed together.
+	 */
+	@Test
+	void differentExceptionsLogged()
+	{
+		assertTrue(throttle.onException(exception("user 1")));
+		assertTrue(throttle.onException(new IllegalArgumentException("user 1")));
+		assertTrue(throttle.onException(new IllegalStateException("user 1")));
+		assertTrue(throttle.onException(new IllegalStateException("user 1", new RuntimeException())));
+	}
+
+	/**
+	 * Test that every exception is logged without a window.
+	 */
+	@Test
+	void noWindowLogsEvery()
+	{
+		ExceptionLogThrottle unthrottled = new ExceptionLogThrottle(Duration.ZERO, reported::put, now::get, Scheduler.disabledScheduler());
+
+		assertTrue(unthrottled.onException(exception("user 1")));
+		assertTrue(unthrottled.onException(exception("user 1")));
+		assertTrue(reported.isEmpty());
+	}
+
+	/**
+	 * Create an exception, always thrown from the same place.
+	 *
+	 * @param message The exception's message.
+	 * @return The exception.
+	 */
+	private static IllegalStateException exception(String message)
+	{
+		return new IllegalStateException(message);
+	}
+
+	/**
+	 * Create an exception thrown from a given line.
+	 *
+	 * @param line The line the exception is thrown from.
+	 * @return The exception.
+	 */
+	private static IllegalStateException exceptionAt(int line)
+	{
+		IllegalStateException e = new IllegalStateException();
+		e.setStackTrace(new StackTraceElement[] {new StackTraceElement("UserController", "getUser", "UserController.java", line)});
+		return e;
+	}
+
+	/**
+	 * Describe the kind of the exceptions created by {@link #exception}, as reported.
+	 *
+	 * @param e One of the exceptions.
+	 * @return The kind.
+	 */
+	private static String kindOf(Throwable e)
+	{
+		return e.getClass().getName() + "@" + e.getStackTrace()[0] + ";";
+	}
+}
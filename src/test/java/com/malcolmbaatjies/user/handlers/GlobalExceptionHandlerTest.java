@@ -1,16 +1,29 @@
 package com.malcolmbaatjies.user.handlers;
 
+import com.malcolmbaatjies.user.controllers.ReactiveUserController;
+import com.malcolmbaatjies.user.entities.exceptions.BatchTooLargeException;
+import com.malcolmbaatjies.user.entities.exceptions.CreateQueueFullException;
+import com.malcolmbaatjies.user.entities.exceptions.InvalidFieldsException;
+import com.malcolmbaatjies.user.entities.exceptions.PendingUserNotFoundException;
+import com.malcolmbaatjies.user.entities.exceptions.SearchIndexNotReadyException;
 import com.malcolmbaatjies.user.entities.exceptions.UserExistsException;
 import com.malcolmbaatjies.user.entities.exceptions.UserNotFoundException;
+import com.malcolmbaatjies.user.entities.exceptions.UserVersionMismatchException;
+import com.malcolmbaatjies.user.entities.requests.NewUserRequest;
 import com.malcolmbaatjies.user.entities.responses.ApiErrorResponse;
 import com.malcolmbaatjies.user.entities.responses.validation.ValidationErrorCodes;
 import com.malcolmbaatjies.user.entities.responses.validation.ValidationErrorResponse;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.PropertyEditorRegistry;
+import org.springframework.core.MethodParameter;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.validation.*;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
+import org.springframework.web.bind.support.WebExchangeBindException;
 
 import java.beans.PropertyEditor;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 
@@ -26,7 +39,7 @@ class GlobalExceptionHandlerTest
 	/**
 	 * The {@link com.malcolmbaatjies.user.handlers.GlobalExceptionHandler}.
 	 */
-	private final GlobalExceptionHandler globalExceptionHandler = new GlobalExceptionHandler();
+	private final GlobalExceptionHandler globalExceptionHandler = new GlobalExceptionHandler(Duration.ZERO);
 
 	/**
 	 * Test that the {@link com.malcolmbaatjies.user.handlers.GlobalExceptionHandler#onBindException} method returns the correct response.
@@ -269,6 +282,27 @@ class GlobalExceptionHandlerTest
 		assertEquals(ValidationErrorCodes.fromCode("4002").getMessage(), response.getErrors().get(1).getMessage());
 	}
 
+	/**
+	 * Test that the {@link com.malcolmbaatjies.user.handlers.GlobalExceptionHandler#onWebExchangeBindException} method returns the same response as for a BindException.
+	 */
+	@Test
+	void onWebExchangeBindException() throws NoSuchMethodException
+	{
+		NewUserRequest newUserRequest = NewUserRequest.builder().build();
+		BindingResult bindingResult = new BeanPropertyBindingResult(newUserRequest, "newUserRequest");
+		bindingResult.rejectValue("lastName", "NotBlank", "4002");
+		bindingResult.rejectValue("firstName", "NotBlank", "4001");
+		MethodParameter parameter = new MethodParameter(ReactiveUserController.class.getMethod("createUser", NewUserRequest.class), 0);
+
+		ValidationErrorResponse response = globalExceptionHandler.onWebExchangeBindException(new WebExchangeBindException(parameter, bindingResult));
+
+		assertEquals(HttpStatus.BAD_REQUEST.toString(), response.getStatus());
+		assertEquals("4001", response.getErrors().get(0).getCode());
+		assertEquals(ValidationErrorCodes.fromCode("4001").getMessage(), response.getErrors().get(0).getMessage());
+		assertEquals("4002", response.getErrors().get(1).getCode());
+		assertEquals(ValidationErrorCodes.fromCode("4002").getMessage(), response.getErrors().get(1).getMessage());
+	}
+
 	/**
 	 * Test that the {@link com.malcolmbaatjies.user.handlers.GlobalExceptionHandler#onUserNotFoundException} method returns the correct response.
 	 */
@@ -293,6 +327,90 @@ class GlobalExceptionHandlerTest
 		assertEquals("User with email [example@mail.com] already exists", response.getMessage());
 	}
 
+	/**
+	 * Test that the {@link com.malcolmbaatjies.user.handlers.GlobalExceptionHandler#onUserVersionMismatchException} method returns the correct response.
+	 */
+	@Test
+	void onUserVersionMismatchException()
+	{
+		ApiErrorResponse response = globalExceptionHandler.onUserVersionMismatchException(new UserVersionMismatchException("1"));
+
+		assertEquals(HttpStatus.PRECONDITION_FAILED.toString(), response.getStatus());
+		assertEquals("User with id [1] has been modified", response.getMessage());
+	}
+
+	/**
+	 * Test that the {@link com.malcolmbaatjies.user.handlers.GlobalExceptionHandler#onBatchTooLargeException} method returns the correct response.
+	 */
+	@Test
+	void onBatchTooLargeException()
+	{
+		ApiErrorResponse response = globalExceptionHandler.onBatchTooLargeException(new BatchTooLargeException(1001, 1000));
+
+		assertEquals(HttpStatus.PAYLOAD_TOO_LARGE.toString(), response.getStatus());
+		assertEquals("Batch of [1001] items exceeds the maximum of [1000]", response.getMessage());
+	}
+
+	/**
+	 * Test that the {@link com.malcolmbaatjies.user.handlers.GlobalExceptionHandler#onInvalidFieldsException} method returns the correct response.
+	 */
+	@Test
+	void onInvalidFieldsException()
+	{
+		ApiErrorResponse response = globalExceptionHandler.onInvalidFieldsException(new InvalidFieldsException(List.of("password"), List.of("id", "email")));
+
+		assertEquals(HttpStatus.BAD_REQUEST.toString(), response.getStatus());
+		assertEquals("Fields [password] are invalid, expected any of [id, email]", response.getMessage());
+	}
+
+	/**
+	 * Test that the {@link com.malcolmbaatjies.user.handlers.GlobalExceptionHandler#onSearchIndexNotReadyException} method returns the correct response.
+	 */
+	@Test
+	void onSearchIndexNotReadyException()
+	{
+		ApiErrorResponse response = globalExceptionHandler.onSearchIndexNotReadyException(new SearchIndexNotReadyException());
+
+		assertEquals(HttpStatus.SERVICE_UNAVAILABLE.toString(), response.getStatus());
+		assertEquals("The search index is still being built. Please try again shortly", response.getMessage());
+	}
+
+	/**
+	 * Test that the {@link com.malcolmbaatjies.user.handlers.GlobalExceptionHandler#onCreateQueueFullException} method returns the correct response.
+	 */
+	@Test
+	void onCreateQueueFullException()
+	{
+		ApiErrorResponse response = globalExceptionHandler.onCreateQueueFullException(new CreateQueueFullException(100));
+
+		assertEquals(HttpStatus.TOO_MANY_REQUESTS.toString(), response.getStatus());
+		assertEquals("The queue of [100] users waiting to be created is full. Please try again later", response.getMessage());
+	}
+
+	/**
+	 * Test that the {@link com.malcolmbaatjies.user.handlers.GlobalExceptionHandler#onPendingUserNotFoundException} method returns the correct response.
+	 */
+	@Test
+	void onPendingUserNotFoundException()
+	{
+		ApiErrorResponse response = globalExceptionHandler.onPendingUserNotFoundException(new PendingUserNotFoundException("abc"));
+
+		assertEquals(HttpStatus.NOT_FOUND.toString(), response.getStatus());
+		assertEquals("Pending user with ticket [abc] not found", response.getMessage());
+	}
+
+	/**
+	 * Test that the {@link com.malcolmbaatjies.user.handlers.GlobalExceptionHandler#onHttpMediaTypeNotAcceptableException} method returns the correct response.
+	 */
+	@Test
+	void onHttpMediaTypeNotAcceptableException()
+	{
+		ApiErrorResponse response = globalExceptionHandler.onHttpMediaTypeNotAcceptableException(new HttpMediaTypeNotAcceptableException(List.of(MediaType.APPLICATION_JSON, MediaType.APPLICATION_JSON, MediaType.APPLICATION_CBOR)));
+
+		assertEquals(HttpStatus.NOT_ACCEPTABLE.toString(), response.getStatus());
+		assertEquals("The response is only available as application/json, application/cbor", response.getMessage());
+	}
+
 	/**
 	 * Test that the {@link com.malcolmbaatjies.user.handlers.GlobalExceptionHandler#onException} method returns the correct response.
 	 */
@@ -0,0 +1,80 @@
+package com.malcolmbaatjies.user.indexes;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * BloomFilterTest
+ * <br><br>
+ * This class is used to test the BloomFilter class.
+ */
+class BloomFilterTest
+{
+	/**
+	 * Test that every string added to the filter is reported as possibly present.
+	 */
+	@Test
+	void noFalseNegatives()
+	{
+		BloomFilter filter = new BloomFilter(10_000, 0.01);
+
+		for (int i = 0; i < 10_000; i++)
+		{
+			filter.put("user" + i + "@mail.com");
+		}
+
+		for (int i = 0; i < 10_000; i++)
+		{
+			assertTrue(filter.mightContain("user" + i + "@mail.com"));
+		}
+	}
+
+	/**
+	 * Test that the false positive rate stays close to the configured rate once the filter holds the expected number of strings.
+	 */
+	@Test
+	void falsePositiveRate()
+	{
+		BloomFilter filter = new BloomFilter(10_000, 0.01);
+
+		for (int i = 0; i < 10_000; i++)
+		{
+			filter.put("user" + i + "@mail.com");
+		}
+
+		int falsePositives = 0;
+		for (int i = 0; i < 100_000; i++)
+		{
+			if (filter.mightContain("other" + i + "@mail.com"))
+			{
+				falsePositives++;
+			}
+		}
+
+		assertTrue(falsePositives / 100_000.0 < 0.02);
+		assertTrue(filter.getExpectedFalsePositiveRate() < 0.02);
+	}
+
+	/**
+	 * Test that an empty filter rules out every string.
+	 */
+	@Test
+	void emptyFilter()
+	{
+		BloomFilter filter = new BloomFilter(1_000, 0.01);
+
+		assertFalse(filter.mightContain("johndoe@mail.com"));
+		assertEquals(0, filter.getExpectedFalsePositiveRate());
+	}
+
+	/**
+	 * Test that invalid sizing is rejected.
+	 */
+	@Test
+	void invalidSizing()
+	{
+		assertThrows(IllegalArgumentException.class, () -> new BloomFilter(0, 0.01));
+		assertThrows(IllegalArgumentException.class, () -> new BloomFilter(1_000, 1));
+	}
+}
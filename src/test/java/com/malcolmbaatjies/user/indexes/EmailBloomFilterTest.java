@@ -0,0 +1,57 @@
+package com.malcolmbaatjies.user.indexes;
+
+import com.malcolmbaatjies.user.repositories.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * EmailBloomFilterTest
+ * <br><br>
+ * This class is used to test the {@link com.malcolmbaatjies.user.indexes.EmailBloomFilter EmailBloomFilter} class.
+ */
+class EmailBloomFilterTest
+{
+	/**
+	 * The mocked {@link com.malcolmbaatjies.user.repositories.UserRepository UserRepository}.
+	 */
+	private final UserRepository userRepository = mock(UserRepository.class);
+
+	/**
+	 * The {@link com.malcolmbaatjies.user.indexes.EmailBloomFilter EmailBloomFilter}, sized for a few emails.
+	 */
+	private final EmailBloomFilter emailBloomFilter = new EmailBloomFilter(userRepository, mock(PlatformTransactionManager.class), new SimpleMeterRegistry(), 1000, 0.01);
+
+	/**
+	 * Test that emails are matched ignoring case, whether they were read by the rebuild or added since.
+	 */
+	@Test
+	void ignoresCase()
+	{
+		when(userRepository.streamAllEmails()).thenReturn(Stream.of("John.Doe@mail.com"));
+		emailBloomFilter.rebuild();
+		emailBloomFilter.put("JANE.DOE@mail.com");
+
+		assertTrue(emailBloomFilter.mightContain("john.doe@MAIL.com"));
+		assertTrue(emailBloomFilter.mightContain("jane.doe@mail.com"));
+		assertFalse(emailBloomFilter.mightContain("james.bell@mail.com"));
+	}
+
+	/**
+	 * Test that an email added while a rebuild runs is kept by the rebuilt filter, even though the rebuild did not read it.
+	 */
+	@Test
+	void putDuringRebuildKept()
+	{
+		when(userRepository.streamAllEmails()).thenReturn(Stream.of("john.doe@mail.com").peek(email -> emailBloomFilter.put("jane.doe@mail.com")));
+		emailBloomFilter.rebuild();
+
+		assertTrue(emailBloomFilter.mightContain("jane.doe@mail.com"));
+		assertFalse(emailBloomFilter.mightContain("james.bell@mail.com"));
+	}
+}
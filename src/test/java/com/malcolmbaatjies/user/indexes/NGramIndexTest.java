@@ -0,0 +1,121 @@
+package com.malcolmbaatjies.user.indexes;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * NGramIndexTest
+ * <br><br>
+ * This class is used to test the NGramIndex class.
+ */
+class NGramIndexTest
+{
+	/**
+	 * Test that exact field matches rank above prefixes, prefixes above matches inside a field, and ties go to the shorter document.
+	 */
+	@Test
+	void ranksExactThenPrefixThenInfix()
+	{
+		NGramIndex index = new NGramIndex();
+		index.put(1, "Marianne", "Smith", "marianne@mail.com");
+		index.put(2, "Anna", "Mariano", "anna@mail.com");
+		index.put(3, "Maria", "Jones", "maria@mail.com");
+		index.put(4, "Rosemaria", "Lee", "rose@mail.com");
+		index.put(5, "Bob", "Brown", "bob@mail.com");
+
+		assertEquals(List.of(3L, 2L, 1L, 4L), index.search("MARIA", 10));
+		assertEquals(List.of(3L, 2L), index.search("maria", 2));
+	}
+
+	/**
+	 * Test that every term must match, in any field.
+	 */
+	@Test
+	void matchesEveryTerm()
+	{
+		NGramIndex index = new NGramIndex();
+		index.put(1, "John", "Smith", "john@mail.com");
+		index.put(2, "John", "Doe", "jd@mail.com");
+		index.put(3, "Jane", "Smith", "jane@mail.com");
+
+		assertEquals(List.of(1L), index.search(" john   smith ", 10));
+		assertEquals(List.of(2L), index.search("doe jd@mail", 10));
+		assertEquals(List.of(), index.search("jane doe", 10));
+		assertEquals(List.of(), index.search("xyz", 10));
+		assertEquals(List.of(), index.search("   ", 10));
+	}
+
+	/**
+	 * Test that terms shorter than a gram only match the start of a field.
+	 */
+	@Test
+	void shortTermsMatchPrefixes()
+	{
+		NGramIndex index = new NGramIndex();
+		index.put(1, "Al", "Green", "al@mail.com");
+		index.put(2, "Sal", "Alvarez", "sal@mail.com");
+		index.put(3, "Hal", "Smith", "hal@mail.com");
+
+		assertEquals(List.of(1L, 2L), index.search("al", 10));
+		assertEquals(List.of(3L, 2L), index.search("s", 10));
+		assertEquals(List.of(3L), index.search("h", 10));
+		assertEquals(List.of(3L), index.search("hal", 10));
+	}
+
+	/**
+	 * Test that updated documents are found by their new fields only, and removed documents not at all.
+	 */
+	@Test
+	void updateAndRemove()
+	{
+		NGramIndex index = new NGramIndex();
+		index.put(1, "John", "Smith", "john@mail.com");
+		index.put(2, "Jane", "Smith", "jane@mail.com");
+
+		index.update(1, null, "Taylor", null);
+		index.update(3, "Ghost", null, null);
+		assertEquals(List.of(2L), index.search("smith", 10));
+		assertEquals(List.of(1L), index.search("john taylor", 10));
+		assertFalse(index.contains(3));
+
+		index.put(2, "Janet", "Brown", "janet@mail.com");
+		assertEquals(List.of(), index.search("smith", 10));
+		assertEquals(List.of(2L), index.search("janet", 10));
+
+		assertTrue(index.remove(1));
+		assertFalse(index.remove(1));
+		assertEquals(List.of(), index.search("john", 10));
+		assertEquals(1, index.getSize());
+	}
+
+	/**
+	 * Test that many documents are all found, including after many removals, when the posting lists are long enough to be intersected.
+	 */
+	@Test
+	void manyDocuments()
+	{
+		NGramIndex index = new NGramIndex();
+		int count = 4 * NGramIndex.CHECK_THRESHOLD;
+		for (int i = 0; i < count; i++)
+		{
+			index.put(1_000_000L + i * 7919L, "User", "Number" + i, "user" + i + "@mail.com");
+		}
+		for (int i = 0; i < count; i += 2)
+		{
+			assertTrue(index.remove(1_000_000L + i * 7919L));
+		}
+
+		assertEquals(count / 2, index.getSize());
+		assertEquals(count / 2, index.search("user mail", count).size());
+		assertEquals(List.of(1_000_000L + 12345 * 7919L), index.search("number12345", 10));
+		assertEquals(List.of(), index.search("number12344", 10));
+		for (int i = 1; i < count; i += 2)
+		{
+			assertTrue(index.contains(1_000_000L + i * 7919L));
+		}
+		assertTrue(index.getSizeInBytes() > 0);
+	}
+}
@@ -0,0 +1,109 @@
+package com.malcolmbaatjies.user.indexes;
+
+import com.malcolmbaatjies.user.configurations.ReplicaRoutingDataSource;
+import com.malcolmbaatjies.user.entities.models.User;
+import com.malcolmbaatjies.user.repositories.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * UserSearchIndexTest
+ * <br><br>
+ * This class is used to test the {@link com.malcolmbaatjies.user.indexes.UserSearchIndex UserSearchIndex} class.
+ */
+class UserSearchIndexTest
+{
+	/**
+	 * The mocked {@link com.malcolmbaatjies.user.repositories.UserRepository UserRepository}.
+	 */
+	private final UserRepository userRepository = mock(UserRepository.class);
+
+	/**
+	 * The {@link com.malcolmbaatjies.user.indexes.UserSearchIndex UserSearchIndex}.
+	 */
+	private final UserSearchIndex userSearchIndex = new UserSearchIndex(userRepository, mock(EntityManager.class), mock(PlatformTransactionManager.class), new SimpleMeterRegistry());
+
+	/**
+	 * Test that a user changed during a rebuild, before the rebuild read it, is reloaded rather than taken as the rebuild read it.
+	 */
+	@Test
+	void updateDuringRebuildReloaded()
+	{
+		User john = user(1L, "John", "johndoe@mail.com");
+		User staleJane = user(2L, "Jane", "janedoe@mail.com");
+		when(userRepository.findById(2L)).thenReturn(Optional.of(user(2L, "Janet", "janedoe@mail.com")));
+		when(userRepository.streamAllByOrderByIdAsc()).thenReturn(Stream.of(john, staleJane).peek(user -> {
+			if (user == john)
+			{
+				userSearchIndex.update(2L, "Janet", null, null);
+			}
+		}));
+
+		userSearchIndex.rebuild();
+
+		assertEquals(List.of(2L), userSearchIndex.search("janet", 10));
+		assertEquals(List.of(1L), userSearchIndex.search("jo", 10));
+	}
+
+	/**
+	 * Test that users written during a rebuild are kept by the rebuilt index.
+	 */
+	@Test
+	void writesDuringRebuildKept()
+	{
+		User john = user(1L, "John", "johndoe@mail.com");
+		User jane = user(2L, "Jane", "janedoe@mail.com");
+		when(userRepository.streamAllByOrderByIdAsc()).thenReturn(Stream.of(john, jane).peek(user -> {
+			if (user == jane)
+			{
+				userSearchIndex.put(user(3L, "James", "jamesbell@mail.com"));
+				userSearchIndex.remove(1L);
+			}
+		}));
+
+		userSearchIndex.rebuild();
+
+		assertEquals(List.of(3L), userSearchIndex.search("james", 10));
+		assertEquals(List.of(), userSearchIndex.search("john", 10));
+		verify(userRepository, never()).findById(anyLong());
+	}
+
+	/**
+	 * Test that the users are streamed on a thread pinned to the primary, and that the thread is released once the rebuild is done.
+	 */
+	@Test
+	void rebuildReadsPrimary()
+	{
+		when(userRepository.streamAllByOrderByIdAsc()).thenAnswer(invocation -> {
+			assertTrue(ReplicaRoutingDataSource.isPinnedToPrimary());
+			return Stream.of(user(1L, "John", "johndoe@mail.com"));
+		});
+
+		userSearchIndex.rebuild();
+
+		assertEquals(List.of(1L), userSearchIndex.search("john", 10));
+		assertFalse(ReplicaRoutingDataSource.isPinnedToPrimary());
+	}
+
+	/**
+	 * Create a user.
+	 *
+	 * @param id The user's id.
+	 * @param firstName The user's first name.
+	 * @param email The user's email.
+	 * @return The user.
+	 */
+	private static User user(Long id, String firstName, String email)
+	{
+		return User.builder().id(id).firstName(firstName).lastName("Doe").email(email).build();
+	}
+}
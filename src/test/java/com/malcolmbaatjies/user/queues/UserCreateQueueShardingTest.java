@@ -0,0 +1,179 @@
+package com.malcolmbaatjies.user.queues;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.malcolmbaatjies.App;
+import com.malcolmbaatjies.user.entities.models.User;
+import com.malcolmbaatjies.user.entities.requests.NewUserRequest;
+import com.malcolmbaatjies.user.entities.responses.PendingUserResponse;
+import com.malcolmbaatjies.user.indexes.EmailBloomFilter;
+import com.malcolmbaatjies.user.indexes.UserSearchIndex;
+import com.malcolmbaatjies.user.repositories.UserRepository;
+import com.malcolmbaatjies.user.repositories.sharding.EmailDirectory;
+import com.malcolmbaatjies.user.repositories.sharding.ShardRoutingDataSource;
+import com.malcolmbaatjies.user.repositories.sharding.ShardingRepositoryInterceptor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * UserCreateQueueShardingTest
+ * <br><br>
+ * This class is used to test the UserCreateQueue class against the {@link com.malcolmbaatjies.user.repositories.UserRepository UserRepository} sharded across three embedded databases, where a batch can be partly written.
+ * <br><br>
+ * This class is annotated with Spring's {@link org.springframework.boot.test.context.SpringBootTest} to run the test against the application configured with the shards.
+ */
+@SpringBootTest(classes = App.class, properties = {
+	"spring.datasource.url=jdbc:h2:mem:queueshard0;MODE=MySQL;DB_CLOSE_DELAY=-1",
+	"spring.datasource.driver-class-name=org.h2.Driver",
+	"spring.datasource.username=sa",
+	"spring.datasource.password=",
+	"spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+	"spring.jpa.hibernate.ddl-auto=create-drop",
+	"users.sharding.shard-urls=jdbc:h2:mem:queueshard1;MODE=MySQL;DB_CLOSE_DELAY=-1,jdbc:h2:mem:queueshard2;MODE=MySQL;DB_CLOSE_DELAY=-1"
+})
+class UserCreateQueueShardingTest
+{
+	/**
+	 * The number of shards.
+	 */
+	private static final int SHARDS = 3;
+
+	/**
+	 * The sharded repository.
+	 */
+	@Autowired
+	private UserRepository userRepository;
+
+	/**
+	 * The shards.
+	 */
+	@Autowired
+	private ShardRoutingDataSource shardRoutingDataSource;
+
+	/**
+	 * The cache manager.
+	 */
+	@Autowired
+	private CacheManager cacheManager;
+
+	/**
+	 * The directory holding the journal.
+	 */
+	@TempDir
+	Path directory;
+
+	/**
+	 * The queue, writing through the sharded repository.
+	 */
+	private UserCreateQueue queue;
+
+	/**
+	 * Empty the shards, the email directory and the cache, and open the queue.
+	 */
+	@BeforeEach
+	public void setup() throws IOException
+	{
+		for (int shard = 0; shard < SHARDS; shard++)
+		{
+			shard(shard).update("DELETE FROM users");
+		}
+		shard(0).update("DELETE FROM " + EmailDirectory.TABLE);
+		cacheManager.getCache(UserRepository.CACHE).clear();
+
+		EmailBloomFilter emailBloomFilter = mock(EmailBloomFilter.class);
+		when(emailBloomFilter.mightContain(anyString())).thenReturn(true);
+		queue = new UserCreateQueue(userRepository, emailBloomFilter, mock(UserSearchIndex.class), new ObjectMapper(), new SimpleMeterRegistry(),
+			directory.resolve("journal.log").toString(), true, 10, 10, Duration.ofMillis(10), 1024 * 1024, Duration.ofMinutes(1));
+	}
+
+	/**
+	 * Close the journal.
+	 */
+	@AfterEach
+	public void teardown()
+	{
+		queue.stop();
+	}
+
+	/**
+	 * Test that when one shard fails a batch, the users the other shards wrote are recorded as created rather than refused as duplicates of themselves, and that the user the failing shard refused is refused.
+	 */
+	@Test
+	void partlyWrittenBatchCreated()
+	{
+		String taken = emailOnShard(1, "taken");
+		// A row the directory does not know, so only the shard's own constraint refuses it
+		shard(1).update("INSERT INTO users (id, first_name, last_name, email, version) VALUES (1, 'Other', 'Last', ?, 0)", taken);
+
+		String first = queue.enqueue(request(emailOnShard(0, "first")));
+		String refused = queue.enqueue(request(taken));
+		String second = queue.enqueue(request(emailOnShard(2, "second")));
+
+		assertTrue(queue.drain());
+
+		PendingUserResponse firstStatus = queue.getStatus(first).orElseThrow();
+		assertEquals(HttpStatus.CREATED.toString(), firstStatus.getStatus());
+		assertEquals(firstStatus.getUser().getId(), userRepository.findUserByEmail(firstStatus.getUser().getEmail()).orElseThrow().getId());
+		assertEquals(HttpStatus.CREATED.toString(), queue.getStatus(second).orElseThrow().getStatus());
+		assertEquals(HttpStatus.BAD_REQUEST.toString(), queue.getStatus(refused).orElseThrow().getStatus());
+		assertEquals(1, shard(0).queryForObject("SELECT COUNT(*) FROM users", Integer.class));
+		assertEquals(1, shard(2).queryForObject("SELECT COUNT(*) FROM users", Integer.class));
+	}
+
+	/**
+	 * Get a JDBC template on a shard.
+	 *
+	 * @param shard The shard number.
+	 * @return The JDBC template.
+	 */
+	private JdbcTemplate shard(int shard)
+	{
+		return new JdbcTemplate(shardRoutingDataSource.getShard(shard));
+	}
+
+	/**
+	 * Get an email that a new user would be stored on the given shard with.
+	 *
+	 * @param shard The shard number.
+	 * @param prefix The start of the email.
+	 * @return The email.
+	 */
+	private static String emailOnShard(int shard, String prefix)
+	{
+		for (int i = 0; ; i++)
+		{
+			String email = prefix + i + "@example.com";
+			if (ShardingRepositoryInterceptor.shardFor(email, SHARDS) == shard)
+			{
+				return email;
+			}
+		}
+	}
+
+	/**
+	 * Build a new user request.
+	 *
+	 * @param email The user's email.
+	 * @return The request.
+	 */
+	private static NewUserRequest request(String email)
+	{
+		return NewUserRequest.builder().firstName("First").lastName("Last").email(email).build();
+	}
+}
@@ -0,0 +1,286 @@
+package com.malcolmbaatjies.user.queues;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.malcolmbaatjies.user.entities.exceptions.CreateQueueFullException;
+import com.malcolmbaatjies.user.entities.models.User;
+import com.malcolmbaatjies.user.entities.requests.NewUserRequest;
+import com.malcolmbaatjies.user.entities.responses.PendingUserResponse;
+import com.malcolmbaatjies.user.indexes.EmailBloomFilter;
+import com.malcolmbaatjies.user.indexes.UserSearchIndex;
+import com.malcolmbaatjies.user.repositories.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.http.HttpStatus;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * UserCreateQueueTest
+ * <br><br>
+ * This class is used to test the UserCreateQueue class against a journal in a temporary directory.
+ * <br><br>
+ * This class is annotated with JUnit 5's {@link org.junit.jupiter.api.extension.ExtendWith} to enable the {@link org.mockito.junit.jupiter.MockitoExtension MockitoExtension} for the JUnit 5 test.
+ */
+@ExtendWith(MockitoExtension.class)
+class UserCreateQueueTest
+{
+	/**
+	 * The mocked {@link com.malcolmbaatjies.user.repositories.UserRepository UserRepository}.
+	 */
+	@Mock
+	private UserRepository mockedUserRepository;
+
+	/**
+	 * The mocked {@link com.malcolmbaatjies.user.indexes.EmailBloomFilter EmailBloomFilter}.
+	 */
+	@Mock
+	private EmailBloomFilter mockedEmailBloomFilter;
+
+	/**
+	 * The mocked {@link com.malcolmbaatjies.user.indexes.UserSearchIndex UserSearchIndex}.
+	 */
+	@Mock
+	private UserSearchIndex mockedUserSearchIndex;
+
+	/**
+	 * The directory holding the journal.
+	 */
+	@TempDir
+	Path directory;
+
+	/**
+	 * The queues opened by the test, closed after it.
+	 */
+	private final List<UserCreateQueue> queues = new ArrayList<>();
+
+	/**
+	 * Hand out ids to saved users.
+	 */
+	@BeforeEach
+	public void setup()
+	{
+		AtomicLong ids = new AtomicLong();
+		lenient().when(mockedEmailBloomFilter.mightContain(anyString())).thenReturn(true);
+		lenient().when(mockedUserRepository.saveAll(anyList())).thenAnswer(invocation -> {
+			List<User> saved = new ArrayList<>();
+			for (User user : invocation.<List<User>>getArgument(0))
+			{
+				saved.add(User.builder().id(ids.incrementAndGet()).firstName(user.getFirstName()).lastName(user.getLastName()).email(user.getEmail()).version(0L).build());
+			}
+			return saved;
+		});
+	}
+
+	/**
+	 * Close the journals.
+	 */
+	@AfterEach
+	public void teardown()
+	{
+		queues.forEach(UserCreateQueue::stop);
+	}
+
+	/**
+	 * Test that queued users are written in one batch, and that users whose email is taken, in the database or earlier in the batch and in any case, are refused.
+	 */
+	@Test
+	void drainWritesBatch()
+	{
+		UserCreateQueue queue = queue(10, 10);
+		when(mockedUserRepository.findExistingEmails(any())).thenReturn(List.of("taken@mail.com"));
+
+		String first = queue.enqueue(request("john@mail.com"));
+		String taken = queue.enqueue(request("TAKEN@mail.com"));
+		String repeated = queue.enqueue(request("John@mail.com"));
+		String second = queue.enqueue(request("jane@mail.com"));
+		assertEquals(HttpStatus.ACCEPTED.toString(), queue.getStatus(first).orElseThrow().getStatus());
+
+		assertTrue(queue.drain());
+		assertFalse(queue.drain());
+
+		assertEquals(1L, queue.getStatus(first).orElseThrow().getUser().getId());
+		assertEquals(2L, queue.getStatus(second).orElseThrow().getUser().getId());
+		assertEquals(HttpStatus.BAD_REQUEST.toString(), queue.getStatus(taken).orElseThrow().getStatus());
+		assertEquals(HttpStatus.BAD_REQUEST.toString(), queue.getStatus(repeated).orElseThrow().getStatus());
+		verify(mockedUserSearchIndex).put(queue.getStatus(first).orElseThrow().getUser());
+		verify(mockedEmailBloomFilter).put("jane@mail.com");
+	}
+
+	/**
+	 * Test that users are refused once the queue is full, and accepted again once it is drained.
+	 */
+	@Test
+	void enqueueFull()
+	{
+		UserCreateQueue queue = queue(2, 10);
+
+		queue.enqueue(request("a@mail.com"));
+		queue.enqueue(request("b@mail.com"));
+		assertThrows(CreateQueueFullException.class, () -> queue.enqueue(request("c@mail.com")));
+
+		queue.drain();
+		queue.enqueue(request("c@mail.com"));
+	}
+
+	/**
+	 * Test that a batch the database failed stays queued, both in memory and in the journal.
+	 */
+	@Test
+	void writeRetriesOnDatabaseFailure()
+	{
+		UserCreateQueue queue = queue(10, 10);
+		when(mockedUserRepository.saveAll(anyList())).thenThrow(new DataAccessResourceFailureException("down"));
+		String ticket = queue.enqueue(request("john@mail.com"));
+
+		assertFalse(queue.drain());
+
+		assertEquals(HttpStatus.ACCEPTED.toString(), queue.getStatus(ticket).orElseThrow().getStatus());
+		queue.stop();
+		UserCreateQueue recovered = queue(10, 10);
+		assertEquals(List.of(ticket), journalTickets());
+		assertTrue(recovered.getStatus(ticket).isPresent());
+	}
+
+	/**
+	 * Test that users which were queued but not written survive a restart, that a torn last line is dropped, that the journal is compacted down to them and that they are written.
+	 */
+	@Test
+	void recoverFromJournal() throws IOException
+	{
+		UserCreateQueue queue = queue(10, 1);
+		queue.enqueue(request("written@mail.com"));
+		String waiting = queue.enqueue(request("waiting@mail.com"));
+		queue.drain();
+		queue.stop();
+		Files.write(directory.resolve("journal.log"), "{\"ticket\":\"torn".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+		UserCreateQueue recovered = queue(10, 10);
+		assertEquals(List.of(waiting), journalTickets());
+
+		PendingUserResponse status = recovered.getStatus(waiting).orElseThrow();
+		assertEquals(HttpStatus.ACCEPTED.toString(), status.getStatus());
+		assertTrue(recovered.drain());
+		assertEquals("waiting@mail.com", recovered.getStatus(waiting).orElseThrow().getUser().getEmail());
+		verify(mockedUserRepository, never()).save(any());
+	}
+
+	/**
+	 * Test that a recovered user that was written before the crash, but not marked as handled, is recorded as created by the user with its email, and that a recovered user whose email belongs to someone else is still refused.
+	 */
+	@Test
+	void recoverWrittenUser()
+	{
+		UserCreateQueue queue = queue(10, 10);
+		String written = queue.enqueue(request("written@mail.com"));
+		String taken = queue.enqueue(request("taken@mail.com"));
+		queue.stop();
+
+		UserCreateQueue recovered = queue(10, 10);
+		when(mockedUserRepository.findExistingEmails(any())).thenReturn(List.of("written@mail.com", "taken@mail.com"));
+		when(mockedUserRepository.findUserByEmail("written@mail.com")).thenReturn(Optional.of(User.builder().id(7L).firstName("First").lastName("Last").email("written@mail.com").version(0L).build()));
+		when(mockedUserRepository.findUserByEmail("taken@mail.com")).thenReturn(Optional.of(User.builder().id(8L).firstName("Other").lastName("Last").email("taken@mail.com").version(0L).build()));
+
+		assertTrue(recovered.drain());
+
+		PendingUserResponse status = recovered.getStatus(written).orElseThrow();
+		assertEquals(HttpStatus.CREATED.toString(), status.getStatus());
+		assertEquals(7L, status.getUser().getId());
+		assertEquals(HttpStatus.BAD_REQUEST.toString(), recovered.getStatus(taken).orElseThrow().getStatus());
+	}
+
+	/**
+	 * Test that a user whose email is taken is refused without a lookup when it cannot have been written before.
+	 */
+	@Test
+	void duplicateRefusedWithoutLookup()
+	{
+		UserCreateQueue queue = queue(10, 10);
+		when(mockedUserRepository.findExistingEmails(any())).thenReturn(List.of("taken@mail.com"));
+		String taken = queue.enqueue(request("taken@mail.com"));
+
+		assertTrue(queue.drain());
+
+		assertEquals(HttpStatus.BAD_REQUEST.toString(), queue.getStatus(taken).orElseThrow().getStatus());
+		verify(mockedUserRepository, never()).findUserByEmail(anyString());
+	}
+
+	/**
+	 * Open a queue on the test's journal, without starting its writer.
+	 *
+	 * @param capacity The maximum number of queued users.
+	 * @param batchSize The maximum number of users written per batch.
+	 * @return The queue.
+	 */
+	private UserCreateQueue queue(int capacity, int batchSize)
+	{
+		try
+		{
+			UserCreateQueue queue = new UserCreateQueue(mockedUserRepository, mockedEmailBloomFilter, mockedUserSearchIndex, new ObjectMapper(), new SimpleMeterRegistry(),
+				directory.resolve("journal.log").toString(), true, capacity, batchSize, Duration.ofMillis(10), 1024 * 1024, Duration.ofMinutes(1));
+			queues.add(queue);
+			return queue;
+		}
+		catch (IOException e)
+		{
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Read the tickets of the entries in the test's journal.
+	 *
+	 * @return The tickets, in the order they were journaled.
+	 */
+	private List<String> journalTickets()
+	{
+		try
+		{
+			List<String> tickets = new ArrayList<>();
+			for (String line : Files.readAllLines(directory.resolve("journal.log")))
+			{
+				tickets.add(new ObjectMapper().readTree(line).get("ticket").asText());
+			}
+			return tickets;
+		}
+		catch (IOException e)
+		{
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Build a new user request.
+	 *
+	 * @param email The user's email.
+	 * @return The request.
+	 */
+	private static NewUserRequest request(String email)
+	{
+		return NewUserRequest.builder().firstName("First").lastName("Last").email(email).build();
+	}
+}
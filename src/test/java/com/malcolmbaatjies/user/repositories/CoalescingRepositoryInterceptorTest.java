@@ -0,0 +1,277 @@
+package com.malcolmbaatjies.user.repositories;
+
+import com.malcolmbaatjies.user.configurations.ReplicaRoutingDataSource;
+import com.malcolmbaatjies.user.entities.models.User;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * CoalescingRepositoryInterceptorTest
+ * <br><br>
+ * This class is used to test the CoalescingRepositoryInterceptor class in a proxy around a mocked repository.
+ * <br><br>
+ * This class is annotated with JUnit 5's {@link org.junit.jupiter.api.extension.ExtendWith} to enable the {@link org.mockito.junit.jupiter.MockitoExtension MockitoExtension} for the JUnit 5 test.
+ */
+@ExtendWith(MockitoExtension.class)
+class CoalescingRepositoryInterceptorTest
+{
+	/**
+	 * The number of concurrent callers.
+	 */
+	private static final int CALLERS = 8;
+
+	/**
+	 * How long a call waits for the read it joined.
+	 */
+	private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+	/**
+	 * The mocked {@link com.malcolmbaatjies.user.repositories.UserRepository UserRepository}.
+	 */
+	@Mock
+	private UserRepository mockedUserRepository;
+
+	/**
+	 * The meter registry.
+	 */
+	private MeterRegistry meterRegistry;
+
+	/**
+	 * The repository proxy with the interceptor.
+	 */
+	private UserRepository userRepository;
+
+	/**
+	 * The threads the concurrent callers run on.
+	 */
+	private ExecutorService executor;
+
+	/**
+	 * Wrap the mocked repository in a proxy with the interceptor.
+	 */
+	@BeforeEach
+	public void setup()
+	{
+		meterRegistry = new SimpleMeterRegistry();
+		userRepository = proxy(TIMEOUT);
+		executor = Executors.newFixedThreadPool(CALLERS);
+	}
+
+	/**
+	 * Stop the callers' threads.
+	 */
+	@AfterEach
+	public void teardown()
+	{
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Test that concurrent lookups of the same id share one query and its result.
+	 */
+	@Test
+	void findByIdCoalesced() throws Exception
+	{
+		User user = User.builder().id(1L).firstName("John").lastName("Doe").email("johndoe@mail.com").build();
+		CountDownLatch release = new CountDownLatch(1);
+		when(mockedUserRepository.findById(1L)).thenAnswer(invocation -> {
+			release.await();
+			return Optional.of(user);
+		});
+
+		List<Future<Optional<User>>> results = new ArrayList<>();
+		for (int i = 0; i < CALLERS; i++)
+		{
+			results.add(executor.submit(() -> userRepository.findById(1L)));
+		}
+		awaitCoalesced("findById", CALLERS - 1);
+		release.countDown();
+
+		for (Future<Optional<User>> result : results)
+		{
+			assertSame(user, result.get(5, TimeUnit.SECONDS).orElseThrow());
+		}
+		verify(mockedUserRepository, times(1)).findById(1L);
+	}
+
+	/**
+	 * Test that concurrent checks of the same email share the exception of their one query.
+	 */
+	@Test
+	void existsUserByEmailSharesFailure() throws Exception
+	{
+		CountDownLatch release = new CountDownLatch(1);
+		when(mockedUserRepository.existsUserByEmail("johndoe@mail.com")).thenAnswer(invocation -> {
+			release.await();
+			throw new DataAccessResourceFailureException("down");
+		});
+
+		List<Future<Boolean>> results = new ArrayList<>();
+		for (int i = 0; i < CALLERS; i++)
+		{
+			results.add(executor.submit(() -> userRepository.existsUserByEmail("johndoe@mail.com")));
+		}
+		awaitCoalesced("existsUserByEmail", CALLERS - 1);
+		release.countDown();
+
+		for (Future<Boolean> result : results)
+		{
+			ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+			assertInstanceOf(DataAccessResourceFailureException.class, e.getCause());
+		}
+		verify(mockedUserRepository, times(1)).existsUserByEmail("johndoe@mail.com");
+	}
+
+	/**
+	 * Test that calls which do not overlap, or read something else, each run their own query.
+	 */
+	@Test
+	void sequentialCallsNotCoalesced()
+	{
+		when(mockedUserRepository.findById(anyLong())).thenReturn(Optional.empty());
+
+		userRepository.findById(1L);
+		userRepository.findById(1L);
+		userRepository.findById(2L);
+
+		verify(mockedUserRepository, times(2)).findById(1L);
+		verify(mockedUserRepository, times(1)).findById(2L);
+		assertEquals(0, meterRegistry.get("users.reads.coalesced").tag("method", "findById").counter().count());
+	}
+
+	/**
+	 * Test that a lookup on a thread pinned to the primary does not join a lookup of the same id on a thread that is not, which may be served by a replica.
+	 */
+	@Test
+	void pinnedCallNotCoalescedWithUnpinned() throws Exception
+	{
+		User user = User.builder().id(1L).firstName("John").lastName("Doe").email("johndoe@mail.com").build();
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		when(mockedUserRepository.findById(1L)).thenAnswer(invocation -> {
+			if (!ReplicaRoutingDataSource.isPinnedToPrimary())
+			{
+				started.countDown();
+				release.await();
+			}
+			return Optional.of(user);
+		});
+
+		Future<Optional<User>> unpinned = executor.submit(() -> userRepository.findById(1L));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		Future<Optional<User>> pinned = executor.submit(() -> {
+			ReplicaRoutingDataSource.pinToPrimary(true);
+			try
+			{
+				return userRepository.findById(1L);
+			}
+			finally
+			{
+				ReplicaRoutingDataSource.pinToPrimary(false);
+			}
+		});
+
+		assertSame(user, pinned.get(5, TimeUnit.SECONDS).orElseThrow());
+		release.countDown();
+		assertSame(user, unpinned.get(5, TimeUnit.SECONDS).orElseThrow());
+		verify(mockedUserRepository, times(2)).findById(1L);
+	}
+
+	/**
+	 * Test that a call that waited longer than the timeout for the read it joined runs its own.
+	 */
+	@Test
+	void joinedReadTimesOut() throws Exception
+	{
+		UserRepository timingOutUserRepository = proxy(Duration.ofMillis(50));
+		User user = User.builder().id(1L).firstName("John").lastName("Doe").email("johndoe@mail.com").build();
+		AtomicInteger calls = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+		when(mockedUserRepository.findById(1L)).thenAnswer(invocation -> {
+			if (calls.getAndIncrement() == 0)
+			{
+				release.await();
+			}
+			return Optional.of(user);
+		});
+
+		Future<Optional<User>> hanging = executor.submit(() -> timingOutUserRepository.findById(1L));
+		awaitCalls(calls, 1);
+		Future<Optional<User>> joined = executor.submit(() -> timingOutUserRepository.findById(1L));
+
+		assertSame(user, joined.get(5, TimeUnit.SECONDS).orElseThrow());
+		assertEquals(1, meterRegistry.get("users.reads.coalesced").tag("method", "findById").counter().count());
+		release.countDown();
+		assertSame(user, hanging.get(5, TimeUnit.SECONDS).orElseThrow());
+		verify(mockedUserRepository, times(2)).findById(1L);
+	}
+
+	/**
+	 * Wrap the mocked repository in a proxy with an interceptor.
+	 *
+	 * @param timeout How long a call waits for the read it joined.
+	 * @return The repository proxy.
+	 */
+	private UserRepository proxy(Duration timeout)
+	{
+		ProxyFactory proxyFactory = new ProxyFactory(mockedUserRepository);
+		proxyFactory.addInterface(UserRepository.class);
+		proxyFactory.addAdvice(new CoalescingRepositoryInterceptor(meterRegistry, timeout));
+		return (UserRepository) proxyFactory.getProxy();
+	}
+
+	/**
+	 * Wait until the mocked repository has been called a number of times.
+	 *
+	 * @param calls The calls made so far.
+	 * @param count The number of calls.
+	 */
+	private void awaitCalls(AtomicInteger calls, int count) throws InterruptedException
+	{
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (calls.get() < count)
+		{
+			assertTrue(System.nanoTime() < deadline, "The repository was not called");
+			Thread.sleep(10);
+		}
+	}
+
+	/**
+	 * Wait until a number of calls have joined a running read.
+	 *
+	 * @param method The method read.
+	 * @param count The number of calls.
+	 */
+	private void awaitCoalesced(String method, int count) throws InterruptedException
+	{
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (meterRegistry.get("users.reads.coalesced").tag("method", method).counter().count() < count)
+		{
+			assertTrue(System.nanoTime() < deadline, "Calls were not coalesced");
+			Thread.sleep(10);
+		}
+	}
+}
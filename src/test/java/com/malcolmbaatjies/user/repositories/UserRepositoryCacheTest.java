@@ -0,0 +1,179 @@
+package com.malcolmbaatjies.user.repositories;
+
+import com.malcolmbaatjies.user.entities.models.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import org.springframework.test.util.AopTestUtils;
+
+import javax.sql.DataSource;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * UserRepositoryCacheTest
+ * <br><br>
+ * This class is used to test the caching annotations on the {@link com.malcolmbaatjies.user.repositories.UserRepository UserRepository}.
+ * <br><br>
+ * This class is annotated with Spring's {@link org.springframework.test.context.junit.jupiter.SpringJUnitConfig} to run the test against a minimal context where the repository is a mock wrapped in the caching proxy.
+ */
+@SpringJUnitConfig
+class UserRepositoryCacheTest
+{
+	/**
+	 * The test context configuration.
+	 * <br><br>
+	 * This enables caching and registers a mocked {@link com.malcolmbaatjies.user.repositories.UserRepository UserRepository}, and a mocked data source without read replicas for the caching annotations to check.
+	 */
+	@Configuration
+	@EnableCaching
+	static class Config
+	{
+		@Bean
+		CacheManager cacheManager()
+		{
+			return new CaffeineCacheManager(UserRepository.CACHE);
+		}
+
+		@Bean
+		DataSource dataSource()
+		{
+			return mock(DataSource.class);
+		}
+
+		@Bean
+		UserRepository userRepository()
+		{
+			return mock(UserRepository.class);
+		}
+	}
+
+	/**
+	 * The cached {@link com.malcolmbaatjies.user.repositories.UserRepository UserRepository}.
+	 */
+	@Autowired
+	private UserRepository userRepository;
+
+	/**
+	 * The cache manager.
+	 */
+	@Autowired
+	private CacheManager cacheManager;
+
+	/**
+	 * The mocked repository behind the caching proxy.
+	 */
+	private UserRepository mockedUserRepository;
+
+	/**
+	 * Reset the mocked repository and clear the cache.
+	 */
+	@BeforeEach
+	public void setup()
+	{
+		mockedUserRepository = AopTestUtils.getUltimateTargetObject(userRepository);
+		Mockito.reset(mockedUserRepository);
+		cacheManager.getCache(UserRepository.CACHE).clear();
+	}
+
+	/**
+	 * Test that repeated lookups of the same id only reach the database once.
+	 */
+	@Test
+	void findByIdCached()
+	{
+		when(mockedUserRepository.findById(1L)).thenReturn(Optional.of(user(1L, "johndoe@mail.com")));
+
+		assertEquals("johndoe@mail.com", userRepository.findById(1L).orElseThrow().getEmail());
+		assertEquals("johndoe@mail.com", userRepository.findById(1L).orElseThrow().getEmail());
+
+		verify(mockedUserRepository, times(1)).findById(1L);
+	}
+
+	/**
+	 * Test that users that are not found are not cached.
+	 */
+	@Test
+	void findByIdNotFoundNotCached()
+	{
+		when(mockedUserRepository.findById(1L)).thenReturn(Optional.empty());
+
+		assertTrue(userRepository.findById(1L).isEmpty());
+		assertTrue(userRepository.findById(1L).isEmpty());
+
+		verify(mockedUserRepository, times(2)).findById(1L);
+	}
+
+	/**
+	 * Test that the lookup used to write a user reads past a stale cached copy.
+	 */
+	@Test
+	void findCurrentByIdNotCached()
+	{
+		when(mockedUserRepository.findById(1L)).thenReturn(Optional.of(user(1L, "johndoe@mail.com")));
+		when(mockedUserRepository.findCurrentById(1L)).thenReturn(Optional.of(user(1L, "doe.john@mail.com")));
+
+		userRepository.findById(1L);
+
+		assertEquals("doe.john@mail.com", userRepository.findCurrentById(1L).orElseThrow().getEmail());
+		assertEquals("doe.john@mail.com", userRepository.findCurrentById(1L).orElseThrow().getEmail());
+		verify(mockedUserRepository, times(2)).findCurrentById(1L);
+	}
+
+	/**
+	 * Test that a saved user replaces the cached copy.
+	 */
+	@Test
+	void saveUpdatesCache()
+	{
+		when(mockedUserRepository.findById(1L)).thenReturn(Optional.of(user(1L, "johndoe@mail.com")));
+		when(mockedUserRepository.save(any(User.class))).thenReturn(user(1L, "doe.john@mail.com"));
+
+		userRepository.findById(1L);
+		userRepository.save(user(1L, "doe.john@mail.com"));
+
+		assertEquals("doe.john@mail.com", userRepository.findById(1L).orElseThrow().getEmail());
+		verify(mockedUserRepository, times(1)).findById(1L);
+	}
+
+	/**
+	 * Test that a deleted user is evicted from the cache.
+	 */
+	@Test
+	void deleteByIdEvictsCache()
+	{
+		when(mockedUserRepository.findById(1L)).thenReturn(Optional.of(user(1L, "johndoe@mail.com")));
+
+		userRepository.findById(1L);
+		userRepository.deleteById(1L);
+		userRepository.findById(1L);
+
+		verify(mockedUserRepository, times(2)).findById(1L);
+	}
+
+	/**
+	 * Build a user.
+	 *
+	 * @param id The user's id.
+	 * @param email The user's email.
+	 * @return The user.
+	 */
+	private static User user(Long id, String email)
+	{
+		return User.builder()
+			.id(id)
+			.firstName("John")
+			.lastName("Doe")
+			.email(email)
+			.build();
+	}
+}
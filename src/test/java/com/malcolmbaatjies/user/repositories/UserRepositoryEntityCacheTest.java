@@ -0,0 +1,171 @@
+package com.malcolmbaatjies.user.repositories;
+
+import com.malcolmbaatjies.App;
+import com.malcolmbaatjies.user.entities.models.User;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+import javax.persistence.EntityManagerFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * UserRepositoryEntityCacheTest
+ * <br><br>
+ * This class is used to test that Hibernate's second-level cache of users serves repeated lookups and stays coherent with the writes made through the {@link com.malcolmbaatjies.user.repositories.UserRepository UserRepository}.
+ * <br><br>
+ * The users cache in front of the repository is emptied before each lookup, so that every lookup reaches Hibernate.
+ * <br><br>
+ * This class is annotated with Spring's {@link org.springframework.boot.test.context.SpringBootTest} to run the test against the application on an embedded database, with a cache manager of its own.
+ */
+@SpringBootTest(classes = App.class, properties = {
+	"spring.datasource.url=jdbc:h2:mem:entitycache;MODE=MySQL;DB_CLOSE_DELAY=-1",
+	"spring.datasource.driver-class-name=org.h2.Driver",
+	"spring.datasource.username=sa",
+	"spring.datasource.password=",
+	"spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+	"spring.jpa.hibernate.ddl-auto=create-drop",
+	"users.entity-cache.uri=user-repository-entity-cache-test"
+})
+class UserRepositoryEntityCacheTest
+{
+	/**
+	 * The repository.
+	 */
+	@Autowired
+	private UserRepository userRepository;
+
+	/**
+	 * The cache manager of the users cache.
+	 */
+	@Autowired
+	private CacheManager cacheManager;
+
+	/**
+	 * The meter registry.
+	 */
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	/**
+	 * Hibernate's statistics.
+	 */
+	private Statistics statistics;
+
+	/**
+	 * Empty the table, the second-level cache and the users cache, and reset the statistics.
+	 *
+	 * @param entityManagerFactory The entity manager factory.
+	 */
+	@BeforeEach
+	public void setup(@Autowired EntityManagerFactory entityManagerFactory)
+	{
+		userRepository.deleteAllInBatch();
+		entityManagerFactory.getCache().evictAll();
+		cacheManager.getCache(UserRepository.CACHE).clear();
+		statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+	}
+
+	/**
+	 * Test that a saved user is found from the second-level cache, without a query, and that the hits are published as metrics.
+	 */
+	@Test
+	void findByIdHitsCache()
+	{
+		User user = userRepository.save(user("johndoe@mail.com"));
+		statistics.clear();
+
+		assertEquals("johndoe@mail.com", findById(user.getId()).getEmail());
+		assertEquals("johndoe@mail.com", findById(user.getId()).getEmail());
+
+		assertEquals(2, statistics.getDomainDataRegionStatistics(User.CACHE_REGION).getHitCount());
+		assertEquals(0, statistics.getPrepareStatementCount());
+		assertTrue(meterRegistry.get("hibernate.second.level.cache.requests").tags("region", User.CACHE_REGION, "result", "hit").functionCounter().count() >= 2);
+	}
+
+	/**
+	 * Test that an update is merged from the second-level cache and replaces the cached user, and that an update of a stale version is refused without touching the cached user.
+	 */
+	@Test
+	void saveUpdatesCache()
+	{
+		User user = userRepository.save(user("johndoe@mail.com"));
+		statistics.clear();
+
+		User updated = userRepository.save(User.builder().id(user.getId()).firstName("Jane").lastName("Doe").email("janedoe@mail.com").version(user.getVersion()).build());
+
+		assertEquals(1, statistics.getDomainDataRegionStatistics(User.CACHE_REGION).getHitCount());
+		assertEquals("janedoe@mail.com", findById(user.getId()).getEmail());
+		assertEquals(updated.getVersion(), findById(user.getId()).getVersion());
+
+		User stale = User.builder().id(user.getId()).firstName("John").lastName("Doe").email("johndoe@mail.com").version(user.getVersion()).build();
+		assertThrows(ObjectOptimisticLockingFailureException.class, () -> userRepository.save(stale));
+		assertEquals("janedoe@mail.com", findById(user.getId()).getEmail());
+	}
+
+	/**
+	 * Test that a bulk update empties the second-level cache, so the updated user is read again from the database.
+	 */
+	@Test
+	void updateFieldsByIdEvictsCache()
+	{
+		User user = userRepository.save(user("johndoe@mail.com"));
+		findById(user.getId());
+
+		assertEquals(1, userRepository.updateFieldsById(user.getId(), "Jane", null, null, user.getVersion()));
+
+		User found = findById(user.getId());
+		assertEquals("Jane", found.getFirstName());
+		assertEquals(user.getVersion() + 1, found.getVersion());
+	}
+
+	/**
+	 * Test that deleted users are no longer found from the second-level cache.
+	 */
+	@Test
+	void deleteEvictsCache()
+	{
+		User deleted = userRepository.save(user("johndoe@mail.com"));
+		User deletedByVersion = userRepository.save(user("janedoe@mail.com"));
+		findById(deleted.getId());
+		findById(deletedByVersion.getId());
+
+		userRepository.deleteUserById(deleted.getId());
+		userRepository.deleteUserByIdAndVersion(deletedByVersion.getId(), deletedByVersion.getVersion());
+
+		cacheManager.getCache(UserRepository.CACHE).clear();
+		assertTrue(userRepository.findById(deleted.getId()).isEmpty());
+		assertTrue(userRepository.findById(deletedByVersion.getId()).isEmpty());
+	}
+
+	/**
+	 * Find a user by id through Hibernate, past the users cache.
+	 *
+	 * @param id The user's id.
+	 * @return The user.
+	 */
+	private User findById(Long id)
+	{
+		cacheManager.getCache(UserRepository.CACHE).clear();
+		return userRepository.findById(id).orElseThrow();
+	}
+
+	/**
+	 * Create a new user.
+	 *
+	 * @param email The user's email.
+	 * @return The user.
+	 */
+	private static User user(String email)
+	{
+		return User.builder().firstName("John").lastName("Doe").email(email).build();
+	}
+}
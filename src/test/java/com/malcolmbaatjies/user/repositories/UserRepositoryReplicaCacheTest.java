@@ -0,0 +1,153 @@
+package com.malcolmbaatjies.user.repositories;
+
+import com.malcolmbaatjies.App;
+import com.malcolmbaatjies.user.configurations.ReplicaRoutingDataSource;
+import com.malcolmbaatjies.user.entities.models.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * UserRepositoryReplicaCacheTest
+ * <br><br>
+ * This class is used to test that reads served by a read replica do not fill the users cache or Hibernate's second-level cache, so a replica that lags behind the primary cannot leave a stale user cached.
+ * <br><br>
+ * The replica is an embedded database of its own, holding a stale copy of each user that the primary has already changed, so a read shows which database it came from.
+ * <br><br>
+ * This class is annotated with Spring's {@link org.springframework.boot.test.context.SpringBootTest} to run the test against the application on embedded databases, with a cache manager of its own.
+ */
+@SpringBootTest(classes = App.class, properties = {
+	"spring.datasource.url=jdbc:h2:mem:replicacacheprimary;MODE=MySQL;DB_CLOSE_DELAY=-1",
+	"spring.datasource.driver-class-name=org.h2.Driver",
+	"spring.datasource.username=sa",
+	"spring.datasource.password=",
+	"spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+	"spring.jpa.hibernate.ddl-auto=create-drop",
+	"users.datasource.replica-urls=" + UserRepositoryReplicaCacheTest.REPLICA_URL,
+	"users.entity-cache.uri=user-repository-replica-cache-test"
+})
+class UserRepositoryReplicaCacheTest
+{
+	/**
+	 * The JDBC URL of the replica.
+	 */
+	static final String REPLICA_URL = "jdbc:h2:mem:replicacachereplica;MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+	/**
+	 * The repository.
+	 */
+	@Autowired
+	private UserRepository userRepository;
+
+	/**
+	 * The cache manager of the users cache.
+	 */
+	@Autowired
+	private CacheManager cacheManager;
+
+	/**
+	 * The entity manager factory, to empty the second-level cache.
+	 */
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	/**
+	 * The replica, written directly.
+	 */
+	private final JdbcTemplate replica = new JdbcTemplate(new DriverManagerDataSource(REPLICA_URL, "sa", ""));
+
+	/**
+	 * Empty both databases and both caches.
+	 */
+	@BeforeEach
+	public void setup()
+	{
+		replica.execute("CREATE TABLE IF NOT EXISTS users (id BIGINT PRIMARY KEY, first_name VARCHAR(255), last_name VARCHAR(255), email VARCHAR(255), version BIGINT NOT NULL)");
+		replica.execute("DELETE FROM users");
+		userRepository.deleteAllInBatch();
+		clearCaches();
+	}
+
+	/**
+	 * Test that a user looked up by id is read from the replica, and is put in neither the users cache nor the second-level cache.
+	 */
+	@Test
+	void findByIdFromReplicaNotCached()
+	{
+		User user = saveWithStaleReplica();
+
+		assertEquals("johndoe@mail.com", userRepository.findById(user.getId()).orElseThrow().getEmail());
+		assertNull(cacheManager.getCache(UserRepository.CACHE).get(user.getId()));
+		assertFalse(entityManagerFactory.getCache().contains(User.class, user.getId()));
+	}
+
+	/**
+	 * Test that a user looked up by id on a thread pinned to the primary is read from the primary, and that is what is cached.
+	 */
+	@Test
+	void findByIdPinnedCachesPrimary()
+	{
+		User user = saveWithStaleReplica();
+
+		ReplicaRoutingDataSource.pinToPrimary(true);
+		try
+		{
+			assertEquals("janedoe@mail.com", userRepository.findById(user.getId()).orElseThrow().getEmail());
+		}
+		finally
+		{
+			ReplicaRoutingDataSource.pinToPrimary(false);
+		}
+		assertEquals("janedoe@mail.com", cacheManager.getCache(UserRepository.CACHE).get(user.getId(), User.class).getEmail());
+		assertTrue(entityManagerFactory.getCache().contains(User.class, user.getId()));
+		assertEquals("janedoe@mail.com", userRepository.findById(user.getId()).orElseThrow().getEmail());
+	}
+
+	/**
+	 * Test that users read from the replica by a page or a search are not put in the second-level cache, where a later lookup by id would find them.
+	 */
+	@Test
+	void replicaReadsNotCached()
+	{
+		User user = saveWithStaleReplica();
+
+		assertEquals("johndoe@mail.com", userRepository.findByIdGreaterThan(0L, PageRequest.of(0, 10, Sort.by("id"))).getContent().get(0).getEmail());
+		assertEquals("johndoe@mail.com", userRepository.findAllById(List.of(user.getId())).get(0).getEmail());
+
+		assertFalse(entityManagerFactory.getCache().contains(User.class, user.getId()));
+	}
+
+	/**
+	 * Save a user on the primary and change its email, leaving the replica with the user as it was before the change.
+	 *
+	 * @return The user, as it is on the primary.
+	 */
+	private User saveWithStaleReplica()
+	{
+		User user = userRepository.save(User.builder().firstName("John").lastName("Doe").email("johndoe@mail.com").build());
+		replica.update("INSERT INTO users (id, first_name, last_name, email, version) VALUES (?, ?, ?, ?, ?)", user.getId(), user.getFirstName(), user.getLastName(), user.getEmail(), user.getVersion());
+		User changed = userRepository.save(User.builder().id(user.getId()).firstName("John").lastName("Doe").email("janedoe@mail.com").version(user.getVersion()).build());
+		clearCaches();
+		return changed;
+	}
+
+	/**
+	 * Empty the users cache and the second-level cache.
+	 */
+	private void clearCaches()
+	{
+		cacheManager.getCache(UserRepository.CACHE).clear();
+		entityManagerFactory.getCache().evictAll();
+	}
+}
@@ -0,0 +1,379 @@
+package com.malcolmbaatjies.user.repositories.sharding;
+
+import com.malcolmbaatjies.App;
+import com.malcolmbaatjies.user.entities.models.User;
+import com.malcolmbaatjies.user.repositories.UserRepository;
+import org.hibernate.exception.ConstraintViolationException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ShardingRepositoryTest
+ * <br><br>
+ * This class is used to test the {@link com.malcolmbaatjies.user.repositories.UserRepository UserRepository} when the users table is sharded across three embedded databases.
+ * <br><br>
+ * This class is annotated with Spring's {@link org.springframework.boot.test.context.SpringBootTest} to run the test against the application configured with the shards.
+ */
+@SpringBootTest(classes = App.class, properties = {
+	"spring.datasource.url=jdbc:h2:mem:shard0;MODE=MySQL;DB_CLOSE_DELAY=-1",
+	"spring.datasource.driver-class-name=org.h2.Driver",
+	"spring.datasource.username=sa",
+	"spring.datasource.password=",
+	"spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+	"spring.jpa.hibernate.ddl-auto=create-drop",
+	"users.sharding.shard-urls=jdbc:h2:mem:shard1;MODE=MySQL;DB_CLOSE_DELAY=-1,jdbc:h2:mem:shard2;MODE=MySQL;DB_CLOSE_DELAY=-1"
+})
+class ShardingRepositoryTest
+{
+	/**
+	 * The number of shards.
+	 */
+	private static final int SHARDS = 3;
+
+	/**
+	 * The sharded repository.
+	 */
+	@Autowired
+	private UserRepository userRepository;
+
+	/**
+	 * The shards, to check where users are stored.
+	 */
+	@Autowired
+	private ShardRoutingDataSource shardRoutingDataSource;
+
+	/**
+	 * The cache manager.
+	 */
+	@Autowired
+	private CacheManager cacheManager;
+
+	/**
+	 * Empty the shards, the email directory and the cache.
+	 */
+	@BeforeEach
+	public void setup()
+	{
+		for (int shard = 0; shard < SHARDS; shard++)
+		{
+			shard(shard).update("DELETE FROM users");
+		}
+		shard(0).update("DELETE FROM " + EmailDirectory.TABLE);
+		cacheManager.getCache(UserRepository.CACHE).clear();
+	}
+
+	/**
+	 * Test that a new user is stored on the shard picked by its email, that its id carries that shard and that it is found by id.
+	 */
+	@Test
+	void saveStoresOnShardOfId()
+	{
+		for (int shard = 0; shard < SHARDS; shard++)
+		{
+			User user = userRepository.save(user(emailOnShard(shard, "save")));
+
+			assertEquals(shard, ShardedIdGenerator.shardOf(user.getId(), SHARDS));
+			for (int other = 0; other < SHARDS; other++)
+			{
+				assertEquals(other == shard ? 1 : 0, shard(other).queryForObject("SELECT COUNT(*) FROM users WHERE id = ?", Integer.class, user.getId()));
+			}
+			assertEquals(user.getEmail(), userRepository.findById(user.getId()).orElseThrow().getEmail());
+		}
+	}
+
+	/**
+	 * Test that a batch is spread across the shards, returned in the order it was given and found again by id.
+	 */
+	@Test
+	void saveAllSpreadsAcrossShards()
+	{
+		List<User> users = new ArrayList<>();
+		for (int i = 0; i < 12; i++)
+		{
+			users.add(user(emailOnShard(i % SHARDS, "batch" + i)));
+		}
+
+		List<User> saved = userRepository.saveAll(users);
+
+		assertEquals(users.stream().map(User::getEmail).collect(Collectors.toList()), saved.stream().map(User::getEmail).collect(Collectors.toList()));
+		for (int i = 0; i < saved.size(); i++)
+		{
+			assertEquals(i % SHARDS, ShardedIdGenerator.shardOf(saved.get(i).getId(), SHARDS));
+		}
+		for (int shard = 0; shard < SHARDS; shard++)
+		{
+			assertEquals(4, shard(shard).queryForObject("SELECT COUNT(*) FROM users", Integer.class));
+		}
+
+		List<Long> ids = saved.stream().map(User::getId).collect(Collectors.toList());
+		assertEquals(new HashSet<>(ids), userRepository.findAllById(ids).stream().map(User::getId).collect(Collectors.toSet()));
+	}
+
+	/**
+	 * Test that pages are merged from every shard by id.
+	 */
+	@Test
+	void pagesMergedById()
+	{
+		List<Long> ids = saveAcrossShards(10);
+
+		List<Long> paged = new ArrayList<>();
+		long after = 0;
+		Slice<User> slice;
+		do
+		{
+			slice = userRepository.findByIdGreaterThan(after, PageRequest.of(0, 3, Sort.by("id")));
+			slice.forEach(user -> paged.add(user.getId()));
+			after = paged.get(paged.size() - 1);
+		}
+		while (slice.hasNext());
+
+		assertEquals(ids, paged);
+
+		Pageable pageable = PageRequest.of(0, 4, Sort.by("id"));
+		Slice<User> emails = userRepository.findFieldsByIdGreaterThan(0L, pageable, List.of("email"));
+		assertEquals(ids.subList(0, 4), emails.map(User::getId).getContent());
+		assertNull(emails.getContent().get(0).getFirstName());
+		assertTrue(emails.hasNext());
+	}
+
+	/**
+	 * Test that the export streams the users of every shard merged by id.
+	 */
+	@Test
+	void exportMergedById()
+	{
+		List<Long> ids = saveAcrossShards(10);
+
+		try (Stream<User> users = userRepository.streamAllByOrderByIdAsc())
+		{
+			assertEquals(ids, users.map(User::getId).collect(Collectors.toList()));
+		}
+	}
+
+	/**
+	 * Test that an email stays unique across shards once a user changes to an email that would be stored on another shard, and that the user is found by its new email.
+	 */
+	@Test
+	void emailUniqueAcrossShards()
+	{
+		String oldEmail = emailOnShard(0, "old");
+		String newEmail = emailOnShard(1, "new");
+		User user = userRepository.save(user(oldEmail));
+
+		assertEquals(1, userRepository.updateFieldsById(user.getId(), null, null, newEmail, null));
+		assertFalse(userRepository.existsUserByEmail(oldEmail));
+		assertTrue(userRepository.existsUserByEmail(newEmail));
+		assertEquals(List.of(newEmail), userRepository.findExistingEmails(List.of(oldEmail, newEmail)));
+		assertEquals(user.getId(), userRepository.findUserByEmail(newEmail).orElseThrow().getId());
+		assertTrue(userRepository.findUserByEmail(oldEmail).isEmpty());
+
+		DataIntegrityViolationException e = assertThrows(DataIntegrityViolationException.class, () -> userRepository.save(user(newEmail)));
+		assertEquals(User.EMAIL_CONSTRAINT, ((ConstraintViolationException) e.getCause()).getConstraintName());
+		assertEquals(0, shard(1).queryForObject("SELECT COUNT(*) FROM users", Integer.class));
+
+		userRepository.save(user(oldEmail));
+	}
+
+	/**
+	 * Test that deleting a user frees its email.
+	 */
+	@Test
+	void deleteReleasesEmail()
+	{
+		String email = emailOnShard(2, "delete");
+		User user = userRepository.save(user(email));
+
+		assertEquals(0, userRepository.deleteUserByIdAndVersion(user.getId(), 5L));
+		assertTrue(userRepository.existsUserByEmail(email));
+		assertEquals(1, userRepository.deleteUserById(user.getId()));
+		assertFalse(userRepository.existsUserByEmail(email));
+		assertFalse(userRepository.existsById(user.getId()));
+	}
+
+	/**
+	 * Test that concurrent email changes of the same user, and a delete racing them, leave only the user's current email claimed.
+	 */
+	@Test
+	void concurrentEmailChangesKeepDirectory() throws Exception
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try
+		{
+			for (int round = 0; round < 10; round++)
+			{
+				User user = userRepository.save(user(emailOnShard(0, "race" + round + "x")));
+				String y = emailOnShard(1, "race" + round + "y");
+				String z = emailOnShard(2, "race" + round + "z");
+				CountDownLatch changing = new CountDownLatch(1);
+				List<Future<Integer>> changes = List.of(
+					executor.submit(() -> {
+						changing.await();
+						return userRepository.updateFieldsById(user.getId(), null, null, y, null);
+					}),
+					executor.submit(() -> {
+						changing.await();
+						return userRepository.updateFieldsById(user.getId(), null, null, z, null);
+					}));
+				changing.countDown();
+				for (Future<Integer> change : changes)
+				{
+					change.get();
+				}
+
+				String current = shard(0).queryForObject("SELECT email FROM users WHERE id = ?", String.class, user.getId());
+				assertEquals(List.of(current), shard(0).queryForList("SELECT email FROM " + EmailDirectory.TABLE + " WHERE email LIKE ?", String.class, "race" + round + "%"));
+
+				CountDownLatch deleting = new CountDownLatch(1);
+				String w = emailOnShard(1, "race" + round + "w");
+				List<Future<Integer>> writes = List.of(
+					executor.submit(() -> {
+						deleting.await();
+						return userRepository.deleteUserById(user.getId());
+					}),
+					executor.submit(() -> {
+						deleting.await();
+						return userRepository.updateFieldsById(user.getId(), null, null, w, null);
+					}));
+				deleting.countDown();
+				for (Future<Integer> write : writes)
+				{
+					write.get();
+				}
+				assertEquals(List.of(), shard(0).queryForList("SELECT email FROM " + EmailDirectory.TABLE + " WHERE email LIKE ?", String.class, "race" + round + "%"));
+			}
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Test that the application refuses to start while shard 0 holds users stored before it was sharded, whether their id does not carry shard 0 or their email is not in the directory.
+	 *
+	 * @param unshardedUsersCheck The check.
+	 */
+	@Test
+	void unshardedUsersRefused(@Autowired @Qualifier("unshardedUsersCheck") SmartInitializingSingleton unshardedUsersCheck)
+	{
+		saveAcrossShards(6);
+		unshardedUsersCheck.afterSingletonsInstantiated();
+
+		shard(0).update("INSERT INTO users (id, first_name, last_name, email, version) VALUES (1, 'First', 'Last', 'before1@example.com', 0)");
+		IllegalStateException e = assertThrows(IllegalStateException.class, unshardedUsersCheck::afterSingletonsInstantiated);
+		assertTrue(e.getMessage().contains("such as 1,"));
+
+		shard(0).update("UPDATE users SET id = 3000 WHERE id = 1");
+		assertThrows(IllegalStateException.class, unshardedUsersCheck::afterSingletonsInstantiated);
+	}
+
+	/**
+	 * Test that a repository method that is not routed across the shards is refused when the repository is built, and that the repository's own methods are all routed.
+	 */
+	@Test
+	void unroutedMethodRefused()
+	{
+		ShardingRepositoryInterceptor.checkRouted(UserRepository.class);
+
+		IllegalStateException e = assertThrows(IllegalStateException.class, () -> ShardingRepositoryInterceptor.checkRouted(UnroutedUserRepository.class));
+		assertTrue(e.getMessage().contains("findByLastName"));
+	}
+
+	/**
+	 * UnroutedUserRepository
+	 * <br><br>
+	 * A repository with a method that would have to read every shard.
+	 */
+	interface UnroutedUserRepository extends UserRepository
+	{
+		/**
+		 * Find users by last name.
+		 *
+		 * @param lastName The last name.
+		 * @return The users.
+		 */
+		List<User> findByLastName(String lastName);
+	}
+
+	/**
+	 * Save users spread evenly across the shards.
+	 *
+	 * @param count The number of users.
+	 * @return The users' ids, in order.
+	 */
+	private List<Long> saveAcrossShards(int count)
+	{
+		List<Long> ids = new ArrayList<>();
+		for (int i = 0; i < count; i++)
+		{
+			ids.add(userRepository.save(user(emailOnShard(i % SHARDS, "user" + i))).getId());
+		}
+		ids.sort(null);
+		return ids;
+	}
+
+	/**
+	 * Get a JDBC template on a shard.
+	 *
+	 * @param shard The shard number.
+	 * @return The JDBC template.
+	 */
+	private JdbcTemplate shard(int shard)
+	{
+		return new JdbcTemplate(shardRoutingDataSource.getShard(shard));
+	}
+
+	/**
+	 * Get an email that a new user would be stored on the given shard with.
+	 *
+	 * @param shard The shard number.
+	 * @param prefix The start of the email.
+	 * @return The email.
+	 */
+	private static String emailOnShard(int shard, String prefix)
+	{
+		for (int i = 0; ; i++)
+		{
+			String email = prefix + i + "@example.com";
+			if (ShardingRepositoryInterceptor.shardFor(email, SHARDS) == shard)
+			{
+				return email;
+			}
+		}
+	}
+
+	/**
+	 * Build a new user.
+	 *
+	 * @param email The user's email.
+	 * @return The user.
+	 */
+	private static User user(String email)
+	{
+		return User.builder().firstName("First").lastName("Last").email(email).build();
+	}
+}